@@ -0,0 +1,102 @@
+package raven.misc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@linkplain InputStream} reading the remaining content of a
+ * {@linkplain ByteBuffer}. The stream works on its own view of the buffer so
+ * the position of the given buffer is never modified.
+ * 
+ * @author Raven
+ *
+ */
+public class ByteBufferInputStream extends InputStream {
+
+	/**
+	 * The buffer this stream reads from
+	 */
+	protected ByteBuffer buffer;
+	/**
+	 * The position marked via {@link #mark(int)}
+	 */
+	protected int markedPosition;
+
+
+	/**
+	 * Creates a new stream reading from the given buffer
+	 * 
+	 * @param buffer
+	 *            The {@linkplain ByteBuffer} to read from. Only the bytes
+	 *            between its current position and its limit will be read
+	 */
+	public ByteBufferInputStream(ByteBuffer buffer) {
+		if (buffer == null) {
+			throw new IllegalArgumentException("The given buffer must not be null!");
+		}
+
+		this.buffer = buffer.duplicate();
+		this.markedPosition = this.buffer.position();
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!buffer.hasRemaining()) {
+			return -1;
+		}
+
+		return buffer.get() & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (len == 0) {
+			return 0;
+		}
+		if (!buffer.hasRemaining()) {
+			return -1;
+		}
+
+		len = Math.min(len, buffer.remaining());
+		buffer.get(b, off, len);
+
+		return len;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		if (n <= 0) {
+			return 0;
+		}
+
+		int skipped = (int) Math.min(n, buffer.remaining());
+		buffer.position(buffer.position() + skipped);
+
+		return skipped;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return buffer.remaining();
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+		markedPosition = buffer.position();
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		buffer.position(markedPosition);
+	}
+
+}
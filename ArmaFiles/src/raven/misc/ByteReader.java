@@ -2,6 +2,7 @@ package raven.misc;
 
 import java.io.BufferedInputStream;
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -23,7 +24,7 @@ public class ByteReader implements Closeable {
 	/**
 	 * The amount of already read bytes
 	 */
-	protected int readBytes;
+	protected long readBytes;
 
 	protected Stack<Integer> unreadStack;
 
@@ -88,18 +89,24 @@ public class ByteReader implements Closeable {
 
 	/**
 	 * Reads a String from the source-stream. That is a sequence of characters until
-	 * a zero-byte is being encountered
+	 * a zero-byte is being encountered. Every byte is decoded as a single
+	 * ISO-8859-1 character.
 	 * 
 	 * @return The read String (empty if the next read character directly was a
 	 *         zero-byte)
 	 * @throws IOException
+	 *             If the end of the stream is reached before the zero-byte
 	 */
 	public String readString() throws IOException {
 		StringBuilder builder = new StringBuilder();
 
-		byte b;
-		while ((b = readByte()) != 0) {
-			builder.append((char) b);
+		int c;
+		while ((c = read()) != 0) {
+			if (c < 0) {
+				throw new EOFException("Reached end of stream while reading a String");
+			}
+
+			builder.append((char) c);
 		}
 
 		return builder.toString();
@@ -162,7 +169,7 @@ public class ByteReader implements Closeable {
 	/**
 	 * Gets the current position of the reader in the source-stream
 	 */
-	public int getPosition() {
+	public long getPosition() {
 		return readBytes;
 	}
 
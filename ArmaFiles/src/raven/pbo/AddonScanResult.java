@@ -0,0 +1,139 @@
+package raven.pbo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import raven.config.ConfigClass;
+
+/**
+ * The result of scanning a single addon (PBO) via a {@linkplain ModScanner}
+ * 
+ * @author Raven
+ *
+ */
+public class AddonScanResult {
+
+	/**
+	 * The mod folder the addon belongs to
+	 */
+	protected File modFolder;
+	/**
+	 * The PBO-file of the addon
+	 */
+	protected File file;
+	/**
+	 * The opened PBO or <code>null</code> if it couldn't be opened
+	 */
+	protected PBO pbo;
+	/**
+	 * The entry the config has been read from or <code>null</code> if there is
+	 * none
+	 */
+	protected PBOEntry configEntry;
+	/**
+	 * The parsed config or <code>null</code> if there is none or it couldn't be
+	 * parsed
+	 */
+	protected ConfigClass config;
+	/**
+	 * The errors that occurred while scanning the addon
+	 */
+	protected List<Exception> errors;
+	/**
+	 * The time spent in each {@linkplain ModScanner.Phase} in nanoseconds
+	 */
+	protected long[] phaseTimes;
+
+
+	/**
+	 * Creates a new result
+	 * 
+	 * @param modFolder
+	 *            The mod folder the addon belongs to
+	 * @param file
+	 *            The PBO-file of the addon
+	 */
+	protected AddonScanResult(File modFolder, File file) {
+		this.modFolder = modFolder;
+		this.file = file;
+		this.errors = new ArrayList<>(0);
+		this.phaseTimes = new long[ModScanner.Phase.values().length];
+	}
+
+	/**
+	 * Gets the mod folder the addon belongs to
+	 */
+	public File getModFolder() {
+		return modFolder;
+	}
+
+	/**
+	 * Gets the PBO-file of the addon
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Gets the opened PBO or <code>null</code> if it couldn't be opened
+	 */
+	public PBO getPBO() {
+		return pbo;
+	}
+
+	/**
+	 * Gets the prefix of the addon or <code>null</code> if the PBO couldn't be
+	 * opened or doesn't specify one
+	 */
+	public String getPrefix() {
+		return pbo == null ? null : pbo.getPrefix();
+	}
+
+	/**
+	 * Gets the entry the config has been read from or <code>null</code> if the
+	 * addon doesn't contain a config
+	 */
+	public PBOEntry getConfigEntry() {
+		return configEntry;
+	}
+
+	/**
+	 * Gets the parsed config or <code>null</code> if the addon doesn't contain
+	 * a config or it couldn't be parsed
+	 */
+	public ConfigClass getConfig() {
+		return config;
+	}
+
+	/**
+	 * Gets the errors that occurred while scanning the addon
+	 */
+	public List<Exception> getErrors() {
+		return Collections.unmodifiableList(errors);
+	}
+
+	/**
+	 * Checks whether any errors occurred while scanning the addon
+	 */
+	public boolean hasErrors() {
+		return !errors.isEmpty();
+	}
+
+	/**
+	 * Gets the time spent in the given phase for this addon
+	 * 
+	 * @param phase
+	 *            The phase to get the time of
+	 * @return The time in nanoseconds
+	 */
+	public long getTime(ModScanner.Phase phase) {
+		return phaseTimes[phase.ordinal()];
+	}
+
+	@Override
+	public String toString() {
+		return file + (hasErrors() ? " (" + errors.size() + " error(s))" : "");
+	}
+}
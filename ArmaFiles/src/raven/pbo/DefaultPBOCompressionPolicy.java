@@ -0,0 +1,101 @@
+package raven.pbo;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The default {@linkplain IPBOCompressionPolicy}. It skips files below a
+ * minimum size and files whose extension denotes an already compressed format
+ * (e.g. textures and sounds). Compressed data is only used if it saves at
+ * least a certain fraction of the original size.
+ * 
+ * @author Raven
+ *
+ */
+public class DefaultPBOCompressionPolicy implements IPBOCompressionPolicy {
+
+	/**
+	 * The default minimum size of a file to be compressed
+	 */
+	public static final int DEFAULT_MIN_SIZE = 512;
+	/**
+	 * The default maximum ratio between compressed and original size for the
+	 * compressed data to be used
+	 */
+	public static final double DEFAULT_MAX_RATIO = 0.9;
+	/**
+	 * The extensions of formats that are already compressed by default
+	 */
+	public static final Set<String> DEFAULT_EXCLUDED_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(
+			Arrays.asList("paa", "pac", "ogg", "wss", "jpg", "jpeg", "png", "zip", "7z", "pbo", "bisign")));
+
+	/**
+	 * The minimum size of a file to be compressed
+	 */
+	protected int minSize;
+	/**
+	 * The maximum ratio between compressed and original size for the compressed
+	 * data to be used
+	 */
+	protected double maxRatio;
+	/**
+	 * The (lower case) extensions of files that should never be compressed
+	 */
+	protected Set<String> excludedExtensions;
+
+
+	/**
+	 * Creates a new policy using {@link #DEFAULT_MIN_SIZE},
+	 * {@link #DEFAULT_MAX_RATIO} and {@link #DEFAULT_EXCLUDED_EXTENSIONS}
+	 */
+	public DefaultPBOCompressionPolicy() {
+		this(DEFAULT_MIN_SIZE, DEFAULT_MAX_RATIO, DEFAULT_EXCLUDED_EXTENSIONS);
+	}
+
+	/**
+	 * Creates a new policy
+	 * 
+	 * @param minSize
+	 *            The minimum size of a file to be compressed
+	 * @param maxRatio
+	 *            The maximum ratio between compressed and original size for the
+	 *            compressed data to be used
+	 * @param excludedExtensions
+	 *            The extensions (without the dot) of files that should never be
+	 *            compressed
+	 */
+	public DefaultPBOCompressionPolicy(int minSize, double maxRatio, Set<String> excludedExtensions) {
+		if (maxRatio <= 0) {
+			throw new IllegalArgumentException("The ratio has to be positive!");
+		}
+
+		this.minSize = minSize;
+		this.maxRatio = maxRatio;
+		this.excludedExtensions = new HashSet<>();
+
+		for (String current : excludedExtensions) {
+			this.excludedExtensions.add(current.toLowerCase(Locale.ROOT));
+		}
+	}
+
+	@Override
+	public boolean shouldCompress(String path, long size) {
+		if (size < minSize || size > Integer.MAX_VALUE) {
+			return false;
+		}
+
+		String name = PBOPaths.getBaseName(path);
+		int index = name.lastIndexOf('.');
+
+		return index < 0 || !excludedExtensions.contains(name.substring(index + 1).toLowerCase(Locale.ROOT));
+	}
+
+	@Override
+	public boolean acceptCompressed(String path, int originalSize, int compressedSize) {
+		return compressedSize <= originalSize * maxRatio;
+	}
+
+}
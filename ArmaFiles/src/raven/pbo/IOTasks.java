@@ -0,0 +1,305 @@
+package raven.pbo;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Helper methods for running I/O-bound tasks on an
+ * {@linkplain ExecutorService} while preserving the {@linkplain IOException}s
+ * they throw and for replacing files atomically. Tasks whose results have to
+ * be processed in order are run through a {@linkplain Window} that bounds the
+ * amount of tasks (and thus of results held in memory) pending at the same
+ * time. The default size of such windows is configured via
+ * {@link #setDefaultWindow(int)}.
+ * 
+ * @author Raven
+ *
+ */
+public final class IOTasks {
+
+	/**
+	 * A task that may throw an {@linkplain IOException}
+	 * 
+	 * @author Raven
+	 *
+	 * @param <T>
+	 *            The type of the task's result
+	 */
+	@FunctionalInterface
+	public static interface Task<T> {
+		/**
+		 * Runs the task
+		 * 
+		 * @return The result
+		 * @throws IOException
+		 */
+		public T run() throws IOException;
+	}
+
+	/**
+	 * A task writing a file
+	 * 
+	 * @author Raven
+	 *
+	 * @param <T>
+	 *            The type of the task's result
+	 */
+	@FunctionalInterface
+	public static interface FileTask<T> {
+		/**
+		 * Writes the given file
+		 * 
+		 * @param file
+		 *            The file to write
+		 * @return The result
+		 * @throws IOException
+		 */
+		public T run(Path file) throws IOException;
+	}
+
+
+	/**
+	 * A bounded window of tasks whose results are consumed in the order the
+	 * tasks have been submitted. Closing the window cancels the tasks that are
+	 * still pending.
+	 * 
+	 * @author Raven
+	 *
+	 * @param <T>
+	 *            The type of the tasks' results
+	 */
+	public static final class Window<T> implements AutoCloseable {
+		/**
+		 * The executor to run the tasks on
+		 */
+		private final ExecutorService executor;
+		/**
+		 * The maximum amount of pending tasks
+		 */
+		private final int size;
+		/**
+		 * The pending tasks (oldest first)
+		 */
+		private final ArrayDeque<Future<T>> pending;
+
+
+		/**
+		 * Creates a new window
+		 * 
+		 * @param executor
+		 *            The executor to run the tasks on
+		 * @param size
+		 *            The maximum amount of tasks that may be pending at the same
+		 *            time. Must be at least 1
+		 */
+		public Window(ExecutorService executor, int size) {
+			if (size < 1) {
+				throw new IllegalArgumentException("The window has to be at least 1!");
+			}
+
+			this.executor = executor;
+			this.size = size;
+			this.pending = new ArrayDeque<>(size);
+		}
+
+		/**
+		 * Checks whether the window is full. The result of the oldest task has
+		 * to be {@link #await() awaited} before another task may be submitted.
+		 */
+		public boolean isFull() {
+			return pending.size() >= size;
+		}
+
+		/**
+		 * Checks whether there are no pending tasks
+		 */
+		public boolean isEmpty() {
+			return pending.isEmpty();
+		}
+
+		/**
+		 * Submits the given task
+		 * 
+		 * @param task
+		 *            The task to run
+		 * @throws IllegalStateException
+		 *             If the window is full
+		 */
+		public void submit(Task<T> task) {
+			if (isFull()) {
+				throw new IllegalStateException("The window is full");
+			}
+
+			pending.add(IOTasks.submit(executor, task));
+		}
+
+		/**
+		 * Waits for the oldest pending task to complete and returns its result
+		 * (see {@link IOTasks#await(Future)})
+		 * 
+		 * @return The task's result
+		 * @throws IOException
+		 *             If the task failed or the current thread got interrupted
+		 * @throws IllegalStateException
+		 *             If there are no pending tasks
+		 */
+		public T await() throws IOException {
+			if (isEmpty()) {
+				throw new IllegalStateException("There are no pending tasks");
+			}
+
+			return IOTasks.await(pending.poll());
+		}
+
+		/**
+		 * Cancels all pending tasks
+		 */
+		@Override
+		public void close() {
+			for (Future<T> current : pending) {
+				current.cancel(true);
+			}
+
+			pending.clear();
+		}
+	}
+
+	/**
+	 * The default size of the windows of the classes running tasks in parallel
+	 */
+	private static volatile int defaultWindow = 4 * Runtime.getRuntime().availableProcessors();
+
+
+	private IOTasks() {
+	}
+
+	/**
+	 * Gets the default maximum amount of tasks that may be pending at the same
+	 * time. This is the default window of {@linkplain PBOExtractor},
+	 * {@linkplain PBOWriter}, {@linkplain ModScanner} and
+	 * {@linkplain PBOContentIndex}. It defaults to four times the amount of
+	 * available processors.
+	 */
+	public static int getDefaultWindow() {
+		return defaultWindow;
+	}
+
+	/**
+	 * Sets the default maximum amount of tasks that may be pending at the same
+	 * time (see {@link #getDefaultWindow()}). Only affects objects that are
+	 * created afterwards.
+	 * 
+	 * @param window
+	 *            The window size. Must be at least 1
+	 */
+	public static void setDefaultWindow(int window) {
+		if (window < 1) {
+			throw new IllegalArgumentException("The window has to be at least 1!");
+		}
+
+		defaultWindow = window;
+	}
+
+	/**
+	 * Submits the given task to the given executor
+	 * 
+	 * @param executor
+	 *            The executor to run the task on
+	 * @param task
+	 *            The task to run
+	 * @return The {@linkplain Future} of the task. Use {@link #await(Future)} in
+	 *         order to get its result
+	 */
+	public static <T> Future<T> submit(ExecutorService executor, Task<T> task) {
+		return executor.submit(() -> {
+			try {
+				return task.run();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	/**
+	 * Waits for the given task to complete and returns its result. If the task
+	 * failed, the exception it threw is re-thrown.
+	 * 
+	 * @param future
+	 *            The task to wait for
+	 * @return The task's result
+	 * @throws IOException
+	 *             If the task threw an {@linkplain IOException} or the current
+	 *             thread got interrupted while waiting
+	 */
+	public static <T> T await(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a task to complete");
+		} catch (UncheckedIOException e) {
+			// some executors run the task on the waiting thread and throw directly
+			throw e.getCause();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) cause).getCause();
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Replaces the given file atomically. The given task writes a temporary
+	 * file in the same directory which is then moved to the target. Thus a
+	 * concurrent reader never sees a partially written file and the previous
+	 * file stays untouched if the task fails.
+	 * 
+	 * @param target
+	 *            The file to replace (or create)
+	 * @param task
+	 *            The task writing the temporary file
+	 * @return The task's result
+	 * @throws IOException
+	 *             If the task fails or the file can't be moved
+	 */
+	public static <T> T replaceAtomically(Path target, FileTask<T> task) throws IOException {
+		Path directory = target.toAbsolutePath().getParent();
+		if (directory != null) {
+			Files.createDirectories(directory);
+		}
+
+		Path temp = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+
+		try {
+			T result = task.run(temp);
+
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			return result;
+		} catch (IOException | RuntimeException | Error e) {
+			Files.deleteIfExists(temp);
+
+			throw e;
+		}
+	}
+}
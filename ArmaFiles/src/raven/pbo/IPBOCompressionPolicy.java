@@ -0,0 +1,36 @@
+package raven.pbo;
+
+/**
+ * An interface describing a policy deciding which files a
+ * {@linkplain PBOWriter} stores as {@link PBOEntry#COMPRESSED} entries
+ * 
+ * @author Raven
+ *
+ */
+public interface IPBOCompressionPolicy {
+
+	/**
+	 * Decides whether compressing the given file should be attempted at all
+	 * 
+	 * @param path
+	 *            The path of the file inside the PBO
+	 * @param size
+	 *            The uncompressed size of the file
+	 * @return Whether the file should be compressed
+	 */
+	public boolean shouldCompress(String path, long size);
+
+	/**
+	 * Decides whether the compressed data of the given file should be used or
+	 * whether the file should rather be stored uncompressed
+	 * 
+	 * @param path
+	 *            The path of the file inside the PBO
+	 * @param originalSize
+	 *            The uncompressed size of the file
+	 * @param compressedSize
+	 *            The size of the compressed data
+	 * @return Whether the compressed data should be used
+	 */
+	public boolean acceptCompressed(String path, int originalSize, int compressedSize);
+}
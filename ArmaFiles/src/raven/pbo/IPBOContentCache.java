@@ -0,0 +1,43 @@
+package raven.pbo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An interface describing a cache for the (decompressed) content of
+ * {@linkplain PBOEntry}s. A {@linkplain PBO} that has been assigned a cache
+ * (see {@link PBO#setContentCache(IPBOContentCache)}) serves the streams of
+ * its entries out of it.
+ * 
+ * @author Raven
+ *
+ */
+public interface IPBOContentCache {
+
+	/**
+	 * Gets the content of the given entry. If it isn't cached yet, it gets read
+	 * (and decompressed) and possibly added to the cache.
+	 * 
+	 * @param entry
+	 *            The entry to get the content of
+	 * @return A read-only buffer containing the entry's content
+	 * @throws IOException
+	 *             If the content has to be read and reading it fails
+	 */
+	public ByteBuffer get(PBOEntry entry) throws IOException;
+
+	/**
+	 * Removes the content of all entries of the given PBO from the cache. This
+	 * gets called when the PBO is closed so that the cache doesn't keep it
+	 * alive.
+	 * 
+	 * @param pbo
+	 *            The PBO whose entries should be removed
+	 */
+	public void invalidate(PBO pbo);
+
+	/**
+	 * Removes all content from the cache
+	 */
+	public void clear();
+}
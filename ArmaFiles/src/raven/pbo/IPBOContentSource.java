@@ -0,0 +1,25 @@
+package raven.pbo;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An interface describing a source for the content of a file that is to be
+ * written into a PBO by a {@linkplain PBOWriter}
+ * 
+ * @author Raven
+ *
+ */
+@FunctionalInterface
+public interface IPBOContentSource {
+
+	/**
+	 * Opens a new {@linkplain InputStream} providing the complete content of the
+	 * respective file. The stream gets closed by the caller.
+	 * 
+	 * @return The opened stream
+	 * @throws IOException
+	 *             If the content can't be accessed
+	 */
+	public InputStream open() throws IOException;
+}
@@ -0,0 +1,259 @@
+package raven.pbo;
+
+import java.util.Arrays;
+
+/**
+ * A compressor producing LZSS-compressed data in the format used for
+ * {@link PBOEntry#COMPRESSED} entries (see {@linkplain LZSSInputStream}).
+ * Matches are searched via hash chains over the last
+ * {@link LZSSInputStream#WINDOW_SIZE} bytes.<br>
+ * An instance keeps its hash tables between calls and can therefore be reused
+ * for compressing multiple files. It must not be used by multiple threads at
+ * the same time though.
+ * 
+ * @author Raven
+ *
+ */
+public class LZSSCompressor {
+
+	/**
+	 * The default amount of hash chain links that are followed when searching
+	 * for a match
+	 */
+	public static final int DEFAULT_MAX_CHAIN_LENGTH = 64;
+	/**
+	 * The amount of bits used for the hash of a byte triplet
+	 */
+	protected static final int HASH_BITS = 13;
+	/**
+	 * The largest distance a back-reference can encode
+	 */
+	protected static final int MAX_DISTANCE = LZSSInputStream.WINDOW_SIZE - 1;
+	/**
+	 * The length of the checksum following the compressed data
+	 */
+	protected static final int CHECKSUM_LENGTH = 4;
+
+	/**
+	 * The most recent position for each hash
+	 */
+	protected int[] head;
+	/**
+	 * The previous position with the same hash for each position in the window
+	 */
+	protected int[] previous;
+	/**
+	 * The amount of hash chain links that are followed when searching for a
+	 * match
+	 */
+	protected int maxChainLength;
+
+
+	/**
+	 * Creates a new compressor following at most
+	 * {@link #DEFAULT_MAX_CHAIN_LENGTH} hash chain links per match search
+	 */
+	public LZSSCompressor() {
+		this(DEFAULT_MAX_CHAIN_LENGTH);
+	}
+
+	/**
+	 * Creates a new compressor
+	 * 
+	 * @param maxChainLength
+	 *            The amount of hash chain links that are followed when searching
+	 *            for a match. Higher values yield a better compression at the
+	 *            cost of speed
+	 */
+	public LZSSCompressor(int maxChainLength) {
+		if (maxChainLength < 1) {
+			throw new IllegalArgumentException("The chain length has to be at least 1!");
+		}
+
+		this.maxChainLength = maxChainLength;
+
+		head = new int[1 << HASH_BITS];
+		previous = new int[LZSSInputStream.WINDOW_SIZE];
+	}
+
+	/**
+	 * Gets the maximum size the compressed data (including the checksum) can
+	 * have for data of the given length
+	 * 
+	 * @param length
+	 *            The length of the uncompressed data
+	 */
+	public static int maxCompressedLength(int length) {
+		return length + (length + 7) / 8 + CHECKSUM_LENGTH;
+	}
+
+	/**
+	 * Compresses the given data
+	 * 
+	 * @param data
+	 *            The data to compress
+	 * @return The compressed data including the trailing checksum
+	 */
+	public byte[] compress(byte[] data) {
+		byte[] out = new byte[maxCompressedLength(data.length)];
+		int length = compress(data, 0, data.length, out, 0, out.length);
+
+		return Arrays.copyOf(out, length);
+	}
+
+	/**
+	 * Compresses the given data into the given array
+	 * 
+	 * @param data
+	 *            The array containing the data to compress
+	 * @param offset
+	 *            The offset of the data in the array
+	 * @param length
+	 *            The length of the data
+	 * @param out
+	 *            The array to write the compressed data (including the trailing
+	 *            checksum) to
+	 * @param outOffset
+	 *            The offset in the output array at which to start writing
+	 * @param maxLength
+	 *            The maximum amount of bytes that may be written. If
+	 *            compressing requires more, it is aborted
+	 * @return The amount of written bytes or -1 if the compressed data would
+	 *         exceed the given maximum length
+	 */
+	public int compress(byte[] data, int offset, int length, byte[] out, int outOffset, int maxLength) {
+		if (offset < 0 || length < 0 || length > data.length - offset) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (outOffset < 0 || maxLength < 0 || maxLength > out.length - outOffset) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		Arrays.fill(head, -1);
+
+		final int end = offset + length;
+		final int outEnd = outOffset + maxLength;
+		int position = offset;
+		int outPosition = outOffset;
+		int checksum = 0;
+
+		while (position < end) {
+			if (outPosition >= outEnd) {
+				return -1;
+			}
+
+			int flagPosition = outPosition++;
+			int flags = 0;
+
+			for (int bit = 0; bit < 8 && position < end; bit++) {
+				int matchLength = 0;
+				int matchDistance = 0;
+
+				if (end - position >= LZSSInputStream.MIN_MATCH_LENGTH) {
+					int maxMatch = Math.min(LZSSInputStream.MAX_MATCH_LENGTH, end - position);
+					int candidate = head[hash(data, position)];
+					int chain = maxChainLength;
+
+					while (candidate >= 0 && position - candidate <= MAX_DISTANCE && chain-- > 0) {
+						if (data[candidate + matchLength] == data[position + matchLength]) {
+							int current = 0;
+							while (current < maxMatch && data[candidate + current] == data[position + current]) {
+								current++;
+							}
+
+							if (current > matchLength) {
+								matchLength = current;
+								matchDistance = position - candidate;
+
+								if (current == maxMatch) {
+									break;
+								}
+							}
+						}
+
+						int next = previous[(candidate - offset) & LZSSInputStream.WINDOW_MASK];
+						if (next >= candidate) {
+							// the link has been overwritten by a newer position
+							break;
+						}
+						candidate = next;
+					}
+				}
+
+				if (matchLength >= LZSSInputStream.MIN_MATCH_LENGTH) {
+					if (outEnd - outPosition < 2) {
+						return -1;
+					}
+
+					out[outPosition++] = (byte) matchDistance;
+					out[outPosition++] = (byte) (((matchDistance >> 4) & 0xf0)
+							| (matchLength - LZSSInputStream.MIN_MATCH_LENGTH));
+
+					for (int i = 0; i < matchLength; i++) {
+						checksum += data[position] & 0xff;
+						insert(data, position++, offset, end);
+					}
+				} else {
+					if (outPosition >= outEnd) {
+						return -1;
+					}
+
+					flags |= 1 << bit;
+					out[outPosition++] = data[position];
+
+					checksum += data[position] & 0xff;
+					insert(data, position++, offset, end);
+				}
+			}
+
+			out[flagPosition] = (byte) flags;
+		}
+
+		if (outEnd - outPosition < CHECKSUM_LENGTH) {
+			return -1;
+		}
+
+		out[outPosition++] = (byte) checksum;
+		out[outPosition++] = (byte) (checksum >>> 8);
+		out[outPosition++] = (byte) (checksum >>> 16);
+		out[outPosition++] = (byte) (checksum >>> 24);
+
+		return outPosition - outOffset;
+	}
+
+	/**
+	 * Inserts the given position into the hash chains
+	 * 
+	 * @param data
+	 *            The data to compress
+	 * @param position
+	 *            The position to insert
+	 * @param offset
+	 *            The offset at which the data starts
+	 * @param end
+	 *            The end of the data
+	 */
+	protected void insert(byte[] data, int position, int offset, int end) {
+		if (end - position < LZSSInputStream.MIN_MATCH_LENGTH) {
+			return;
+		}
+
+		int hash = hash(data, position);
+		previous[(position - offset) & LZSSInputStream.WINDOW_MASK] = head[hash];
+		head[hash] = position;
+	}
+
+	/**
+	 * Computes the hash of the three bytes starting at the given position
+	 * 
+	 * @param data
+	 *            The data
+	 * @param position
+	 *            The position of the first byte
+	 */
+	protected static int hash(byte[] data, int position) {
+		int value = ((data[position] & 0xff) << 16) | ((data[position + 1] & 0xff) << 8) | (data[position + 2] & 0xff);
+
+		return (value * 0x9E3779B1) >>> (32 - HASH_BITS);
+	}
+}
@@ -0,0 +1,341 @@
+package raven.pbo;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import raven.misc.ByteBufferInputStream;
+
+/**
+ * An {@linkplain InputStream} decompressing LZSS-compressed data as it is used
+ * for {@link PBOEntry#COMPRESSED} entries inside a PBO.<br>
+ * The compressed data consists of blocks each starting with a flag-byte whose
+ * bits (starting with the lowest) specify whether the next item is a literal
+ * byte (bit set) or a two-byte back-reference (bit cleared) into the last 4096
+ * decompressed bytes. The compressed data is followed by a four byte checksum
+ * that is the sum of all decompressed bytes. This checksum is verified once
+ * all data has been decompressed.
+ * 
+ * @author Raven
+ *
+ */
+public class LZSSInputStream extends InputStream {
+
+	/**
+	 * The size of the sliding window back-references may point into
+	 */
+	public static final int WINDOW_SIZE = 4096;
+	/**
+	 * The minimum length of a back-reference
+	 */
+	public static final int MIN_MATCH_LENGTH = 3;
+	/**
+	 * The maximum length of a back-reference
+	 */
+	public static final int MAX_MATCH_LENGTH = 18;
+	/**
+	 * The mask used to map an output position into {@link #window}
+	 */
+	protected static final int WINDOW_MASK = WINDOW_SIZE - 1;
+	/**
+	 * The size of the buffer holding the compressed input
+	 */
+	protected static final int INPUT_BUFFER_SIZE = 8192;
+
+	/**
+	 * The stream providing the compressed data
+	 */
+	protected InputStream source;
+	/**
+	 * The size of the data after decompression
+	 */
+	protected long originalSize;
+	/**
+	 * The amount of bytes decompressed so far
+	 */
+	protected long decompressed;
+	/**
+	 * The sliding window containing the last {@link #WINDOW_SIZE} decompressed
+	 * bytes
+	 */
+	protected byte[] window;
+	/**
+	 * The buffer holding the compressed input
+	 */
+	protected byte[] input;
+	/**
+	 * The position of the next unprocessed byte in {@link #input}
+	 */
+	protected int inputPosition;
+	/**
+	 * The amount of valid bytes in {@link #input}
+	 */
+	protected int inputLimit;
+	/**
+	 * The current flag-byte (already shifted by the amount of processed bits)
+	 */
+	protected int flags;
+	/**
+	 * The amount of bits in {@link #flags} that have not been processed yet
+	 */
+	protected int remainingFlags;
+	/**
+	 * The distance of the currently processed back-reference
+	 */
+	protected int matchDistance;
+	/**
+	 * The amount of bytes of the currently processed back-reference that have
+	 * not been written yet
+	 */
+	protected int matchLength;
+	/**
+	 * The checksum of all bytes decompressed so far
+	 */
+	protected int checksum;
+	/**
+	 * Whether the trailing checksum has already been verified
+	 */
+	protected boolean verified;
+	/**
+	 * A buffer used by {@link #read()}
+	 */
+	protected byte[] singleByte;
+
+
+	/**
+	 * Creates a new stream decompressing the data provided by the given stream
+	 * 
+	 * @param source
+	 *            The stream providing the compressed data. This stream has to
+	 *            point directly at the start of the compressed data
+	 * @param originalSize
+	 *            The size of the data after decompression
+	 */
+	public LZSSInputStream(InputStream source, long originalSize) {
+		if (source == null) {
+			throw new IllegalArgumentException("The given source must not be null!");
+		}
+		if (originalSize < 0) {
+			throw new IllegalArgumentException("The original size must not be negative!");
+		}
+
+		this.source = source;
+		this.originalSize = originalSize;
+
+		window = new byte[WINDOW_SIZE];
+		input = new byte[INPUT_BUFFER_SIZE];
+		singleByte = new byte[1];
+	}
+
+	@Override
+	public int read() throws IOException {
+		return read(singleByte, 0, 1) < 0 ? -1 : singleByte[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (len == 0) {
+			return 0;
+		}
+		if (decompressed >= originalSize) {
+			verifyChecksum();
+			return -1;
+		}
+
+		// work on local copies of the state in order to keep the loop tight
+		final byte[] window = this.window;
+		long position = decompressed;
+		int sum = checksum;
+		int produced = 0;
+		len = (int) Math.min(len, originalSize - position);
+
+		while (produced < len) {
+			if (matchLength > 0) {
+				int count = Math.min(matchLength, len - produced);
+				matchLength -= count;
+
+				for (int i = 0; i < count; i++) {
+					long from = position - matchDistance;
+					// references in front of the data's start yield spaces
+					byte value = from < 0 ? (byte) ' ' : window[(int) from & WINDOW_MASK];
+
+					window[(int) position & WINDOW_MASK] = value;
+					b[off + produced++] = value;
+					sum += value & 0xff;
+					position++;
+				}
+
+				continue;
+			}
+
+			if (remainingFlags == 0) {
+				flags = nextInput();
+				remainingFlags = 8;
+			}
+
+			boolean literal = (flags & 1) != 0;
+			flags >>>= 1;
+			remainingFlags--;
+
+			if (literal) {
+				byte value = (byte) nextInput();
+
+				window[(int) position & WINDOW_MASK] = value;
+				b[off + produced++] = value;
+				sum += value & 0xff;
+				position++;
+			} else {
+				int low = nextInput();
+				int high = nextInput();
+
+				matchDistance = low | ((high & 0xf0) << 4);
+				matchLength = (high & 0x0f) + MIN_MATCH_LENGTH;
+
+				if (matchDistance == 0) {
+					throw new IOException("Invalid LZSS back-reference at decompressed offset " + position);
+				}
+				if (position + matchLength > originalSize) {
+					throw new IOException("LZSS back-reference exceeds the original size of " + originalSize
+							+ " bytes at decompressed offset " + position);
+				}
+			}
+		}
+
+		decompressed = position;
+		checksum = sum;
+
+		if (decompressed >= originalSize) {
+			verifyChecksum();
+		}
+
+		return produced;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		if (n <= 0) {
+			return 0;
+		}
+
+		byte[] buffer = new byte[(int) Math.min(n, INPUT_BUFFER_SIZE)];
+		long skipped = 0;
+
+		while (skipped < n) {
+			int count = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+			if (count < 0) {
+				break;
+			}
+
+			skipped += count;
+		}
+
+		return skipped;
+	}
+
+	/**
+	 * Gets the size of the data after decompression
+	 */
+	public long getOriginalSize() {
+		return originalSize;
+	}
+
+	/**
+	 * Decompresses the complete data of the given (compressed) entry and
+	 * verifies its checksum
+	 * 
+	 * @param entry
+	 *            The entry the data belongs to
+	 * @param data
+	 *            The compressed data
+	 * @return The decompressed content
+	 * @throws IOException
+	 *             If the entry is too big to be decompressed into memory or
+	 *             the data is corrupt
+	 */
+	protected static byte[] decompress(PBOEntry entry, ByteBuffer data) throws IOException {
+		if (entry.getOriginalSize() > Integer.MAX_VALUE) {
+			throw new IOException("The compressed file " + entry.getFileName() + " is too big to be decompressed");
+		}
+
+		byte[] content = new byte[(int) entry.getOriginalSize()];
+
+		try (LZSSInputStream in = new LZSSInputStream(new ByteBufferInputStream(data), content.length)) {
+			int position = 0;
+
+			while (position < content.length) {
+				int count = in.read(content, position, content.length - position);
+
+				if (count < 0) {
+					throw new EOFException("Unexpected end of compressed data for " + entry.getFileName());
+				}
+
+				position += count;
+			}
+
+			// reaching the end triggers the verification of the checksum
+			in.read();
+		}
+
+		return content;
+	}
+
+	/**
+	 * Reads the checksum following the compressed data and compares it to the
+	 * one calculated from the decompressed data. This is only done once.
+	 * 
+	 * @throws IOException
+	 *             If the checksums don't match or the checksum can't be read
+	 */
+	protected void verifyChecksum() throws IOException {
+		if (verified) {
+			return;
+		}
+
+		verified = true;
+
+		int expected = nextInput() | (nextInput() << 8) | (nextInput() << 16) | (nextInput() << 24);
+
+		if (expected != checksum) {
+			throw new IOException("LZSS checksum mismatch (expected " + Integer.toUnsignedString(expected)
+					+ " but calculated " + Integer.toUnsignedString(checksum) + ")");
+		}
+	}
+
+	/**
+	 * Gets the next byte of the compressed input
+	 * 
+	 * @return The read byte as an unsigned value
+	 * @throws IOException
+	 *             If the input ends prematurely
+	 */
+	protected int nextInput() throws IOException {
+		if (inputPosition == inputLimit) {
+			int count;
+			do {
+				count = source.read(input, 0, input.length);
+			} while (count == 0);
+
+			if (count < 0) {
+				throw new EOFException("Unexpected end of LZSS-compressed data");
+			}
+
+			inputPosition = 0;
+			inputLimit = count;
+		}
+
+		return input[inputPosition++] & 0xff;
+	}
+
+	/**
+	 * This method closes the source stream
+	 */
+	@Override
+	public void close() throws IOException {
+		source.close();
+	}
+
+}
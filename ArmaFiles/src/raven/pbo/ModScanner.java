@@ -0,0 +1,492 @@
+package raven.pbo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import raven.config.ConfigClass;
+import raven.config.ConfigException;
+import raven.config.RapificationException;
+import raven.misc.ByteReader;
+import raven.misc.TextReader;
+
+/**
+ * A scanner processing all addons of a set of mod folders in parallel. For
+ * every PBO inside the <code>addons</code>-folder of a mod, the PBO gets
+ * opened and its config (<code>config.bin</code>, <code>config.cpp</code> or
+ * <code>config.hpp</code>) gets parsed. Each addon is processed as a separate
+ * task on the configured {@linkplain ExecutorService} (the common
+ * {@linkplain ForkJoinPool} by default) so that a scan scales with the
+ * available cores. Any executor can be used, e.g. a dedicated
+ * {@linkplain ForkJoinPool} created via {@link #newForkJoinExecutor(int)} or
+ * a thread-per-task executor on JVMs providing virtual threads.
+ * 
+ * @author Raven
+ *
+ */
+public class ModScanner {
+
+	/**
+	 * The phases of scanning an addon
+	 * 
+	 * @author Raven
+	 *
+	 */
+	public static enum Phase {
+		/**
+		 * Opening the PBO and reading its header
+		 */
+		OPEN,
+		/**
+		 * Locating, reading and parsing the config
+		 */
+		PARSE
+	}
+
+	/**
+	 * The report of a complete scan
+	 * 
+	 * @author Raven
+	 *
+	 */
+	public static class Report {
+		/**
+		 * The results for all scanned addons in the order they have completed
+		 */
+		protected List<AddonScanResult> results;
+		/**
+		 * The time spent for discovering the addons in nanoseconds
+		 */
+		protected long discoveryTime;
+		/**
+		 * The overall time the scan took in nanoseconds
+		 */
+		protected long totalTime;
+
+
+		protected Report(List<AddonScanResult> results, long discoveryTime, long totalTime) {
+			this.results = Collections.unmodifiableList(results);
+			this.discoveryTime = discoveryTime;
+			this.totalTime = totalTime;
+		}
+
+		/**
+		 * Gets the results for all scanned addons in the order they have
+		 * completed
+		 */
+		public List<AddonScanResult> getResults() {
+			return results;
+		}
+
+		/**
+		 * Gets the time spent for discovering the addons in nanoseconds
+		 */
+		public long getDiscoveryTime() {
+			return discoveryTime;
+		}
+
+		/**
+		 * Gets the overall (wall-clock) time the scan took in nanoseconds
+		 */
+		public long getTotalTime() {
+			return totalTime;
+		}
+
+		/**
+		 * Gets the accumulated time all addons spent in the given phase. As the
+		 * addons are processed in parallel, this may exceed
+		 * {@link #getTotalTime()}.
+		 * 
+		 * @param phase
+		 *            The phase to get the time for
+		 * @return The time in nanoseconds
+		 */
+		public long getTime(Phase phase) {
+			long time = 0;
+
+			for (AddonScanResult current : results) {
+				time += current.getTime(phase);
+			}
+
+			return time;
+		}
+
+		/**
+		 * Gets the amount of addons for which errors occurred
+		 */
+		public int getErrorCount() {
+			int count = 0;
+
+			for (AddonScanResult current : results) {
+				if (current.hasErrors()) {
+					count++;
+				}
+			}
+
+			return count;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder();
+			builder.append(results.size()).append(" addons (").append(getErrorCount()).append(" failed) in ")
+					.append(totalTime / 1000000).append("ms [discover=").append(discoveryTime / 1000000).append("ms");
+
+			for (Phase current : Phase.values()) {
+				builder.append(", ").append(current.name().toLowerCase()).append("=").append(getTime(current) / 1000000)
+						.append("ms");
+			}
+
+			return builder.append("]").toString();
+		}
+	}
+
+	/**
+	 * The names of the config files in the order they are looked up
+	 */
+	protected static final List<String> CONFIG_NAMES = Collections
+			.unmodifiableList(Arrays.asList("config.bin", "config.cpp", "config.hpp"));
+
+	/**
+	 * The executor used for scanning the addons
+	 */
+	protected ExecutorService executor;
+	/**
+	 * The maximum amount of addons that may be pending at the same time
+	 */
+	protected int window;
+	/**
+	 * The index used for opening the PBOs or <code>null</code> if their headers
+	 * are always read from the file
+	 */
+	protected PBOHeaderIndex headerIndex;
+	/**
+	 * The pool managing the channels used for reading the PBOs
+	 */
+	protected PBOChannelPool channelPool;
+	/**
+	 * Whether the PBOs should be memory-mapped
+	 */
+	protected boolean memoryMapped;
+	/**
+	 * Whether the configs should be parsed
+	 */
+	protected boolean parseConfigs;
+	/**
+	 * Whether the entries of the opened PBOs should be {@link PBO#compact()
+	 * compacted}
+	 */
+	protected boolean compact;
+
+
+	/**
+	 * Creates a new scanner using the common {@linkplain ForkJoinPool}
+	 */
+	public ModScanner() {
+		executor = ForkJoinPool.commonPool();
+		window = IOTasks.getDefaultWindow();
+		channelPool = PBOChannelPool.getDefault();
+		parseConfigs = true;
+	}
+
+	/**
+	 * Creates a new {@linkplain ForkJoinPool} that is suitable for scanning.
+	 * The caller is responsible for shutting it down.
+	 * 
+	 * @param parallelism
+	 *            The amount of addons that may be processed at the same time
+	 * @return The created executor
+	 */
+	public static ExecutorService newForkJoinExecutor(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("The parallelism has to be at least 1!");
+		}
+
+		return new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * Sets the executor used for scanning the addons
+	 * 
+	 * @param executor
+	 *            The executor to use
+	 * @return This scanner
+	 */
+	public ModScanner setExecutor(ExecutorService executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("The executor must not be null!");
+		}
+
+		this.executor = executor;
+
+		return this;
+	}
+
+	/**
+	 * Gets the maximum amount of addons that may be pending at the same time
+	 */
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * Sets the maximum amount of addons that may be pending at the same time.
+	 * Addons are only submitted to the executor once a previous one has been
+	 * completed.
+	 * 
+	 * @param window
+	 *            The window size. Must be at least 1
+	 * @return This scanner
+	 */
+	public ModScanner setWindow(int window) {
+		if (window < 1) {
+			throw new IllegalArgumentException("The window has to be at least 1!");
+		}
+
+		this.window = window;
+
+		return this;
+	}
+
+	/**
+	 * Sets the index used for opening the PBOs. The index is updated during the
+	 * scan but not saved.
+	 * 
+	 * @param headerIndex
+	 *            The index to use or <code>null</code> if the headers should
+	 *            always be read from the files
+	 * @return This scanner
+	 */
+	public ModScanner setHeaderIndex(PBOHeaderIndex headerIndex) {
+		this.headerIndex = headerIndex;
+
+		return this;
+	}
+
+	/**
+	 * Sets the pool managing the channels used for reading the PBOs
+	 * 
+	 * @param channelPool
+	 *            The pool to use
+	 * @return This scanner
+	 */
+	public ModScanner setChannelPool(PBOChannelPool channelPool) {
+		if (channelPool == null) {
+			throw new IllegalArgumentException("The channel pool must not be null!");
+		}
+
+		this.channelPool = channelPool;
+
+		return this;
+	}
+
+	/**
+	 * Sets whether the PBOs should be memory-mapped (see
+	 * {@link PBO#PBO(File, boolean)})
+	 * 
+	 * @param memoryMapped
+	 *            Whether to map the PBOs
+	 * @return This scanner
+	 */
+	public ModScanner setMemoryMapped(boolean memoryMapped) {
+		this.memoryMapped = memoryMapped;
+
+		return this;
+	}
+
+	/**
+	 * Sets whether the configs of the addons should be parsed. If not, only the
+	 * PBOs get opened and the config entries located.
+	 * 
+	 * @param parseConfigs
+	 *            Whether to parse the configs
+	 * @return This scanner
+	 */
+	public ModScanner setParseConfigs(boolean parseConfigs) {
+		this.parseConfigs = parseConfigs;
+
+		return this;
+	}
+
+	/**
+	 * Sets whether the entries of the opened PBOs should be
+	 * {@link PBO#compact() compacted}. This reduces the memory needed for
+	 * keeping the results of scanning large mod sets around.
+	 * 
+	 * @param compact
+	 *            Whether to compact the PBOs
+	 * @return This scanner
+	 */
+	public ModScanner setCompact(boolean compact) {
+		this.compact = compact;
+
+		return this;
+	}
+
+	/**
+	 * Scans the given mod folders
+	 * 
+	 * @param modFolders
+	 *            The mod folders to scan
+	 * @return The report of the scan
+	 * @throws IOException
+	 *             If the scan got interrupted
+	 */
+	public Report scan(Collection<File> modFolders) throws IOException {
+		return scan(modFolders, null);
+	}
+
+	/**
+	 * Scans the given mod folders. The given consumer is notified about every
+	 * scanned addon as soon as it is done. It is always called on the thread
+	 * invoking this method.
+	 * 
+	 * @param modFolders
+	 *            The mod folders to scan
+	 * @param consumer
+	 *            The consumer for the results or <code>null</code>
+	 * @return The report of the scan
+	 * @throws IOException
+	 *             If the scan got interrupted
+	 */
+	public Report scan(Collection<File> modFolders, Consumer<? super AddonScanResult> consumer) throws IOException {
+		long start = System.nanoTime();
+
+		List<AddonScanResult> pending = new ArrayList<>();
+		for (File currentFolder : modFolders) {
+			File[] files = new File(currentFolder, "addons").listFiles();
+
+			if (files == null) {
+				continue;
+			}
+
+			for (File currentFile : files) {
+				if (currentFile.isFile() && currentFile.getName().toLowerCase().endsWith(".pbo")) {
+					pending.add(new AddonScanResult(currentFolder, currentFile));
+				}
+			}
+		}
+
+		long discoveryTime = System.nanoTime() - start;
+
+		CompletionService<AddonScanResult> completionService = new ExecutorCompletionService<>(executor);
+		int submitted = 0;
+
+		for (; submitted < pending.size() && submitted < window; submitted++) {
+			AddonScanResult current = pending.get(submitted);
+			completionService.submit(() -> scan(current));
+		}
+
+		List<AddonScanResult> results = new ArrayList<>(pending.size());
+		try {
+			for (int i = 0; i < pending.size(); i++) {
+				AddonScanResult current = completionService.take().get();
+
+				// keep the window filled
+				if (submitted < pending.size()) {
+					AddonScanResult next = pending.get(submitted++);
+					completionService.submit(() -> scan(next));
+				}
+
+				results.add(current);
+
+				if (consumer != null) {
+					consumer.accept(current);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while scanning mod folders");
+		} catch (ExecutionException e) {
+			// scan(AddonScanResult) catches all exceptions itself
+			throw new IllegalStateException(e.getCause());
+		}
+
+		return new Report(results, discoveryTime, System.nanoTime() - start);
+	}
+
+	/**
+	 * Scans a single addon
+	 * 
+	 * @param result
+	 *            The result to populate
+	 * @return The given result
+	 */
+	protected AddonScanResult scan(AddonScanResult result) {
+		long start = System.nanoTime();
+
+		try {
+			result.pbo = headerIndex != null ? headerIndex.open(result.file, memoryMapped, channelPool)
+					: new PBO(result.file, memoryMapped, channelPool);
+		} catch (IOException | RuntimeException e) {
+			result.errors.add(e);
+			return result;
+		} finally {
+			result.phaseTimes[Phase.OPEN.ordinal()] = System.nanoTime() - start;
+		}
+
+		start = System.nanoTime();
+
+		try {
+			for (String current : CONFIG_NAMES) {
+				result.configEntry = result.pbo.getEntry(current);
+
+				if (result.configEntry != null) {
+					break;
+				}
+			}
+
+			if (result.configEntry != null && parseConfigs) {
+				result.config = parseConfig(result.configEntry);
+			}
+
+			if (compact) {
+				result.pbo.compact();
+			}
+		} catch (IOException | RapificationException | ConfigException | RuntimeException e) {
+			result.errors.add(e);
+		} finally {
+			// release the handle right away - it is reopened on demand
+			try {
+				result.pbo.close();
+			} catch (IOException e) {
+				result.errors.add(e);
+			}
+
+			result.phaseTimes[Phase.PARSE.ordinal()] = System.nanoTime() - start;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Parses the given config entry
+	 * 
+	 * @param entry
+	 *            The entry containing the config
+	 * @return The parsed config
+	 * @throws IOException
+	 * @throws RapificationException
+	 * @throws ConfigException
+	 */
+	protected ConfigClass parseConfig(PBOEntry entry) throws IOException, RapificationException, ConfigException {
+		try (PBOInputStream in = entry.toStream()) {
+			if (entry.getFileName().toLowerCase().endsWith(".bin")) {
+				return ConfigClass.fromRapifiedFile(new ByteReader(in));
+			} else {
+				return ConfigClass.fromTextFile(new TextReader(in));
+			}
+		}
+	}
+}
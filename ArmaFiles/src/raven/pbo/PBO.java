@@ -1,40 +1,128 @@
 package raven.pbo;
 
+import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import raven.misc.ByteBufferInputStream;
 import raven.misc.ByteReader;
 
 /**
- * A class representing a PBO-file
+ * A class representing a PBO-file. The content of the entries is read through
+ * a single {@linkplain FileChannel} that is shared by all streams created for
+ * this PBO. The channel is managed by a {@linkplain PBOChannelPool} which
+ * (re)opens it on demand and limits the amount of simultaneously open files.
+ * It can be released explicitly via {@link #close()}.<br>
+ * A PBO can also be read out of memory ({@linkplain ByteBuffer} or
+ * <code>byte[]</code>) or out of an arbitrary {@linkplain SeekableByteChannel}
+ * without being stored as a file first.
  * 
  * @author Raven
  *
  */
-public class PBO {
+public class PBO implements Closeable {
 
 	/**
-	 * The location of this PBO
+	 * The distance between the starts of two consecutive mapped segments of a
+	 * PBO-file that is too big to be mapped as a whole. As every segment is
+	 * mapped with (almost) twice this size, any range of up to this size lies
+	 * completely inside a single segment.
+	 */
+	protected static final long SEGMENT_SIZE = 1L << 30;
+
+	/**
+	 * The location of this PBO or <code>null</code> if it hasn't been read from
+	 * a file
 	 */
 	protected File rootFile;
 	/**
 	 * The list of entries in this PBO
 	 */
-	protected List<PBOEntry> entries;
+	protected volatile List<PBOEntry> entries;
+	/**
+	 * An unmodifiable view on the entries in {@link #entries} that represent
+	 * actual files (no boundary entries)
+	 */
+	protected volatile List<PBOEntry> fileEntries;
+	/**
+	 * The entries in this PBO mapped by their normalized path (see
+	 * {@link PBOPaths#normalize(String)})
+	 */
+	protected volatile Map<String, PBOEntry> pathIndex;
+	/**
+	 * The entries in this PBO grouped by their normalized file name (without
+	 * the directory)
+	 */
+	protected volatile Map<String, List<PBOEntry>> fileNameIndex;
 	/**
 	 * The offset at which the actual content of the PBO starts (After the
 	 * header)
 	 */
-	protected int contentStart;
+	protected long contentStart;
 	/**
 	 * The header extension for this PBO
 	 */
 	protected String[] headerExtension;
+	/**
+	 * The read-only memory-mapped segments of the PBO-file or <code>null</code>
+	 * if this PBO is not memory-mapped. Segment <code>i</code> starts at
+	 * <code>i * {@link #SEGMENT_SIZE}</code>. Files smaller than 2GB are mapped
+	 * as a single segment.
+	 */
+	protected ByteBuffer[] mappedSegments;
+	/**
+	 * The pool managing the channel used for reading the content of this PBO or
+	 * <code>null</code> if it hasn't been read from a file
+	 */
+	protected PBOChannelPool channelPool;
+	/**
+	 * The channel the content of this PBO is read from or <code>null</code> if
+	 * it is read from a file or out of memory
+	 */
+	protected SeekableByteChannel sourceChannel;
+	/**
+	 * The compact representation of the entries or <code>null</code> if this
+	 * PBO hasn't been {@link #compact() compacted}. If set, {@link #entries},
+	 * {@link #pathIndex} and {@link #fileNameIndex} are <code>null</code>. As
+	 * the table is set before these fields are cleared, a reader that finds one
+	 * of them to be <code>null</code> is guaranteed to see the table.
+	 */
+	protected volatile PBOEntryTable entryTable;
+	/**
+	 * The directory tree over the entries or <code>null</code> if it hasn't
+	 * been requested yet
+	 */
+	protected volatile PBOFileTree fileTree;
+	/**
+	 * The Bloom filter over the paths of the entries or <code>null</code> if
+	 * it hasn't been requested yet
+	 */
+	protected volatile PBOPathFilter pathFilter;
+	/**
+	 * The cache the content of the entries is served from or <code>null</code>
+	 * if the content is always read from the PBO
+	 */
+	protected volatile IPBOContentCache contentCache;
+	/**
+	 * The outcome of the verification of this PBO's checksum or
+	 * <code>null</code> if it hasn't been verified yet
+	 */
+	protected volatile PBOVerifier.Status integrity;
 
 	/**
 	 * Creates a new PBO object from the given file
@@ -45,9 +133,141 @@ public class PBO {
 	 * @throws IOException
 	 */
 	public PBO(File file) throws IOException {
+		this(file, false);
+	}
+
+	/**
+	 * Creates a new PBO object from the given file
+	 * 
+	 * @param file
+	 *            The {@linkplain FIle} pointing to the PBO on the hard drive.
+	 *            This has to exist
+	 * @param memoryMapped
+	 *            Whether the PBO-file should be mapped into memory once. If so
+	 *            all entries will be served as slices of that mapping which
+	 *            doesn't require any further file handles
+	 * @throws IOException
+	 */
+	public PBO(File file, boolean memoryMapped) throws IOException {
+		this(file, memoryMapped, PBOChannelPool.getDefault());
+	}
+
+	/**
+	 * Creates a new PBO object from the given file
+	 * 
+	 * @param file
+	 *            The {@linkplain FIle} pointing to the PBO on the hard drive.
+	 *            This has to exist
+	 * @param memoryMapped
+	 *            Whether the PBO-file should be mapped into memory once. If so
+	 *            all entries will be served as slices of that mapping which
+	 *            doesn't require any further file handles
+	 * @param channelPool
+	 *            The {@linkplain PBOChannelPool} that should manage the channel
+	 *            used for reading this PBO
+	 * @throws IOException
+	 */
+	public PBO(File file, boolean memoryMapped, PBOChannelPool channelPool) throws IOException {
+		this(file, memoryMapped, channelPool, null);
+	}
+
+	/**
+	 * Creates a new PBO object from the given file
+	 * 
+	 * @param file
+	 *            The {@linkplain FIle} pointing to the PBO on the hard drive.
+	 *            This has to exist
+	 * @param memoryMapped
+	 *            Whether the PBO-file should be mapped into memory once
+	 * @param channelPool
+	 *            The {@linkplain PBOChannelPool} that should manage the channel
+	 *            used for reading this PBO
+	 * @param header
+	 *            The cached header of this PBO or <code>null</code> if the
+	 *            header should be read from the file
+	 * @throws IOException
+	 */
+	protected PBO(File file, boolean memoryMapped, PBOChannelPool channelPool, PBOHeaderIndex.Record header)
+			throws IOException {
 		validate(file);
+		if (channelPool == null) {
+			throw new IllegalArgumentException("The given channel pool must not be null!");
+		}
+
 		this.rootFile = file;
+		this.channelPool = channelPool;
+		entries = new ArrayList<>();
+
+		try {
+			if (memoryMapped) {
+				map();
+			}
+
+			if (header == null) {
+				readHeader();
+			} else {
+				header.restore(this);
+			}
+		} catch (IOException | RuntimeException e) {
+			// nobody can close a PBO that failed to open
+			try {
+				channelPool.close(getLocation());
+			} catch (IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+
+			throw e;
+		}
+	}
+
+	/**
+	 * Creates a new PBO object from the given content. The entries are served
+	 * as slices of the given buffer.
+	 * 
+	 * @param content
+	 *            The buffer containing the complete PBO-file (between its
+	 *            position and its limit). It must not be modified afterwards
+	 * @throws IOException
+	 */
+	public PBO(ByteBuffer content) throws IOException {
+		if (content == null) {
+			throw new IllegalArgumentException("The given content must not be null!");
+		}
+
+		entries = new ArrayList<>();
+		mappedSegments = new ByteBuffer[] { content.slice().asReadOnlyBuffer() };
+
+		readHeader();
+	}
+
+	/**
+	 * Creates a new PBO object from the given content (see
+	 * {@link #PBO(ByteBuffer)})
+	 * 
+	 * @param content
+	 *            The complete PBO-file. It must not be modified afterwards
+	 * @throws IOException
+	 */
+	public PBO(byte[] content) throws IOException {
+		this(ByteBuffer.wrap(content));
+	}
+
+	/**
+	 * Creates a new PBO object reading its content out of the given channel.
+	 * The channel's position is changed whenever content is read. It is
+	 * closed when this PBO gets {@link #close() closed}.
+	 * 
+	 * @param channel
+	 *            The channel providing the complete PBO-file
+	 * @throws IOException
+	 */
+	public PBO(SeekableByteChannel channel) throws IOException {
+		if (channel == null) {
+			throw new IllegalArgumentException("The given channel must not be null!");
+		}
+
 		entries = new ArrayList<>();
+		sourceChannel = channel;
 
 		readHeader();
 	}
@@ -69,23 +289,22 @@ public class PBO {
 		if (!file.isFile()) {
 			throw new IllegalArgumentException("The given file is not actually a file!");
 		}
-		if (!file.getName().toLowerCase().endsWith(".pbo")) {
-			throw new IllegalArgumentException("The given file does not have the .pbo extentsion!");
-		}
 	}
 
 	/**
-	 * Gets the location of this PBO on the hard drive
+	 * Gets the location of this PBO on the hard drive or <code>null</code> if it
+	 * hasn't been read from a file
 	 */
 	public Path getLocation() {
-		return rootFile.toPath();
+		return rootFile == null ? null : rootFile.toPath();
 	}
 
 	/**
 	 * Gets a {@linkplain File} pointing to the PBO's location on the hard drive
+	 * or <code>null</code> if it hasn't been read from a file
 	 */
 	public File toFile() {
-		return new File(rootFile.toURI());
+		return rootFile == null ? null : new File(rootFile.toURI());
 	}
 
 	/**
@@ -94,9 +313,10 @@ public class PBO {
 	 * @throws IOException
 	 */
 	protected void readHeader() throws IOException {
-		ByteReader reader = new ByteReader(new FileInputStream(rootFile));
+		ByteReader reader = new ByteReader(isMemoryMapped() ? new ByteBufferInputStream(mappedSegments[0])
+				: new PBORangeInputStream(this, 0, size()));
 
-		int relativeStartOffsetOffset = 0;
+		long relativeStartOffsetOffset = 0;
 
 		// first entry -> may be followed by header extension
 		PBOEntry entry = new PBOEntry(reader, relativeStartOffsetOffset, this);
@@ -126,19 +346,352 @@ public class PBO {
 		contentStart = reader.getPosition();
 
 		reader.close();
+
+		buildIndex();
 	}
 
 	/**
-	 * Gets a list of the {@linkplain PBOEntry} representing a file contained in
-	 * this PBO
+	 * Builds {@link #fileEntries}, {@link #pathIndex} and {@link #fileNameIndex}
+	 * out of the read {@link #entries}
 	 */
-	public List<PBOEntry> getEntries() {
-		if (entries.size() == 0) {
-			return new ArrayList<>();
+	protected void buildIndex() {
+		int firstFile = entries.get(0).isBoundary() ? 1 : 0;
+		// the last entry is always the boundary entry terminating the header
+		List<PBOEntry> files = Collections.unmodifiableList(entries.subList(firstFile, entries.size() - 1));
+
+		Map<String, PBOEntry> paths = new HashMap<>((int) (files.size() / 0.75f) + 1);
+		Map<String, List<PBOEntry>> fileNames = new HashMap<>();
+
+		for (PBOEntry current : files) {
+			String path = PBOPaths.normalize(current.getFileName());
+
+			// if a path occurs multiple times the first occurrence wins
+			paths.putIfAbsent(path, current);
+			fileNames.computeIfAbsent(PBOPaths.getBaseName(path), k -> new ArrayList<>(1)).add(current);
+		}
+
+		// only publish the completely built indices
+		fileEntries = files;
+		pathIndex = paths;
+		fileNameIndex = fileNames;
+	}
+
+	/**
+	 * Maps the complete PBO-file into memory and stores the (read-only) mapped
+	 * segments in {@link #mappedSegments}
+	 * 
+	 * @throws IOException
+	 */
+	protected void map() throws IOException {
+		try (FileChannel channel = FileChannel.open(rootFile.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			int count = size <= Integer.MAX_VALUE ? 1 : (int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+
+			ByteBuffer[] segments = new ByteBuffer[count];
+			for (int i = 0; i < count; i++) {
+				long start = i * SEGMENT_SIZE;
+
+				segments[i] = channel.map(MapMode.READ_ONLY, start, Math.min(size - start, Integer.MAX_VALUE))
+						.asReadOnlyBuffer();
+			}
+
+			mappedSegments = segments;
 		}
+	}
+
+	/**
+	 * Reads a sequence of bytes out of this PBO-file starting at the given
+	 * position. This is a positional read on the pooled channel which means that
+	 * it can be used concurrently by multiple threads. A PBO held in memory is
+	 * read out of its buffer.
+	 * 
+	 * @param dst
+	 *            The buffer to read into
+	 * @param position
+	 *            The offset inside the PBO-file at which to start reading
+	 * @return The amount of read bytes or -1 if the given position is greater
+	 *         than or equal to the file's size
+	 * @throws IOException
+	 */
+	protected int read(ByteBuffer dst, long position) throws IOException {
+		if (sourceChannel == null && channelPool == null) {
+			long size = size();
+
+			if (position >= size) {
+				return -1;
+			}
+
+			int length = (int) Math.min(dst.remaining(), Math.min(size - position, SEGMENT_SIZE));
+			dst.put(slice(position, length));
+
+			return length;
+		}
+
+		if (sourceChannel == null) {
+			return channelPool.read(getLocation(), dst, position);
+		}
+
+		if (sourceChannel instanceof FileChannel) {
+			return ((FileChannel) sourceChannel).read(dst, position);
+		}
+
+		synchronized (sourceChannel) {
+			sourceChannel.position(position);
+
+			return sourceChannel.read(dst);
+		}
+	}
+
+	/**
+	 * Gets the size of this PBO-file
+	 * 
+	 * @throws IOException
+	 */
+	protected long size() throws IOException {
+		if (isMemoryMapped()) {
+			ByteBuffer last = mappedSegments[mappedSegments.length - 1];
+
+			return (mappedSegments.length - 1) * SEGMENT_SIZE + last.capacity();
+		}
+
+		return sourceChannel != null ? sourceChannel.size() : channelPool.size(getLocation());
+	}
 
-		// don't return boundary entries
-		return new ArrayList<>(entries.subList(1, entries.size() - 2));
+	/**
+	 * Reads as many bytes as the given buffer has remaining out of this PBO-file
+	 * starting at the given position (see {@link #read(ByteBuffer, long)})
+	 * 
+	 * @param dst
+	 *            The buffer to fill
+	 * @param position
+	 *            The offset inside the PBO-file at which to start reading
+	 * @throws IOException
+	 *             If the file ends before the buffer has been filled
+	 */
+	protected void readFully(ByteBuffer dst, long position) throws IOException {
+		while (dst.hasRemaining()) {
+			int count = read(dst, position);
+
+			if (count < 0) {
+				throw new EOFException("Unexpected end of PBO-file " + this);
+			}
+
+			position += count;
+		}
+	}
+
+	/**
+	 * Transfers the given range of this PBO-file into the given channel. For a
+	 * PBO that is not memory-mapped the data is transferred via
+	 * {@link FileChannel#transferTo(long, long, WritableByteChannel)} and thus
+	 * doesn't have to pass through the JVM heap.
+	 * 
+	 * @param position
+	 *            The offset inside the PBO-file at which to start
+	 * @param count
+	 *            The amount of bytes to transfer
+	 * @param target
+	 *            The channel to transfer the data to
+	 * @throws IOException
+	 *             If the file ends before all bytes have been transferred
+	 */
+	protected void transferFully(long position, long count, WritableByteChannel target) throws IOException {
+		long end = position + count;
+
+		if (isMemoryMapped()) {
+			while (position < end) {
+				int length = (int) Math.min(end - position, SEGMENT_SIZE);
+				ByteBuffer data = slice(position, length);
+
+				while (data.hasRemaining()) {
+					target.write(data);
+				}
+
+				position += length;
+			}
+
+			return;
+		}
+
+		if (sourceChannel != null && !(sourceChannel instanceof FileChannel)) {
+			ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(count, PBORangeInputStream.BUFFER_SIZE));
+
+			while (position < end) {
+				buffer.clear();
+				buffer.limit((int) Math.min(buffer.capacity(), end - position));
+
+				readFully(buffer, position);
+				buffer.flip();
+
+				while (buffer.hasRemaining()) {
+					target.write(buffer);
+				}
+
+				position += buffer.limit();
+			}
+
+			return;
+		}
+
+		while (position < end) {
+			long transferred = sourceChannel != null
+					? ((FileChannel) sourceChannel).transferTo(position, end - position, target)
+					: channelPool.transferTo(getLocation(), position, end - position, target);
+
+			if (transferred <= 0 && position >= size()) {
+				throw new EOFException("Unexpected end of PBO-file " + this);
+			}
+
+			position += transferred;
+		}
+	}
+
+	/**
+	 * Reads the content of the given entries of this PBO at once using a
+	 * default {@linkplain PBOBatchReader}. Entries lying close to each other
+	 * are read via a single read.
+	 * 
+	 * @param entries
+	 *            The entries to read
+	 * @return The (decompressed) content of every given entry ordered by the
+	 *         entries' offsets
+	 * @throws IOException
+	 */
+	public Map<PBOEntry, ByteBuffer> readBatch(Collection<PBOEntry> entries) throws IOException {
+		return new PBOBatchReader().read(this, entries);
+	}
+
+	/**
+	 * Verifies the SHA1 checksum at the end of this PBO-file (see
+	 * {@linkplain PBOVerifier})
+	 * 
+	 * @return The outcome of the verification
+	 * @throws IOException
+	 *             If reading the PBO fails
+	 */
+	public PBOVerifier.Status verify() throws IOException {
+		return PBOVerifier.verify(this);
+	}
+
+	/**
+	 * Gets the outcome of the last verification of this PBO's checksum (either
+	 * via {@link #verify()} or during an extraction with verification enabled)
+	 * or <code>null</code> if it hasn't been verified yet
+	 */
+	public PBOVerifier.Status getIntegrity() {
+		return integrity;
+	}
+
+	/**
+	 * Extracts all files of this PBO into the given directory using a default
+	 * {@linkplain PBOExtractor}
+	 * 
+	 * @param directory
+	 *            The directory to extract to
+	 * @return The outcome of the extraction
+	 * @throws IOException
+	 */
+	public PBOExtractor.Result extract(Path directory) throws IOException {
+		return new PBOExtractor().extract(this, directory);
+	}
+
+	/**
+	 * Closes the channel used for reading the content of this PBO. Streams
+	 * created for this PBO afterwards will transparently reopen it. If this PBO
+	 * is read out of a {@linkplain SeekableByteChannel}, that channel gets
+	 * closed for good. The content of this PBO's entries is removed from its
+	 * content cache (if there is one).
+	 */
+	@Override
+	public void close() throws IOException {
+		IPBOContentCache cache = contentCache;
+		if (cache != null) {
+			// the cache must not keep this PBO alive
+			cache.invalidate(this);
+		}
+
+		if (sourceChannel != null) {
+			sourceChannel.close();
+		} else if (rootFile != null) {
+			channelPool.close(getLocation());
+		}
+	}
+
+	@Override
+	public String toString() {
+		if (rootFile != null) {
+			return rootFile.getPath();
+		}
+
+		return sourceChannel != null ? "<channel-backed PBO>" : "<in-memory PBO>";
+	}
+
+	/**
+	 * Gets the {@linkplain PBOChannelPool} managing the channel used for reading
+	 * this PBO or <code>null</code> if it hasn't been read from a file
+	 */
+	public PBOChannelPool getChannelPool() {
+		return channelPool;
+	}
+
+	/**
+	 * Checks whether the content of this PBO is held in memory (either because
+	 * the file has been memory-mapped or because it has been created from a
+	 * buffer)
+	 */
+	public boolean isMemoryMapped() {
+		return mappedSegments != null;
+	}
+
+	/**
+	 * Gets a read-only slice of the memory-mapped content of this PBO. If the
+	 * requested range doesn't lie inside a single mapped segment (only possible
+	 * for ranges bigger than {@link #SEGMENT_SIZE}), it is mapped separately.
+	 * 
+	 * @param offset
+	 *            The offset inside the PBO-file at which the slice should start
+	 * @param length
+	 *            The length of the slice
+	 * @return The created slice
+	 * @throws IOException
+	 *             If the range has to be mapped separately and mapping fails
+	 *             or if the range lies outside of an in-memory PBO
+	 * @throws IllegalStateException
+	 *             If this PBO is not memory-mapped
+	 */
+	protected ByteBuffer slice(long offset, int length) throws IOException {
+		if (!isMemoryMapped()) {
+			throw new IllegalStateException("This PBO is not memory-mapped!");
+		}
+
+		int index = (int) Math.min(offset / SEGMENT_SIZE, mappedSegments.length - 1);
+		long segmentStart = index * SEGMENT_SIZE;
+		ByteBuffer segment = mappedSegments[index];
+
+		if (offset + length > segmentStart + segment.capacity()) {
+			if (rootFile == null) {
+				// an in-memory PBO consists of a single segment only
+				throw new EOFException("Entry data lies outside of the PBO");
+			}
+
+			try (FileChannel channel = FileChannel.open(rootFile.toPath(), StandardOpenOption.READ)) {
+				return channel.map(MapMode.READ_ONLY, offset, length).asReadOnlyBuffer();
+			}
+		}
+
+		ByteBuffer view = segment.duplicate();
+		view.limit((int) (offset - segmentStart) + length);
+		view.position((int) (offset - segmentStart));
+
+		return view.slice();
+	}
+
+	/**
+	 * Gets an unmodifiable list of the {@linkplain PBOEntry} representing a file
+	 * contained in this PBO
+	 */
+	public List<PBOEntry> getEntries() {
+		return fileEntries;
 	}
 
 	/**
@@ -146,14 +699,50 @@ public class PBO {
 	 * boundary entries)
 	 */
 	public List<PBOEntry> getAllEntries() {
-		return new ArrayList<>(entries);
+		List<PBOEntry> list = entries;
+
+		// the PBO may have been compacted concurrently
+		return new ArrayList<>(list == null ? entryTable.getAllEntries() : list);
+	}
+
+	/**
+	 * Converts the entries of this PBO into a compact {@linkplain PBOEntryTable}
+	 * and drops the {@linkplain PBOEntry} objects. This drastically reduces the
+	 * memory occupied by the header of a PBO with many entries at the cost of
+	 * creating a new {@linkplain PBOEntry} whenever one is requested. Entries
+	 * obtained from a compacted PBO are therefore not identical (<code>==</code>)
+	 * across calls but {@link PBOEntry#equals(Object) equal}.<br>
+	 * The {@link #getFileTree() file tree} is dropped as well as it references
+	 * every entry. If it is requested again, it is rebuilt from the table.
+	 * 
+	 * @return This PBO
+	 */
+	public synchronized PBO compact() {
+		if (!isCompact()) {
+			entryTable = new PBOEntryTable(this, entries);
+			fileEntries = Collections.unmodifiableList(entryTable.getFileEntries());
+
+			entries = null;
+			pathIndex = null;
+			fileNameIndex = null;
+			fileTree = null;
+		}
+
+		return this;
+	}
+
+	/**
+	 * Checks whether this PBO has been {@link #compact() compacted}
+	 */
+	public boolean isCompact() {
+		return entryTable != null;
 	}
 
 	/**
 	 * Gets the offset in this file at which the actual content begins. This is
 	 * the offset all {@linkplain PBOEntry#getStartOffset()} are relative to
 	 */
-	public int getContentOffset() {
+	public long getContentOffset() {
 		return contentStart;
 	}
 
@@ -171,24 +760,35 @@ public class PBO {
 	 * 
 	 * @param name
 	 *            The name to search for (this represents a path relative to the
-	 *            PBO's root)
+	 *            PBO's root). The search is case-insensitive
 	 * @return The respective entry or <code>null</code> if none could be found
 	 */
 	public PBOEntry getEntry(String name) {
-		name = name.toLowerCase();
-		for (PBOEntry current : entries) {
-			if (current.getFileName().toLowerCase().equals(name)) {
-				return current;
-			}
+		Map<String, PBOEntry> index = pathIndex;
+
+		// the PBO may have been compacted concurrently
+		if (index == null) {
+			return entryTable.find(PBOPaths.normalize(name));
 		}
 
-		return null;
+		return index.get(PBOPaths.normalize(name));
 	}
 
 	/**
 	 * Gets the prefix for this PBO or <code>null</code> if there is none
 	 */
 	public String getPrefix() {
+		return getPrefix(headerExtension);
+	}
+
+	/**
+	 * Gets the prefix specified in the given header extension
+	 * 
+	 * @param headerExtension
+	 *            The header extension or <code>null</code>
+	 * @return The prefix or <code>null</code> if there is none
+	 */
+	protected static String getPrefix(String[] headerExtension) {
 		if (headerExtension == null || headerExtension.length < 2) {
 			return null;
 		}
@@ -208,26 +808,109 @@ public class PBO {
 		return null;
 	}
 
+	/**
+	 * Gets the directory tree over the files in this PBO that allows listing
+	 * directories and matching glob patterns without visiting every entry. The
+	 * tree is created when this method is called for the first time.
+	 */
+	public PBOFileTree getFileTree() {
+		PBOFileTree tree = fileTree;
+
+		if (tree == null) {
+			synchronized (this) {
+				tree = fileTree;
+
+				if (tree == null) {
+					fileTree = tree = new PBOFileTree(this);
+				}
+			}
+		}
+
+		return tree;
+	}
+
+	/**
+	 * Sets the cache the streams of this PBO's entries (see
+	 * {@link PBOEntry#toStream()}) are served from. Multiple PBOs may share the
+	 * same cache. The content of this PBO's entries is removed from the
+	 * previous cache right away and from the given one once this PBO gets
+	 * {@link #close() closed}.
+	 * 
+	 * @param contentCache
+	 *            The cache to use or <code>null</code> if the content should
+	 *            always be read from the PBO
+	 */
+	public void setContentCache(IPBOContentCache contentCache) {
+		IPBOContentCache previous = this.contentCache;
+		this.contentCache = contentCache;
+
+		if (previous != null && previous != contentCache) {
+			previous.invalidate(this);
+		}
+	}
+
+	/**
+	 * Gets the cache the streams of this PBO's entries are served from or
+	 * <code>null</code> if there is none
+	 */
+	public IPBOContentCache getContentCache() {
+		return contentCache;
+	}
+
+	/**
+	 * Gets the Bloom filter over the paths of the files in this PBO. The filter
+	 * is created when this method is called for the first time (unless it has
+	 * been restored from a {@linkplain PBOHeaderIndex}).
+	 */
+	public PBOPathFilter getPathFilter() {
+		PBOPathFilter filter = pathFilter;
+
+		if (filter == null) {
+			synchronized (this) {
+				filter = pathFilter;
+
+				if (filter == null) {
+					pathFilter = filter = PBOPathFilter.of(this);
+				}
+			}
+		}
+
+		return filter;
+	}
+
+	/**
+	 * Checks whether this PBO might contain the given path by consulting its
+	 * {@link #getPathFilter() path filter}. This is cheaper than
+	 * {@link #getEntry(String)} but may yield false positives.
+	 * 
+	 * @param path
+	 *            The (case-insensitive) path relative to the PBO's root
+	 * @return <code>false</code> if this PBO definitely doesn't contain the
+	 *         path, <code>true</code> if it probably does
+	 */
+	public boolean mightContain(String path) {
+		return getPathFilter().mightContain(path);
+	}
+
 	/**
 	 * Tries to find all files inside this PBO with the given name regardless in
 	 * what directory they are.
 	 * 
 	 * @param name
-	 *            The name of the files to find
-	 * @return A {@linkplain List} containing the entries for the respective
-	 *         files
+	 *            The name of the files to find. The search is case-insensitive
+	 * @return An unmodifiable {@linkplain List} containing the entries for the
+	 *         respective files
 	 */
 	public List<PBOEntry> getFile(String name) {
-		name = name.toLowerCase();
-
-		List<PBOEntry> matchingEntries = new ArrayList<>();
+		Map<String, List<PBOEntry>> index = fileNameIndex;
 
-		for (PBOEntry current : entries) {
-			if (current.getFileName().toLowerCase().equals(name)) {
-				matchingEntries.add(current);
-			}
+		// the PBO may have been compacted concurrently
+		if (index == null) {
+			return Collections.unmodifiableList(entryTable.findByFileName(PBOPaths.normalize(name)));
 		}
 
-		return matchingEntries;
+		List<PBOEntry> matchingEntries = index.get(PBOPaths.normalize(name));
+
+		return matchingEntries == null ? Collections.emptyList() : Collections.unmodifiableList(matchingEntries);
 	}
 }
@@ -0,0 +1,234 @@
+package raven.pbo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the content of many entries of the same {@linkplain PBO} at once.
+ * Instead of a separate read per entry the entries get sorted by their offset
+ * and neighbouring ranges are merged into a single read as long as the gap
+ * between them is small enough. Reading e.g. all functions of an addon
+ * therefore only takes a few sequential reads instead of hundreds of random
+ * ones.<br>
+ * The content of each entry is handed out as a read-only slice of the buffer
+ * it has been read into. Compressed entries are decompressed (unless disabled
+ * via {@link #setDecompress(boolean)}).
+ * 
+ * @author Raven
+ *
+ */
+public class PBOBatchReader {
+
+	/**
+	 * The default maximum gap between two entries that are read together
+	 */
+	public static final int DEFAULT_MAX_GAP = 64 * 1024;
+	/**
+	 * The default maximum size of a single merged read
+	 */
+	public static final int DEFAULT_MAX_READ_SIZE = 16 * 1024 * 1024;
+
+	/**
+	 * The maximum amount of unrequested bytes between two entries that may be
+	 * read along in order to merge their reads
+	 */
+	protected int maxGap;
+	/**
+	 * The maximum size of a merged read. Entries that are bigger on their own
+	 * are read separately
+	 */
+	protected int maxReadSize;
+	/**
+	 * Whether compressed entries should be decompressed
+	 */
+	protected boolean decompress;
+
+
+	/**
+	 * Creates a new reader using {@link #DEFAULT_MAX_GAP} and
+	 * {@link #DEFAULT_MAX_READ_SIZE}
+	 */
+	public PBOBatchReader() {
+		maxGap = DEFAULT_MAX_GAP;
+		maxReadSize = DEFAULT_MAX_READ_SIZE;
+		decompress = true;
+	}
+
+	/**
+	 * Gets the maximum amount of unrequested bytes between two entries that may
+	 * be read along in order to merge their reads
+	 */
+	public int getMaxGap() {
+		return maxGap;
+	}
+
+	/**
+	 * Sets the maximum amount of unrequested bytes between two entries that may
+	 * be read along in order to merge their reads. A gap of 0 only merges
+	 * entries that are directly adjacent.
+	 * 
+	 * @param maxGap
+	 *            The maximum gap in bytes
+	 * @return This reader
+	 */
+	public PBOBatchReader setMaxGap(int maxGap) {
+		if (maxGap < 0) {
+			throw new IllegalArgumentException("The gap must not be negative!");
+		}
+
+		this.maxGap = maxGap;
+
+		return this;
+	}
+
+	/**
+	 * Gets the maximum size of a merged read
+	 */
+	public int getMaxReadSize() {
+		return maxReadSize;
+	}
+
+	/**
+	 * Sets the maximum size of a merged read. This limits the size of the
+	 * buffers allocated for reading. Entries bigger than this are still read
+	 * (on their own).
+	 * 
+	 * @param maxReadSize
+	 *            The maximum size in bytes
+	 * @return This reader
+	 */
+	public PBOBatchReader setMaxReadSize(int maxReadSize) {
+		if (maxReadSize < 1) {
+			throw new IllegalArgumentException("The read size has to be at least 1!");
+		}
+
+		this.maxReadSize = maxReadSize;
+
+		return this;
+	}
+
+	/**
+	 * Sets whether compressed entries should be decompressed. If not, their
+	 * data is handed out as it is stored inside the PBO (see
+	 * {@link PBOEntry#getData()})
+	 * 
+	 * @param decompress
+	 *            Whether to decompress compressed entries
+	 * @return This reader
+	 */
+	public PBOBatchReader setDecompress(boolean decompress) {
+		this.decompress = decompress;
+
+		return this;
+	}
+
+	/**
+	 * Reads the content of the given entries
+	 * 
+	 * @param pbo
+	 *            The PBO the entries belong to
+	 * @param entries
+	 *            The entries to read
+	 * @return The content of every given entry as a read-only buffer. The map
+	 *         is ordered by the entries' offsets
+	 * @throws IOException
+	 *             If reading fails, an entry is bigger than
+	 *             {@link Integer#MAX_VALUE} bytes or can't be decompressed
+	 * @throws IllegalArgumentException
+	 *             If any of the entries is a boundary entry or doesn't belong
+	 *             to the given PBO
+	 */
+	public Map<PBOEntry, ByteBuffer> read(PBO pbo, Collection<PBOEntry> entries) throws IOException {
+		List<PBOEntry> sorted = new ArrayList<>(entries.size());
+
+		for (PBOEntry current : entries) {
+			if (current.isBoundary()) {
+				throw new IllegalArgumentException("Can't read the data of a boundary entry!");
+			}
+			if (current.getPBO() != pbo) {
+				throw new IllegalArgumentException("The entry " + current + " doesn't belong to " + pbo + "!");
+			}
+			if (current.getDataSize() > Integer.MAX_VALUE) {
+				throw new IOException("The data of " + current + " is too big to be held in a single buffer");
+			}
+
+			sorted.add(current);
+		}
+
+		sorted.sort(Comparator.comparingLong(PBOEntry::getStartOffset));
+
+		Map<PBOEntry, ByteBuffer> contents = new LinkedHashMap<>((int) (sorted.size() / 0.75f) + 1);
+
+		int first = 0;
+		while (first < sorted.size()) {
+			long start = sorted.get(first).getStartOffset();
+			long end = start + sorted.get(first).getDataSize();
+			int last = first;
+
+			// extend the read as long as the next entry is close enough
+			while (last + 1 < sorted.size()) {
+				PBOEntry next = sorted.get(last + 1);
+				long nextEnd = Math.max(end, next.getStartOffset() + next.getDataSize());
+
+				if (next.getStartOffset() - end > maxGap || nextEnd - start > maxReadSize) {
+					break;
+				}
+
+				end = nextEnd;
+				last++;
+			}
+
+			ByteBuffer data = readRange(pbo, start, (int) (end - start));
+
+			for (int i = first; i <= last; i++) {
+				PBOEntry current = sorted.get(i);
+
+				ByteBuffer slice = data.duplicate();
+				slice.position((int) (current.getStartOffset() - start));
+				slice.limit(slice.position() + (int) current.getDataSize());
+				slice = slice.slice();
+
+				if (decompress && current.isCompressed()) {
+					slice = ByteBuffer.wrap(LZSSInputStream.decompress(current, slice));
+				}
+
+				contents.put(current, slice.asReadOnlyBuffer());
+			}
+
+			first = last + 1;
+		}
+
+		return contents;
+	}
+
+	/**
+	 * Reads the given range out of the given PBO
+	 * 
+	 * @param pbo
+	 *            The PBO to read from
+	 * @param start
+	 *            The offset inside the PBO-file to start reading at
+	 * @param length
+	 *            The amount of bytes to read
+	 * @return The read data
+	 * @throws IOException
+	 */
+	protected ByteBuffer readRange(PBO pbo, long start, int length) throws IOException {
+		if (pbo.isMemoryMapped()) {
+			// no need to read anything as all entries are served from the mapping
+			return pbo.slice(start, length);
+		}
+
+		ByteBuffer data = ByteBuffer.allocate(length);
+		pbo.readFully(data, start);
+		data.flip();
+
+		return data;
+	}
+}
@@ -0,0 +1,531 @@
+package raven.pbo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * A pool of read-only {@linkplain FileChannel}s on PBO-files. The pool keeps at
+ * most {@link #getCapacity()} channels open and closes the least recently used
+ * one if another file has to be opened. Channels are (re)opened transparently
+ * whenever they are needed. A channel that is evicted while it is being used
+ * is only closed once the last read on it has finished.<br>
+ * All {@linkplain PBO}s use the pool returned by {@link #getDefault()} unless
+ * specified otherwise.
+ * 
+ * @author Raven
+ *
+ */
+public class PBOChannelPool {
+
+	/**
+	 * The default capacity of a pool
+	 */
+	public static final int DEFAULT_CAPACITY = 128;
+
+	/**
+	 * The process-wide default pool
+	 */
+	private static volatile PBOChannelPool defaultPool = new PBOChannelPool(DEFAULT_CAPACITY);
+
+	/**
+	 * A channel managed by the pool together with the amount of reads currently
+	 * using it
+	 * 
+	 * @author Raven
+	 *
+	 */
+	protected static class Handle {
+		/**
+		 * The location of the opened file
+		 */
+		protected final Path path;
+		/**
+		 * The opened channel
+		 */
+		protected final FileChannel channel;
+		/**
+		 * The amount of reads currently using the channel
+		 */
+		protected int users;
+		/**
+		 * Whether this handle has been removed from the pool. If so the channel
+		 * gets closed as soon as there are no users anymore
+		 */
+		protected boolean evicted;
+
+
+		protected Handle(Path path, FileChannel channel) {
+			this.path = path;
+			this.channel = channel;
+		}
+	}
+
+	/**
+	 * The open handles in access-order (the least recently used one first)
+	 */
+	protected final LinkedHashMap<Path, Handle> handles;
+	/**
+	 * The maximum amount of channels that are kept open
+	 */
+	protected int capacity;
+	/**
+	 * The amount of requests that could be served by an already opened channel
+	 */
+	protected long hits;
+	/**
+	 * The amount of requests that required a channel to be opened
+	 */
+	protected long misses;
+	/**
+	 * The amount of channels that have been closed in order to stay within the
+	 * capacity
+	 */
+	protected long evictions;
+
+
+	/**
+	 * Creates a new pool
+	 * 
+	 * @param capacity
+	 *            The maximum amount of channels to keep open. Must be at least 1
+	 */
+	public PBOChannelPool(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity has to be at least 1!");
+		}
+
+		this.capacity = capacity;
+		this.handles = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * Gets the process-wide default pool
+	 */
+	public static PBOChannelPool getDefault() {
+		return defaultPool;
+	}
+
+	/**
+	 * Sets the process-wide default pool. This only affects {@linkplain PBO}s
+	 * created afterwards.
+	 * 
+	 * @param pool
+	 *            The new default pool
+	 */
+	public static void setDefault(PBOChannelPool pool) {
+		if (pool == null) {
+			throw new IllegalArgumentException("The default pool must not be null!");
+		}
+
+		defaultPool = pool;
+	}
+
+	/**
+	 * Reads a sequence of bytes out of the given file starting at the given
+	 * position using a pooled channel
+	 * 
+	 * @param path
+	 *            The file to read from
+	 * @param dst
+	 *            The buffer to read into
+	 * @param position
+	 *            The offset inside the file at which to start reading
+	 * @return The amount of read bytes or -1 if the given position is greater
+	 *         than or equal to the file's size
+	 * @throws IOException
+	 */
+	public int read(Path path, ByteBuffer dst, long position) throws IOException {
+		Handle handle = acquire(path);
+
+		try {
+			return handle.channel.read(dst, position);
+		} catch (ClosedByInterruptException e) {
+			throw e;
+		} catch (ClosedChannelException e) {
+			// the channel has been closed because another thread using it has been
+			// interrupted -> drop it and try again with a new one
+			invalidate(handle);
+		} finally {
+			release(handle);
+		}
+
+		handle = acquire(path);
+
+		try {
+			return handle.channel.read(dst, position);
+		} finally {
+			release(handle);
+		}
+	}
+
+	/**
+	 * Transfers a sequence of bytes out of the given file directly into the
+	 * given channel using a pooled channel (see
+	 * {@link FileChannel#transferTo(long, long, WritableByteChannel)}). This
+	 * allows the operating system to copy the data without passing it through
+	 * the JVM heap.
+	 * 
+	 * @param path
+	 *            The file to transfer from
+	 * @param position
+	 *            The offset inside the file at which to start the transfer
+	 * @param count
+	 *            The maximum amount of bytes to transfer
+	 * @param target
+	 *            The channel to transfer to
+	 * @return The amount of transferred bytes (possibly zero)
+	 * @throws IOException
+	 */
+	public long transferTo(Path path, long position, long count, WritableByteChannel target) throws IOException {
+		// a seekable target can be rewound if the transfer has to be retried
+		long targetPosition = target instanceof SeekableByteChannel ? ((SeekableByteChannel) target).position() : -1;
+		Handle handle = acquire(path);
+
+		try {
+			return handle.channel.transferTo(position, count, target);
+		} catch (ClosedByInterruptException e) {
+			throw e;
+		} catch (ClosedChannelException e) {
+			if (targetPosition < 0 || !target.isOpen()) {
+				invalidate(handle);
+				throw e;
+			}
+
+			// the channel has been closed because another thread using it has been
+			// interrupted -> drop it and try again with a new one
+			invalidate(handle);
+		} finally {
+			release(handle);
+		}
+
+		((SeekableByteChannel) target).position(targetPosition);
+
+		handle = acquire(path);
+
+		try {
+			return handle.channel.transferTo(position, count, target);
+		} finally {
+			release(handle);
+		}
+	}
+
+	/**
+	 * Gets the size of the given file using a pooled channel
+	 * 
+	 * @param path
+	 *            The file to get the size of
+	 * @throws IOException
+	 */
+	public long size(Path path) throws IOException {
+		Handle handle = acquire(path);
+
+		try {
+			return handle.channel.size();
+		} finally {
+			release(handle);
+		}
+	}
+
+	/**
+	 * Gets the handle for the given file and marks it as being used. If there is
+	 * no open channel for the file yet, it is being opened. Every call to this
+	 * method has to be followed by a call to {@link #release(Handle)}.
+	 * 
+	 * @param path
+	 *            The file to get the handle for
+	 * @return The respective handle
+	 * @throws IOException
+	 *             If the file can't be opened
+	 */
+	protected Handle acquire(Path path) throws IOException {
+		path = path.toAbsolutePath().normalize();
+
+		Handle handle;
+
+		synchronized (this) {
+			handle = handles.get(path);
+
+			if (handle != null && handle.channel.isOpen()) {
+				hits++;
+				handle.users++;
+
+				return handle;
+			}
+
+			misses++;
+		}
+
+		// opening a file may be slow (e.g. on network drives) and must not block
+		// other threads using the pool
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		List<FileChannel> toClose;
+
+		synchronized (this) {
+			handle = handles.get(path);
+
+			if (handle != null && handle.channel.isOpen()) {
+				// another thread has opened the file in the meantime
+				toClose = new ArrayList<>(1);
+				toClose.add(channel);
+			} else {
+				if (handle != null) {
+					invalidate(handle);
+				}
+
+				handle = new Handle(path, channel);
+				handles.put(path, handle);
+
+				toClose = evict(capacity);
+			}
+
+			handle.users++;
+		}
+
+		try {
+			closeAll(toClose);
+		} catch (IOException e) {
+			// failing to close an unused read-only channel doesn't affect the caller
+		}
+
+		return handle;
+	}
+
+	/**
+	 * Marks the given handle as no longer being used by the caller. If the
+	 * handle has been evicted in the meantime and this was its last user, the
+	 * channel gets closed.
+	 * 
+	 * @param handle
+	 *            The handle to release
+	 * @throws IOException
+	 */
+	protected void release(Handle handle) throws IOException {
+		boolean close;
+
+		synchronized (this) {
+			handle.users--;
+			close = handle.evicted && handle.users == 0;
+		}
+
+		if (close) {
+			handle.channel.close();
+		}
+	}
+
+	/**
+	 * Removes the given handle from the pool without counting it as an eviction
+	 * 
+	 * @param handle
+	 *            The handle to remove
+	 */
+	protected synchronized void invalidate(Handle handle) {
+		if (handles.get(handle.path) == handle) {
+			handles.remove(handle.path);
+		}
+
+		handle.evicted = true;
+	}
+
+	/**
+	 * Evicts the least recently used handles until there are at most the given
+	 * amount of handles left in the pool
+	 * 
+	 * @param maxSize
+	 *            The maximum amount of handles to keep
+	 * @return The channels of the evicted handles that are not in use and have
+	 *         to be closed by the caller (outside of the lock)
+	 */
+	protected synchronized List<FileChannel> evict(int maxSize) {
+		List<FileChannel> toClose = new ArrayList<>();
+		Iterator<Handle> it = handles.values().iterator();
+
+		while (handles.size() > maxSize && it.hasNext()) {
+			Handle eldest = it.next();
+			it.remove();
+
+			eldest.evicted = true;
+			evictions++;
+
+			if (eldest.users == 0) {
+				toClose.add(eldest.channel);
+			}
+		}
+
+		return toClose;
+	}
+
+	/**
+	 * Closes the channel for the given file (if there is one). Reads that are
+	 * currently using it will finish first. Subsequent reads will reopen the
+	 * file.
+	 * 
+	 * @param path
+	 *            The file whose channel should be closed
+	 * @throws IOException
+	 */
+	public void close(Path path) throws IOException {
+		Handle handle;
+
+		synchronized (this) {
+			handle = handles.remove(path.toAbsolutePath().normalize());
+
+			if (handle == null) {
+				return;
+			}
+
+			handle.evicted = true;
+
+			if (handle.users > 0) {
+				return;
+			}
+		}
+
+		handle.channel.close();
+	}
+
+	/**
+	 * Closes all channels in this pool
+	 * 
+	 * @throws IOException
+	 */
+	public void closeAll() throws IOException {
+		List<FileChannel> toClose = new ArrayList<>();
+
+		synchronized (this) {
+			for (Handle current : handles.values()) {
+				current.evicted = true;
+
+				if (current.users == 0) {
+					toClose.add(current.channel);
+				}
+			}
+
+			handles.clear();
+		}
+
+		closeAll(toClose);
+	}
+
+	/**
+	 * Closes all given channels. If closing one of them fails, the others are
+	 * still being closed and the first exception is thrown afterwards.
+	 * 
+	 * @param channels
+	 *            The channels to close
+	 * @throws IOException
+	 */
+	protected void closeAll(List<FileChannel> channels) throws IOException {
+		IOException exception = null;
+
+		for (FileChannel current : channels) {
+			try {
+				current.close();
+			} catch (IOException e) {
+				if (exception == null) {
+					exception = e;
+				} else {
+					exception.addSuppressed(e);
+				}
+			}
+		}
+
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+	/**
+	 * Gets the maximum amount of channels that are kept open
+	 */
+	public synchronized int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Sets the maximum amount of channels that are kept open. If there are more
+	 * channels open than the new capacity allows, the least recently used ones
+	 * are closed.
+	 * 
+	 * @param capacity
+	 *            The new capacity. Must be at least 1
+	 * @throws IOException
+	 */
+	public void setCapacity(int capacity) throws IOException {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity has to be at least 1!");
+		}
+
+		List<FileChannel> evicted;
+
+		synchronized (this) {
+			this.capacity = capacity;
+			evicted = evict(capacity);
+		}
+
+		closeAll(evicted);
+	}
+
+	/**
+	 * Gets the amount of channels that are currently kept open by this pool
+	 */
+	public synchronized int getOpenCount() {
+		return handles.size();
+	}
+
+	/**
+	 * Gets the amount of requests that could be served by an already opened
+	 * channel
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Gets the amount of requests that required a channel to be opened
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Gets the amount of channels that have been closed in order to stay within
+	 * the capacity
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Resets the hit-, miss- and eviction-counters
+	 */
+	public synchronized void resetStatistics() {
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "PBOChannelPool[open: " + handles.size() + "/" + capacity + ", hits: " + hits + ", misses: " + misses
+				+ ", evictions: " + evictions + "]";
+	}
+
+	/**
+	 * Gets a snapshot of the files that currently have an open channel in this
+	 * pool, the least recently used one first
+	 */
+	public synchronized List<Path> getOpenFiles() {
+		return new ArrayList<>(handles.keySet());
+	}
+}
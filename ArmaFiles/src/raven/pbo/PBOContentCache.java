@@ -0,0 +1,474 @@
+package raven.pbo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size-weighted LRU cache for the (decompressed) content of
+ * {@linkplain PBOEntry}s. The content is identified by its PBO and the offset
+ * of its entry and weighted by its size. Whenever the cached content exceeds
+ * the memory budget, the least recently used content is evicted.<br>
+ * In order to allow many threads to use the cache concurrently, it is split
+ * into a fixed amount of segments that each guard their part of the content
+ * with their own lock. The memory budget is shared by all segments: content is
+ * evicted from the segment it is added to first and only if that isn't enough
+ * from the other segments. Content that is missing is read without holding any
+ * lock, so concurrent misses for the same entry may read it multiple times.<br>
+ * If the cache has been given a {@linkplain PBOContentIndex} (see
+ * {@link #setContentIndex(PBOContentIndex)}), the content of entries whose
+ * hash is known to the index is stored by that hash. Thus identical content of
+ * different entries (even across PBOs) is only held once.
+ * 
+ * @author Raven
+ *
+ */
+public class PBOContentCache implements IPBOContentCache {
+
+	/**
+	 * The default amount of segments
+	 */
+	public static final int DEFAULT_SEGMENT_COUNT = 16;
+
+	/**
+	 * The key identifying the content of an entry by its location
+	 * 
+	 * @author Raven
+	 *
+	 */
+	protected static final class Key {
+		/**
+		 * The PBO the entry belongs to
+		 */
+		protected final PBO pbo;
+		/**
+		 * The offset at which the entry's data starts inside the PBO-file
+		 */
+		protected final long offset;
+
+
+		protected Key(PBO pbo, long offset) {
+			this.pbo = pbo;
+			this.offset = offset;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(pbo) + Long.hashCode(offset);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+
+			Key other = (Key) obj;
+
+			return pbo == other.pbo && offset == other.offset;
+		}
+	}
+
+	/**
+	 * A part of the cache guarded by its own lock
+	 * 
+	 * @author Raven
+	 *
+	 */
+	protected static class Segment {
+		/**
+		 * The cached content in access order
+		 */
+		protected final LinkedHashMap<Object, ByteBuffer> contents;
+
+
+		protected Segment() {
+			this.contents = new LinkedHashMap<>(16, 0.75f, true);
+		}
+	}
+
+	/**
+	 * The segments of this cache
+	 */
+	protected final Segment[] segments;
+	/**
+	 * The amount of bytes this cache may hold
+	 */
+	protected final long maxWeight;
+	/**
+	 * The amount of bytes this cache currently holds (across all segments)
+	 */
+	protected final AtomicLong weight;
+	/**
+	 * The segment the next eviction across segments starts at
+	 */
+	protected final AtomicLong evictionCursor;
+	/**
+	 * The amount of requests that could be served from the cache
+	 */
+	protected AtomicLong hits;
+	/**
+	 * The amount of requests whose content had to be read
+	 */
+	protected AtomicLong misses;
+	/**
+	 * The amount of content that has been evicted in order to stay within the
+	 * memory budget
+	 */
+	protected AtomicLong evictions;
+	/**
+	 * The index providing the content hashes of entries or <code>null</code>
+	 * if the content is always stored by its location
+	 */
+	protected volatile PBOContentIndex contentIndex;
+
+
+	/**
+	 * Creates a new cache using {@link #DEFAULT_SEGMENT_COUNT} segments
+	 * 
+	 * @param maxWeight
+	 *            The amount of bytes the cache may hold
+	 */
+	public PBOContentCache(long maxWeight) {
+		this(maxWeight, DEFAULT_SEGMENT_COUNT);
+	}
+
+	/**
+	 * Creates a new cache
+	 * 
+	 * @param maxWeight
+	 *            The amount of bytes the cache may hold
+	 * @param segmentCount
+	 *            The amount of segments the cache is split into. This limits
+	 *            the amount of threads that can access the cache at the same
+	 *            time. The memory budget is shared by all segments, so any
+	 *            content that fits into <code>maxWeight</code> is cached
+	 */
+	public PBOContentCache(long maxWeight, int segmentCount) {
+		if (maxWeight < 0) {
+			throw new IllegalArgumentException("The maximum weight must not be negative!");
+		}
+		if (segmentCount < 1) {
+			throw new IllegalArgumentException("There has to be at least one segment!");
+		}
+
+		this.maxWeight = maxWeight;
+		this.segments = new Segment[segmentCount];
+
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment();
+		}
+
+		weight = new AtomicLong();
+		evictionCursor = new AtomicLong();
+		hits = new AtomicLong();
+		misses = new AtomicLong();
+		evictions = new AtomicLong();
+	}
+
+	/**
+	 * Sets the index providing the content hashes of entries. Content of
+	 * entries that are contained in the index is stored by its hash instead of
+	 * its location.
+	 * 
+	 * @param contentIndex
+	 *            The index to use or <code>null</code> if the content should
+	 *            always be stored by its location
+	 * @return This cache
+	 */
+	public PBOContentCache setContentIndex(PBOContentIndex contentIndex) {
+		this.contentIndex = contentIndex;
+
+		return this;
+	}
+
+	/**
+	 * Gets the index providing the content hashes of entries or
+	 * <code>null</code> if there is none
+	 */
+	public PBOContentIndex getContentIndex() {
+		return contentIndex;
+	}
+
+	@Override
+	public ByteBuffer get(PBOEntry entry) throws IOException {
+		if (entry.getDataSize() == 0) {
+			// empty entries may share their offset with the following entry
+			return ByteBuffer.allocate(0).asReadOnlyBuffer();
+		}
+
+		Object key = getKey(entry, contentIndex);
+		Segment segment = getSegment(key);
+
+		ByteBuffer content;
+		synchronized (segment) {
+			content = segment.contents.get(key);
+		}
+
+		if (content != null) {
+			hits.incrementAndGet();
+
+			return content.duplicate();
+		}
+
+		misses.incrementAndGet();
+
+		content = load(entry);
+
+		put(segment, key, content);
+
+		return content.duplicate();
+	}
+
+	/**
+	 * Gets the content of the given entry if it is cached
+	 * 
+	 * @param entry
+	 *            The entry to get the content of
+	 * @return A read-only buffer containing the entry's content or
+	 *         <code>null</code> if it isn't cached
+	 */
+	public ByteBuffer getIfPresent(PBOEntry entry) {
+		if (entry.getDataSize() == 0) {
+			// empty entries may share their offset with the following entry
+			return ByteBuffer.allocate(0).asReadOnlyBuffer();
+		}
+
+		Object key = getKey(entry, contentIndex);
+		Segment segment = getSegment(key);
+
+		synchronized (segment) {
+			ByteBuffer content = segment.contents.get(key);
+
+			return content == null ? null : content.duplicate();
+		}
+	}
+
+	/**
+	 * Reads the content of the given entry
+	 * 
+	 * @param entry
+	 *            The entry to read
+	 * @return A read-only buffer containing the content
+	 * @throws IOException
+	 */
+	protected ByteBuffer load(PBOEntry entry) throws IOException {
+		try (PBOInputStream in = new PBOInputStream(entry, false)) {
+			return ByteBuffer.wrap(in.readAllBytes()).asReadOnlyBuffer();
+		}
+	}
+
+	/**
+	 * Adds the given content to the given segment and evicts the least recently
+	 * used content if the cache exceeds its budget afterwards. The content of
+	 * the given segment is evicted first. If that isn't enough (because the
+	 * added content is bigger than the segment's contents), the other segments
+	 * are evicted from as well (see {@link #evictOthers(Segment)}).
+	 * 
+	 * @param segment
+	 *            The segment to add to
+	 * @param key
+	 *            The key of the content
+	 * @param content
+	 *            The content
+	 */
+	protected void put(Segment segment, Object key, ByteBuffer content) {
+		long contentWeight = content.capacity();
+
+		if (contentWeight > maxWeight) {
+			return;
+		}
+
+		synchronized (segment) {
+			ByteBuffer previous = segment.contents.put(key, content);
+
+			weight.addAndGet(previous == null ? contentWeight : contentWeight - previous.capacity());
+
+			Iterator<Map.Entry<Object, ByteBuffer>> it = segment.contents.entrySet().iterator();
+			while (weight.get() > maxWeight) {
+				Map.Entry<Object, ByteBuffer> eldest = it.next();
+
+				if (eldest.getKey().equals(key)) {
+					// only the added content is left (it is the most recently used one)
+					break;
+				}
+
+				weight.addAndGet(-eldest.getValue().capacity());
+				it.remove();
+
+				evictions.incrementAndGet();
+			}
+		}
+
+		if (weight.get() > maxWeight) {
+			evictOthers(segment);
+		}
+	}
+
+	/**
+	 * Evicts the least recently used content of all segments but the given one
+	 * until the cache is within its budget again. The segments are locked one
+	 * after the other (never two at once) and the segment to start at rotates
+	 * so that the evictions are spread across all segments.
+	 * 
+	 * @param exclude
+	 *            The segment that must not be evicted from (as its content has
+	 *            been evicted already)
+	 */
+	protected void evictOthers(Segment exclude) {
+		int start = (int) (evictionCursor.getAndIncrement() % segments.length);
+
+		for (int i = 0; i < segments.length && weight.get() > maxWeight; i++) {
+			Segment current = segments[(start + i) % segments.length];
+
+			if (current == exclude) {
+				continue;
+			}
+
+			synchronized (current) {
+				Iterator<ByteBuffer> it = current.contents.values().iterator();
+
+				while (weight.get() > maxWeight && it.hasNext()) {
+					weight.addAndGet(-it.next().capacity());
+					it.remove();
+
+					evictions.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the key the content of the given entry is stored by. That is the
+	 * entry's content hash if the given index knows it or its {@linkplain Key}
+	 * otherwise.
+	 * 
+	 * @param entry
+	 *            The entry
+	 * @param contentIndex
+	 *            The index providing the content hashes or <code>null</code>
+	 */
+	protected static Object getKey(PBOEntry entry, PBOContentIndex contentIndex) {
+		if (contentIndex != null) {
+			PBOContentHash hash = contentIndex.getKnownHash(entry);
+
+			if (hash != null) {
+				return hash;
+			}
+		}
+
+		return new Key(entry.getPBO(), entry.getStartOffset());
+	}
+
+	/**
+	 * Gets the segment responsible for the given key
+	 * 
+	 * @param key
+	 *            The key
+	 */
+	protected Segment getSegment(Object key) {
+		int hash = key.hashCode();
+
+		return segments[((hash ^ (hash >>> 16)) & 0x7FFFFFFF) % segments.length];
+	}
+
+	@Override
+	public void invalidate(PBO pbo) {
+		for (Segment current : segments) {
+			synchronized (current) {
+				for (Iterator<Map.Entry<Object, ByteBuffer>> it = current.contents.entrySet().iterator(); it
+						.hasNext();) {
+					Map.Entry<Object, ByteBuffer> entry = it.next();
+
+					// content stored by its hash doesn't belong to a particular PBO
+					if (entry.getKey() instanceof Key && ((Key) entry.getKey()).pbo == pbo) {
+						weight.addAndGet(-entry.getValue().capacity());
+						it.remove();
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public void clear() {
+		for (Segment current : segments) {
+			synchronized (current) {
+				for (ByteBuffer content : current.contents.values()) {
+					weight.addAndGet(-content.capacity());
+				}
+				current.contents.clear();
+			}
+		}
+	}
+
+	/**
+	 * Gets the amount of bytes this cache may hold
+	 */
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	/**
+	 * Gets the amount of bytes this cache currently holds
+	 */
+	public long getWeight() {
+		return weight.get();
+	}
+
+	/**
+	 * Gets the amount of entries whose content is currently cached
+	 */
+	public int size() {
+		int size = 0;
+
+		for (Segment current : segments) {
+			synchronized (current) {
+				size += current.contents.size();
+			}
+		}
+
+		return size;
+	}
+
+	/**
+	 * Gets the amount of requests that could be served from the cache
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the amount of requests whose content had to be read
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Gets the amount of content that has been evicted in order to stay within
+	 * the memory budget
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * Gets the ratio of requests that could be served from the cache
+	 */
+	public double getHitRate() {
+		long hitCount = hits.get();
+		long requests = hitCount + misses.get();
+
+		return requests == 0 ? 0 : (double) hitCount / requests;
+	}
+
+	@Override
+	public String toString() {
+		return "PBOContentCache [" + getWeight() + "/" + maxWeight + " bytes, hits=" + hits.get() + ", misses="
+				+ misses.get() + ", evictions=" + evictions.get() + "]";
+	}
+}
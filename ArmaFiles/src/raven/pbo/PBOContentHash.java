@@ -0,0 +1,142 @@
+package raven.pbo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * The SHA1 hash of the (decompressed) content of a {@linkplain PBOEntry}. Two
+ * entries with the same hash have the same content regardless of the PBO
+ * they are stored in and whether they are compressed or not.
+ * 
+ * @author Raven
+ *
+ */
+public final class PBOContentHash {
+
+	/**
+	 * The length of a hash in bytes
+	 */
+	public static final int LENGTH = 20;
+	/**
+	 * The size of the buffer used for reading compressed entries
+	 */
+	protected static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The bytes of the hash
+	 */
+	protected final byte[] bytes;
+	/**
+	 * The hash code of this object (derived from the hash's first bytes)
+	 */
+	protected final int hashCode;
+
+
+	/**
+	 * Creates a new hash out of the given bytes
+	 * 
+	 * @param bytes
+	 *            The bytes of the hash. The array is copied
+	 */
+	public PBOContentHash(byte[] bytes) {
+		if (bytes.length != LENGTH) {
+			throw new IllegalArgumentException("A content hash has to consist of " + LENGTH + " bytes!");
+		}
+
+		this.bytes = bytes.clone();
+		this.hashCode = ByteBuffer.wrap(this.bytes).getInt();
+	}
+
+	/**
+	 * Calculates the hash of the content of the given entry
+	 * 
+	 * @param entry
+	 *            The entry to hash
+	 * @return The calculated hash
+	 * @throws IOException
+	 *             If reading or decompressing the entry fails
+	 */
+	public static PBOContentHash of(PBOEntry entry) throws IOException {
+		MessageDigest digest = PBOVerifier.newDigest();
+
+		if (!entry.isCompressed() && entry.getPBO().isMemoryMapped() && entry.getDataSize() <= Integer.MAX_VALUE) {
+			digest.update(entry.getData());
+		} else {
+			byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(1, entry.getOriginalSize()))];
+
+			// bypass the PBO's content cache as hashing many entries would flood it
+			try (PBOInputStream in = new PBOInputStream(entry, false)) {
+				int count;
+				while ((count = in.read(buffer)) >= 0) {
+					digest.update(buffer, 0, count);
+				}
+			}
+		}
+
+		return new PBOContentHash(digest.digest());
+	}
+
+	/**
+	 * Calculates the hash of the content of the given file. It equals the hash
+	 * of an entry with the same content.
+	 * 
+	 * @param file
+	 *            The file to hash
+	 * @return The calculated hash
+	 * @throws IOException
+	 *             If reading the file fails
+	 */
+	public static PBOContentHash of(Path file) throws IOException {
+		MessageDigest digest = PBOVerifier.newDigest();
+		byte[] buffer = new byte[BUFFER_SIZE];
+
+		try (InputStream in = Files.newInputStream(file)) {
+			int count;
+			while ((count = in.read(buffer)) >= 0) {
+				digest.update(buffer, 0, count);
+			}
+		}
+
+		return new PBOContentHash(digest.digest());
+	}
+
+	/**
+	 * Gets a copy of the bytes of this hash
+	 */
+	public byte[] getBytes() {
+		return bytes.clone();
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof PBOContentHash)) {
+			return false;
+		}
+
+		return Arrays.equals(bytes, ((PBOContentHash) obj).bytes);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder(2 * LENGTH);
+
+		for (byte current : bytes) {
+			builder.append(Character.forDigit((current >> 4) & 0xF, 16)).append(Character.forDigit(current & 0xF, 16));
+		}
+
+		return builder.toString();
+	}
+}
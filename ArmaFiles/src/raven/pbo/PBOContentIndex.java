@@ -0,0 +1,513 @@
+package raven.pbo;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * An index of the content hashes (see {@linkplain PBOContentHash}) of the
+ * entries of a set of {@linkplain PBO}s. It groups entries with the same
+ * content so that duplicates across (and inside) PBOs can be detected and
+ * content caches only have to hold such content once (see
+ * {@link PBOContentCache#setContentIndex(PBOContentIndex)}).<br>
+ * Calculating the hashes requires reading every entry. Therefore the hashes
+ * are calculated in parallel and cached by the path and modification time of
+ * their PBO and the offset of their entry. If the index has a location, this
+ * cache is persisted via {@link #save()} so that unchanged PBOs don't have to
+ * be read again.<br>
+ * An index may be used by multiple threads at the same time.
+ * 
+ * @author Raven
+ *
+ */
+public class PBOContentIndex extends PBOFileIndex<PBOContentIndex.Record> {
+
+	/**
+	 * The magic number at the start of an index file
+	 */
+	protected static final int MAGIC = 0x50424349;
+	/**
+	 * The version of the index file format. Version 1 may contain the hashes of
+	 * empty entries under the offset of the entry following them
+	 */
+	protected static final int VERSION = 2;
+
+	/**
+	 * The cached hashes of the entries of a single PBO-file
+	 * 
+	 * @author Raven
+	 *
+	 */
+	protected static class Record {
+		/**
+		 * The size of the PBO-file
+		 */
+		protected final long size;
+		/**
+		 * The modification time of the PBO-file in milliseconds
+		 */
+		protected final long lastModified;
+		/**
+		 * The hashes mapped by the start offset of their entry. Empty entries
+		 * aren't included as they share their offset with the following entry
+		 */
+		protected final Map<Long, PBOContentHash> hashes;
+
+
+		protected Record(long size, long lastModified) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.hashes = new ConcurrentHashMap<>();
+		}
+
+		/**
+		 * Writes this record to the given stream
+		 * 
+		 * @param out
+		 *            The stream to write to
+		 * @throws IOException
+		 */
+		protected void write(DataOutputStream out) throws IOException {
+			out.writeLong(size);
+			out.writeLong(lastModified);
+
+			// take a snapshot as the map may be modified concurrently
+			Map<Long, PBOContentHash> snapshot = new HashMap<>(hashes);
+			out.writeInt(snapshot.size());
+
+			for (Map.Entry<Long, PBOContentHash> current : snapshot.entrySet()) {
+				out.writeLong(current.getKey());
+				out.write(current.getValue().bytes);
+			}
+		}
+
+		/**
+		 * Reads a record from the given stream
+		 * 
+		 * @param in
+		 *            The stream to read from
+		 * @param limit
+		 *            The maximum value of any count read from the stream
+		 * @return The read record
+		 * @throws IOException
+		 */
+		protected static Record read(DataInputStream in, long limit) throws IOException {
+			Record record = new Record(in.readLong(), in.readLong());
+
+			int count = readCount(in, limit);
+			byte[] bytes = new byte[PBOContentHash.LENGTH];
+
+			for (int i = 0; i < count; i++) {
+				long offset = in.readLong();
+				in.readFully(bytes);
+
+				record.hashes.put(offset, new PBOContentHash(bytes));
+			}
+
+			return record;
+		}
+	}
+
+	/**
+	 * The entries of the added PBOs grouped by their content
+	 */
+	protected Map<PBOContentHash, List<PBOEntry>> groups;
+	/**
+	 * The hashes of the entries of the added PBOs mapped by the location of
+	 * their entry
+	 */
+	protected Map<PBOContentCache.Key, PBOContentHash> entryHashes;
+	/**
+	 * The executor used for calculating the hashes
+	 */
+	protected ExecutorService executor;
+	/**
+	 * The maximum amount of hashes that may be calculated at the same time
+	 */
+	protected int window;
+
+
+	/**
+	 * Creates a new, empty index that isn't persisted
+	 */
+	public PBOContentIndex() {
+		super(null);
+
+		this.groups = new HashMap<>();
+		this.entryHashes = new ConcurrentHashMap<>();
+		this.executor = ForkJoinPool.commonPool();
+		this.window = IOTasks.getDefaultWindow();
+	}
+
+	/**
+	 * Creates a new, empty index that will be saved to the given location
+	 * 
+	 * @param location
+	 *            The location of the index file
+	 */
+	public PBOContentIndex(Path location) {
+		this();
+
+		if (location == null) {
+			throw new IllegalArgumentException("The location must not be null!");
+		}
+
+		this.location = location;
+	}
+
+	/**
+	 * Loads the index stored at the given location. If there is no index file
+	 * or it can't be read, an empty index is returned that will be rebuilt
+	 * while PBOs are added.
+	 * 
+	 * @param location
+	 *            The location of the index file
+	 * @return The loaded index
+	 */
+	public static PBOContentIndex load(Path location) {
+		PBOContentIndex index = new PBOContentIndex(location);
+		index.read();
+
+		return index;
+	}
+
+	@Override
+	protected int getMagic() {
+		return MAGIC;
+	}
+
+	@Override
+	protected int getVersion() {
+		return VERSION;
+	}
+
+	@Override
+	protected void writeRecord(Record record, DataOutputStream out) throws IOException {
+		record.write(out);
+	}
+
+	@Override
+	protected Record readRecord(DataInputStream in, long limit) throws IOException {
+		return Record.read(in, limit);
+	}
+
+	/**
+	 * Sets the executor used for calculating the hashes
+	 * 
+	 * @param executor
+	 *            The executor to use
+	 * @return This index
+	 */
+	public PBOContentIndex setExecutor(ExecutorService executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("The executor must not be null!");
+		}
+
+		this.executor = executor;
+
+		return this;
+	}
+
+	/**
+	 * Gets the maximum amount of hashes that may be calculated at the same
+	 * time
+	 */
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * Sets the maximum amount of hashes that may be calculated at the same
+	 * time
+	 * 
+	 * @param window
+	 *            The window size. Must be at least 1
+	 * @return This index
+	 */
+	public PBOContentIndex setWindow(int window) {
+		if (window < 1) {
+			throw new IllegalArgumentException("The window has to be at least 1!");
+		}
+
+		this.window = window;
+
+		return this;
+	}
+
+	/**
+	 * Gets the content hash of the given entry. If the hash is cached and the
+	 * entry's PBO-file hasn't changed since, it is taken from the cache.
+	 * Otherwise it gets calculated (and cached).
+	 * 
+	 * @param entry
+	 *            The entry to get the hash of
+	 * @return The entry's content hash
+	 * @throws IOException
+	 *             If reading the entry fails
+	 */
+	public PBOContentHash getHash(PBOEntry entry) throws IOException {
+		return getHash(entry, getRecord(entry.getPBO()));
+	}
+
+	/**
+	 * Gets the content hash of the given entry
+	 * 
+	 * @param entry
+	 *            The entry to get the hash of
+	 * @param record
+	 *            The (up-to-date) record of the entry's PBO or
+	 *            <code>null</code> if the hash shouldn't be cached
+	 * @return The entry's content hash
+	 * @throws IOException
+	 */
+	protected PBOContentHash getHash(PBOEntry entry, Record record) throws IOException {
+		if (entry.getDataSize() == 0) {
+			// empty entries may share their offset with the following entry
+			record = null;
+		}
+
+		if (record != null) {
+			PBOContentHash hash = record.hashes.get(entry.getStartOffset());
+
+			if (hash != null) {
+				hits.incrementAndGet();
+
+				return hash;
+			}
+		}
+
+		misses.incrementAndGet();
+
+		PBOContentHash hash = PBOContentHash.of(entry);
+
+		if (record != null) {
+			record.hashes.put(entry.getStartOffset(), hash);
+			modified = true;
+		}
+
+		return hash;
+	}
+
+	/**
+	 * Gets the content hash of the given entry if its PBO has been added to
+	 * this index. Unlike {@link #getHash(PBOEntry)} this never reads anything.
+	 * 
+	 * @param entry
+	 *            The entry to get the hash of
+	 * @return The entry's content hash or <code>null</code> if it isn't known
+	 *         (empty entries are never known)
+	 */
+	public PBOContentHash getKnownHash(PBOEntry entry) {
+		if (entry.getDataSize() == 0) {
+			// empty entries may share their offset with the following entry
+			return null;
+		}
+
+		return entryHashes.get(new PBOContentCache.Key(entry.getPBO(), entry.getStartOffset()));
+	}
+
+	/**
+	 * Gets the record for the given PBO. If the cached record is outdated, it
+	 * is replaced by an empty one.
+	 * 
+	 * @param pbo
+	 *            The PBO to get the record for
+	 * @return The record or <code>null</code> if the PBO hasn't been read from
+	 *         a file
+	 * @throws IOException
+	 */
+	protected Record getRecord(PBO pbo) throws IOException {
+		if (pbo.getLocation() == null) {
+			return null;
+		}
+
+		Path path = pbo.getLocation().toAbsolutePath().normalize();
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		long size = attributes.size();
+		long lastModified = attributes.lastModifiedTime().toMillis();
+
+		return records.compute(getKey(path), (key, record) -> {
+			if (record != null && record.size == size && record.lastModified == lastModified) {
+				return record;
+			}
+
+			modified = true;
+
+			return new Record(size, lastModified);
+		});
+	}
+
+	/**
+	 * Adds the entries of the given PBO to this index (see
+	 * {@link #add(Collection)})
+	 * 
+	 * @param pbo
+	 *            The PBO to add
+	 * @throws IOException
+	 */
+	public void add(PBO pbo) throws IOException {
+		add(Collections.singletonList(pbo));
+	}
+
+	/**
+	 * Adds the entries of the given PBOs to this index. The hashes of the
+	 * entries that aren't cached are calculated in parallel. Adding a PBO that
+	 * has already been added doesn't duplicate its entries.
+	 * 
+	 * @param pbos
+	 *            The PBOs to add
+	 * @throws IOException
+	 *             If reading any of the entries fails
+	 */
+	public void add(Collection<PBO> pbos) throws IOException {
+		try (IOTasks.Window<Map.Entry<PBOEntry, PBOContentHash>> pending = new IOTasks.Window<>(executor,
+				window)) {
+			for (PBO pbo : pbos) {
+				Record record = getRecord(pbo);
+
+				for (PBOEntry current : pbo.getEntries()) {
+					if (pending.isFull()) {
+						addToGroup(pending.await());
+					}
+
+					pending.submit(() -> new SimpleEntry<>(current, getHash(current, record)));
+				}
+			}
+
+			while (!pending.isEmpty()) {
+				addToGroup(pending.await());
+			}
+		}
+	}
+
+	/**
+	 * Adds the given entry to the group of its content. If the entry has been
+	 * added before (because its PBO is added again), it is moved to its new
+	 * group instead.
+	 * 
+	 * @param entry
+	 *            The entry and its hash
+	 */
+	protected synchronized void addToGroup(Map.Entry<PBOEntry, PBOContentHash> entry) {
+		PBOEntry current = entry.getKey();
+
+		// empty entries are all the same but not worth deduplicating
+		if (current.getDataSize() == 0 || current.getOriginalSize() == 0) {
+			return;
+		}
+
+		PBOContentHash previous = entryHashes.put(new PBOContentCache.Key(current.getPBO(), current.getStartOffset()),
+				entry.getValue());
+
+		if (previous != null) {
+			List<PBOEntry> group = groups.get(previous);
+
+			group.removeIf(other -> other.getPBO() == current.getPBO()
+					&& other.getStartOffset() == current.getStartOffset());
+
+			if (group.isEmpty()) {
+				groups.remove(previous);
+			}
+		}
+
+		groups.computeIfAbsent(entry.getValue(), k -> new ArrayList<>(1)).add(current);
+	}
+
+	/**
+	 * Removes the entries of the given PBO from this index. Their hashes stay
+	 * cached.
+	 * 
+	 * @param pbo
+	 *            The PBO to remove
+	 * @return Whether any entries have been removed
+	 */
+	public synchronized boolean remove(PBO pbo) {
+		boolean removed = false;
+
+		entryHashes.keySet().removeIf(key -> key.pbo == pbo);
+
+		for (Iterator<List<PBOEntry>> it = groups.values().iterator(); it.hasNext();) {
+			List<PBOEntry> group = it.next();
+
+			removed |= group.removeIf(entry -> entry.getPBO() == pbo);
+
+			if (group.isEmpty()) {
+				it.remove();
+			}
+		}
+
+		return removed;
+	}
+
+	/**
+	 * Gets the entries of the added PBOs that have the given content
+	 * 
+	 * @param hash
+	 *            The hash of the content
+	 * @return The respective entries
+	 */
+	public synchronized List<PBOEntry> getEntries(PBOContentHash hash) {
+		List<PBOEntry> group = groups.get(hash);
+
+		return group == null ? Collections.emptyList() : new ArrayList<>(group);
+	}
+
+	/**
+	 * Gets all groups of entries of the added PBOs that have the same content.
+	 * The groups are ordered by the amount of bytes that could be saved by
+	 * storing their content only once (descending).
+	 */
+	public synchronized List<List<PBOEntry>> getDuplicates() {
+		List<List<PBOEntry>> duplicates = new ArrayList<>();
+
+		for (List<PBOEntry> current : groups.values()) {
+			if (current.size() > 1) {
+				duplicates.add(new ArrayList<>(current));
+			}
+		}
+
+		duplicates.sort(Comparator.comparingLong((List<PBOEntry> group) -> getRedundantBytes(group)).reversed());
+
+		return duplicates;
+	}
+
+	/**
+	 * Gets the amount of (uncompressed) bytes of the added PBOs that are
+	 * duplicates of other content
+	 */
+	public synchronized long getRedundantBytes() {
+		long redundant = 0;
+
+		for (List<PBOEntry> current : groups.values()) {
+			redundant += getRedundantBytes(current);
+		}
+
+		return redundant;
+	}
+
+	/**
+	 * Gets the amount of bytes that could be saved by storing the content of
+	 * the given group only once
+	 * 
+	 * @param group
+	 *            The entries with the same content
+	 */
+	protected static long getRedundantBytes(List<PBOEntry> group) {
+		return (group.size() - 1) * group.get(0).getOriginalSize();
+	}
+}
@@ -1,6 +1,7 @@
 package raven.pbo;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import raven.misc.ByteReader;
 
@@ -16,6 +17,11 @@ public class PBOEntry {
 	public static final int UNCOMPRESSED = 0x00000000;
 	public static final int COMPRESSED = 0x43707273;
 	public static final int PRODUCT_ENTRY = 0x56657273;
+	/**
+	 * The maximum size a file inside a PBO can have as the header fields are
+	 * unsigned 32-bit values
+	 */
+	public static final long MAX_DATA_SIZE = 0xFFFFFFFFL;
 
 	/**
 	 * The filename of the file this entry represents
@@ -26,7 +32,7 @@ public class PBOEntry {
 	 */
 	protected int packingMethod;
 	/**
-	 * The uncompressed size of the referenced file
+	 * The uncompressed size of the referenced file (unsigned)
 	 */
 	protected int originalSize;
 	/**
@@ -34,18 +40,18 @@ public class PBOEntry {
 	 */
 	protected int reserved;
 	/**
-	 * A time stamp in unix time
+	 * A time stamp in unix time (unsigned)
 	 */
 	protected int timeStamp;
 	/**
-	 * The actual size of the referenced file
+	 * The actual size of the referenced file (unsigned)
 	 */
 	protected int dataSize;
 	/**
 	 * The starting offset of the referenced file relative to the end of the PBO's
 	 * header
 	 */
-	protected int relativeStartOffset;
+	protected long relativeStartOffset;
 	/**
 	 * The {@linkplain PBO} this entry belongs to
 	 */
@@ -65,7 +71,7 @@ public class PBOEntry {
 	 *            The {@linkplain PBO} this entry belongs to
 	 * @throws IOException
 	 */
-	public PBOEntry(ByteReader reader, int relativeStartOffset, PBO pbo) throws IOException {
+	public PBOEntry(ByteReader reader, long relativeStartOffset, PBO pbo) throws IOException {
 		fileName = reader.readString();
 
 		packingMethod = reader.readInt32();
@@ -78,6 +84,39 @@ public class PBOEntry {
 		this.pbo = pbo;
 	}
 
+	/**
+	 * Creates a new entry from the given (already parsed) header fields
+	 * 
+	 * @param fileName
+	 *            The name of the file represented by this entry
+	 * @param packingMethod
+	 *            The packing method (see {@link #getCompressionMethod()})
+	 * @param originalSize
+	 *            The original size as stored in the header (unsigned)
+	 * @param reserved
+	 *            The reserved field
+	 * @param timeStamp
+	 *            The time stamp in unix time (unsigned)
+	 * @param dataSize
+	 *            The size of the file's data inside the PBO (unsigned)
+	 * @param relativeStartOffset
+	 *            The relative start offset the content of the file represented by
+	 *            this entry begins inside the PBO-file
+	 * @param pbo
+	 *            The {@linkplain PBO} this entry belongs to
+	 */
+	public PBOEntry(String fileName, int packingMethod, int originalSize, int reserved, int timeStamp, int dataSize,
+			long relativeStartOffset, PBO pbo) {
+		this.fileName = fileName;
+		this.packingMethod = packingMethod;
+		this.originalSize = originalSize;
+		this.reserved = reserved;
+		this.timeStamp = timeStamp;
+		this.dataSize = dataSize;
+		this.relativeStartOffset = relativeStartOffset;
+		this.pbo = pbo;
+	}
+
 	/**
 	 * Gets the name of the file represented by this entry. May be empty if this is
 	 * a boundary entry
@@ -98,8 +137,8 @@ public class PBOEntry {
 	/**
 	 * Gets the uncompressed data size of the file represented by this entry
 	 */
-	public int getOriginalSize() {
-		return originalSize == 0 && !isCompressed() ? getDataSize() : originalSize;
+	public long getOriginalSize() {
+		return originalSize == 0 && !isCompressed() ? getDataSize() : Integer.toUnsignedLong(originalSize);
 	}
 
 	public int getReserved() {
@@ -107,24 +146,24 @@ public class PBOEntry {
 	}
 
 	/**
-	 * Gets the timestamp as specified for this entry
+	 * Gets the timestamp as specified for this entry (in seconds since the epoch)
 	 */
-	public int getTimeStamp() {
-		return timeStamp;
+	public long getTimeStamp() {
+		return Integer.toUnsignedLong(timeStamp);
 	}
 
 	/**
 	 * Gets the size of the file corresponding to this entry inside the PBO-itself
 	 */
-	public int getDataSize() {
-		return dataSize;
+	public long getDataSize() {
+		return Integer.toUnsignedLong(dataSize);
 	}
 
 	/**
 	 * Gets the offset at which the content of the file corresponding to this entry
 	 * starts inside the PBO
 	 */
-	public int getStartOffset() {
+	public long getStartOffset() {
 		return relativeStartOffset + pbo.getContentOffset();
 	}
 
@@ -132,7 +171,7 @@ public class PBOEntry {
 	 * Gets the offset at which the content of the file corresponding to this entry
 	 * starts inside the PBO relative to the end of the PBO header
 	 */
-	public int getRelativeStartOffset() {
+	public long getRelativeStartOffset() {
 		return relativeStartOffset;
 	}
 
@@ -155,6 +194,32 @@ public class PBOEntry {
 		return (isBoundary() ? "$boundary entry$" : fileName);
 	}
 
+	/**
+	 * Two entries are equal if they belong to the same {@linkplain PBO} (by
+	 * identity) and describe the same file at the same offset. Thus entries
+	 * created on demand by a {@link PBO#compact() compacted} PBO can be used as
+	 * keys of maps and sets.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof PBOEntry)) {
+			return false;
+		}
+
+		PBOEntry other = (PBOEntry) obj;
+
+		return pbo == other.pbo && relativeStartOffset == other.relativeStartOffset
+				&& fileName.equals(other.fileName);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (31 * System.identityHashCode(pbo) + Long.hashCode(relativeStartOffset)) + fileName.hashCode();
+	}
+
 	/**
 	 * Gets the {@linkplain PBO} this entry belongs to
 	 */
@@ -162,9 +227,46 @@ public class PBOEntry {
 		return pbo;
 	}
 
+	/**
+	 * Gets the data of the file represented by this entry as it is stored inside
+	 * the PBO (that is still compressed if {@link #isCompressed()}). If the PBO
+	 * is memory-mapped the returned buffer is a zero-copy slice of that mapping,
+	 * otherwise the data is read into a new buffer.
+	 * 
+	 * @return A read-only {@linkplain ByteBuffer} containing
+	 *         {@link #getDataSize()} bytes
+	 * @throws IOException
+	 *             If there are errors reading the data or the data is bigger
+	 *             than {@link Integer#MAX_VALUE} bytes
+	 * @throws IllegalStateException
+	 *             If this entry is a boundary entry
+	 */
+	public ByteBuffer getData() throws IOException {
+		if (isBoundary()) {
+			throw new IllegalStateException("Can't get the data of a boundary entry!");
+		}
+
+		if (getDataSize() > Integer.MAX_VALUE) {
+			throw new IOException("The data of " + fileName + " is too big to be held in a single buffer");
+		}
+
+		if (pbo.isMemoryMapped()) {
+			return pbo.slice(getStartOffset(), (int) getDataSize());
+		}
+
+		ByteBuffer data = ByteBuffer.allocate((int) getDataSize());
+
+		pbo.readFully(data, getStartOffset());
+
+		data.flip();
+
+		return data.asReadOnlyBuffer();
+	}
+
 	/**
 	 * Creates a new {@linkplain PBOInputStream} that will be able to read the
-	 * content of the file represented by this entry
+	 * content of the file represented by this entry. If the file is compressed
+	 * the stream will decompress it on the fly
 	 * 
 	 * @return The created stream
 	 * @throws IOException
@@ -175,4 +277,19 @@ public class PBOEntry {
 	public PBOInputStream toStream() throws IOException {
 		return new PBOInputStream(this);
 	}
+
+	/**
+	 * Creates a new {@linkplain PBOEntryChannel} providing random access to the
+	 * content of the file represented by this entry. If the file is compressed
+	 * it gets decompressed into memory right away
+	 * 
+	 * @return The created channel
+	 * @throws IOException
+	 *             If there are errors decompressing the file
+	 * @throws IllegalStateException
+	 *             If this entry is a boundary entry
+	 */
+	public PBOEntryChannel toChannel() throws IOException {
+		return new PBOEntryChannel(this);
+	}
 }
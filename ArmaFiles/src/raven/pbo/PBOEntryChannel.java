@@ -0,0 +1,182 @@
+package raven.pbo;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A read-only {@linkplain SeekableByteChannel} providing random access to the
+ * content of a single {@linkplain PBOEntry}. Uncompressed entries are read via
+ * positional reads on the {@linkplain PBO}'s shared channel (or out of its
+ * mapping) so that seeking is free. As LZSS-compressed data can't be accessed
+ * randomly, compressed entries are decompressed into memory once when the
+ * channel is created.<br>
+ * Like a {@linkplain PBOInputStream} a channel must not be used by multiple
+ * threads at the same time.
+ * 
+ * @author Raven
+ *
+ */
+public class PBOEntryChannel implements SeekableByteChannel {
+
+	/**
+	 * The entry this channel reads
+	 */
+	protected PBOEntry entry;
+	/**
+	 * The offset inside the PBO-file at which the entry's data starts
+	 */
+	protected long start;
+	/**
+	 * The size of the entry's content
+	 */
+	protected long size;
+	/**
+	 * The current position inside the entry's content
+	 */
+	protected long position;
+	/**
+	 * The complete content of the entry if it is held in memory (compressed or
+	 * memory-mapped entries) or <code>null</code> if it is read from the file
+	 */
+	protected ByteBuffer content;
+	/**
+	 * Whether this channel is open
+	 */
+	protected boolean open;
+
+
+	/**
+	 * Creates a new channel for the given entry
+	 * 
+	 * @param entry
+	 *            The entry to read
+	 * @throws IOException
+	 *             If the entry is compressed and can't be decompressed
+	 * @throws IllegalStateException
+	 *             If the given entry is a boundary entry
+	 */
+	public PBOEntryChannel(PBOEntry entry) throws IOException {
+		if (entry.isBoundary()) {
+			throw new IllegalStateException("Can't read the data of a boundary entry!");
+		}
+
+		this.entry = entry;
+		this.start = entry.getStartOffset();
+		this.open = true;
+
+		if (entry.isCompressed()) {
+			try (PBOInputStream in = entry.toStream()) {
+				content = ByteBuffer.wrap(in.readAllBytes()).asReadOnlyBuffer();
+			}
+		} else if (entry.getPBO().isMemoryMapped() && entry.getDataSize() <= Integer.MAX_VALUE) {
+			content = entry.getData();
+		}
+
+		size = content != null ? content.capacity() : entry.getDataSize();
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		ensureOpen();
+
+		if (position >= size) {
+			return -1;
+		}
+
+		int length = (int) Math.min(dst.remaining(), size - position);
+
+		if (content != null) {
+			ByteBuffer view = content.duplicate();
+			view.position((int) position);
+			view.limit((int) position + length);
+
+			dst.put(view);
+		} else {
+			ByteBuffer view = dst.duplicate();
+			view.limit(view.position() + length);
+
+			int count = entry.getPBO().read(view, start + position);
+			if (count < 0) {
+				throw new EOFException("Unexpected end of PBO-file " + entry.getPBO());
+			}
+
+			length = count;
+			dst.position(dst.position() + length);
+		}
+
+		position += length;
+
+		return length;
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public long position() throws IOException {
+		ensureOpen();
+
+		return position;
+	}
+
+	@Override
+	public PBOEntryChannel position(long newPosition) throws IOException {
+		ensureOpen();
+
+		if (newPosition < 0) {
+			throw new IllegalArgumentException("The position must not be negative!");
+		}
+
+		position = newPosition;
+
+		return this;
+	}
+
+	@Override
+	public long size() throws IOException {
+		ensureOpen();
+
+		return size;
+	}
+
+	@Override
+	public SeekableByteChannel truncate(long size) throws IOException {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void close() {
+		open = false;
+		content = null;
+	}
+
+	/**
+	 * Gets the entry this channel reads
+	 */
+	public PBOEntry getEntry() {
+		return entry;
+	}
+
+	/**
+	 * Makes sure this channel is still open
+	 * 
+	 * @throws ClosedChannelException
+	 *             If it has been closed
+	 */
+	protected void ensureOpen() throws ClosedChannelException {
+		if (!open) {
+			throw new ClosedChannelException();
+		}
+	}
+}
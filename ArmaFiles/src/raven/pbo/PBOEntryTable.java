@@ -0,0 +1,369 @@
+package raven.pbo;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A compact representation of the entries of a {@linkplain PBO}. Instead of
+ * keeping a {@linkplain PBOEntry} object per entry, the names of all entries
+ * are stored in a single byte array and the header fields in primitive arrays
+ * (one per field). Lookups by path or file name go through hash tables that
+ * only consist of <code>int</code> arrays as well.<br>
+ * {@linkplain PBOEntry} objects are created on demand whenever an entry is
+ * requested and are not retained by the table.
+ * 
+ * @author Raven
+ *
+ */
+public class PBOEntryTable {
+
+	/**
+	 * The {@linkplain PBO} the entries belong to
+	 */
+	protected final PBO pbo;
+	/**
+	 * The amount of entries (including boundary entries)
+	 */
+	protected final int size;
+	/**
+	 * The index of the first entry representing a file
+	 */
+	protected final int firstFile;
+	/**
+	 * The amount of entries representing a file
+	 */
+	protected final int fileCount;
+	/**
+	 * The names of all entries (one byte per character)
+	 */
+	protected final byte[] names;
+	/**
+	 * The offset of each entry's name in {@link #names}. The name of entry
+	 * <code>i</code> ends where the one of entry <code>i + 1</code> starts
+	 */
+	protected final int[] nameOffsets;
+	/**
+	 * The packing method of each entry
+	 */
+	protected final int[] packingMethods;
+	/**
+	 * The original size of each entry (as stored in the header)
+	 */
+	protected final int[] originalSizes;
+	/**
+	 * The reserved field of each entry
+	 */
+	protected final int[] reserved;
+	/**
+	 * The time stamp of each entry (as stored in the header)
+	 */
+	protected final int[] timeStamps;
+	/**
+	 * The data size of each entry (as stored in the header)
+	 */
+	protected final int[] dataSizes;
+	/**
+	 * The start offset of each entry relative to the end of the header
+	 */
+	protected final long[] relativeStartOffsets;
+	/**
+	 * The hash of each entry's normalized path (see
+	 * {@link PBOPaths#normalize(String)})
+	 */
+	protected final int[] pathHashes;
+	/**
+	 * The hash of each entry's normalized file name (without the directory)
+	 */
+	protected final int[] fileNameHashes;
+	/**
+	 * The first entry of each hash bucket for lookups by path (or -1)
+	 */
+	protected final int[] pathBuckets;
+	/**
+	 * The next entry in the same path bucket (or -1)
+	 */
+	protected final int[] pathNext;
+	/**
+	 * The first entry of each hash bucket for lookups by file name (or -1)
+	 */
+	protected final int[] fileNameBuckets;
+	/**
+	 * The next entry in the same file name bucket (or -1)
+	 */
+	protected final int[] fileNameNext;
+
+
+	/**
+	 * Creates a new table out of the given entries
+	 * 
+	 * @param pbo
+	 *            The PBO the entries belong to
+	 * @param entries
+	 *            All entries of the PBO (including boundary entries)
+	 */
+	public PBOEntryTable(PBO pbo, List<PBOEntry> entries) {
+		this.pbo = pbo;
+		this.size = entries.size();
+		// the last entry is always the boundary entry terminating the header
+		this.firstFile = size > 0 && entries.get(0).isBoundary() ? 1 : 0;
+		this.fileCount = Math.max(0, size - 1 - firstFile);
+
+		int nameLength = 0;
+		for (PBOEntry current : entries) {
+			nameLength += current.getFileName().length();
+		}
+
+		names = new byte[nameLength];
+		nameOffsets = new int[size + 1];
+		packingMethods = new int[size];
+		originalSizes = new int[size];
+		reserved = new int[size];
+		timeStamps = new int[size];
+		dataSizes = new int[size];
+		relativeStartOffsets = new long[size];
+		pathHashes = new int[size];
+		fileNameHashes = new int[size];
+
+		int offset = 0;
+		for (int i = 0; i < size; i++) {
+			PBOEntry current = entries.get(i);
+			String name = current.getFileName();
+
+			nameOffsets[i] = offset;
+			for (int j = 0; j < name.length(); j++) {
+				// names are read as one char per byte
+				names[offset++] = (byte) name.charAt(j);
+			}
+
+			packingMethods[i] = current.packingMethod;
+			originalSizes[i] = current.originalSize;
+			reserved[i] = current.reserved;
+			timeStamps[i] = current.timeStamp;
+			dataSizes[i] = current.dataSize;
+			relativeStartOffsets[i] = current.relativeStartOffset;
+		}
+		nameOffsets[size] = offset;
+
+		int bucketCount = Integer.highestOneBit(Math.max(1, fileCount) * 2 - 1) << 1;
+		pathBuckets = new int[bucketCount];
+		pathNext = new int[size];
+		fileNameBuckets = new int[bucketCount];
+		fileNameNext = new int[size];
+
+		Arrays.fill(pathBuckets, -1);
+		Arrays.fill(fileNameBuckets, -1);
+
+		// insert in reverse order so that each chain is sorted by index
+		for (int i = firstFile + fileCount - 1; i >= firstFile; i--) {
+			String path = PBOPaths.normalize(getFileName(i));
+
+			pathHashes[i] = path.hashCode();
+			int bucket = bucket(pathHashes[i], pathBuckets.length);
+			pathNext[i] = pathBuckets[bucket];
+			pathBuckets[bucket] = i;
+
+			fileNameHashes[i] = PBOPaths.getBaseName(path).hashCode();
+			bucket = bucket(fileNameHashes[i], fileNameBuckets.length);
+			fileNameNext[i] = fileNameBuckets[bucket];
+			fileNameBuckets[bucket] = i;
+		}
+	}
+
+	/**
+	 * Gets the bucket for the given hash
+	 * 
+	 * @param hash
+	 *            The hash
+	 * @param bucketCount
+	 *            The amount of buckets (a power of two)
+	 */
+	protected static int bucket(int hash, int bucketCount) {
+		return (hash ^ (hash >>> 16)) & (bucketCount - 1);
+	}
+
+	/**
+	 * Gets the amount of entries in this table (including boundary entries)
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the amount of entries in this table that represent a file
+	 */
+	public int getFileCount() {
+		return fileCount;
+	}
+
+	/**
+	 * Gets the name of the entry at the given index
+	 * 
+	 * @param index
+	 *            The index of the entry
+	 */
+	public String getFileName(int index) {
+		int start = nameOffsets[index];
+		char[] chars = new char[nameOffsets[index + 1] - start];
+
+		for (int i = 0; i < chars.length; i++) {
+			// decode the same way ByteReader#readString does (ISO-8859-1)
+			chars[i] = (char) (names[start + i] & 0xFF);
+		}
+
+		return new String(chars);
+	}
+
+	/**
+	 * Gets the data size of the entry at the given index (see
+	 * {@link PBOEntry#getDataSize()})
+	 * 
+	 * @param index
+	 *            The index of the entry
+	 */
+	public long getDataSize(int index) {
+		return Integer.toUnsignedLong(dataSizes[index]);
+	}
+
+	/**
+	 * Creates a {@linkplain PBOEntry} for the entry at the given index
+	 * 
+	 * @param index
+	 *            The index of the entry
+	 * @return The created entry
+	 */
+	public PBOEntry get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+
+		return new PBOEntry(getFileName(index), packingMethods[index], originalSizes[index], reserved[index],
+				timeStamps[index], dataSizes[index], relativeStartOffsets[index], pbo);
+	}
+
+	/**
+	 * Gets the index of the (first) entry with the given path
+	 * 
+	 * @param normalizedPath
+	 *            The normalized path (see {@link PBOPaths#normalize(String)}) to
+	 *            search for
+	 * @return The index of the respective entry or -1 if there is none
+	 */
+	public int indexOf(String normalizedPath) {
+		int hash = normalizedPath.hashCode();
+
+		for (int i = pathBuckets[bucket(hash, pathBuckets.length)]; i >= 0; i = pathNext[i]) {
+			if (pathHashes[i] == hash && PBOPaths.normalize(getFileName(i)).equals(normalizedPath)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Finds the (first) entry with the given path
+	 * 
+	 * @param normalizedPath
+	 *            The normalized path (see {@link PBOPaths#normalize(String)}) to
+	 *            search for
+	 * @return The respective entry or <code>null</code> if there is none
+	 */
+	public PBOEntry find(String normalizedPath) {
+		int index = indexOf(normalizedPath);
+
+		return index < 0 ? null : get(index);
+	}
+
+	/**
+	 * Finds all entries with the given file name regardless of the directory
+	 * they are in
+	 * 
+	 * @param normalizedName
+	 *            The normalized file name to search for
+	 * @return The respective entries in the order they appear in the PBO
+	 */
+	public List<PBOEntry> findByFileName(String normalizedName) {
+		List<PBOEntry> matches = null;
+
+		int hash = normalizedName.hashCode();
+		int first = fileNameBuckets[bucket(hash, fileNameBuckets.length)];
+
+		for (int i = first; i >= 0; i = fileNameNext[i]) {
+			if (fileNameHashes[i] == hash
+					&& PBOPaths.getBaseName(PBOPaths.normalize(getFileName(i))).equals(normalizedName)) {
+				if (matches == null) {
+					matches = new ArrayList<>(1);
+				}
+
+				matches.add(get(i));
+			}
+		}
+
+		return matches == null ? Collections.emptyList() : matches;
+	}
+
+	/**
+	 * Gets an unmodifiable view on the entries representing a file. The
+	 * {@linkplain PBOEntry} objects are created whenever they are accessed.
+	 */
+	public List<PBOEntry> getFileEntries() {
+		return new EntryView(firstFile, fileCount);
+	}
+
+	/**
+	 * Gets an unmodifiable view on all entries (including boundary entries).
+	 * The {@linkplain PBOEntry} objects are created whenever they are accessed.
+	 */
+	public List<PBOEntry> getAllEntries() {
+		return new EntryView(0, size);
+	}
+
+	/**
+	 * Gets the approximate amount of bytes occupied by this table
+	 */
+	public long getMemoryUsage() {
+		return names.length + 4L * (nameOffsets.length + 9L * size) + 8L * size
+				+ 4L * (pathBuckets.length + fileNameBuckets.length);
+	}
+
+	/**
+	 * A list view on a range of the table's entries
+	 * 
+	 * @author Raven
+	 *
+	 */
+	protected class EntryView extends AbstractList<PBOEntry> implements RandomAccess {
+		/**
+		 * The index of the first entry in the view
+		 */
+		protected final int offset;
+		/**
+		 * The amount of entries in the view
+		 */
+		protected final int length;
+
+
+		protected EntryView(int offset, int length) {
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public PBOEntry get(int index) {
+			if (index < 0 || index >= length) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length);
+			}
+
+			return PBOEntryTable.this.get(offset + index);
+		}
+
+		@Override
+		public int size() {
+			return length;
+		}
+	}
+}
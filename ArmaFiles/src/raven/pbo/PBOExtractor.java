@@ -0,0 +1,751 @@
+package raven.pbo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * A class extracting the content of a {@linkplain PBO} into a directory. The
+ * entries are processed in the order they are stored in the PBO-file so that
+ * it is read sequentially. Uncompressed entries are copied via
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ * without passing through the JVM heap whereas compressed entries are
+ * decompressed and written on the configured {@linkplain ExecutorService}.<br>
+ * If {@link #setVerify(boolean) enabled}, the PBO's checksum gets verified
+ * along the way (see {@linkplain PBOVerifier}). In that case uncompressed
+ * entries have to be copied through a buffer.<br>
+ * A directory that already contains an older extraction of the PBO can be
+ * brought up to date via {@link #sync(PBO, Path)} which only writes the files
+ * that have changed (and optionally deletes the files that don't belong to the
+ * PBO anymore).
+ * 
+ * @author Raven
+ *
+ */
+public class PBOExtractor {
+
+	/**
+	 * The outcome of an extraction
+	 * 
+	 * @author Raven
+	 *
+	 */
+	public static class Result {
+		/**
+		 * The amount of extracted files
+		 */
+		protected int fileCount;
+		/**
+		 * The amount of files that have been up to date (when syncing)
+		 */
+		protected int unchangedCount;
+		/**
+		 * The amount of deleted files (when syncing)
+		 */
+		protected int deletedCount;
+		/**
+		 * The amount of bytes read out of the PBO
+		 */
+		protected long bytesRead;
+		/**
+		 * The amount of bytes written to the extracted files
+		 */
+		protected long bytesWritten;
+		/**
+		 * The time the extraction took in nanoseconds
+		 */
+		protected long time;
+		/**
+		 * The outcome of the verification or <code>null</code> if the PBO
+		 * hasn't been verified
+		 */
+		protected PBOVerifier.Status integrity;
+
+
+		/**
+		 * Gets the amount of extracted files
+		 */
+		public int getFileCount() {
+			return fileCount;
+		}
+
+		/**
+		 * Gets the amount of files that have been up to date and therefore
+		 * haven't been written (when syncing)
+		 */
+		public int getUnchangedCount() {
+			return unchangedCount;
+		}
+
+		/**
+		 * Gets the amount of files that have been deleted because the PBO
+		 * doesn't contain them (when syncing with
+		 * {@link PBOExtractor#setDeleteVanished(boolean)} enabled)
+		 */
+		public int getDeletedCount() {
+			return deletedCount;
+		}
+
+		/**
+		 * Gets the amount of bytes read out of the PBO
+		 */
+		public long getBytesRead() {
+			return bytesRead;
+		}
+
+		/**
+		 * Gets the amount of bytes written to the extracted files
+		 */
+		public long getBytesWritten() {
+			return bytesWritten;
+		}
+
+		/**
+		 * Gets the time the extraction took in nanoseconds
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		/**
+		 * Gets the outcome of the verification of the PBO's checksum or
+		 * <code>null</code> if verification hasn't been enabled
+		 */
+		public PBOVerifier.Status getIntegrity() {
+			return integrity;
+		}
+
+		/**
+		 * Gets the throughput of the extraction in written bytes per second
+		 */
+		public double getThroughput() {
+			return time == 0 ? 0 : bytesWritten / (time / 1e9);
+		}
+
+		@Override
+		public String toString() {
+			return fileCount + " files (" + bytesWritten + " bytes) in " + (time / 1000000) + "ms ("
+					+ String.format("%.1f", getThroughput() / (1024 * 1024)) + " MB/s)";
+		}
+	}
+
+	/**
+	 * The executor used for decompressing compressed entries
+	 */
+	protected ExecutorService executor;
+	/**
+	 * The maximum amount of compressed entries that may be pending at the same
+	 * time
+	 */
+	protected int window;
+	/**
+	 * Whether the modification time of the extracted files should be set to
+	 * the time stamp of their entries
+	 */
+	protected boolean preserveTimeStamps;
+	/**
+	 * Whether the checksum of the PBO should be verified during the extraction
+	 */
+	protected boolean verify;
+	/**
+	 * Whether syncing should compare the content of the files instead of their
+	 * modification time
+	 */
+	protected boolean compareContent;
+	/**
+	 * Whether syncing should delete the files that don't belong to the PBO
+	 */
+	protected boolean deleteVanished;
+
+
+	/**
+	 * Creates a new extractor using the common {@linkplain ForkJoinPool}
+	 */
+	public PBOExtractor() {
+		executor = ForkJoinPool.commonPool();
+		window = IOTasks.getDefaultWindow();
+		preserveTimeStamps = true;
+	}
+
+	/**
+	 * Sets the executor used for decompressing compressed entries
+	 * 
+	 * @param executor
+	 *            The executor to use
+	 * @return This extractor
+	 */
+	public PBOExtractor setExecutor(ExecutorService executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("The executor must not be null!");
+		}
+
+		this.executor = executor;
+
+		return this;
+	}
+
+	/**
+	 * Gets the maximum amount of compressed entries that may be pending at the
+	 * same time. This limits the amount of compressed data held in memory.
+	 */
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * Sets the maximum amount of compressed entries that may be pending at the
+	 * same time
+	 * 
+	 * @param window
+	 *            The window size
+	 * @return This extractor
+	 */
+	public PBOExtractor setWindow(int window) {
+		if (window < 1) {
+			throw new IllegalArgumentException("The window has to be at least 1!");
+		}
+
+		this.window = window;
+
+		return this;
+	}
+
+	/**
+	 * Sets whether the modification time of the extracted files should be set
+	 * to the time stamp of their entries (if they have one)
+	 * 
+	 * @param preserveTimeStamps
+	 *            Whether to preserve the time stamps
+	 * @return This extractor
+	 */
+	public PBOExtractor setPreserveTimeStamps(boolean preserveTimeStamps) {
+		this.preserveTimeStamps = preserveTimeStamps;
+
+		return this;
+	}
+
+	/**
+	 * Sets whether the SHA1 checksum of the PBO should be verified during the
+	 * extraction. The outcome is available via {@link Result#getIntegrity()}
+	 * and {@link PBO#getIntegrity()}. A mismatch doesn't abort the extraction.
+	 * 
+	 * @param verify
+	 *            Whether to verify the checksum
+	 * @return This extractor
+	 */
+	public PBOExtractor setVerify(boolean verify) {
+		this.verify = verify;
+
+		return this;
+	}
+
+	/**
+	 * Sets whether {@link #sync(PBO, Path)} should compare the content of the
+	 * existing files with the content of their entries (see
+	 * {@linkplain PBOContentHash}) instead of relying on their modification
+	 * time. This requires reading every file whose size matches but also
+	 * detects changes that didn't alter the time stamp.
+	 * 
+	 * @param compareContent
+	 *            Whether to compare the content
+	 * @return This extractor
+	 */
+	public PBOExtractor setCompareContent(boolean compareContent) {
+		this.compareContent = compareContent;
+
+		return this;
+	}
+
+	/**
+	 * Sets whether {@link #sync(PBO, Path)} should delete everything inside the
+	 * directory that doesn't belong to the PBO. This includes files that have
+	 * never been extracted from it, so it must not be enabled for directories
+	 * that are shared with other content (e.g. other PBOs).
+	 * 
+	 * @param deleteVanished
+	 *            Whether to delete the files that don't belong to the PBO
+	 * @return This extractor
+	 */
+	public PBOExtractor setDeleteVanished(boolean deleteVanished) {
+		this.deleteVanished = deleteVanished;
+
+		return this;
+	}
+
+	/**
+	 * Extracts all files of the given PBO into the given directory. Existing
+	 * files are overwritten. If a PBO contains the same path multiple times,
+	 * only the first entry is extracted.
+	 * 
+	 * @param pbo
+	 *            The PBO to extract
+	 * @param directory
+	 *            The directory to extract to
+	 * @return The outcome of the extraction
+	 * @throws IOException
+	 *             If reading the PBO or writing any of the files fails or an
+	 *             entry's path points outside of the given directory
+	 */
+	public Result extract(PBO pbo, Path directory) throws IOException {
+		long start = System.nanoTime();
+
+		directory = directory.toAbsolutePath().normalize();
+		Files.createDirectories(directory);
+
+		Result result = new Result();
+
+		write(pbo, getTargets(pbo, directory), result);
+
+		result.time = System.nanoTime() - start;
+
+		return result;
+	}
+
+	/**
+	 * Brings the given directory up to date with the given PBO. A file is only
+	 * written if it is missing or if its size or modification time (or
+	 * content, see {@link #setCompareContent(boolean)}) differs from its
+	 * entry or if its name only differs from its entry's name by case (in which
+	 * case it is replaced). The files are compared in parallel. If
+	 * {@link #setDeleteVanished(boolean) enabled}, everything inside the
+	 * directory that doesn't belong to the PBO is deleted.<br>
+	 * Comparing the modification time requires the time stamps to have been
+	 * {@link #setPreserveTimeStamps(boolean) preserved}. Entries without a time
+	 * stamp are always written unless the content is compared.
+	 * 
+	 * @param pbo
+	 *            The PBO to sync with
+	 * @param directory
+	 *            The directory to sync
+	 * @return The outcome of the sync
+	 * @throws IOException
+	 *             If reading the PBO or accessing any of the files fails or an
+	 *             entry's path points outside of the given directory
+	 */
+	public Result sync(PBO pbo, Path directory) throws IOException {
+		long start = System.nanoTime();
+
+		directory = directory.toAbsolutePath().normalize();
+		Files.createDirectories(directory);
+
+		Result result = new Result();
+		Map<Path, PBOEntry> targets = getTargets(pbo, directory);
+		Map<Path, PBOEntry> changed = new LinkedHashMap<>();
+
+		try (IOTasks.Window<Map.Entry<Path, PBOEntry>> pending = new IOTasks.Window<>(executor, window)) {
+			for (Map.Entry<Path, PBOEntry> current : targets.entrySet()) {
+				if (pending.isFull()) {
+					addChanged(pending.await(), changed, result);
+				}
+
+				pending.submit(() -> isUpToDate(current.getValue(), current.getKey()) ? null : current);
+			}
+
+			while (!pending.isEmpty()) {
+				addChanged(pending.await(), changed, result);
+			}
+		}
+
+		// delete first as a vanished file may be in the way of a new directory (and vice versa)
+		if (deleteVanished) {
+			result.deletedCount = deleteVanished(directory, targets.keySet());
+		}
+
+		for (Path current : changed.keySet()) {
+			deleteMisnamed(current);
+		}
+
+		write(pbo, changed, result);
+
+		result.time = System.nanoTime() - start;
+
+		return result;
+	}
+
+	/**
+	 * Adds the given outcome of a comparison to the given changed files
+	 * 
+	 * @param outcome
+	 *            The changed file and its entry or <code>null</code> if the
+	 *            file has been up to date
+	 * @param changed
+	 *            The changed files
+	 * @param result
+	 *            The result to count unchanged files in
+	 */
+	protected void addChanged(Map.Entry<Path, PBOEntry> outcome, Map<Path, PBOEntry> changed, Result result) {
+		if (outcome == null) {
+			result.unchangedCount++;
+		} else {
+			changed.put(outcome.getKey(), outcome.getValue());
+		}
+	}
+
+	/**
+	 * Checks whether the given file already has the content of the given
+	 * entry. If the content is compared and matches, the modification time of
+	 * the file gets updated.
+	 * 
+	 * @param entry
+	 *            The entry
+	 * @param target
+	 *            The file the entry is extracted to
+	 * @throws IOException
+	 */
+	protected boolean isUpToDate(PBOEntry entry, Path target) throws IOException {
+		BasicFileAttributes attributes;
+
+		try {
+			attributes = Files.readAttributes(target, BasicFileAttributes.class);
+		} catch (FileSystemException e) {
+			// the file (or one of its parents) doesn't exist or isn't a directory
+			return false;
+		}
+
+		if (!attributes.isRegularFile() || attributes.size() != entry.getOriginalSize() || !hasExactName(target)) {
+			return false;
+		}
+
+		if (compareContent) {
+			if (!PBOContentHash.of(target).equals(PBOContentHash.of(entry))) {
+				return false;
+			}
+
+			if (entry.getTimeStamp() != attributes.lastModifiedTime().to(TimeUnit.SECONDS)) {
+				setTimeStamp(entry, target);
+			}
+
+			return true;
+		}
+
+		return entry.getTimeStamp() != 0 && entry.getTimeStamp() == attributes.lastModifiedTime().to(TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Checks whether the name of the given (existing) file matches the given
+	 * path exactly. On a case-insensitive file system the file may have been
+	 * found under a name that only differs by case.
+	 * 
+	 * @param file
+	 *            The file to check
+	 * @throws IOException
+	 */
+	protected static boolean hasExactName(Path file) throws IOException {
+		return file.toRealPath(LinkOption.NOFOLLOW_LINKS).getFileName().toString()
+				.equals(file.getFileName().toString());
+	}
+
+	/**
+	 * Deletes the file the given path refers to if its name only differs from
+	 * the given path by case. Otherwise writing to the path would keep the old
+	 * name on a case-insensitive file system.
+	 * 
+	 * @param target
+	 *            The file an entry is about to be extracted to
+	 * @throws IOException
+	 */
+	protected static void deleteMisnamed(Path target) throws IOException {
+		Path real;
+
+		try {
+			real = target.toRealPath(LinkOption.NOFOLLOW_LINKS);
+		} catch (FileSystemException e) {
+			// the file (or one of its parents) doesn't exist
+			return;
+		}
+
+		if (!real.getFileName().toString().equals(target.getFileName().toString())
+				&& Files.isRegularFile(real, LinkOption.NOFOLLOW_LINKS)) {
+			Files.delete(real);
+		}
+	}
+
+	/**
+	 * Deletes everything inside the given directory that isn't one of the
+	 * given files or a directory containing any of them
+	 * 
+	 * @param directory
+	 *            The directory to clean up
+	 * @param files
+	 *            The files to keep
+	 * @return The amount of deleted files
+	 * @throws IOException
+	 */
+	protected int deleteVanished(Path directory, Set<Path> files) throws IOException {
+		List<Path> paths = new ArrayList<>();
+		try (Stream<Path> stream = Files.walk(directory)) {
+			stream.forEach(paths::add);
+		}
+
+		// the walk lists directories before their content
+		Collections.reverse(paths);
+
+		int deleted = 0;
+
+		for (Path current : paths) {
+			if (Files.isDirectory(current, LinkOption.NOFOLLOW_LINKS)) {
+				if (!current.equals(directory) && isEmpty(current)) {
+					Files.delete(current);
+				}
+			} else if (!files.contains(current)) {
+				Files.delete(current);
+				deleted++;
+			}
+		}
+
+		return deleted;
+	}
+
+	/**
+	 * Checks whether the given directory is empty
+	 * 
+	 * @param directory
+	 *            The directory to check
+	 * @throws IOException
+	 */
+	protected static boolean isEmpty(Path directory) throws IOException {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			return !stream.iterator().hasNext();
+		}
+	}
+
+	/**
+	 * Gets the locations the files of the given PBO are to be extracted to. If
+	 * a PBO contains the same path multiple times, only the first entry is
+	 * used.
+	 * 
+	 * @param pbo
+	 *            The PBO
+	 * @param directory
+	 *            The (normalized, absolute) directory to extract to
+	 * @return The entries mapped by their location in the order they are
+	 *         stored in the PBO-file
+	 * @throws IOException
+	 *             If an entry's path points outside of the given directory
+	 */
+	protected Map<Path, PBOEntry> getTargets(PBO pbo, Path directory) throws IOException {
+		List<PBOEntry> sorted = new ArrayList<>(pbo.getEntries());
+		sorted.sort(Comparator.comparingLong(PBOEntry::getStartOffset));
+
+		Map<Path, PBOEntry> targets = new LinkedHashMap<>();
+
+		for (PBOEntry current : sorted) {
+			targets.putIfAbsent(resolve(directory, current), current);
+		}
+
+		return targets;
+	}
+
+	/**
+	 * Writes the given entries to their respective files
+	 * 
+	 * @param pbo
+	 *            The PBO the entries belong to
+	 * @param targets
+	 *            The entries mapped by the file they are written to (in the
+	 *            order they are stored in the PBO-file)
+	 * @param result
+	 *            The result to record the extraction in
+	 * @throws IOException
+	 */
+	protected void write(PBO pbo, Map<Path, PBOEntry> targets, Result result) throws IOException {
+		Set<Path> directories = new HashSet<>();
+		PBOVerifier verifier = verify ? new PBOVerifier(pbo) : null;
+		ByteBuffer buffer = null;
+
+		try (IOTasks.Window<Long> pending = new IOTasks.Window<>(executor, window)) {
+			for (Map.Entry<Path, PBOEntry> entry : targets.entrySet()) {
+				Path target = entry.getKey();
+				PBOEntry current = entry.getValue();
+
+				Path parent = target.getParent();
+				if (directories.add(parent)) {
+					Files.createDirectories(parent);
+				}
+
+				if (current.isCompressed()) {
+					// read the compressed data in order but decompress it concurrently
+					ByteBuffer data = current.getData();
+
+					if (verifier != null) {
+						verifier.update(current.getStartOffset(), data);
+					}
+
+					if (pending.isFull()) {
+						result.bytesWritten += pending.await();
+					}
+
+					pending.submit(() -> decompress(current, data, target));
+				} else {
+					try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+							StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+						if (verifier == null) {
+							pbo.transferFully(current.getStartOffset(), current.getDataSize(), out);
+						} else {
+							if (buffer == null && !pbo.isMemoryMapped()) {
+								buffer = ByteBuffer.allocateDirect(PBOVerifier.BUFFER_SIZE);
+							}
+
+							copy(pbo, current, out, verifier, buffer);
+						}
+					}
+
+					setTimeStamp(current, target);
+
+					result.bytesWritten += current.getDataSize();
+				}
+
+				result.bytesRead += current.getDataSize();
+				result.fileCount++;
+			}
+
+			while (!pending.isEmpty()) {
+				result.bytesWritten += pending.await();
+			}
+
+			if (verifier != null) {
+				result.integrity = verifier.finish();
+			}
+		}
+	}
+
+	/**
+	 * Decompresses the given data and writes it to the given file
+	 * 
+	 * @param entry
+	 *            The entry the data belongs to
+	 * @param data
+	 *            The compressed data
+	 * @param target
+	 *            The file to write to
+	 * @return The amount of written bytes
+	 * @throws IOException
+	 */
+	protected long decompress(PBOEntry entry, ByteBuffer data, Path target) throws IOException {
+		byte[] content = LZSSInputStream.decompress(entry, data);
+
+		try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.wrap(content);
+
+			while (buffer.hasRemaining()) {
+				out.write(buffer);
+			}
+		}
+
+		setTimeStamp(entry, target);
+
+		return content.length;
+	}
+
+	/**
+	 * Copies the data of the given (uncompressed) entry into the given channel
+	 * while passing it to the given verifier
+	 * 
+	 * @param pbo
+	 *            The PBO the entry belongs to
+	 * @param entry
+	 *            The entry to copy
+	 * @param out
+	 *            The channel to write to
+	 * @param verifier
+	 *            The verifier to pass the data to
+	 * @param buffer
+	 *            The buffer to copy through. May be <code>null</code> if the
+	 *            PBO is memory-mapped
+	 * @throws IOException
+	 */
+	protected void copy(PBO pbo, PBOEntry entry, FileChannel out, PBOVerifier verifier, ByteBuffer buffer)
+			throws IOException {
+		long position = entry.getStartOffset();
+		long end = position + entry.getDataSize();
+
+		while (position < end) {
+			ByteBuffer data;
+
+			if (pbo.isMemoryMapped()) {
+				data = pbo.slice(position, (int) Math.min(end - position, PBO.SEGMENT_SIZE));
+			} else {
+				buffer.clear();
+				buffer.limit((int) Math.min(buffer.capacity(), end - position));
+
+				pbo.readFully(buffer, position);
+				buffer.flip();
+
+				data = buffer;
+			}
+
+			verifier.update(position, data);
+			position += data.remaining();
+
+			while (data.hasRemaining()) {
+				out.write(data);
+			}
+		}
+	}
+
+	/**
+	 * Sets the modification time of the given file to the time stamp of the
+	 * given entry if {@link #setPreserveTimeStamps(boolean) enabled}
+	 * 
+	 * @param entry
+	 *            The entry the file has been extracted from
+	 * @param target
+	 *            The extracted file
+	 * @throws IOException
+	 */
+	protected void setTimeStamp(PBOEntry entry, Path target) throws IOException {
+		if (preserveTimeStamps && entry.getTimeStamp() != 0) {
+			Files.setLastModifiedTime(target, FileTime.from(entry.getTimeStamp(), TimeUnit.SECONDS));
+		}
+	}
+
+	/**
+	 * Resolves the location the given entry is to be extracted to
+	 * 
+	 * @param directory
+	 *            The (normalized, absolute) directory to extract to
+	 * @param entry
+	 *            The entry to resolve
+	 * @return The resolved location
+	 * @throws IOException
+	 *             If the entry's path points outside of the given directory
+	 */
+	protected Path resolve(Path directory, PBOEntry entry) throws IOException {
+		Path target = directory;
+
+		for (String current : entry.getFileName().split("[\\\\/]")) {
+			if (!current.isEmpty()) {
+				target = target.resolve(current);
+			}
+		}
+
+		target = target.normalize();
+
+		if (!target.startsWith(directory) || target.equals(directory)) {
+			throw new IOException("The entry " + entry.getFileName() + " points outside of the target directory");
+		}
+
+		return target;
+	}
+}
@@ -0,0 +1,276 @@
+package raven.pbo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The base of the indices caching information about PBO-files on disk (see
+ * {@linkplain PBOHeaderIndex} and {@linkplain PBOContentIndex}). The cached
+ * records are mapped by the normalized absolute path of their PBO-file and
+ * written to the index file as a whole via {@link #save()}.<br>
+ * An index file that is missing, has been written by an incompatible version
+ * or is corrupt is treated as if it was empty: the index is simply rebuilt.
+ * 
+ * @author Raven
+ * 
+ * @param <R>
+ *            The type of the cached records
+ */
+public abstract class PBOFileIndex<R> {
+
+	/**
+	 * The size of the buffers used for reading and writing index files
+	 */
+	protected static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The location of the index file or <code>null</code> if the index isn't
+	 * persisted
+	 */
+	protected Path location;
+	/**
+	 * The cached records mapped by the normalized absolute path of their PBO
+	 */
+	protected Map<String, R> records;
+	/**
+	 * Whether the index has been modified since it has been loaded or saved
+	 */
+	protected volatile boolean modified;
+	/**
+	 * The amount of lookups that have been served from the cached records
+	 */
+	protected AtomicLong hits;
+	/**
+	 * The amount of lookups that required reading the PBO
+	 */
+	protected AtomicLong misses;
+
+
+	/**
+	 * Creates a new, empty index
+	 * 
+	 * @param location
+	 *            The location of the index file or <code>null</code> if the
+	 *            index isn't persisted
+	 */
+	protected PBOFileIndex(Path location) {
+		this.location = location;
+		this.records = new ConcurrentHashMap<>();
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+	}
+
+	/**
+	 * Gets the magic number at the start of the index file
+	 */
+	protected abstract int getMagic();
+
+	/**
+	 * Gets the version of the index file format. Files of other versions are
+	 * ignored.
+	 */
+	protected abstract int getVersion();
+
+	/**
+	 * Writes the given record to the given stream
+	 * 
+	 * @param record
+	 *            The record to write
+	 * @param out
+	 *            The stream to write to
+	 * @throws IOException
+	 */
+	protected abstract void writeRecord(R record, DataOutputStream out) throws IOException;
+
+	/**
+	 * Reads a record from the given stream
+	 * 
+	 * @param in
+	 *            The stream to read from
+	 * @param limit
+	 *            The size of the index file. No count read from the file may
+	 *            exceed it (see {@link #readCount(DataInput, long)})
+	 * @return The read record
+	 * @throws IOException
+	 *             If the record can't be read or is invalid
+	 */
+	protected abstract R readRecord(DataInputStream in, long limit) throws IOException;
+
+	/**
+	 * Reads the records stored at the location of this index. If there is no
+	 * index file or it can't be read, the index stays empty.
+	 */
+	protected void read() {
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(location), BUFFER_SIZE))) {
+			if (in.readInt() != getMagic() || in.readInt() != getVersion()) {
+				return;
+			}
+
+			long limit = Files.size(location);
+			int count = readCount(in, limit);
+
+			for (int i = 0; i < count; i++) {
+				String path = in.readUTF();
+				records.put(path, readRecord(in, limit));
+			}
+		} catch (NoSuchFileException e) {
+			return;
+		} catch (IOException | RuntimeException e) {
+			// an unreadable index is simply rebuilt
+			records.clear();
+			modified = true;
+		}
+	}
+
+	/**
+	 * Reads a count (e.g. the length of an array) from the given stream and
+	 * checks that it is plausible. As every counted element occupies at least
+	 * one byte of the index file, a count can't exceed the file's size.
+	 * 
+	 * @param in
+	 *            The stream to read from
+	 * @param limit
+	 *            The maximum count
+	 * @return The read count
+	 * @throws IOException
+	 *             If the count is negative or exceeds the limit
+	 */
+	protected static int readCount(DataInput in, long limit) throws IOException {
+		int count = in.readInt();
+
+		if (count < 0 || count > limit) {
+			throw new IOException("Invalid count in PBO index file: " + count);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Gets the key the record of the given PBO-file is stored by
+	 * 
+	 * @param file
+	 *            The PBO-file
+	 */
+	protected static String getKey(Path file) {
+		return file.toAbsolutePath().normalize().toString();
+	}
+
+	/**
+	 * Removes the cached records of all PBOs that don't exist anymore
+	 * 
+	 * @return The amount of removed records
+	 */
+	public int prune() {
+		int removed = 0;
+
+		for (Iterator<String> it = records.keySet().iterator(); it.hasNext();) {
+			if (!new File(it.next()).isFile()) {
+				it.remove();
+				removed++;
+			}
+		}
+
+		if (removed > 0) {
+			modified = true;
+		}
+
+		return removed;
+	}
+
+	/**
+	 * Writes this index to its location if it has been modified. The file is
+	 * replaced atomically so that a concurrent reader never sees a partially
+	 * written index.
+	 * 
+	 * @throws IOException
+	 * @throws IllegalStateException
+	 *             If this index doesn't have a location
+	 */
+	public synchronized void save() throws IOException {
+		if (location == null) {
+			throw new IllegalStateException("This index doesn't have a location to be saved to");
+		}
+
+		if (!modified) {
+			return;
+		}
+
+		modified = false;
+
+		try {
+			IOTasks.replaceAtomically(location, temp -> {
+				try (DataOutputStream out = new DataOutputStream(
+						new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+					out.writeInt(getMagic());
+					out.writeInt(getVersion());
+
+					// take a snapshot as the map may be modified concurrently
+					Map<String, R> snapshot = new HashMap<>(records);
+					out.writeInt(snapshot.size());
+
+					for (Map.Entry<String, R> current : snapshot.entrySet()) {
+						out.writeUTF(current.getKey());
+						writeRecord(current.getValue(), out);
+					}
+				}
+
+				return null;
+			});
+		} catch (IOException | RuntimeException e) {
+			modified = true;
+
+			throw e;
+		}
+	}
+
+	/**
+	 * Gets the location of the index file or <code>null</code> if this index
+	 * isn't persisted
+	 */
+	public Path getLocation() {
+		return location;
+	}
+
+	/**
+	 * Gets the amount of PBOs whose records are cached in this index
+	 */
+	public int size() {
+		return records.size();
+	}
+
+	/**
+	 * Checks whether this index has been modified since it has been loaded or
+	 * saved
+	 */
+	public boolean isModified() {
+		return modified;
+	}
+
+	/**
+	 * Gets the amount of lookups that have been served from the cached records
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the amount of lookups that required reading the PBO
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+}
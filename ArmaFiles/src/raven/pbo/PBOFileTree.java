@@ -0,0 +1,313 @@
+package raven.pbo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A directory tree over the entries of a {@linkplain PBO}. The entry names are
+ * split into their path segments and stored in a {@linkplain PathTrie} so that
+ * listing a directory, walking a subtree or matching a glob pattern only visits
+ * the relevant part of the tree instead of every entry of the PBO. All
+ * lookups are case-insensitive and accept both backslashes and forward slashes
+ * as separators.<br>
+ * The results are ordered by name (case-insensitive). A tree may be used by
+ * multiple threads at the same time as it is never modified after it has been
+ * created.
+ * 
+ * @author Raven
+ *
+ */
+public class PBOFileTree {
+
+	/**
+	 * The trie containing the files of the PBO. The children of every node
+	 * are sorted by name once the trie has been built
+	 */
+	protected final PathTrie<PBOEntry> trie;
+
+
+	/**
+	 * Creates a new tree over the files of the given PBO. If a path occurs
+	 * multiple times inside the PBO, the first occurrence is used.
+	 * 
+	 * @param pbo
+	 *            The PBO to create the tree for
+	 */
+	public PBOFileTree(PBO pbo) {
+		this(pbo.getEntries());
+	}
+
+	/**
+	 * Creates a new tree over the given entries. If a path occurs multiple times,
+	 * the first occurrence is used.
+	 * 
+	 * @param entries
+	 *            The entries to put into the tree (without boundary entries)
+	 */
+	public PBOFileTree(List<PBOEntry> entries) {
+		trie = new PathTrie<>();
+
+		for (PBOEntry current : entries) {
+			PathTrie.Node<PBOEntry> node = trie.getOrCreateNode(current.getFileName());
+
+			if (node.getValue() == null && node.getParent() != null) {
+				trie.setValue(node, current);
+			}
+		}
+
+		trie.sort();
+	}
+
+	/**
+	 * Gets the amount of files in this tree
+	 */
+	public int size() {
+		return trie.size();
+	}
+
+	/**
+	 * Gets the entry with the given path
+	 * 
+	 * @param path
+	 *            The (case-insensitive) path of the file
+	 * @return The respective entry or <code>null</code> if there is none
+	 */
+	public PBOEntry getEntry(String path) {
+		return trie.get(path);
+	}
+
+	/**
+	 * Checks whether the given path denotes a directory (that is whether there
+	 * are any files below it). The empty path denotes the root directory.
+	 * 
+	 * @param path
+	 *            The (case-insensitive) path to check
+	 */
+	public boolean isDirectory(String path) {
+		PathTrie.Node<PBOEntry> node = trie.getNode(path);
+
+		return node != null && (node.hasChildren() || node.getParent() == null);
+	}
+
+	/**
+	 * Lists the files directly contained in the given directory
+	 * 
+	 * @param directory
+	 *            The (case-insensitive) path of the directory. The empty path
+	 *            denotes the root directory
+	 * @return The entries of the respective files. If there is no such
+	 *         directory, the list is empty
+	 */
+	public List<PBOEntry> list(String directory) {
+		PathTrie.Node<PBOEntry> node = trie.getNode(directory);
+
+		if (node == null) {
+			return Collections.emptyList();
+		}
+
+		List<PBOEntry> files = new ArrayList<>();
+		for (PathTrie.Node<PBOEntry> current : node.getChildren()) {
+			if (current.getValue() != null) {
+				files.add(current.getValue());
+			}
+		}
+
+		return files;
+	}
+
+	/**
+	 * Lists the names of the sub-directories directly contained in the given
+	 * directory
+	 * 
+	 * @param directory
+	 *            The (case-insensitive) path of the directory. The empty path
+	 *            denotes the root directory
+	 * @return The names of the respective sub-directories. If there is no such
+	 *         directory, the list is empty
+	 */
+	public List<String> listDirectories(String directory) {
+		PathTrie.Node<PBOEntry> node = trie.getNode(directory);
+
+		if (node == null) {
+			return Collections.emptyList();
+		}
+
+		List<String> directories = new ArrayList<>();
+		for (PathTrie.Node<PBOEntry> current : node.getChildren()) {
+			if (current.hasChildren()) {
+				directories.add(current.getName());
+			}
+		}
+
+		return directories;
+	}
+
+	/**
+	 * Gets all files contained in the given directory or any of its
+	 * sub-directories
+	 * 
+	 * @param directory
+	 *            The (case-insensitive) path of the directory. The empty path
+	 *            denotes the root directory
+	 * @return The entries of the respective files (depth-first). If there is no
+	 *         such directory, the list is empty
+	 */
+	public List<PBOEntry> walk(String directory) {
+		PathTrie.Node<PBOEntry> node = trie.getNode(directory);
+
+		if (node == null) {
+			return Collections.emptyList();
+		}
+
+		List<PBOEntry> files = new ArrayList<>();
+		for (PathTrie.Node<PBOEntry> current : node.getChildren()) {
+			collect(current, files);
+		}
+
+		return files;
+	}
+
+	/**
+	 * Gets all files whose path matches the given glob pattern. Inside a path
+	 * segment <code>*</code> matches any amount of characters and
+	 * <code>?</code> a single character. A segment consisting of
+	 * <code>**</code> matches any amount of directories (including none).
+	 * Segments without wildcards are looked up directly so that only the
+	 * matching subtrees are visited. E.g. <code>functions\**\*.sqf</code>
+	 * matches all SQF-files inside the <code>functions</code> directory.
+	 * 
+	 * @param pattern
+	 *            The (case-insensitive) pattern
+	 * @return The entries of the matching files (depth-first)
+	 */
+	public List<PBOEntry> glob(String pattern) {
+		List<String> segments = new ArrayList<>();
+
+		int start = 0;
+		while (start < pattern.length()) {
+			int end = PathTrie.nextSeparator(pattern, start);
+
+			if (end > start) {
+				String segment = PathTrie.key(pattern.substring(start, end));
+
+				// consecutive ** are redundant
+				if (!segment.equals("**") || segments.isEmpty() || !segments.get(segments.size() - 1).equals("**")) {
+					segments.add(segment);
+				}
+			}
+
+			start = end + 1;
+		}
+
+		Set<PBOEntry> matches = new LinkedHashSet<>();
+		glob(trie.getRoot(), segments, 0, matches);
+
+		return new ArrayList<>(matches);
+	}
+
+	/**
+	 * Collects the files matching the given pattern segments
+	 * 
+	 * @param node
+	 *            The node the remaining segments are relative to
+	 * @param segments
+	 *            The (lower-case) segments of the pattern
+	 * @param index
+	 *            The index of the segment to match against the children of the
+	 *            given node
+	 * @param matches
+	 *            The set to add the matching entries to
+	 */
+	protected void glob(PathTrie.Node<PBOEntry> node, List<String> segments, int index, Set<PBOEntry> matches) {
+		if (index == segments.size()) {
+			if (node.getValue() != null) {
+				matches.add(node.getValue());
+			}
+
+			return;
+		}
+
+		String segment = segments.get(index);
+
+		if (segment.equals("**")) {
+			// match no directory at all
+			glob(node, segments, index + 1, matches);
+
+			// let the ** consume one more segment
+			for (PathTrie.Node<PBOEntry> current : node.getChildren()) {
+				glob(current, segments, index, matches);
+			}
+		} else if (segment.indexOf('*') < 0 && segment.indexOf('?') < 0) {
+			PathTrie.Node<PBOEntry> child = node.getChild(segment);
+
+			if (child != null) {
+				glob(child, segments, index + 1, matches);
+			}
+		} else {
+			for (PathTrie.Node<PBOEntry> current : node.getChildren()) {
+				if (matches(segment, PathTrie.key(current.getName()))) {
+					glob(current, segments, index + 1, matches);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the entries of the given node and all nodes below it to the given
+	 * list
+	 * 
+	 * @param node
+	 *            The node to start at
+	 * @param files
+	 *            The list to add the entries to
+	 */
+	protected static void collect(PathTrie.Node<PBOEntry> node, List<PBOEntry> files) {
+		if (node.getValue() != null) {
+			files.add(node.getValue());
+		}
+
+		for (PathTrie.Node<PBOEntry> current : node.getChildren()) {
+			collect(current, files);
+		}
+	}
+
+	/**
+	 * Checks whether the given name matches the given wildcard pattern
+	 * 
+	 * @param pattern
+	 *            The pattern that may contain <code>*</code> and <code>?</code>
+	 * @param name
+	 *            The name to check
+	 */
+	protected static boolean matches(String pattern, String name) {
+		int p = 0;
+		int n = 0;
+		int starPattern = -1;
+		int starName = 0;
+
+		while (n < name.length()) {
+			if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == name.charAt(n))) {
+				p++;
+				n++;
+			} else if (p < pattern.length() && pattern.charAt(p) == '*') {
+				starPattern = p++;
+				starName = n;
+			} else if (starPattern >= 0) {
+				// let the last * consume one more character
+				p = starPattern + 1;
+				n = ++starName;
+			} else {
+				return false;
+			}
+		}
+
+		while (p < pattern.length() && pattern.charAt(p) == '*') {
+			p++;
+		}
+
+		return p == pattern.length();
+	}
+}
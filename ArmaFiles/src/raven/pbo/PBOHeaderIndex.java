@@ -0,0 +1,378 @@
+package raven.pbo;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A persistent index caching the parsed headers of PBO-files. Each header is
+ * stored together with the path, size and modification time of its PBO. A
+ * {@linkplain PBO} opened via {@link #open(File)} whose file hasn't changed
+ * since its header has been cached is created without reading anything out of
+ * its file. Headers of new or modified PBOs are parsed and (re)cached on the
+ * fly. The index is written back to disk via {@link #save()}.<br>
+ * An index may be used by multiple threads at the same time.
+ * 
+ * @author Raven
+ *
+ */
+public class PBOHeaderIndex extends PBOFileIndex<PBOHeaderIndex.Record> {
+
+	/**
+	 * The magic number at the start of an index file
+	 */
+	protected static final int MAGIC = 0x50424849;
+	/**
+	 * The version of the index file format
+	 */
+	protected static final int VERSION = 5;
+
+	/**
+	 * The cached header of a single PBO
+	 * 
+	 * @author Raven
+	 *
+	 */
+	protected static class Record {
+		/**
+		 * The size of the PBO-file
+		 */
+		protected final long size;
+		/**
+		 * The modification time of the PBO-file in milliseconds since the epoch
+		 */
+		protected final long lastModified;
+		/**
+		 * The offset at which the content of the PBO starts
+		 */
+		protected final long contentStart;
+		/**
+		 * The header extension or <code>null</code> if there is none
+		 */
+		protected final String[] headerExtension;
+		/**
+		 * The file names of all entries (including boundary entries)
+		 */
+		protected final String[] names;
+		/**
+		 * The packing method, original size, reserved field, time stamp and data
+		 * size of each entry (5 consecutive values per entry)
+		 */
+		protected final int[] fields;
+		/**
+		 * The Bloom filter over the paths of the entries
+		 */
+		protected final PBOPathFilter pathFilter;
+
+
+		protected Record(long size, long lastModified, long contentStart, String[] headerExtension, String[] names,
+				int[] fields, PBOPathFilter pathFilter) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.contentStart = contentStart;
+			this.headerExtension = headerExtension;
+			this.names = names;
+			this.fields = fields;
+			this.pathFilter = pathFilter;
+		}
+
+		/**
+		 * Creates a record out of the header of the given PBO
+		 * 
+		 * @param pbo
+		 *            The PBO to create the record for
+		 * @param size
+		 *            The size of the PBO-file
+		 * @param lastModified
+		 *            The modification time of the PBO-file
+		 * @return The created record
+		 */
+		protected static Record of(PBO pbo, long size, long lastModified) {
+			List<PBOEntry> entries = pbo.getAllEntries();
+			String[] names = new String[entries.size()];
+			int[] fields = new int[5 * names.length];
+
+			for (int i = 0; i < names.length; i++) {
+				PBOEntry current = entries.get(i);
+
+				names[i] = current.fileName;
+				fields[5 * i] = current.packingMethod;
+				fields[5 * i + 1] = current.originalSize;
+				fields[5 * i + 2] = current.reserved;
+				fields[5 * i + 3] = current.timeStamp;
+				fields[5 * i + 4] = current.dataSize;
+			}
+
+			return new Record(size, lastModified, pbo.contentStart, pbo.headerExtension, names, fields,
+					pbo.getPathFilter());
+		}
+
+		/**
+		 * Populates the header-related fields of the given PBO with the content of
+		 * this record
+		 * 
+		 * @param pbo
+		 *            The PBO to populate
+		 */
+		protected void restore(PBO pbo) {
+			long relativeStartOffset = 0;
+
+			for (int i = 0; i < names.length; i++) {
+				PBOEntry entry = new PBOEntry(names[i], fields[5 * i], fields[5 * i + 1], fields[5 * i + 2],
+						fields[5 * i + 3], fields[5 * i + 4], relativeStartOffset, pbo);
+
+				relativeStartOffset += entry.getDataSize();
+				pbo.entries.add(entry);
+			}
+
+			pbo.headerExtension = headerExtension;
+			pbo.contentStart = contentStart;
+			pbo.pathFilter = pathFilter;
+
+			pbo.buildIndex();
+		}
+
+		/**
+		 * Writes this record to the given stream
+		 * 
+		 * @param out
+		 *            The stream to write to
+		 * @throws IOException
+		 */
+		protected void write(DataOutputStream out) throws IOException {
+			out.writeLong(size);
+			out.writeLong(lastModified);
+			out.writeLong(contentStart);
+
+			out.writeInt(headerExtension == null ? -1 : headerExtension.length);
+			if (headerExtension != null) {
+				for (String current : headerExtension) {
+					out.writeUTF(current);
+				}
+			}
+
+			out.writeInt(names.length);
+			for (int i = 0; i < names.length; i++) {
+				out.writeUTF(names[i]);
+
+				for (int j = 5 * i; j < 5 * i + 5; j++) {
+					out.writeInt(fields[j]);
+				}
+			}
+
+			pathFilter.write(out);
+		}
+
+		/**
+		 * Reads a record from the given stream
+		 * 
+		 * @param in
+		 *            The stream to read from
+		 * @param limit
+		 *            The maximum value of any count read from the stream
+		 * @return The read record
+		 * @throws IOException
+		 */
+		protected static Record read(DataInputStream in, long limit) throws IOException {
+			long size = in.readLong();
+			long lastModified = in.readLong();
+			long contentStart = in.readLong();
+
+			int extensionLength = in.readInt();
+			String[] headerExtension = null;
+			if (extensionLength != -1) {
+				if (extensionLength < 0 || extensionLength > limit) {
+					throw new IOException("Invalid header extension length in PBO header index");
+				}
+
+				headerExtension = new String[extensionLength];
+
+				for (int i = 0; i < extensionLength; i++) {
+					headerExtension[i] = in.readUTF();
+				}
+			}
+
+			int count = readCount(in, limit);
+			if (count < 1) {
+				throw new IOException("Invalid entry count in PBO header index");
+			}
+
+			String[] names = new String[count];
+			int[] fields = new int[5 * count];
+			for (int i = 0; i < count; i++) {
+				names[i] = in.readUTF();
+
+				for (int j = 5 * i; j < 5 * i + 5; j++) {
+					fields[j] = in.readInt();
+				}
+			}
+
+			return new Record(size, lastModified, contentStart, headerExtension, names, fields,
+					PBOPathFilter.read(in, count));
+		}
+	}
+
+	/**
+	 * Creates a new, empty index that will be saved to the given location
+	 * 
+	 * @param location
+	 *            The location of the index file
+	 */
+	public PBOHeaderIndex(Path location) {
+		super(location);
+
+		if (location == null) {
+			throw new IllegalArgumentException("The location must not be null!");
+		}
+	}
+
+	/**
+	 * Loads the index stored at the given location. If there is no index file
+	 * or it can't be read (e.g. because it has been written by an incompatible
+	 * version or is corrupt), an empty index is returned that will be rebuilt
+	 * while PBOs are opened.
+	 * 
+	 * @param location
+	 *            The location of the index file
+	 * @return The loaded index
+	 */
+	public static PBOHeaderIndex load(Path location) {
+		PBOHeaderIndex index = new PBOHeaderIndex(location);
+		index.read();
+
+		return index;
+	}
+
+	@Override
+	protected int getMagic() {
+		return MAGIC;
+	}
+
+	@Override
+	protected int getVersion() {
+		return VERSION;
+	}
+
+	@Override
+	protected void writeRecord(Record record, DataOutputStream out) throws IOException {
+		record.write(out);
+	}
+
+	@Override
+	protected Record readRecord(DataInputStream in, long limit) throws IOException {
+		return Record.read(in, limit);
+	}
+
+	/**
+	 * Opens the given PBO (see {@link #open(File, boolean, PBOChannelPool)})
+	 * using the default {@linkplain PBOChannelPool}
+	 * 
+	 * @param file
+	 *            The PBO-file to open
+	 * @return The opened {@linkplain PBO}
+	 * @throws IOException
+	 */
+	public PBO open(File file) throws IOException {
+		return open(file, false, PBOChannelPool.getDefault());
+	}
+
+	/**
+	 * Opens the given PBO. If the index contains the header of the PBO and the
+	 * file's size and modification time haven't changed since, the PBO is
+	 * created without reading its header from the file. Otherwise the header is
+	 * read and stored in this index.
+	 * 
+	 * @param file
+	 *            The PBO-file to open
+	 * @param memoryMapped
+	 *            Whether the PBO should be memory-mapped (see
+	 *            {@link PBO#PBO(File, boolean)})
+	 * @param channelPool
+	 *            The pool managing the channel used for reading the PBO
+	 * @return The opened {@linkplain PBO}
+	 * @throws IOException
+	 */
+	public PBO open(File file, boolean memoryMapped, PBOChannelPool channelPool) throws IOException {
+		Path path = file.toPath().toAbsolutePath().normalize();
+		String key = getKey(path);
+
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		long size = attributes.size();
+		long lastModified = attributes.lastModifiedTime().toMillis();
+
+		Record record = records.get(key);
+
+		if (record != null && record.size == size && record.lastModified == lastModified) {
+			hits.incrementAndGet();
+
+			return new PBO(file, memoryMapped, channelPool, record);
+		}
+
+		misses.incrementAndGet();
+
+		PBO pbo = new PBO(file, memoryMapped, channelPool);
+
+		records.put(key, Record.of(pbo, size, lastModified));
+		modified = true;
+
+		return pbo;
+	}
+
+	/**
+	 * Finds the cached PBOs that might contain the given game path (that is the
+	 * path prefixed with the PBO's prefix) by consulting their
+	 * {@linkplain PBOPathFilter}s. PBOs without a prefix are treated as if their
+	 * prefix was their file name (without extension). Neither the PBOs nor the
+	 * files are accessed. As the cached headers might be outdated, the
+	 * candidates still have to be opened and checked.
+	 * 
+	 * @param gamePath
+	 *            The (case-insensitive) game path to search for
+	 * @return The PBO-files that might contain the path
+	 */
+	public List<File> findCandidates(String gamePath) {
+		List<File> candidates = new ArrayList<>();
+
+		for (Map.Entry<String, Record> current : records.entrySet()) {
+			Record record = current.getValue();
+			String prefix = PBO.getPrefix(record.headerExtension);
+
+			if (prefix == null) {
+				String name = new File(current.getKey()).getName();
+				int index = name.lastIndexOf('.');
+
+				prefix = index < 0 ? name : name.substring(0, index);
+			}
+
+			if (record.pathFilter.mightContain(prefix, gamePath)) {
+				candidates.add(new File(current.getKey()));
+			}
+		}
+
+		return candidates;
+	}
+
+	/**
+	 * Removes the cached header of the given PBO
+	 * 
+	 * @param file
+	 *            The PBO-file whose header should be removed
+	 * @return Whether there was a cached header
+	 */
+	public boolean remove(File file) {
+		boolean removed = records.remove(getKey(file.toPath())) != null;
+
+		if (removed) {
+			modified = true;
+		}
+
+		return removed;
+	}
+}
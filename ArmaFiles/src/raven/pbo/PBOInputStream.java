@@ -1,8 +1,14 @@
 package raven.pbo;
 
-import java.io.FileInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import raven.misc.ByteBufferInputStream;
 
 /**
  * An {@linkplain InputStream} reading the content of a file inside a PBO-file
@@ -12,23 +18,39 @@ import java.io.InputStream;
  */
 public class PBOInputStream extends InputStream {
 
+	/**
+	 * The size of the buffer used for transferring the content to another stream
+	 */
+	protected static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
 	/**
 	 * The {@linkplain PBOEntry} this stream corresponds to
 	 */
 	protected PBOEntry entry;
 	/**
-	 * The internal stream used to access the data
+	 * The internal stream used to access the data. This is either a
+	 * {@linkplain PBORangeInputStream} on the entry's range or a
+	 * {@linkplain ByteBufferInputStream} on the entry's slice if the PBO is
+	 * memory-mapped. For compressed entries this stream gets wrapped into a
+	 * {@linkplain LZSSInputStream}
 	 */
-	protected FileInputStream internalStream;
+	protected InputStream internalStream;
 	/**
 	 * The amount of already read bytes
 	 */
-	protected int readBytes;
+	protected long readBytes;
+	/**
+	 * The amount of bytes this stream provides. For compressed entries this is
+	 * the size after decompression
+	 */
+	protected long size;
 
 
 	/**
 	 * Creates a new instance of this stream working on the given
-	 * {@linkplain PBOEntry}
+	 * {@linkplain PBOEntry}. If the entry's PBO has a content cache (see
+	 * {@link PBO#setContentCache(IPBOContentCache)}), the content is served
+	 * from that cache.
 	 * 
 	 * @param entry
 	 *            The entry to work on
@@ -38,31 +60,61 @@ public class PBOInputStream extends InputStream {
 	 *             If the provided entry is a boundary entry
 	 */
 	public PBOInputStream(PBOEntry entry) throws IOException {
+		this(entry, true);
+	}
+
+	/**
+	 * Creates a new instance of this stream working on the given
+	 * {@linkplain PBOEntry}
+	 * 
+	 * @param entry
+	 *            The entry to work on
+	 * @param useCache
+	 *            Whether the content cache of the entry's PBO (if any) should
+	 *            be used. Caches have to pass <code>false</code> in order to
+	 *            read the actual content
+	 * @throws IOException
+	 *             If there are any errors during reading
+	 * @throws IllegalStateException
+	 *             If the provided entry is a boundary entry
+	 */
+	protected PBOInputStream(PBOEntry entry, boolean useCache) throws IOException {
 		this.entry = entry;
 
 		if (entry.isBoundary()) {
 			throw new IllegalStateException("Can't create a stream of a boundary entry!");
 		}
 
-		internalStream = new FileInputStream(entry.getPBO().toFile());
 		readBytes = 0;
 
-		pointStream();
-	}
+		IPBOContentCache cache = useCache ? entry.getPBO().getContentCache() : null;
 
-	/**
-	 * Points the internal stream to the beginning of the file represented by the
-	 * {@link #entry} inside the PBO
-	 * 
-	 * @throws IOException
-	 */
-	protected void pointStream() throws IOException {
-		internalStream.getChannel().position(entry.getStartOffset());
+		if (cache != null && entry.getOriginalSize() <= Integer.MAX_VALUE) {
+			ByteBuffer content = cache.get(entry);
+
+			internalStream = new ByteBufferInputStream(content);
+			size = content.remaining();
+
+			return;
+		}
+
+		if (entry.getPBO().isMemoryMapped() && entry.getDataSize() <= Integer.MAX_VALUE) {
+			internalStream = new ByteBufferInputStream(entry.getData());
+		} else {
+			internalStream = new PBORangeInputStream(entry.getPBO(), entry.getStartOffset(), entry.getDataSize());
+		}
+
+		if (entry.isCompressed()) {
+			size = entry.getOriginalSize();
+			internalStream = new LZSSInputStream(internalStream, size);
+		} else {
+			size = entry.getDataSize();
+		}
 	}
 
 	@Override
 	public int read() throws IOException {
-		if (readBytes >= entry.getDataSize()) {
+		if (readBytes >= size) {
 			return -1;
 		}
 
@@ -71,27 +123,131 @@ public class PBOInputStream extends InputStream {
 		return internalStream.read();
 	}
 
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (len == 0) {
+			return 0;
+		}
+		if (readBytes >= size) {
+			return -1;
+		}
+
+		int count = internalStream.read(b, off, (int) Math.min(len, size - readBytes));
+
+		if (count > 0) {
+			readBytes += count;
+		}
+
+		return count;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		if (n <= 0) {
+			return 0;
+		}
+
+		long skipped = internalStream.skip(Math.min(n, size - readBytes));
+		readBytes += skipped;
+
+		return skipped;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (int) Math.min(size - readBytes, internalStream.available());
+	}
+
+	/**
+	 * Transfers the remaining content of this stream into the given
+	 * {@linkplain OutputStream}
+	 * 
+	 * @param out
+	 *            The stream to write the content to
+	 * @return The amount of transferred bytes
+	 * @throws IOException
+	 */
+	public long transferTo(OutputStream out) throws IOException {
+		byte[] buffer = new byte[(int) Math.max(1, Math.min(size - readBytes, TRANSFER_BUFFER_SIZE))];
+		long transferred = 0;
+
+		int count;
+		while ((count = read(buffer, 0, buffer.length)) >= 0) {
+			out.write(buffer, 0, count);
+			transferred += count;
+		}
+
+		return transferred;
+	}
+
+	/**
+	 * Reads the remaining content of this stream in one go
+	 * 
+	 * @return The read bytes
+	 * @throws IOException
+	 *             If reading fails or the remaining content is bigger than
+	 *             {@link Integer#MAX_VALUE} bytes
+	 */
+	public byte[] readAllBytes() throws IOException {
+		if (size - readBytes > Integer.MAX_VALUE) {
+			throw new IOException("The content of " + entry.getFileName() + " is too big to be read into an array");
+		}
+
+		byte[] content = new byte[(int) (size - readBytes)];
+
+		int offset = 0;
+		while (offset < content.length) {
+			int count = read(content, offset, content.length - offset);
+
+			if (count < 0) {
+				throw new EOFException("Unexpected end of data for " + entry.getFileName());
+			}
+
+			offset += count;
+		}
+
+		return content;
+	}
+
+	/**
+	 * Gets the amount of bytes this stream provides in total. For compressed
+	 * entries this is the size after decompression
+	 */
+	public long getSize() {
+		return size;
+	}
+
 	/**
 	 * Reads the content of the file represented by the set {@linkplain PBOEntry} as
-	 * a String by simply casting all read bytes as a char and appending them to a
-	 * {@linkplain CharSequence}
+	 * a String by simply casting all read bytes as a char (that is decoding them
+	 * as ISO-8859-1)
 	 * 
 	 * @return The read String
 	 * @throws IOException
 	 */
 	public String readAll() throws IOException {
-		StringBuilder builder = new StringBuilder();
-
-		int c;
-		while ((c = read()) >= 0) {
-			builder.append((char) c);
-		}
+		return readAll(StandardCharsets.ISO_8859_1);
+	}
 
-		return builder.toString();
+	/**
+	 * Reads the content of the file represented by the set {@linkplain PBOEntry} as
+	 * a String decoded with the given {@linkplain Charset}
+	 * 
+	 * @param charset
+	 *            The charset to use for decoding the content
+	 * @return The read String
+	 * @throws IOException
+	 */
+	public String readAll(Charset charset) throws IOException {
+		return new String(readAllBytes(), charset);
 	}
 
 	/**
-	 * This method closes the internal {@linkplain InputStream}
+	 * This method closes the internal {@linkplain InputStream}. The channel of
+	 * the {@linkplain PBO} stays open as it is shared with other streams.
 	 */
 	@Override
 	public void close() throws IOException {
@@ -0,0 +1,463 @@
+package raven.pbo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A virtual file system made up of a set of mounted {@linkplain PBO}s. Each PBO
+ * is mounted at its prefix (see {@link PBO#getPrefix()}) so that the files of
+ * a whole mod set can be resolved by their game path (e.g.
+ * <code>\x\cba\addons\main\script_macros.hpp</code>). All paths are kept in a
+ * single case-insensitive {@linkplain PathTrie} and are therefore resolved in
+ * time linear to the path's length.<br>
+ * If multiple PBOs provide the same path, the one mounted with the highest
+ * priority wins. Between PBOs of the same priority the
+ * {@linkplain OverlayPolicy} decides.<br>
+ * A mount table may be used by multiple threads at the same time.
+ * 
+ * @author Raven
+ *
+ */
+public class PBOMountTable {
+
+	/**
+	 * The policy deciding which of multiple PBOs of the same priority providing
+	 * the same path wins
+	 * 
+	 * @author Raven
+	 *
+	 */
+	public static enum OverlayPolicy {
+		/**
+		 * The PBO that has been mounted first wins
+		 */
+		FIRST_MOUNTED,
+		/**
+		 * The PBO that has been mounted last wins
+		 */
+		LAST_MOUNTED
+	}
+
+	/**
+	 * A mounted PBO
+	 * 
+	 * @author Raven
+	 *
+	 */
+	protected static class Mount {
+		/**
+		 * The mounted PBO
+		 */
+		protected final PBO pbo;
+		/**
+		 * The (normalized) path the PBO is mounted at
+		 */
+		protected final String mountPoint;
+		/**
+		 * The priority of the mount
+		 */
+		protected final int priority;
+		/**
+		 * The sequence number of the mount
+		 */
+		protected final long sequence;
+
+
+		protected Mount(PBO pbo, String mountPoint, int priority, long sequence) {
+			this.pbo = pbo;
+			this.mountPoint = mountPoint;
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+	}
+
+	/**
+	 * An entry provided by a mounted PBO
+	 * 
+	 * @author Raven
+	 *
+	 */
+	protected static class Candidate {
+		/**
+		 * The mount providing the entry
+		 */
+		protected final Mount mount;
+		/**
+		 * The entry
+		 */
+		protected final PBOEntry entry;
+
+
+		protected Candidate(Mount mount, PBOEntry entry) {
+			this.mount = mount;
+			this.entry = entry;
+		}
+	}
+
+	/**
+	 * The trie containing the candidates for every mounted path
+	 */
+	protected PathTrie<List<Candidate>> trie;
+	/**
+	 * The current mounts
+	 */
+	protected List<Mount> mounts;
+	/**
+	 * The policy for PBOs of the same priority
+	 */
+	protected volatile OverlayPolicy overlayPolicy;
+	/**
+	 * The comparator ordering candidates by descending precedence according to
+	 * {@link #overlayPolicy}
+	 */
+	protected volatile Comparator<Candidate> comparator;
+	/**
+	 * The sequence number of the next mount
+	 */
+	protected long nextSequence;
+	/**
+	 * The lock guarding {@link #trie} and {@link #mounts}
+	 */
+	protected ReadWriteLock lock;
+
+
+	/**
+	 * Creates a new, empty mount table in which the PBO mounted last wins
+	 */
+	public PBOMountTable() {
+		this(OverlayPolicy.LAST_MOUNTED);
+	}
+
+	/**
+	 * Creates a new, empty mount table
+	 * 
+	 * @param overlayPolicy
+	 *            The policy for PBOs of the same priority providing the same path
+	 */
+	public PBOMountTable(OverlayPolicy overlayPolicy) {
+		setOverlayPolicy(overlayPolicy);
+
+		trie = new PathTrie<>();
+		mounts = new ArrayList<>();
+		lock = new ReentrantReadWriteLock();
+	}
+
+	/**
+	 * Mounts the given PBO at its prefix with priority 0 (see
+	 * {@link #mount(PBO, String, int)})
+	 * 
+	 * @param pbo
+	 *            The PBO to mount
+	 */
+	public void mount(PBO pbo) {
+		mount(pbo, 0);
+	}
+
+	/**
+	 * Mounts the given PBO at its prefix. If the PBO doesn't specify a prefix,
+	 * it is mounted at its file name (without extension) as the game does.
+	 * 
+	 * @param pbo
+	 *            The PBO to mount
+	 * @param priority
+	 *            The priority of the PBO. If multiple PBOs provide the same
+	 *            path, the one with the highest priority wins
+	 */
+	public void mount(PBO pbo, int priority) {
+		mount(pbo, getDefaultMountPoint(pbo), priority);
+	}
+
+	/**
+	 * Mounts the given PBO at the given path
+	 * 
+	 * @param pbo
+	 *            The PBO to mount
+	 * @param mountPoint
+	 *            The path to mount the PBO at
+	 * @param priority
+	 *            The priority of the PBO. If multiple PBOs provide the same
+	 *            path, the one with the highest priority wins
+	 */
+	public void mount(PBO pbo, String mountPoint, int priority) {
+		if (pbo == null) {
+			throw new IllegalArgumentException("The PBO must not be null!");
+		}
+		if (mountPoint == null) {
+			throw new IllegalArgumentException("The mount point must not be null!");
+		}
+
+		mountPoint = PBOPaths.normalize(mountPoint);
+		List<PBOEntry> entries = pbo.getEntries();
+
+		lock.writeLock().lock();
+		try {
+			for (Mount current : mounts) {
+				if (current.pbo == pbo) {
+					throw new IllegalArgumentException("The given PBO is already mounted!");
+				}
+			}
+
+			Mount mount = new Mount(pbo, mountPoint, priority, nextSequence++);
+			mounts.add(mount);
+
+			PathTrie.Node<List<Candidate>> base = trie.getOrCreateNode(mountPoint);
+			for (PBOEntry current : entries) {
+				PathTrie.Node<List<Candidate>> node = trie.getOrCreateNode(base, current.getFileName());
+				List<Candidate> candidates = node.getValue();
+
+				if (candidates == null) {
+					candidates = new ArrayList<>(1);
+					trie.setValue(node, candidates);
+				} else if (containsMount(candidates, mount)) {
+					// if a path occurs multiple times inside a PBO the first occurrence wins
+					continue;
+				}
+
+				candidates.add(new Candidate(mount, current));
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Unmounts the given PBO
+	 * 
+	 * @param pbo
+	 *            The PBO to unmount
+	 * @return Whether the PBO has been mounted
+	 */
+	public boolean unmount(PBO pbo) {
+		lock.writeLock().lock();
+		try {
+			Mount mount = null;
+			for (Mount current : mounts) {
+				if (current.pbo == pbo) {
+					mount = current;
+					break;
+				}
+			}
+
+			if (mount == null) {
+				return false;
+			}
+
+			mounts.remove(mount);
+
+			PathTrie.Node<List<Candidate>> base = trie.getNode(mount.mountPoint);
+			for (PBOEntry current : pbo.getEntries()) {
+				PathTrie.Node<List<Candidate>> node = base == null ? null : trie.getNode(base, current.getFileName());
+
+				if (node == null || node.getValue() == null) {
+					continue;
+				}
+
+				List<Candidate> candidates = node.getValue();
+				for (int i = candidates.size() - 1; i >= 0; i--) {
+					if (candidates.get(i).mount == mount) {
+						candidates.remove(i);
+					}
+				}
+
+				if (candidates.isEmpty()) {
+					trie.setValue(node, null);
+				}
+			}
+
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Resolves the given path to the entry providing it
+	 * 
+	 * @param path
+	 *            The (case-insensitive) path to resolve
+	 * @return The entry of the PBO with the highest precedence providing the
+	 *         given path or <code>null</code> if no mounted PBO provides it
+	 */
+	public PBOEntry resolve(String path) {
+		lock.readLock().lock();
+		try {
+			List<Candidate> candidates = trie.get(path);
+
+			if (candidates == null) {
+				return null;
+			}
+
+			Comparator<Candidate> comparator = getComparator();
+			Candidate best = candidates.get(0);
+
+			for (int i = 1; i < candidates.size(); i++) {
+				if (comparator.compare(candidates.get(i), best) < 0) {
+					best = candidates.get(i);
+				}
+			}
+
+			return best.entry;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Resolves the given path to all entries providing it
+	 * 
+	 * @param path
+	 *            The (case-insensitive) path to resolve
+	 * @return The entries providing the given path ordered by descending
+	 *         precedence
+	 */
+	public List<PBOEntry> resolveAll(String path) {
+		lock.readLock().lock();
+		try {
+			List<Candidate> candidates = trie.get(path);
+
+			if (candidates == null) {
+				return Collections.emptyList();
+			}
+
+			candidates = new ArrayList<>(candidates);
+			candidates.sort(getComparator());
+
+			List<PBOEntry> entries = new ArrayList<>(candidates.size());
+			for (Candidate current : candidates) {
+				entries.add(current.entry);
+			}
+
+			return entries;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Checks whether any mounted PBO provides the given path
+	 * 
+	 * @param path
+	 *            The (case-insensitive) path to check
+	 */
+	public boolean exists(String path) {
+		lock.readLock().lock();
+		try {
+			return trie.get(path) != null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the mounted PBOs in the order they have been mounted
+	 */
+	public List<PBO> getMountedPBOs() {
+		lock.readLock().lock();
+		try {
+			List<PBO> pbos = new ArrayList<>(mounts.size());
+			for (Mount current : mounts) {
+				pbos.add(current.pbo);
+			}
+
+			return pbos;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the amount of distinct paths provided by the mounted PBOs
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return trie.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the policy for PBOs of the same priority providing the same path
+	 */
+	public OverlayPolicy getOverlayPolicy() {
+		return overlayPolicy;
+	}
+
+	/**
+	 * Sets the policy for PBOs of the same priority providing the same path. It
+	 * applies to all subsequent resolutions (including the ones of already
+	 * mounted PBOs)
+	 * 
+	 * @param overlayPolicy
+	 *            The policy to use
+	 */
+	public void setOverlayPolicy(OverlayPolicy overlayPolicy) {
+		if (overlayPolicy == null) {
+			throw new IllegalArgumentException("The overlay policy must not be null!");
+		}
+
+		// compare the priorities directly as negating them would overflow
+		Comparator<Candidate> byPriority = (a, b) -> Integer.compare(b.mount.priority, a.mount.priority);
+		Comparator<Candidate> bySequence = Comparator.comparingLong(c -> c.mount.sequence);
+
+		this.comparator = byPriority
+				.thenComparing(overlayPolicy == OverlayPolicy.FIRST_MOUNTED ? bySequence : bySequence.reversed());
+		this.overlayPolicy = overlayPolicy;
+	}
+
+	/**
+	 * Gets the path the given PBO is mounted at by default. That is its prefix
+	 * or its file name (without extension) if it doesn't specify one.
+	 * 
+	 * @param pbo
+	 *            The PBO to get the mount point for
+	 */
+	public static String getDefaultMountPoint(PBO pbo) {
+		String prefix = pbo.getPrefix();
+
+		if (prefix != null) {
+			return prefix;
+		}
+
+		File file = pbo.toFile();
+		if (file == null) {
+			return "";
+		}
+
+		String name = file.getName();
+		int index = name.lastIndexOf('.');
+
+		return index < 0 ? name : name.substring(0, index);
+	}
+
+	/**
+	 * Gets a comparator ordering candidates by descending precedence
+	 */
+	protected Comparator<Candidate> getComparator() {
+		return comparator;
+	}
+
+	/**
+	 * Checks whether the given candidates contain one of the given mount
+	 * 
+	 * @param candidates
+	 *            The candidates to search
+	 * @param mount
+	 *            The mount to search for
+	 */
+	protected static boolean containsMount(List<Candidate> candidates, Mount mount) {
+		for (Candidate current : candidates) {
+			if (current.mount == mount) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
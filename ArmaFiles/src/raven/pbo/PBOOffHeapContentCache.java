@@ -0,0 +1,547 @@
+package raven.pbo;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * A cache for the (decompressed) content of {@linkplain PBOEntry}s that keeps
+ * the content outside of the Java heap so that it doesn't have to be scanned
+ * by the garbage collector. The content is stored in large slabs (either
+ * direct buffers or memory-mapped regions of a spill file) which are filled
+ * sequentially. The cache hands out read-only views on these slabs.<br>
+ * Once the memory budget is exhausted, the oldest slab is evicted as a whole.
+ * Content inside it that has been requested since it has been stored gets a
+ * second chance and is moved into a new slab (as long as there is space).
+ * Slabs are never reused: an evicted slab is only freed once all views on it
+ * are unreachable. Thus views stay valid even after their content has been
+ * evicted, but the memory actually in use may temporarily exceed the budget.
+ * The amount of evicted slabs that may still be referenced is bounded by the
+ * amount of slabs the budget allows for. Once that bound is reached, missing
+ * content is no longer cached until the garbage collector has freed some of
+ * them.<br>
+ * Content is looked up without locking. Space for missing content is reserved
+ * under a lock, but the content is read into the reserved region without
+ * holding it.<br>
+ * Just like {@linkplain PBOContentCache}, the cache can store content by its
+ * hash (see {@link #setContentIndex(PBOContentIndex)}) so that identical
+ * content is only held once.
+ * 
+ * @author Raven
+ *
+ */
+public class PBOOffHeapContentCache implements IPBOContentCache {
+
+	/**
+	 * The default size of a slab
+	 */
+	public static final int DEFAULT_SLAB_SIZE = 16 * 1024 * 1024;
+
+	/**
+	 * A region of memory content is stored in
+	 * 
+	 * @author Raven
+	 *
+	 */
+	protected static class Slab {
+		/**
+		 * The memory of the slab
+		 */
+		protected final ByteBuffer buffer;
+		/**
+		 * The keys of the content stored in this slab
+		 */
+		protected final List<Object> keys;
+		/**
+		 * Whether this slab has been evicted. Guarded by the cache
+		 */
+		protected boolean evicted;
+
+
+		protected Slab(ByteBuffer buffer) {
+			this.buffer = buffer;
+			this.keys = new ArrayList<>();
+		}
+	}
+
+	/**
+	 * The location of cached content
+	 * 
+	 * @author Raven
+	 *
+	 */
+	protected static class Location {
+		/**
+		 * The slab the content is stored in
+		 */
+		protected final Slab slab;
+		/**
+		 * The offset of the content inside the slab
+		 */
+		protected final int offset;
+		/**
+		 * The size of the content
+		 */
+		protected final int length;
+		/**
+		 * Whether the content has been requested since it has been stored
+		 */
+		protected volatile boolean referenced;
+
+
+		protected Location(Slab slab, int offset, int length) {
+			this.slab = slab;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		/**
+		 * Creates a read-only view on the content
+		 */
+		protected ByteBuffer view() {
+			ByteBuffer view = slab.buffer.duplicate();
+			view.limit(offset + length);
+			view.position(offset);
+
+			return view.slice().asReadOnlyBuffer();
+		}
+
+		/**
+		 * Creates a writable view on the region reserved for the content
+		 */
+		protected ByteBuffer region() {
+			ByteBuffer region = slab.buffer.duplicate();
+			region.limit(offset + length);
+			region.position(offset);
+
+			return region.slice();
+		}
+	}
+
+	/**
+	 * The size of a slab
+	 */
+	protected final int slabSize;
+	/**
+	 * The maximum amount of slabs held by the cache
+	 */
+	protected final int maxSlabs;
+	/**
+	 * The directory to create the spill files in or <code>null</code> if the
+	 * slabs are direct buffers
+	 */
+	protected final Path spillDirectory;
+	/**
+	 * The location of the cached content
+	 */
+	protected Map<Object, Location> index;
+	/**
+	 * The slabs held by the cache (oldest first). Guarded by this cache
+	 */
+	protected ArrayDeque<Slab> slabs;
+	/**
+	 * The memory of evicted slabs that may still be referenced by views. A
+	 * reference gets cleared once the slab has become unreachable. Guarded by
+	 * this cache
+	 */
+	protected List<WeakReference<ByteBuffer>> retired;
+	/**
+	 * The amount of requests that could be served from the cache
+	 */
+	protected AtomicLong hits;
+	/**
+	 * The amount of requests whose content had to be read
+	 */
+	protected AtomicLong misses;
+	/**
+	 * The amount of content that has been evicted in order to stay within the
+	 * memory budget
+	 */
+	protected AtomicLong evictions;
+	/**
+	 * The index providing the content hashes of entries or <code>null</code>
+	 * if the content is always stored by its location
+	 */
+	protected volatile PBOContentIndex contentIndex;
+
+
+	/**
+	 * Creates a new cache backed by direct buffers of
+	 * {@link #DEFAULT_SLAB_SIZE}
+	 * 
+	 * @param maxSize
+	 *            The amount of bytes the cache may hold (rounded up to a
+	 *            multiple of the slab size)
+	 */
+	public PBOOffHeapContentCache(long maxSize) {
+		this(maxSize, DEFAULT_SLAB_SIZE, null);
+	}
+
+	/**
+	 * Creates a new cache. The budget is soft: as views on evicted content stay
+	 * valid, evicted slabs are only freed by the garbage collector once no view
+	 * on them is reachable anymore. The evicted slabs that haven't been freed
+	 * yet are limited to the amount of slabs fitting into the budget, so the
+	 * cache never holds more than twice <code>maxSize</code> bytes of memory.
+	 * 
+	 * @param maxSize
+	 *            The amount of bytes the cache may hold (rounded up to a
+	 *            multiple of the slab size)
+	 * @param slabSize
+	 *            The size of a slab. No content bigger than this is cached
+	 * @param spillDirectory
+	 *            The directory to create the spill files the slabs are mapped
+	 *            from in or <code>null</code> if the slabs should be direct
+	 *            buffers. Spill files are deleted as soon as they have been
+	 *            mapped
+	 */
+	public PBOOffHeapContentCache(long maxSize, int slabSize, Path spillDirectory) {
+		if (slabSize < 1) {
+			throw new IllegalArgumentException("The slab size has to be at least 1!");
+		}
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("The maximum size has to be at least 1!");
+		}
+
+		this.slabSize = slabSize;
+		this.maxSlabs = (int) Math.min(Integer.MAX_VALUE, (maxSize + slabSize - 1) / slabSize);
+		this.spillDirectory = spillDirectory;
+
+		index = new ConcurrentHashMap<>();
+		slabs = new ArrayDeque<>();
+		retired = new ArrayList<>();
+		hits = new AtomicLong();
+		misses = new AtomicLong();
+		evictions = new AtomicLong();
+	}
+
+	/**
+	 * Sets the index providing the content hashes of entries. Content of
+	 * entries that are contained in the index is stored by its hash instead of
+	 * its location.
+	 * 
+	 * @param contentIndex
+	 *            The index to use or <code>null</code> if the content should
+	 *            always be stored by its location
+	 * @return This cache
+	 */
+	public PBOOffHeapContentCache setContentIndex(PBOContentIndex contentIndex) {
+		this.contentIndex = contentIndex;
+
+		return this;
+	}
+
+	/**
+	 * Gets the index providing the content hashes of entries or
+	 * <code>null</code> if there is none
+	 */
+	public PBOContentIndex getContentIndex() {
+		return contentIndex;
+	}
+
+	@Override
+	public ByteBuffer get(PBOEntry entry) throws IOException {
+		if (entry.getDataSize() == 0) {
+			// empty entries may share their offset with the following entry
+			return ByteBuffer.allocate(0).asReadOnlyBuffer();
+		}
+
+		Object key = PBOContentCache.getKey(entry, contentIndex);
+		Location location = index.get(key);
+
+		if (location != null) {
+			hits.incrementAndGet();
+			location.referenced = true;
+
+			return location.view();
+		}
+
+		misses.incrementAndGet();
+
+		long size = entry.isCompressed() ? entry.getOriginalSize() : entry.getDataSize();
+		location = size <= slabSize ? reserve((int) size) : null;
+
+		if (location == null) {
+			// too big to be cached or no memory available
+			try (PBOInputStream in = new PBOInputStream(entry, false)) {
+				return ByteBuffer.wrap(in.readAllBytes()).asReadOnlyBuffer();
+			}
+		}
+
+		read(entry, location.region());
+
+		publish(key, location);
+
+		return location.view();
+	}
+
+	/**
+	 * Reads the content of the given entry into the given region of a slab.
+	 * Uncompressed content is read straight from the PBO into the region,
+	 * compressed content is decompressed into it chunk by chunk.
+	 * 
+	 * @param entry
+	 *            The entry to read
+	 * @param region
+	 *            The region to fill. It is exactly as big as the entry's
+	 *            content
+	 * @throws IOException
+	 */
+	protected void read(PBOEntry entry, ByteBuffer region) throws IOException {
+		if (!entry.isCompressed()) {
+			entry.getPBO().readFully(region, entry.getStartOffset());
+
+			return;
+		}
+
+		try (PBOInputStream in = new PBOInputStream(entry, false)) {
+			byte[] buffer = new byte[Math.min(region.remaining(), PBOInputStream.TRANSFER_BUFFER_SIZE)];
+
+			while (region.hasRemaining()) {
+				int count = in.read(buffer, 0, Math.min(buffer.length, region.remaining()));
+
+				if (count < 0) {
+					throw new EOFException("Unexpected end of data for " + entry.getFileName());
+				}
+
+				region.put(buffer, 0, count);
+			}
+		}
+	}
+
+	/**
+	 * Reserves a region of the given size in the current slab. If there is not
+	 * enough space left, a new slab is created.
+	 * 
+	 * @param length
+	 *            The size of the region (at most {@link #slabSize} bytes)
+	 * @return The location of the reserved region or <code>null</code> if no
+	 *         new slab can be created because too many evicted slabs are still
+	 *         referenced
+	 * @throws IOException
+	 *             If a new slab can't be created
+	 */
+	protected synchronized Location reserve(int length) throws IOException {
+		while (slabs.isEmpty() || slabs.getLast().buffer.remaining() < length) {
+			if (!rotate()) {
+				return null;
+			}
+		}
+
+		Slab slab = slabs.getLast();
+		Location location = new Location(slab, slab.buffer.position(), length);
+
+		slab.buffer.position(slab.buffer.position() + length);
+
+		return location;
+	}
+
+	/**
+	 * Makes the content at the given (filled) location available under the
+	 * given key. If the slab has been evicted while the content has been read
+	 * or another thread has been faster, the content is not added to the cache.
+	 * 
+	 * @param key
+	 *            The key of the content
+	 * @param location
+	 *            The location of the content
+	 */
+	protected synchronized void publish(Object key, Location location) {
+		if (location.slab.evicted || index.containsKey(key)) {
+			return;
+		}
+
+		location.slab.keys.add(key);
+		index.put(key, location);
+	}
+
+	/**
+	 * Creates a new slab. If the cache already holds the maximum amount of
+	 * slabs, the oldest one gets evicted. Its content that has been referenced
+	 * since it has been stored is moved into the new slab if possible.
+	 * 
+	 * @return Whether a new slab has been created. This is not the case if as
+	 *         many evicted slabs as the cache may hold are still referenced
+	 * @throws IOException
+	 *             If the new slab can't be created
+	 */
+	protected synchronized boolean rotate() throws IOException {
+		List<Object> survivors = new ArrayList<>();
+		List<Location> survivorLocations = new ArrayList<>();
+
+		if (slabs.size() >= maxSlabs) {
+			retired.removeIf(reference -> reference.get() == null);
+
+			if (retired.size() >= maxSlabs) {
+				return false;
+			}
+
+			Slab oldest = slabs.removeFirst();
+			oldest.evicted = true;
+			retired.add(new WeakReference<>(oldest.buffer));
+
+			for (Object current : oldest.keys) {
+				Location location = index.get(current);
+
+				if (location == null || location.slab != oldest) {
+					continue;
+				}
+
+				index.remove(current);
+
+				if (location.referenced) {
+					survivors.add(current);
+					survivorLocations.add(location);
+				} else {
+					evictions.incrementAndGet();
+				}
+			}
+		}
+
+		Slab slab = new Slab(allocate());
+		slabs.addLast(slab);
+
+		for (int i = 0; i < survivors.size(); i++) {
+			Location old = survivorLocations.get(i);
+
+			if (slab.buffer.remaining() < old.length) {
+				evictions.incrementAndGet();
+				continue;
+			}
+
+			Location location = new Location(slab, slab.buffer.position(), old.length);
+			slab.buffer.put(old.view());
+			slab.keys.add(survivors.get(i));
+			index.put(survivors.get(i), location);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Allocates the memory for a new slab
+	 * 
+	 * @return The allocated memory
+	 * @throws IOException
+	 *             If the spill file can't be created
+	 */
+	protected ByteBuffer allocate() throws IOException {
+		if (spillDirectory == null) {
+			return ByteBuffer.allocateDirect(slabSize);
+		}
+
+		Path file = Files.createTempFile(spillDirectory, "pbo-cache", ".slab");
+
+		// the mapping stays valid after the file has been closed (and deleted)
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.DELETE_ON_CLOSE)) {
+			return channel.map(MapMode.READ_WRITE, 0, slabSize);
+		}
+	}
+
+	@Override
+	public synchronized void invalidate(PBO pbo) {
+		// content stored by its hash doesn't belong to a particular PBO
+		Predicate<Object> belongsToPBO = key -> key instanceof PBOContentCache.Key
+				&& ((PBOContentCache.Key) key).pbo == pbo;
+
+		index.keySet().removeIf(belongsToPBO);
+
+		for (Slab current : slabs) {
+			current.keys.removeIf(belongsToPBO);
+		}
+	}
+
+	@Override
+	public synchronized void clear() {
+		index.clear();
+
+		for (Slab current : slabs) {
+			current.evicted = true;
+			retired.add(new WeakReference<>(current.buffer));
+		}
+		slabs.clear();
+	}
+
+	/**
+	 * Gets the amount of bytes this cache may hold
+	 */
+	public long getMaxSize() {
+		return (long) maxSlabs * slabSize;
+	}
+
+	/**
+	 * Gets the amount of bytes currently allocated for slabs
+	 */
+	public synchronized long getAllocatedSize() {
+		return (long) slabs.size() * slabSize;
+	}
+
+	/**
+	 * Gets the amount of bytes of evicted slabs that may still be referenced by
+	 * views on their content
+	 */
+	public synchronized long getRetiredSize() {
+		retired.removeIf(reference -> reference.get() == null);
+
+		return (long) retired.size() * slabSize;
+	}
+
+	/**
+	 * Gets the amount of entries whose content is currently cached
+	 */
+	public int size() {
+		return index.size();
+	}
+
+	/**
+	 * Gets the amount of requests that could be served from the cache
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the amount of requests whose content had to be read
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Gets the amount of content that has been evicted in order to stay within
+	 * the memory budget
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * Gets the ratio of requests that could be served from the cache
+	 */
+	public double getHitRate() {
+		long hitCount = hits.get();
+		long requests = hitCount + misses.get();
+
+		return requests == 0 ? 0 : (double) hitCount / requests;
+	}
+
+	@Override
+	public String toString() {
+		return "PBOOffHeapContentCache [" + getAllocatedSize() + "/" + getMaxSize() + " bytes, hits=" + hits.get()
+				+ ", misses=" + misses.get() + ", evictions=" + evictions.get() + "]";
+	}
+}
@@ -0,0 +1,264 @@
+package raven.pbo;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A Bloom filter over the (case-insensitive) paths of the entries of a
+ * {@linkplain PBO}. It answers whether a PBO <i>might</i> contain a given path
+ * without touching its entries: if the filter says no, the PBO definitely
+ * doesn't contain the path. Otherwise it does with a high probability (about
+ * 99% with the default configuration).<br>
+ * This allows queries spanning many PBOs to skip almost all of them. As the
+ * filter is stored in the {@linkplain PBOHeaderIndex}, this even works without
+ * opening the PBOs (see {@link PBOHeaderIndex#findCandidates(String)}).
+ * 
+ * @author Raven
+ *
+ */
+public class PBOPathFilter {
+
+	/**
+	 * The amount of bits used per path
+	 */
+	public static final int BITS_PER_PATH = 10;
+	/**
+	 * The amount of bits set per path
+	 */
+	public static final int HASH_COUNT = 7;
+
+	/**
+	 * The bits of the filter
+	 */
+	protected final long[] bits;
+	/**
+	 * The amount of bits set per path
+	 */
+	protected final int hashCount;
+
+
+	/**
+	 * Creates a new filter containing the given paths
+	 * 
+	 * @param paths
+	 *            The paths to put into the filter
+	 */
+	public PBOPathFilter(Collection<String> paths) {
+		this(paths.size());
+
+		for (String current : paths) {
+			add(PBOPaths.normalize(current));
+		}
+	}
+
+	/**
+	 * Creates a new, empty filter sized for the given amount of paths
+	 * 
+	 * @param pathCount
+	 *            The amount of paths that are going to be added
+	 */
+	protected PBOPathFilter(int pathCount) {
+		this(new long[getLength(pathCount)], HASH_COUNT);
+	}
+
+	/**
+	 * Gets the amount of <code>long</code>s needed for the bits of a filter
+	 * sized for the given amount of paths
+	 * 
+	 * @param pathCount
+	 *            The amount of paths
+	 */
+	protected static int getLength(int pathCount) {
+		return Math.max(1, (int) ((pathCount * (long) BITS_PER_PATH + 63) / 64));
+	}
+
+	/**
+	 * Creates a new filter out of the given bits
+	 * 
+	 * @param bits
+	 *            The bits of the filter
+	 * @param hashCount
+	 *            The amount of bits set per path
+	 */
+	protected PBOPathFilter(long[] bits, int hashCount) {
+		this.bits = bits;
+		this.hashCount = hashCount;
+	}
+
+	/**
+	 * Creates a filter containing the paths of all files in the given PBO
+	 * 
+	 * @param pbo
+	 *            The PBO to create the filter for
+	 * @return The created filter
+	 */
+	public static PBOPathFilter of(PBO pbo) {
+		List<PBOEntry> entries = pbo.getEntries();
+		PBOPathFilter filter = new PBOPathFilter(entries.size());
+
+		for (PBOEntry current : entries) {
+			filter.add(PBOPaths.normalize(current.getFileName()));
+		}
+
+		return filter;
+	}
+
+	/**
+	 * Adds the given path to this filter
+	 * 
+	 * @param normalizedPath
+	 *            The normalized path (see {@link PBOPaths#normalize(String)})
+	 */
+	protected void add(String normalizedPath) {
+		long hash = hash(normalizedPath);
+
+		for (int i = 0; i < hashCount; i++) {
+			long bit = bitIndex(hash, i);
+
+			bits[(int) (bit >>> 6)] |= 1L << bit;
+		}
+	}
+
+	/**
+	 * Checks whether the PBO this filter belongs to might contain the given
+	 * path
+	 * 
+	 * @param path
+	 *            The (case-insensitive) path relative to the PBO's root
+	 * @return <code>false</code> if the PBO definitely doesn't contain the
+	 *         path, <code>true</code> if it probably does
+	 */
+	public boolean mightContain(String path) {
+		long hash = hash(PBOPaths.normalize(path));
+
+		for (int i = 0; i < hashCount; i++) {
+			long bit = bitIndex(hash, i);
+
+			if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Checks whether the PBO this filter belongs to might contain the given
+	 * game path (that is the path prefixed with the PBO's prefix)
+	 * 
+	 * @param prefix
+	 *            The prefix of the PBO. May be <code>null</code> if the PBO
+	 *            doesn't have one
+	 * @param gamePath
+	 *            The (case-insensitive) game path
+	 * @return <code>false</code> if the PBO definitely doesn't contain the
+	 *         path, <code>true</code> if it probably does
+	 */
+	public boolean mightContain(String prefix, String gamePath) {
+		String normalizedPrefix = prefix == null ? "" : PBOPaths.normalize(prefix);
+		String normalizedPath = PBOPaths.normalize(gamePath);
+
+		while (normalizedPrefix.endsWith(String.valueOf(PBOPaths.SEPARATOR))) {
+			normalizedPrefix = normalizedPrefix.substring(0, normalizedPrefix.length() - 1);
+		}
+
+		if (normalizedPrefix.isEmpty()) {
+			return mightContain(normalizedPath);
+		}
+
+		if (normalizedPath.length() <= normalizedPrefix.length() + 1 || !normalizedPath.startsWith(normalizedPrefix)
+				|| normalizedPath.charAt(normalizedPrefix.length()) != PBOPaths.SEPARATOR) {
+			return false;
+		}
+
+		return mightContain(normalizedPath.substring(normalizedPrefix.length() + 1));
+	}
+
+	/**
+	 * Gets the index of the bit set by the given probe of a path. The probes
+	 * are derived from the two halves of the path's hash (double hashing). The
+	 * step between two probes is forced to be odd, as a step of zero would make
+	 * all probes set the same bit.
+	 * 
+	 * @param hash
+	 *            The hash of the path (see {@link #hash(String)})
+	 * @param i
+	 *            The index of the probe
+	 */
+	protected long bitIndex(long hash, int i) {
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32) | 1;
+
+		return ((h1 + i * h2) & 0xFFFFFFFFL) % (64L * bits.length);
+	}
+
+	/**
+	 * Calculates the 64-bit FNV-1a hash of the given path
+	 * 
+	 * @param normalizedPath
+	 *            The normalized path
+	 */
+	protected static long hash(String normalizedPath) {
+		long hash = 0xcbf29ce484222325L;
+
+		for (int i = 0; i < normalizedPath.length(); i++) {
+			hash ^= normalizedPath.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+
+		return hash;
+	}
+
+	/**
+	 * Gets the amount of bytes occupied by the bits of this filter
+	 */
+	public int getMemoryUsage() {
+		return 8 * bits.length;
+	}
+
+	/**
+	 * Writes this filter to the given stream
+	 * 
+	 * @param out
+	 *            The stream to write to
+	 * @throws IOException
+	 */
+	protected void write(DataOutputStream out) throws IOException {
+		out.writeByte(hashCount);
+		out.writeInt(bits.length);
+
+		for (long current : bits) {
+			out.writeLong(current);
+		}
+	}
+
+	/**
+	 * Reads a filter from the given stream
+	 * 
+	 * @param in
+	 *            The stream to read from
+	 * @param maxPathCount
+	 *            The maximum amount of paths the filter may have been sized
+	 *            for. A filter that is bigger than that is rejected as corrupt
+	 * @return The read filter
+	 * @throws IOException
+	 */
+	protected static PBOPathFilter read(DataInputStream in, int maxPathCount) throws IOException {
+		int hashCount = in.readByte();
+		int length = in.readInt();
+
+		if (hashCount < 1 || length < 1 || length > getLength(maxPathCount)) {
+			throw new IOException("Invalid path filter in PBO header index");
+		}
+
+		long[] bits = new long[length];
+		for (int i = 0; i < length; i++) {
+			bits[i] = in.readLong();
+		}
+
+		return new PBOPathFilter(bits, hashCount);
+	}
+}
@@ -0,0 +1,52 @@
+package raven.pbo;
+
+import java.util.Locale;
+
+/**
+ * A collection of helper methods for dealing with the paths of files inside a
+ * PBO. Inside a PBO paths are case-insensitive and use a backslash as the
+ * separator.
+ * 
+ * @author Raven
+ *
+ */
+public final class PBOPaths {
+
+	/**
+	 * The separator used in paths inside a PBO
+	 */
+	public static final char SEPARATOR = '\\';
+
+
+	private PBOPaths() {
+	}
+
+	/**
+	 * Normalizes the given path so that it can be compared to other normalized
+	 * paths directly. This means it gets converted to lower case, forward slashes
+	 * are replaced by {@link #SEPARATOR} and a leading separator is removed.
+	 * 
+	 * @param path
+	 *            The path to normalize
+	 * @return The normalized path
+	 */
+	public static String normalize(String path) {
+		String normalized = path.toLowerCase(Locale.ROOT).replace('/', SEPARATOR);
+
+		return !normalized.isEmpty() && normalized.charAt(0) == SEPARATOR ? normalized.substring(1) : normalized;
+	}
+
+	/**
+	 * Gets the name of the file the given path points to (the part after the last
+	 * separator)
+	 * 
+	 * @param path
+	 *            The path to get the file name of
+	 * @return The file name
+	 */
+	public static String getBaseName(String path) {
+		int index = Math.max(path.lastIndexOf(SEPARATOR), path.lastIndexOf('/'));
+
+		return index < 0 ? path : path.substring(index + 1);
+	}
+}
@@ -0,0 +1,180 @@
+package raven.pbo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@linkplain InputStream} reading a range of bytes out of a PBO-file. All
+ * reads are positional reads on the {@linkplain PBO}'s shared channel (see
+ * {@link PBO#read(ByteBuffer, long)}) so that any number of these streams can
+ * be used concurrently without opening the file again or interfering with
+ * each other.
+ * 
+ * @author Raven
+ *
+ */
+public class PBORangeInputStream extends InputStream {
+
+	/**
+	 * The size of the internal buffer
+	 */
+	protected static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * The {@linkplain PBO} to read from
+	 */
+	protected PBO pbo;
+	/**
+	 * The offset inside the PBO-file of the next byte to be read into
+	 * {@link #buffer}
+	 */
+	protected long position;
+	/**
+	 * The offset inside the PBO-file at which the range ends (exclusive)
+	 */
+	protected long end;
+	/**
+	 * The internal buffer used to serve small reads. Between reads it is kept in
+	 * "read-mode" (flipped)
+	 */
+	protected ByteBuffer buffer;
+
+
+	/**
+	 * Creates a new stream reading the given range out of the given PBO
+	 * 
+	 * @param pbo
+	 *            The {@linkplain PBO} to read from
+	 * @param start
+	 *            The offset inside the PBO-file at which the range starts
+	 * @param length
+	 *            The length of the range
+	 */
+	public PBORangeInputStream(PBO pbo, long start, long length) {
+		if (start < 0 || length < 0) {
+			throw new IllegalArgumentException("Start and length of the range must not be negative!");
+		}
+
+		this.pbo = pbo;
+		this.position = start;
+		this.end = start + length;
+
+		buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(length, 1)));
+		buffer.limit(0);
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!buffer.hasRemaining() && !fill()) {
+			return -1;
+		}
+
+		return buffer.get() & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (len == 0) {
+			return 0;
+		}
+
+		int count = 0;
+
+		if (buffer.hasRemaining()) {
+			count = Math.min(len, buffer.remaining());
+			buffer.get(b, off, count);
+
+			if (count == len) {
+				return count;
+			}
+		}
+
+		long remaining = end - position;
+		if (remaining <= 0) {
+			return count == 0 ? -1 : count;
+		}
+
+		if (len - count >= buffer.capacity()) {
+			// large reads go directly into the caller's array
+			ByteBuffer target = ByteBuffer.wrap(b, off + count, (int) Math.min(len - count, remaining));
+			int read = readFromPBO(target);
+			position += read;
+
+			return count + read;
+		}
+
+		if (!fill()) {
+			return count == 0 ? -1 : count;
+		}
+
+		int read = Math.min(len - count, buffer.remaining());
+		buffer.get(b, off + count, read);
+
+		return count + read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		if (n <= 0) {
+			return 0;
+		}
+
+		long skipped = Math.min(n, buffer.remaining());
+		buffer.position(buffer.position() + (int) skipped);
+
+		long skippedInFile = Math.min(n - skipped, end - position);
+		position += skippedInFile;
+
+		return skipped + skippedInFile;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (int) Math.min(Integer.MAX_VALUE, buffer.remaining() + (end - position));
+	}
+
+	/**
+	 * Refills the internal buffer
+	 * 
+	 * @return Whether any data is available afterwards
+	 * @throws IOException
+	 */
+	protected boolean fill() throws IOException {
+		long remaining = end - position;
+		if (remaining <= 0) {
+			return false;
+		}
+
+		buffer.clear();
+		buffer.limit((int) Math.min(buffer.capacity(), remaining));
+
+		position += readFromPBO(buffer);
+
+		buffer.flip();
+
+		return true;
+	}
+
+	/**
+	 * Reads as many bytes as the given buffer has remaining starting at
+	 * {@link #position}. This method doesn't update the position.
+	 * 
+	 * @param target
+	 *            The buffer to read into
+	 * @return The amount of read bytes
+	 * @throws IOException
+	 *             If the PBO-file ends before the buffer has been filled
+	 */
+	protected int readFromPBO(ByteBuffer target) throws IOException {
+		int count = target.remaining();
+
+		pbo.readFully(target, position);
+
+		return count;
+	}
+
+}
@@ -0,0 +1,287 @@
+package raven.pbo;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Verifies the SHA1 checksum stored at the end of a PBO-file. The checksum
+ * covers everything in front of it (header and data) and is preceded by a
+ * single 0-byte.<br>
+ * The verification can happen incrementally while the PBO gets read
+ * sequentially anyways (e.g. during an extraction): all data read in the
+ * course of that is passed to {@link #update(long, ByteBuffer)} and only the
+ * parts that haven't been read that way (like the header) are read separately
+ * by {@link #finish()}. This way verifying doesn't require a second pass over
+ * the PBO. The outcome is stored in the verified PBO (see
+ * {@link PBO#getIntegrity()}).<br>
+ * Alternatively {@link #verify(PBO)} and {@link #verify(Path)} perform a
+ * standalone verification using large direct buffers.
+ * 
+ * @author Raven
+ *
+ */
+public class PBOVerifier {
+
+	/**
+	 * The outcome of a verification
+	 * 
+	 * @author Raven
+	 *
+	 */
+	public static enum Status {
+		/**
+		 * The stored checksum matches the content
+		 */
+		VALID,
+		/**
+		 * The stored checksum doesn't match the content
+		 */
+		INVALID,
+		/**
+		 * The PBO doesn't contain a checksum (as it is the case for PBOs of
+		 * older games)
+		 */
+		MISSING
+	}
+
+	/**
+	 * The length of the SHA1 checksum at the end of a PBO
+	 */
+	public static final int CHECKSUM_LENGTH = 20;
+	/**
+	 * The size of the buffer used for reading the parts of a PBO that haven't
+	 * been passed to a verifier
+	 */
+	public static final int BUFFER_SIZE = 1024 * 1024;
+
+	/**
+	 * The PBO to verify
+	 */
+	protected final PBO pbo;
+	/**
+	 * The digest calculating the checksum
+	 */
+	protected final MessageDigest digest;
+	/**
+	 * The offset inside the PBO-file up to which the data has been passed to
+	 * {@link #digest}
+	 */
+	protected long position;
+	/**
+	 * The offset inside the PBO-file at which the data ends (and the checksum
+	 * starts)
+	 */
+	protected final long dataEnd;
+	/**
+	 * The buffer used for reading data that hasn't been passed to this
+	 * verifier or <code>null</code> if it hasn't been needed yet
+	 */
+	protected ByteBuffer buffer;
+
+
+	/**
+	 * Creates a new verifier for the given PBO
+	 * 
+	 * @param pbo
+	 *            The PBO to verify
+	 */
+	public PBOVerifier(PBO pbo) {
+		this.pbo = pbo;
+		this.digest = newDigest();
+
+		long end = pbo.getContentOffset();
+		for (PBOEntry current : pbo.getEntries()) {
+			end = Math.max(end, current.getStartOffset() + current.getDataSize());
+		}
+
+		dataEnd = end;
+	}
+
+	/**
+	 * Creates a new SHA1 {@linkplain MessageDigest}
+	 */
+	protected static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not supported on this platform", e);
+		}
+	}
+
+	/**
+	 * Passes data that has been read out of the PBO to this verifier. The data
+	 * has to be passed in the order it appears in the PBO-file. Data that has
+	 * already been passed (e.g. when multiple entries share their data) is
+	 * ignored and data in front of the given offset that hasn't been passed yet
+	 * gets read from the PBO.
+	 * 
+	 * @param offset
+	 *            The offset inside the PBO-file at which the given data starts
+	 * @param data
+	 *            The data. Its position is not changed
+	 * @throws IOException
+	 *             If reading skipped data fails
+	 */
+	public void update(long offset, ByteBuffer data) throws IOException {
+		long end = Math.min(offset + data.remaining(), dataEnd);
+
+		if (end <= position) {
+			return;
+		}
+
+		if (offset > position) {
+			hash(offset);
+		}
+
+		ByteBuffer view = data.duplicate();
+		view.position(view.position() + (int) (position - offset));
+		view.limit(view.position() + (int) (end - position));
+
+		digest.update(view);
+		position = end;
+	}
+
+	/**
+	 * Finishes the verification by passing all data that hasn't been passed yet
+	 * to this verifier and comparing the result with the stored checksum. The
+	 * outcome is also stored in the PBO.
+	 * 
+	 * @return The outcome of the verification
+	 * @throws IOException
+	 *             If reading the PBO fails
+	 */
+	public Status finish() throws IOException {
+		Status status;
+		long size = pbo.size();
+
+		if (size == dataEnd) {
+			status = Status.MISSING;
+		} else if (size != dataEnd + 1 + CHECKSUM_LENGTH) {
+			status = Status.INVALID;
+		} else {
+			hash(dataEnd);
+
+			ByteBuffer stored = ByteBuffer.allocate(1 + CHECKSUM_LENGTH);
+			pbo.readFully(stored, dataEnd);
+			stored.flip();
+
+			status = stored.get() == 0 && stored.equals(ByteBuffer.wrap(digest.digest())) ? Status.VALID
+					: Status.INVALID;
+		}
+
+		pbo.integrity = status;
+		buffer = null;
+
+		return status;
+	}
+
+	/**
+	 * Reads the data from {@link #position} up to the given offset and passes
+	 * it to {@link #digest}
+	 * 
+	 * @param end
+	 *            The offset to read up to
+	 * @throws IOException
+	 */
+	protected void hash(long end) throws IOException {
+		if (pbo.isMemoryMapped()) {
+			while (position < end) {
+				int length = (int) Math.min(end - position, PBO.SEGMENT_SIZE);
+
+				digest.update(pbo.slice(position, length));
+				position += length;
+			}
+
+			return;
+		}
+
+		if (buffer == null) {
+			buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		}
+
+		while (position < end) {
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), end - position));
+
+			pbo.readFully(buffer, position);
+			buffer.flip();
+
+			digest.update(buffer);
+			position += buffer.limit();
+		}
+	}
+
+	/**
+	 * Verifies the checksum of the given PBO in a single sequential pass. The
+	 * outcome is also stored in the PBO.
+	 * 
+	 * @param pbo
+	 *            The PBO to verify
+	 * @return The outcome of the verification
+	 * @throws IOException
+	 *             If reading the PBO fails
+	 */
+	public static Status verify(PBO pbo) throws IOException {
+		return new PBOVerifier(pbo).finish();
+	}
+
+	/**
+	 * Verifies the checksum of the given PBO-file without parsing its header.
+	 * The checksum is expected to make up the last bytes of the file.
+	 * 
+	 * @param file
+	 *            The PBO-file to verify
+	 * @return The outcome of the verification. If the file doesn't end with a
+	 *         checksum, the outcome is either {@link Status#MISSING} or
+	 *         {@link Status#INVALID}
+	 * @throws IOException
+	 *             If reading the file fails
+	 */
+	public static Status verify(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long dataEnd = channel.size() - 1 - CHECKSUM_LENGTH;
+
+			if (dataEnd < 0) {
+				return Status.MISSING;
+			}
+
+			MessageDigest digest = newDigest();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			long position = 0;
+
+			while (position < dataEnd) {
+				buffer.clear();
+				buffer.limit((int) Math.min(buffer.capacity(), dataEnd - position));
+
+				int count = channel.read(buffer, position);
+				if (count < 0) {
+					throw new EOFException("Unexpected end of PBO-file " + file);
+				}
+
+				buffer.flip();
+				digest.update(buffer);
+				position += count;
+			}
+
+			ByteBuffer stored = ByteBuffer.allocate(1 + CHECKSUM_LENGTH);
+			while (stored.hasRemaining()) {
+				if (channel.read(stored, dataEnd + stored.position()) < 0) {
+					throw new EOFException("Unexpected end of PBO-file " + file);
+				}
+			}
+			stored.flip();
+
+			if (stored.get() != 0) {
+				return Status.MISSING;
+			}
+
+			return stored.equals(ByteBuffer.wrap(digest.digest())) ? Status.VALID : Status.INVALID;
+		}
+	}
+}
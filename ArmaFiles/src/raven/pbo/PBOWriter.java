@@ -0,0 +1,1299 @@
+package raven.pbo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/**
+ * A class for creating PBO-files. The files that should go into the PBO are
+ * added together with the path they should have inside the PBO and are then
+ * written via {@link #write(Path)}.<br>
+ * While writing, the content of the files is read (staged) in parallel on the
+ * configured {@linkplain ExecutorService} whereas the header and the data are
+ * written sequentially using large buffered writes. Small files are read into
+ * memory by the staging tasks, large ones are transferred directly from their
+ * file into the PBO. At most {@link #getStagingWindow()} files are staged
+ * ahead of the one currently being written.<br>
+ * The PBO is written in a single pass: the SHA1 checksum at its end is
+ * calculated while the header and the data are being written. As the header
+ * precedes the data, the size of every file has to be known before any data
+ * is written. Files whose size can't be determined without staging them
+ * (files that may get compressed and files provided by an
+ * {@linkplain IPBOContentSource}) are therefore staged up front and held in
+ * memory until they are written.<br>
+ * An existing PBO can be repacked incrementally by creating the writer via
+ * {@link #from(PBO)}: the entries of the existing PBO are copied verbatim
+ * (without decompressing or recompressing them) and only the files that have
+ * been {@link #put(String, Path) added or replaced} are staged.
+ * Repacking a PBO without modifying it reproduces the original file byte by
+ * byte as long as its boundary entries don't claim any data and it ends with
+ * a checksum.
+ * 
+ * @author Raven
+ *
+ */
+public class PBOWriter {
+
+	/**
+	 * The size of the buffer used for writing the PBO
+	 */
+	public static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+	/**
+	 * Files up to this size are read into memory by the staging tasks. Larger
+	 * files are transferred from channel to channel when they are written.
+	 */
+	public static final int STAGING_THRESHOLD = 256 * 1024;
+	/**
+	 * The charset used for the Strings in the PBO's header
+	 */
+	public static final Charset HEADER_CHARSET = StandardCharsets.ISO_8859_1;
+	/**
+	 * The size of a header entry without its name (five 4-byte fields)
+	 */
+	protected static final int ENTRY_FIELDS_SIZE = 20;
+	/**
+	 * The length of the SHA1 checksum at the end of a PBO
+	 */
+	protected static final int CHECKSUM_LENGTH = PBOVerifier.CHECKSUM_LENGTH;
+
+	/**
+	 * The input size from which on a sample of the data is compressed first in
+	 * order to detect incompressible data early
+	 */
+	protected static final int SAMPLE_THRESHOLD = 64 * 1024;
+	/**
+	 * The size of the sample used for detecting incompressible data
+	 */
+	protected static final int SAMPLE_SIZE = 16 * 1024;
+	/**
+	 * The compressors used by the staging threads
+	 */
+	protected static final ThreadLocal<LZSSCompressor> COMPRESSORS = ThreadLocal.withInitial(LZSSCompressor::new);
+	/**
+	 * Separates the normalized path from the counter in the keys of duplicate
+	 * items (a character that can't occur in a path inside a PBO)
+	 */
+	protected static final char DUPLICATE_SEPARATOR = '\0';
+
+	/**
+	 * A file that is to be written into the PBO
+	 * 
+	 * @author Raven
+	 *
+	 */
+	protected abstract static class Item {
+		/**
+		 * The path of the file inside the PBO
+		 */
+		protected final String path;
+		/**
+		 * The reserved field of the file's header entry
+		 */
+		protected final int reserved;
+		/**
+		 * The time stamp of the file in unix time
+		 */
+		protected final int timeStamp;
+
+
+		protected Item(String path, int timeStamp) {
+			this(path, 0, timeStamp);
+		}
+
+		protected Item(String path, int reserved, int timeStamp) {
+			this.path = path;
+			this.reserved = reserved;
+			this.timeStamp = timeStamp;
+		}
+
+		/**
+		 * Prepares the data of this file for being written into the PBO. This gets
+		 * called on one of the writer's worker threads.
+		 * 
+		 * @param policy
+		 *            The policy deciding whether the file gets compressed or
+		 *            <code>null</code> if no file should be compressed
+		 * @return The staged data
+		 * @throws IOException
+		 */
+		protected abstract StagedData stage(IPBOCompressionPolicy policy) throws IOException;
+
+		/**
+		 * Determines the meta-data of the data {@link #stage(IPBOCompressionPolicy)}
+		 * is going to produce without staging this file
+		 * 
+		 * @param policy
+		 *            The policy deciding whether the file gets compressed or
+		 *            <code>null</code> if no file should be compressed
+		 * @return The meta-data or <code>null</code> if it can only be determined
+		 *         by staging this file
+		 * @throws IOException
+		 */
+		protected StagedData predict(IPBOCompressionPolicy policy) throws IOException {
+			return null;
+		}
+	}
+
+	/**
+	 * The data of a file that is ready to be written into the PBO
+	 * 
+	 * @author Raven
+	 *
+	 */
+	protected abstract static class StagedData {
+		/**
+		 * The packing method of the data (see {@link PBOEntry#getCompressionMethod()})
+		 */
+		protected final int packingMethod;
+		/**
+		 * The original size of the data (see {@link PBOEntry#getOriginalSize()})
+		 */
+		protected final int originalSize;
+		/**
+		 * The amount of bytes that are going to be written into the PBO
+		 */
+		protected final long dataSize;
+
+
+		protected StagedData(int packingMethod, int originalSize, long dataSize) {
+			this.packingMethod = packingMethod;
+			this.originalSize = originalSize;
+			this.dataSize = dataSize;
+		}
+
+		/**
+		 * Writes the data into the PBO
+		 * 
+		 * @param out
+		 *            The output to write to
+		 * @throws IOException
+		 */
+		protected abstract void writeTo(Output out) throws IOException;
+	}
+
+	/**
+	 * Staged data that is held in memory
+	 * 
+	 * @author Raven
+	 *
+	 */
+	protected static class BufferedData extends StagedData {
+		/**
+		 * The data
+		 */
+		protected final ByteBuffer data;
+
+
+		protected BufferedData(int packingMethod, int originalSize, ByteBuffer data) {
+			super(packingMethod, originalSize, data.remaining());
+
+			this.data = data;
+		}
+
+		@Override
+		protected void writeTo(Output out) throws IOException {
+			out.write(data.duplicate());
+		}
+	}
+
+	/**
+	 * Staged data that is transferred out of a file when being written
+	 * 
+	 * @author Raven
+	 *
+	 */
+	protected static class FileData extends StagedData {
+		/**
+		 * The file containing the data
+		 */
+		protected final Path file;
+
+
+		protected FileData(Path file, long size) {
+			super(PBOEntry.UNCOMPRESSED, 0, size);
+
+			this.file = file;
+		}
+
+		@Override
+		protected void writeTo(Output out) throws IOException {
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				out.transferFrom(channel, 0, dataSize);
+			}
+		}
+	}
+
+	/**
+	 * Staged data of which only the meta-data is retained
+	 * 
+	 * @author Raven
+	 *
+	 */
+	protected static class MetaData extends StagedData {
+
+		protected MetaData(StagedData data) {
+			this(data.packingMethod, data.originalSize, data.dataSize);
+		}
+
+		protected MetaData(int packingMethod, int originalSize, long dataSize) {
+			super(packingMethod, originalSize, dataSize);
+		}
+
+		/**
+		 * Checks whether the given data has the meta-data described by this
+		 * object
+		 * 
+		 * @param data
+		 *            The data to check
+		 */
+		protected boolean matches(StagedData data) {
+			return data.packingMethod == packingMethod && data.originalSize == originalSize
+					&& data.dataSize == dataSize;
+		}
+
+		@Override
+		protected void writeTo(Output out) throws IOException {
+			throw new IllegalStateException("Meta-data can't be written");
+		}
+	}
+
+	/**
+	 * Staged data that is transferred out of an existing PBO as-is
+	 * 
+	 * @author Raven
+	 *
+	 */
+	protected static class EntryData extends StagedData {
+		/**
+		 * The entry whose data is transferred
+		 */
+		protected final PBOEntry entry;
+
+
+		protected EntryData(PBOEntry entry) {
+			super(entry.packingMethod, entry.originalSize, entry.getDataSize());
+
+			this.entry = entry;
+		}
+
+		@Override
+		protected void writeTo(Output out) throws IOException {
+			out.transferFrom(entry.getPBO(), entry.getStartOffset(), dataSize);
+		}
+	}
+
+	/**
+	 * A file that is read from the file system
+	 * 
+	 * @author Raven
+	 *
+	 */
+	protected static class FileItem extends Item {
+		/**
+		 * The file to read
+		 */
+		protected final Path file;
+
+
+		protected FileItem(String path, int timeStamp, Path file) {
+			super(path, timeStamp);
+
+			this.file = file;
+		}
+
+		@Override
+		protected StagedData stage(IPBOCompressionPolicy policy) throws IOException {
+			long size = Files.size(file);
+
+			if (size > PBOEntry.MAX_DATA_SIZE) {
+				throw new IOException("The file " + file + " is too big to be put into a PBO");
+			}
+
+			boolean compress = policy != null && size <= Integer.MAX_VALUE && policy.shouldCompress(path, size);
+
+			if (size > STAGING_THRESHOLD && !compress) {
+				return new FileData(file, size);
+			}
+
+			return pack(path, Files.readAllBytes(file), compress ? policy : null);
+		}
+
+		@Override
+		protected StagedData predict(IPBOCompressionPolicy policy) throws IOException {
+			long size = Files.size(file);
+
+			if (size > PBOEntry.MAX_DATA_SIZE) {
+				throw new IOException("The file " + file + " is too big to be put into a PBO");
+			}
+
+			if (policy != null && size <= Integer.MAX_VALUE && policy.shouldCompress(path, size)) {
+				// whether it actually gets compressed depends on its content
+				return null;
+			}
+
+			return new MetaData(PBOEntry.UNCOMPRESSED, 0, size);
+		}
+	}
+
+	/**
+	 * A file whose content is provided by an {@linkplain IPBOContentSource}
+	 * 
+	 * @author Raven
+	 *
+	 */
+	protected static class SourceItem extends Item {
+		/**
+		 * The source of the content
+		 */
+		protected final IPBOContentSource source;
+
+
+		protected SourceItem(String path, int timeStamp, IPBOContentSource source) {
+			super(path, timeStamp);
+
+			this.source = source;
+		}
+
+		@Override
+		protected StagedData stage(IPBOCompressionPolicy policy) throws IOException {
+			return pack(path, readFully(source), policy);
+		}
+	}
+
+	/**
+	 * A file that is copied out of an existing PBO
+	 * 
+	 * @author Raven
+	 *
+	 */
+	protected static class EntryItem extends Item {
+		/**
+		 * The entry to copy
+		 */
+		protected final PBOEntry entry;
+
+
+		protected EntryItem(PBOEntry entry) {
+			super(entry.getFileName(), entry.reserved, entry.timeStamp);
+
+			this.entry = entry;
+		}
+
+		@Override
+		protected StagedData stage(IPBOCompressionPolicy policy) throws IOException {
+			// the data (compressed or not) is kept as it is
+			return new EntryData(entry);
+		}
+
+		@Override
+		protected StagedData predict(IPBOCompressionPolicy policy) throws IOException {
+			return new MetaData(stage(policy));
+		}
+	}
+
+	/**
+	 * A channel passing everything written to it on to another channel while
+	 * feeding it into a {@linkplain MessageDigest}
+	 * 
+	 * @author Raven
+	 *
+	 */
+	protected static class DigestChannel implements WritableByteChannel {
+		/**
+		 * The channel to write to
+		 */
+		protected final WritableByteChannel channel;
+		/**
+		 * The digest of everything that has been written
+		 */
+		protected final MessageDigest digest;
+
+
+		protected DigestChannel(WritableByteChannel channel, MessageDigest digest) {
+			this.channel = channel;
+			this.digest = digest;
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			ByteBuffer written = src.duplicate();
+			int count = channel.write(src);
+
+			written.limit(written.position() + count);
+			digest.update(written);
+
+			return count;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return channel.isOpen();
+		}
+
+		@Override
+		public void close() {
+			// the underlying channel is closed by its owner
+		}
+	}
+
+	/**
+	 * A buffered output on the channel of the PBO that is being written. The
+	 * SHA1 checksum of everything written is calculated on the fly.
+	 * 
+	 * @author Raven
+	 *
+	 */
+	protected static class Output {
+		/**
+		 * The channel to write to
+		 */
+		protected final DigestChannel channel;
+		/**
+		 * The write buffer
+		 */
+		protected final ByteBuffer buffer;
+
+
+		protected Output(WritableByteChannel channel) {
+			this.channel = new DigestChannel(channel, PBOVerifier.newDigest());
+			this.buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+		}
+
+		/**
+		 * Flushes the output and gets the SHA1 checksum of everything that has
+		 * been written
+		 * 
+		 * @return The checksum
+		 * @throws IOException
+		 */
+		protected byte[] checksum() throws IOException {
+			flush();
+
+			return channel.digest.digest();
+		}
+
+		/**
+		 * Writes the remaining content of the given buffer
+		 * 
+		 * @param src
+		 *            The buffer to write
+		 * @throws IOException
+		 */
+		protected void write(ByteBuffer src) throws IOException {
+			if (src.remaining() > buffer.remaining()) {
+				flush();
+			}
+
+			if (src.remaining() >= buffer.capacity()) {
+				while (src.hasRemaining()) {
+					channel.write(src);
+				}
+			} else {
+				buffer.put(src);
+			}
+		}
+
+		/**
+		 * Transfers the given range of the given channel to the output
+		 * 
+		 * @param src
+		 *            The channel to transfer the data from
+		 * @param position
+		 *            The position in the source channel at which the data starts
+		 * @param count
+		 *            The amount of bytes to transfer
+		 * @throws IOException
+		 */
+		protected void transferFrom(FileChannel src, long position, long count) throws IOException {
+			flush();
+
+			long transferred = 0;
+			while (transferred < count) {
+				long current = src.transferTo(position + transferred, count - transferred, channel);
+
+				if (current <= 0) {
+					if (position + transferred >= src.size()) {
+						throw new EOFException("Unexpected end of data while transferring into the PBO");
+					}
+				} else {
+					transferred += current;
+				}
+			}
+		}
+
+		/**
+		 * Transfers the given range of the given PBO-file to the output
+		 * 
+		 * @param src
+		 *            The PBO to transfer the data from
+		 * @param position
+		 *            The offset inside the PBO-file at which the data starts
+		 * @param count
+		 *            The amount of bytes to transfer
+		 * @throws IOException
+		 */
+		protected void transferFrom(PBO src, long position, long count) throws IOException {
+			flush();
+
+			src.transferFully(position, count, channel);
+		}
+
+		/**
+		 * Writes all buffered data to the channel
+		 * 
+		 * @throws IOException
+		 */
+		protected void flush() throws IOException {
+			buffer.flip();
+
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * The items to write mapped by their normalized path. Further items with
+	 * the same path (only present when repacking a PBO) are mapped by the
+	 * normalized path followed by {@link #DUPLICATE_SEPARATOR} and a counter.
+	 */
+	protected Map<String, Item> items;
+	/**
+	 * The header extension as a list of alternating keys and values
+	 */
+	protected List<String> headerExtension;
+	/**
+	 * The boundary entry starting the header (followed by the header
+	 * extension) or <code>null</code> if the header should only start with
+	 * such an entry if there is a header extension
+	 */
+	protected PBOEntry productEntry;
+	/**
+	 * The boundary entry terminating the header
+	 */
+	protected PBOEntry terminatingEntry;
+	/**
+	 * The executor used for staging the files
+	 */
+	protected ExecutorService executor;
+	/**
+	 * The maximum amount of files staged ahead of the one currently being
+	 * written
+	 */
+	protected int stagingWindow;
+	/**
+	 * The policy deciding which files get compressed or <code>null</code> if no
+	 * file should be compressed
+	 */
+	protected IPBOCompressionPolicy compressionPolicy;
+
+
+	/**
+	 * Creates a new writer using the common {@linkplain ForkJoinPool} for staging
+	 * the files
+	 */
+	public PBOWriter() {
+		items = new LinkedHashMap<>();
+		headerExtension = new ArrayList<>();
+		productEntry = newBoundaryEntry(PBOEntry.PRODUCT_ENTRY);
+		terminatingEntry = newBoundaryEntry(0);
+		executor = ForkJoinPool.commonPool();
+		stagingWindow = IOTasks.getDefaultWindow();
+	}
+
+	/**
+	 * Creates a writer containing all files and the header extension of the
+	 * given PBO. Writing it copies the data of the files straight out of the
+	 * given PBO without decompressing or recompressing it. Files can be added,
+	 * replaced (see {@link #put(String, Path)}) and removed (see
+	 * {@link #remove(String)}) before writing. The header extension, the
+	 * boundary entries and files whose path occurs multiple times are kept as
+	 * they are.
+	 * 
+	 * @param pbo
+	 *            The PBO to start from. It must not be closed before the new
+	 *            PBO has been written
+	 * @return The created writer
+	 */
+	public static PBOWriter from(PBO pbo) {
+		PBOWriter writer = new PBOWriter();
+
+		String[] extension = pbo.getHeaderExtension();
+		if (extension != null) {
+			writer.headerExtension.addAll(Arrays.asList(extension));
+		}
+
+		List<PBOEntry> entries = pbo.getAllEntries();
+		// the last entry is always the boundary entry terminating the header
+		writer.terminatingEntry = entries.remove(entries.size() - 1);
+		writer.productEntry = !entries.isEmpty() && entries.get(0).isBoundary() ? entries.remove(0) : null;
+
+		Map<String, Integer> occurrences = new HashMap<>();
+		for (PBOEntry current : entries) {
+			String key = PBOPaths.normalize(current.getFileName());
+			int occurrence = occurrences.merge(key, 1, Integer::sum);
+
+			writer.items.put(occurrence == 1 ? key : key + DUPLICATE_SEPARATOR + occurrence, new EntryItem(current));
+		}
+
+		return writer;
+	}
+
+	/**
+	 * Adds an entry to the header extension of the PBO. If there already is an
+	 * entry for the given key, its value gets replaced.
+	 * 
+	 * @param key
+	 *            The key of the entry (e.g. "prefix")
+	 * @param value
+	 *            The value of the entry
+	 * @return This writer
+	 */
+	public PBOWriter setHeaderExtension(String key, String value) {
+		if (key == null || key.isEmpty() || value == null) {
+			throw new IllegalArgumentException("The key must neither be null nor empty and the value must not be null!");
+		}
+
+		// a repacked header extension may end with a key without a value
+		int pairs = headerExtension.size() / 2;
+
+		for (int i = 0; i < pairs; i++) {
+			if (headerExtension.get(2 * i).equalsIgnoreCase(key)) {
+				headerExtension.set(2 * i + 1, value);
+				return this;
+			}
+		}
+
+		headerExtension.add(2 * pairs, key);
+		headerExtension.add(2 * pairs + 1, value);
+
+		return this;
+	}
+
+	/**
+	 * Sets the prefix of the PBO (see {@link PBO#getPrefix()})
+	 * 
+	 * @param prefix
+	 *            The prefix
+	 * @return This writer
+	 */
+	public PBOWriter setPrefix(String prefix) {
+		return setHeaderExtension("prefix", prefix);
+	}
+
+	/**
+	 * Adds the given file to the PBO
+	 * 
+	 * @param path
+	 *            The path of the file inside the PBO
+	 * @param file
+	 *            The file on the hard drive
+	 * @return This writer
+	 * @throws IOException
+	 *             If the file's time stamp can't be read
+	 */
+	public PBOWriter add(String path, Path file) throws IOException {
+		return add(new FileItem(toEntryPath(path), toTimeStamp(Files.getLastModifiedTime(file).toMillis()), file));
+	}
+
+	/**
+	 * Adds the given file to the PBO. Unlike {@link #add(String, Path)}, a file
+	 * with the same path that has been added before gets replaced (keeping its
+	 * position inside the PBO).
+	 * 
+	 * @param path
+	 *            The path of the file inside the PBO
+	 * @param file
+	 *            The file on the hard drive
+	 * @return This writer
+	 * @throws IOException
+	 *             If the file's time stamp can't be read
+	 */
+	public PBOWriter put(String path, Path file) throws IOException {
+		String entryPath = toEntryPath(path);
+
+		items.put(PBOPaths.normalize(entryPath),
+				new FileItem(entryPath, toTimeStamp(Files.getLastModifiedTime(file).toMillis()), file));
+
+		return this;
+	}
+
+	/**
+	 * Adds a file with the given content to the PBO. The current time is used as
+	 * its time stamp.
+	 * 
+	 * @param path
+	 *            The path of the file inside the PBO
+	 * @param content
+	 *            The content of the file. The array must not be modified
+	 *            afterwards
+	 * @return This writer
+	 */
+	public PBOWriter add(String path, byte[] content) {
+		return add(path, toTimeStamp(System.currentTimeMillis()), () -> new ByteArrayInputStream(content));
+	}
+
+	/**
+	 * Adds a file whose content is provided by the given source to the PBO
+	 * 
+	 * @param path
+	 *            The path of the file inside the PBO
+	 * @param timeStamp
+	 *            The time stamp of the file in unix time
+	 * @param source
+	 *            The source of the file's content. It gets opened while the PBO
+	 *            is being written
+	 * @return This writer
+	 */
+	public PBOWriter add(String path, int timeStamp, IPBOContentSource source) {
+		if (source == null) {
+			throw new IllegalArgumentException("The given source must not be null!");
+		}
+
+		return add(new SourceItem(toEntryPath(path), timeStamp, source));
+	}
+
+	/**
+	 * Adds all files inside the given directory (including sub-directories) to
+	 * the PBO. Their path inside the PBO is their path relative to the given
+	 * directory.
+	 * 
+	 * @param directory
+	 *            The directory to add
+	 * @return This writer
+	 * @throws IOException
+	 */
+	public PBOWriter addDirectory(Path directory) throws IOException {
+		if (!Files.isDirectory(directory)) {
+			throw new IllegalArgumentException("The given path is not a directory!");
+		}
+
+		List<Path> files = new ArrayList<>();
+		try (Stream<Path> stream = Files.walk(directory)) {
+			stream.filter(Files::isRegularFile).forEach(files::add);
+		}
+
+		Collections.sort(files);
+
+		for (Path current : files) {
+			StringBuilder path = new StringBuilder();
+
+			for (Path segment : directory.relativize(current)) {
+				if (path.length() > 0) {
+					path.append(PBOPaths.SEPARATOR);
+				}
+
+				path.append(segment.toString());
+			}
+
+			add(path.toString(), current);
+		}
+
+		return this;
+	}
+
+	/**
+	 * Adds the given item
+	 * 
+	 * @param item
+	 *            The item to add
+	 * @return This writer
+	 * @throws IllegalArgumentException
+	 *             If there already is an item with the same path
+	 */
+	protected PBOWriter add(Item item) {
+		String key = PBOPaths.normalize(item.path);
+
+		if (items.containsKey(key)) {
+			throw new IllegalArgumentException("There already is a file with the path \"" + item.path + "\"!");
+		}
+
+		items.put(key, item);
+
+		return this;
+	}
+
+	/**
+	 * Removes the file with the given path from the PBO. If a repacked PBO
+	 * contains the path multiple times, all of these files are removed.
+	 * 
+	 * @param path
+	 *            The path of the file inside the PBO (case-insensitive)
+	 * @return Whether there was such a file
+	 */
+	public boolean remove(String path) {
+		String key = PBOPaths.normalize(path);
+		String duplicatePrefix = key + DUPLICATE_SEPARATOR;
+
+		return items.keySet().removeIf(current -> current.equals(key) || current.startsWith(duplicatePrefix));
+	}
+
+	/**
+	 * Gets the amount of files that have been added
+	 */
+	public int size() {
+		return items.size();
+	}
+
+	/**
+	 * Sets the executor used for staging the files
+	 * 
+	 * @param executor
+	 *            The executor to use
+	 * @return This writer
+	 */
+	public PBOWriter setExecutor(ExecutorService executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("The executor must not be null!");
+		}
+
+		this.executor = executor;
+
+		return this;
+	}
+
+	/**
+	 * Gets the maximum amount of files that are staged ahead of the one
+	 * currently being written
+	 */
+	public int getStagingWindow() {
+		return stagingWindow;
+	}
+
+	/**
+	 * Sets the maximum amount of files that are staged ahead of the one
+	 * currently being written. This limits the amount of memory needed for
+	 * writing the PBO.
+	 * 
+	 * @param stagingWindow
+	 *            The window size. Must be at least 1
+	 * @return This writer
+	 */
+	public PBOWriter setStagingWindow(int stagingWindow) {
+		if (stagingWindow < 1) {
+			throw new IllegalArgumentException("The staging window has to be at least 1!");
+		}
+
+		this.stagingWindow = stagingWindow;
+
+		return this;
+	}
+
+	/**
+	 * Gets the policy deciding which files get compressed or <code>null</code>
+	 * if no file gets compressed
+	 */
+	public IPBOCompressionPolicy getCompressionPolicy() {
+		return compressionPolicy;
+	}
+
+	/**
+	 * Sets the policy deciding which files get compressed. Compression happens
+	 * while staging the files which means that multiple files are compressed
+	 * concurrently on the configured executor.
+	 * 
+	 * @param compressionPolicy
+	 *            The policy to use (e.g. {@linkplain DefaultPBOCompressionPolicy})
+	 *            or <code>null</code> if no file should be compressed (default)
+	 * @return This writer
+	 */
+	public PBOWriter setCompressionPolicy(IPBOCompressionPolicy compressionPolicy) {
+		this.compressionPolicy = compressionPolicy;
+
+		return this;
+	}
+
+	/**
+	 * Writes the PBO to the given location. The PBO is written to a temporary
+	 * file next to the target which then atomically replaces an existing file.
+	 * After writing, the created file is read back in as a {@linkplain PBO}.
+	 * 
+	 * @param target
+	 *            The location to write the PBO to. It has to have the .pbo
+	 *            extension
+	 * @return The {@linkplain PBO} that has been written
+	 * @throws IOException
+	 *             If writing fails. In this case an existing file at the target
+	 *             location is left untouched
+	 * @throws IllegalArgumentException
+	 *             If the target is a PBO that files are copied out of
+	 */
+	public PBO write(Path target) throws IOException {
+		Set<PBO> sources = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (Item current : items.values()) {
+			if (current instanceof EntryItem) {
+				sources.add(((EntryItem) current).entry.getPBO());
+			}
+		}
+
+		for (PBO current : sources) {
+			if (current.getLocation() != null && Files.exists(target)
+					&& Files.isSameFile(current.getLocation(), target)) {
+				throw new IllegalArgumentException(
+						"The PBO \"" + target + "\" can't be overwritten while files are being copied out of it!");
+			}
+		}
+
+		IOTasks.replaceAtomically(target, temp -> {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				write(channel);
+			}
+
+			return null;
+		});
+
+		return new PBO(target.toFile());
+	}
+
+	/**
+	 * Writes the PBO into the given (empty) channel
+	 * 
+	 * @param channel
+	 *            The channel to write to
+	 * @throws IOException
+	 */
+	protected void write(WritableByteChannel channel) throws IOException {
+		List<Item> itemList = new ArrayList<>(items.values());
+		byte[][] names = new byte[itemList.size()][];
+
+		for (int i = 0; i < names.length; i++) {
+			names[i] = itemList.get(i).path.getBytes(HEADER_CHARSET);
+		}
+
+		PBOEntry product = productEntry;
+		if (product == null && !headerExtension.isEmpty()) {
+			// the header extension can only follow a product entry
+			product = newBoundaryEntry(PBOEntry.PRODUCT_ENTRY);
+		}
+
+		byte[][] extension = new byte[product == null ? 0 : headerExtension.size()][];
+		for (int i = 0; i < extension.length; i++) {
+			extension[i] = headerExtension.get(i).getBytes(HEADER_CHARSET);
+		}
+
+		// the header precedes the data, so the size of each file has to be known first
+		StagedData[] staged = new StagedData[itemList.size()];
+		MetaData[] meta = new MetaData[itemList.size()];
+		prestage(itemList, staged, meta);
+
+		Output out = new Output(channel);
+
+		writeHeader(out, product, itemList, names, extension, meta);
+		writeData(itemList, staged, meta, out);
+
+		ByteBuffer checksum = ByteBuffer.allocate(1 + CHECKSUM_LENGTH);
+		checksum.put((byte) 0);
+		checksum.put(out.checksum());
+		checksum.flip();
+
+		while (checksum.hasRemaining()) {
+			channel.write(checksum);
+		}
+	}
+
+	/**
+	 * Determines the meta-data of the given items. Items whose meta-data can't
+	 * be {@link Item#predict(IPBOCompressionPolicy) predicted} are staged (in
+	 * parallel) and their staged data is kept.
+	 * 
+	 * @param itemList
+	 *            The items to write
+	 * @param staged
+	 *            The array to store the staged data of the staged items in
+	 * @param meta
+	 *            The array to store the meta-data of all items in
+	 * @throws IOException
+	 */
+	protected void prestage(List<Item> itemList, StagedData[] staged, MetaData[] meta) throws IOException {
+		ArrayDeque<Integer> indices = new ArrayDeque<>();
+
+		try (IOTasks.Window<StagedData> pending = new IOTasks.Window<>(executor, stagingWindow)) {
+			for (int i = 0; i < meta.length; i++) {
+				StagedData predicted = itemList.get(i).predict(compressionPolicy);
+
+				if (predicted != null) {
+					meta[i] = new MetaData(predicted);
+					continue;
+				}
+
+				if (pending.isFull()) {
+					storeStaged(itemList, indices.poll(), pending.await(), staged, meta);
+				}
+
+				Item item = itemList.get(i);
+				pending.submit(() -> item.stage(compressionPolicy));
+				indices.add(i);
+			}
+
+			while (!pending.isEmpty()) {
+				storeStaged(itemList, indices.poll(), pending.await(), staged, meta);
+			}
+		}
+	}
+
+	/**
+	 * Stores the given staged data of the item at the given index
+	 * 
+	 * @param itemList
+	 *            The items to write
+	 * @param index
+	 *            The index of the staged item
+	 * @param data
+	 *            The staged data
+	 * @param staged
+	 *            The staged data of the items
+	 * @param meta
+	 *            The meta-data of the items
+	 * @throws IOException
+	 *             If the data is too big to be put into a PBO
+	 */
+	protected static void storeStaged(List<Item> itemList, int index, StagedData data, StagedData[] staged,
+			MetaData[] meta) throws IOException {
+		if (data.dataSize > PBOEntry.MAX_DATA_SIZE) {
+			throw new IOException("The file " + itemList.get(index).path + " is too big to be put into a PBO");
+		}
+
+		staged[index] = data;
+		meta[index] = new MetaData(data);
+	}
+
+	/**
+	 * Writes the data of the given items in order. Items that haven't been
+	 * staged yet are staged in parallel.
+	 * 
+	 * @param itemList
+	 *            The items to write
+	 * @param staged
+	 *            The staged data of the items that have been staged up front
+	 *            (<code>null</code> for the others). The array is cleared while
+	 *            the data is written in order to free the memory
+	 * @param meta
+	 *            The meta-data of the items as written into the header
+	 * @param out
+	 *            The output to write to
+	 * @throws IOException
+	 *             If staging or writing fails or if the data of an item
+	 *             doesn't match the meta-data in the header
+	 */
+	protected void writeData(List<Item> itemList, StagedData[] staged, MetaData[] meta, Output out)
+			throws IOException {
+		int next = 0;
+
+		try (IOTasks.Window<StagedData> pending = new IOTasks.Window<>(executor, stagingWindow)) {
+			for (int i = 0; i < staged.length; i++) {
+				// the pending tasks belong to the items without staged data in order
+				for (; next < staged.length && !pending.isFull(); next++) {
+					if (staged[next] == null) {
+						Item item = itemList.get(next);
+						pending.submit(() -> item.stage(compressionPolicy));
+					}
+				}
+
+				StagedData current = staged[i] != null ? staged[i] : pending.await();
+				staged[i] = null;
+
+				if (!meta[i].matches(current)) {
+					throw new IOException(
+							"The file " + itemList.get(i).path + " has changed while the PBO was being written");
+				}
+
+				current.writeTo(out);
+			}
+		}
+	}
+
+	/**
+	 * Writes the PBO's header
+	 * 
+	 * @param out
+	 *            The output to write to
+	 * @param product
+	 *            The product entry or <code>null</code> if the header neither
+	 *            contains a product entry nor a header extension
+	 * @param itemList
+	 *            The items to write the header entries for
+	 * @param names
+	 *            The encoded names of the items
+	 * @param extension
+	 *            The encoded header extension
+	 * @param staged
+	 *            The meta-data of the items
+	 * @throws IOException
+	 */
+	protected void writeHeader(Output out, PBOEntry product, List<Item> itemList, byte[][] names,
+			byte[][] extension, MetaData[] staged) throws IOException {
+		ByteBuffer fields = ByteBuffer.allocate(ENTRY_FIELDS_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer zero = ByteBuffer.allocate(1);
+
+		if (product != null) {
+			// product entry followed by the header extension
+			out.write((ByteBuffer) zero.clear());
+			fields.clear();
+			fields.putInt(product.packingMethod).putInt(product.originalSize).putInt(product.reserved)
+					.putInt(product.timeStamp).putInt(0);
+			out.write((ByteBuffer) fields.flip());
+
+			for (byte[] current : extension) {
+				out.write(ByteBuffer.wrap(current));
+				out.write((ByteBuffer) zero.clear());
+			}
+			out.write((ByteBuffer) zero.clear());
+		}
+
+		for (int i = 0; i < names.length; i++) {
+			out.write(ByteBuffer.wrap(names[i]));
+			out.write((ByteBuffer) zero.clear());
+
+			fields.clear();
+			fields.putInt(staged[i].packingMethod).putInt(staged[i].originalSize).putInt(itemList.get(i).reserved)
+					.putInt(itemList.get(i).timeStamp).putInt((int) staged[i].dataSize);
+			out.write((ByteBuffer) fields.flip());
+		}
+
+		// terminating boundary entry
+		out.write((ByteBuffer) zero.clear());
+		fields.clear();
+		fields.putInt(terminatingEntry.packingMethod).putInt(terminatingEntry.originalSize)
+				.putInt(terminatingEntry.reserved).putInt(terminatingEntry.timeStamp).putInt(0);
+		out.write((ByteBuffer) fields.flip());
+	}
+
+	/**
+	 * Creates a boundary entry whose remaining fields are zero. The data of
+	 * boundary entries is never written.
+	 * 
+	 * @param packingMethod
+	 *            The packing method of the entry
+	 * @return The created entry
+	 */
+	protected static PBOEntry newBoundaryEntry(int packingMethod) {
+		return new PBOEntry("", packingMethod, 0, 0, 0, 0, 0, null);
+	}
+
+	/**
+	 * Creates the staged data for the given content. If the given policy allows
+	 * it, the content gets compressed.
+	 * 
+	 * @param path
+	 *            The path of the file inside the PBO
+	 * @param content
+	 *            The content of the file
+	 * @param policy
+	 *            The policy deciding whether the file gets compressed or
+	 *            <code>null</code> if it should not be compressed
+	 * @return The staged data
+	 */
+	protected static StagedData pack(String path, byte[] content, IPBOCompressionPolicy policy) {
+		if (policy == null || !policy.shouldCompress(path, content.length)) {
+			return new BufferedData(PBOEntry.UNCOMPRESSED, 0, ByteBuffer.wrap(content));
+		}
+
+		LZSSCompressor compressor = COMPRESSORS.get();
+
+		if (content.length >= SAMPLE_THRESHOLD) {
+			// check whether a sample out of the middle compresses well enough
+			byte[] sample = new byte[LZSSCompressor.maxCompressedLength(SAMPLE_SIZE)];
+			int sampleSize = compressor.compress(content, (content.length - SAMPLE_SIZE) / 2, SAMPLE_SIZE, sample, 0,
+					sample.length);
+
+			if (!policy.acceptCompressed(path, SAMPLE_SIZE, sampleSize)) {
+				return new BufferedData(PBOEntry.UNCOMPRESSED, 0, ByteBuffer.wrap(content));
+			}
+		}
+
+		// compressed data that is bigger than the original is never used
+		byte[] compressed = new byte[content.length];
+		int compressedSize = compressor.compress(content, 0, content.length, compressed, 0, compressed.length);
+
+		if (compressedSize < 0 || !policy.acceptCompressed(path, content.length, compressedSize)) {
+			return new BufferedData(PBOEntry.UNCOMPRESSED, 0, ByteBuffer.wrap(content));
+		}
+
+		return new BufferedData(PBOEntry.COMPRESSED, content.length, ByteBuffer.wrap(compressed, 0, compressedSize));
+	}
+
+	/**
+	 * Reads the complete content of the given source
+	 * 
+	 * @param source
+	 *            The source to read
+	 * @return The read content
+	 * @throws IOException
+	 */
+	protected static byte[] readFully(IPBOContentSource source) throws IOException {
+		try (InputStream in = source.open()) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[16 * 1024];
+
+			int count;
+			while ((count = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, count);
+			}
+
+			return out.toByteArray();
+		}
+	}
+
+	/**
+	 * Converts the given path into the form used inside a PBO (backslashes as
+	 * separators, no leading separator)
+	 * 
+	 * @param path
+	 *            The path to convert
+	 * @return The converted path
+	 */
+	protected static String toEntryPath(String path) {
+		if (path == null) {
+			throw new IllegalArgumentException("The path must not be null!");
+		}
+
+		String entryPath = path.replace('/', PBOPaths.SEPARATOR);
+		while (!entryPath.isEmpty() && entryPath.charAt(0) == PBOPaths.SEPARATOR) {
+			entryPath = entryPath.substring(1);
+		}
+
+		if (entryPath.isEmpty()) {
+			throw new IllegalArgumentException("The path must not be empty!");
+		}
+
+		return entryPath;
+	}
+
+	/**
+	 * Converts the given time in milliseconds into a time stamp in unix time
+	 * 
+	 * @param millis
+	 *            The time in milliseconds since the epoch
+	 * @return The time stamp
+	 */
+	protected static int toTimeStamp(long millis) {
+		return (int) (millis / 1000);
+	}
+}
@@ -0,0 +1,399 @@
+package raven.pbo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A trie mapping case-insensitive paths (as used inside PBOs) to values. Every
+ * node represents a single path segment so that a path is resolved in time
+ * linear to its length regardless of how many paths are stored. Both
+ * {@link PBOPaths#SEPARATOR backslashes} and forward slashes are accepted as
+ * separators and empty segments are ignored.<br>
+ * This class is not thread-safe.
+ * 
+ * @author Raven
+ *
+ * @param <V>
+ *            The type of the stored values
+ */
+public class PathTrie<V> {
+
+	/**
+	 * A node of the trie representing a single path segment
+	 * 
+	 * @author Raven
+	 *
+	 * @param <V>
+	 *            The type of the stored values
+	 */
+	public static class Node<V> {
+		/**
+		 * The parent node or <code>null</code> for the root
+		 */
+		protected final Node<V> parent;
+		/**
+		 * The name of the segment in the case it has been inserted first
+		 */
+		protected final String name;
+		/**
+		 * The child nodes mapped by their lower-case segment name or
+		 * <code>null</code> if there are none
+		 */
+		protected Map<String, Node<V>> children;
+		/**
+		 * The value associated with the path of this node or <code>null</code>
+		 */
+		protected V value;
+
+
+		protected Node(Node<V> parent, String name) {
+			this.parent = parent;
+			this.name = name;
+		}
+
+		/**
+		 * Gets the parent node or <code>null</code> if this is the root
+		 */
+		public Node<V> getParent() {
+			return parent;
+		}
+
+		/**
+		 * Gets the name of the segment this node represents (empty for the root)
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Gets the path of this node (segments joined by
+		 * {@link PBOPaths#SEPARATOR})
+		 */
+		public String getPath() {
+			if (parent == null) {
+				return "";
+			}
+
+			String parentPath = parent.getPath();
+
+			return parentPath.isEmpty() ? name : parentPath + PBOPaths.SEPARATOR + name;
+		}
+
+		/**
+		 * Gets the value associated with the path of this node or
+		 * <code>null</code> if there is none
+		 */
+		public V getValue() {
+			return value;
+		}
+
+		/**
+		 * Gets the child with the given name
+		 * 
+		 * @param name
+		 *            The (case-insensitive) name of the child
+		 * @return The child or <code>null</code> if there is none
+		 */
+		public Node<V> getChild(String name) {
+			return children == null ? null : children.get(key(name));
+		}
+
+		/**
+		 * Gets an unmodifiable view on the children of this node. After
+		 * {@link PathTrie#sort()} the children are ordered by name.
+		 */
+		public Collection<Node<V>> getChildren() {
+			return children == null ? Collections.emptyList() : Collections.unmodifiableCollection(children.values());
+		}
+
+		/**
+		 * Checks whether this node has any children
+		 */
+		public boolean hasChildren() {
+			return children != null && !children.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return getPath();
+		}
+	}
+
+	/**
+	 * The root node representing the empty path
+	 */
+	protected Node<V> root;
+	/**
+	 * The amount of values stored in this trie
+	 */
+	protected int size;
+
+
+	/**
+	 * Creates a new, empty trie
+	 */
+	public PathTrie() {
+		root = new Node<>(null, "");
+	}
+
+	/**
+	 * Gets the key a segment is stored under
+	 * 
+	 * @param segment
+	 *            The segment
+	 */
+	protected static String key(String segment) {
+		return segment.toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Gets the root node
+	 */
+	public Node<V> getRoot() {
+		return root;
+	}
+
+	/**
+	 * Gets the amount of values stored in this trie
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the node for the given path
+	 * 
+	 * @param path
+	 *            The path to look up
+	 * @return The respective node or <code>null</code> if there is none
+	 */
+	public Node<V> getNode(String path) {
+		return getNode(root, path);
+	}
+
+	/**
+	 * Gets the node for the given path relative to the given node
+	 * 
+	 * @param base
+	 *            The node of this trie the path is relative to
+	 * @param path
+	 *            The path to look up
+	 * @return The respective node or <code>null</code> if there is none
+	 */
+	public Node<V> getNode(Node<V> base, String path) {
+		Node<V> node = base;
+		int length = path.length();
+		int start = 0;
+
+		while (node != null && start < length) {
+			int end = nextSeparator(path, start);
+
+			if (end > start) {
+				node = node.getChild(path.substring(start, end));
+			}
+
+			start = end + 1;
+		}
+
+		return node;
+	}
+
+	/**
+	 * Gets the node for the given path and creates it (as well as all its
+	 * parents) if it doesn't exist yet
+	 * 
+	 * @param path
+	 *            The path to get the node for
+	 * @return The respective node
+	 */
+	public Node<V> getOrCreateNode(String path) {
+		return getOrCreateNode(root, path);
+	}
+
+	/**
+	 * Gets the node for the given path relative to the given node and creates
+	 * it (as well as all its parents) if it doesn't exist yet
+	 * 
+	 * @param base
+	 *            The node of this trie the path is relative to
+	 * @param path
+	 *            The path to get the node for
+	 * @return The respective node
+	 */
+	public Node<V> getOrCreateNode(Node<V> base, String path) {
+		Node<V> node = base;
+		int length = path.length();
+		int start = 0;
+
+		while (start < length) {
+			int end = nextSeparator(path, start);
+
+			if (end > start) {
+				String segment = path.substring(start, end);
+				String key = key(segment);
+
+				if (node.children == null) {
+					node.children = new HashMap<>(4);
+				}
+
+				Node<V> child = node.children.get(key);
+				if (child == null) {
+					child = new Node<>(node, segment);
+					node.children.put(key, child);
+				}
+
+				node = child;
+			}
+
+			start = end + 1;
+		}
+
+		return node;
+	}
+
+	/**
+	 * Gets the value associated with the given path
+	 * 
+	 * @param path
+	 *            The path to look up
+	 * @return The value or <code>null</code> if there is none
+	 */
+	public V get(String path) {
+		Node<V> node = getNode(path);
+
+		return node == null ? null : node.value;
+	}
+
+	/**
+	 * Associates the given value with the given path
+	 * 
+	 * @param path
+	 *            The path
+	 * @param value
+	 *            The value. <code>null</code> removes the current value
+	 * @return The value previously associated with the path or
+	 *         <code>null</code>
+	 */
+	public V put(String path, V value) {
+		if (value == null) {
+			return remove(path);
+		}
+
+		return setValue(getOrCreateNode(path), value);
+	}
+
+	/**
+	 * Removes the value associated with the given path. Nodes that are left
+	 * without a value and without children are pruned.
+	 * 
+	 * @param path
+	 *            The path
+	 * @return The removed value or <code>null</code> if there was none
+	 */
+	public V remove(String path) {
+		Node<V> node = getNode(path);
+
+		return node == null ? null : setValue(node, null);
+	}
+
+	/**
+	 * Sets the value of the given node. If the node is left without a value and
+	 * without children, it is pruned.
+	 * 
+	 * @param node
+	 *            A node of this trie
+	 * @param value
+	 *            The new value or <code>null</code>
+	 * @return The previous value of the node
+	 */
+	public V setValue(Node<V> node, V value) {
+		V previous = node.value;
+		node.value = value;
+
+		if (previous == null && value != null) {
+			size++;
+		} else if (previous != null && value == null) {
+			size--;
+			prune(node);
+		}
+
+		return previous;
+	}
+
+	/**
+	 * Removes the given node and its parents as long as they have neither a
+	 * value nor children
+	 * 
+	 * @param node
+	 *            The node to start at
+	 */
+	protected void prune(Node<V> node) {
+		while (node.parent != null && node.value == null && !node.hasChildren()) {
+			node.parent.children.remove(key(node.name));
+			node = node.parent;
+		}
+	}
+
+	/**
+	 * Orders the children of every node by their (case-insensitive) name so
+	 * that {@link Node#getChildren()} returns them in that order. Nodes that are
+	 * created afterwards are appended to their siblings, so a trie should only
+	 * be sorted once it isn't modified anymore.
+	 */
+	public void sort() {
+		ArrayDeque<Node<V>> pending = new ArrayDeque<>();
+		pending.add(root);
+
+		while (!pending.isEmpty()) {
+			Node<V> node = pending.poll();
+
+			if (!node.hasChildren()) {
+				continue;
+			}
+
+			List<String> keys = new ArrayList<>(node.children.keySet());
+			Collections.sort(keys);
+
+			Map<String, Node<V>> sorted = new LinkedHashMap<>(keys.size() * 4 / 3 + 1);
+			for (String current : keys) {
+				Node<V> child = node.children.get(current);
+
+				sorted.put(current, child);
+				pending.add(child);
+			}
+
+			node.children = sorted;
+		}
+	}
+
+	/**
+	 * Gets the index of the next separator in the given path
+	 * 
+	 * @param path
+	 *            The path
+	 * @param start
+	 *            The index to start searching at
+	 * @return The index of the next separator or the path's length if there is
+	 *         none
+	 */
+	protected static int nextSeparator(String path, int start) {
+		int length = path.length();
+
+		for (int i = start; i < length; i++) {
+			char c = path.charAt(i);
+
+			if (c == PBOPaths.SEPARATOR || c == '/') {
+				return i;
+			}
+		}
+
+		return length;
+	}
+}
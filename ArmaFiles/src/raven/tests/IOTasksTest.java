@@ -0,0 +1,108 @@
+package raven.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import raven.pbo.IOTasks;
+
+class IOTasksTest {
+
+	@Test
+	void windowReturnsResultsInOrderAndStaysBounded() throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		List<Integer> results = new ArrayList<>();
+
+		try (IOTasks.Window<Integer> window = new IOTasks.Window<>(executor, 3)) {
+			for (int i = 0; i < 20; i++) {
+				if (window.isFull()) {
+					results.add(window.await());
+				}
+
+				int value = i;
+				window.submit(() -> {
+					maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+					try {
+						// later tasks complete first
+						Thread.sleep(20 - value);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					running.decrementAndGet();
+
+					return value;
+				});
+
+				if (window.isFull()) {
+					assertThrows(IllegalStateException.class, () -> window.submit(() -> -1));
+				}
+			}
+
+			while (!window.isEmpty()) {
+				results.add(window.await());
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		for (int i = 0; i < 20; i++) {
+			assertEquals(i, results.get(i));
+		}
+		assertTrue(maxRunning.get() <= 3);
+	}
+
+	@Test
+	void windowRethrowsIOExceptionsAndCancelsPendingTasks() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		CountDownLatch blocked = new CountDownLatch(1);
+		AtomicInteger completed = new AtomicInteger();
+
+		try {
+			IOTasks.Window<Integer> window = new IOTasks.Window<>(executor, 4);
+			window.submit(() -> {
+				throw new IOException("failed");
+			});
+			window.submit(() -> {
+				try {
+					blocked.await();
+				} catch (InterruptedException e) {
+					// cancelled
+					return -1;
+				}
+				return completed.incrementAndGet();
+			});
+			window.submit(() -> completed.incrementAndGet());
+
+			assertEquals("failed", assertThrows(IOException.class, window::await).getMessage());
+
+			window.close();
+			assertTrue(window.isEmpty());
+			assertThrows(IllegalStateException.class, window::await);
+		} finally {
+			executor.shutdownNow();
+			assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		}
+
+		assertEquals(0, completed.get());
+	}
+
+	@Test
+	void defaultWindowIsValidated() {
+		assertTrue(IOTasks.getDefaultWindow() >= 1);
+		assertThrows(IllegalArgumentException.class, () -> IOTasks.setDefaultWindow(0));
+		assertThrows(IllegalArgumentException.class, () -> new IOTasks.Window<>(null, 0));
+	}
+}
@@ -0,0 +1,102 @@
+package raven.tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import raven.pbo.LZSSCompressor;
+import raven.pbo.LZSSInputStream;
+
+class LZSSTest {
+
+	static byte[] decompress(byte[] compressed, int originalSize) throws IOException {
+		try (InputStream in = new LZSSInputStream(new ByteArrayInputStream(compressed), originalSize)) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			// odd buffer size so that back-references get split between reads
+			byte[] buffer = new byte[1000];
+
+			int count;
+			while ((count = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, count);
+			}
+
+			return out.toByteArray();
+		}
+	}
+
+	static void assertRoundTrip(byte[] data) throws IOException {
+		byte[] compressed = new LZSSCompressor().compress(data);
+
+		assertArrayEquals(data, decompress(compressed, data.length));
+	}
+
+	@Test
+	void roundTrip() throws IOException {
+		Random random = new Random(42);
+
+		byte[] text = new byte[100000];
+		for (int i = 0; i < text.length; i++) {
+			// a small alphabet produces many (and long) matches
+			text[i] = (byte) ('a' + random.nextInt(4));
+		}
+		byte[] noise = new byte[10000];
+		random.nextBytes(noise);
+
+		assertRoundTrip(new byte[0]);
+		assertRoundTrip(new byte[] { 1 });
+		assertRoundTrip(new byte[5000]);
+		assertRoundTrip(text);
+		assertRoundTrip(noise);
+	}
+
+	@Test
+	void compressesRepetitiveData() {
+		byte[] data = new byte[5000];
+
+		assertTrue(new LZSSCompressor().compress(data).length < data.length / 4);
+	}
+
+	@Test
+	void referenceBeforeStartYieldsSpaces() throws IOException {
+		// a single back-reference (distance 1, length 3) followed by the checksum
+		byte[] compressed = { 0, 1, 0, 3 * ' ', 0, 0, 0 };
+
+		assertArrayEquals("   ".getBytes(), decompress(compressed, 3));
+	}
+
+	@Test
+	void checksumMismatch() {
+		byte[] data = "Some text that is long enough to contain some text twice".getBytes();
+		byte[] compressed = new LZSSCompressor().compress(data);
+		compressed[compressed.length - 1] ^= 1;
+
+		assertThrows(IOException.class, () -> decompress(compressed, data.length));
+	}
+
+	@Test
+	void distanceZero() {
+		// a back-reference with distance 0 would reference the byte being written
+		byte[] compressed = { 0, 0, 0, 0, 0, 0, 0 };
+
+		assertThrows(IOException.class, () -> decompress(compressed, 3));
+	}
+
+	@Test
+	void truncatedData() {
+		byte[] data = new byte[5000];
+		new Random(7).nextBytes(data);
+		byte[] compressed = new LZSSCompressor().compress(data);
+		byte[] truncated = new byte[compressed.length / 2];
+		System.arraycopy(compressed, 0, truncated, 0, truncated.length);
+
+		assertThrows(IOException.class, () -> decompress(truncated, data.length));
+	}
+}
@@ -0,0 +1,215 @@
+package raven.tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import raven.pbo.PBO;
+import raven.pbo.PBOEntry;
+import raven.pbo.PBOEntryChannel;
+import raven.pbo.PBOInputStream;
+
+/**
+ * Tests PBOs that are too big to be mapped as a single segment. The PBOs are
+ * written as sparse files so that only the header and the few bytes the tests
+ * look at actually take up space.
+ */
+class LargePBOTest {
+
+	static final long GB = 1L << 30;
+
+	/**
+	 * The names of the entries of the test PBO
+	 */
+	static final String[] NAMES = { "first.txt", "huge.bin", "large.bin", "gap.bin", "crossing.txt", "tail.txt" };
+
+	/**
+	 * The absolute offsets at which the entries' data end. The data of huge.bin
+	 * is bigger than {@link Integer#MAX_VALUE}, large.bin is bigger than a
+	 * mapped segment's step and crossing.txt spans the start of the segment at
+	 * 5GB.
+	 */
+	static final long[] ENDS = { -1, 11 * GB / 4, 17 * GB / 4, 5 * GB - 8, 5 * GB + 8, 5 * GB + 24 };
+
+	@TempDir
+	Path directory;
+
+
+	/**
+	 * Gets the marker that is written to the start respectively to the end of
+	 * the data of the entry with the given name
+	 */
+	static byte[] marker(String name, boolean start) {
+		return String.format("%-7.7s%s", name, start ? "<" : ">").getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Writes a sparse PBO consisting of the entries {@link #NAMES} whose data
+	 * ends at the respective {@link #ENDS}. Each entry's data starts and ends
+	 * with its {@link #marker(String, boolean) markers}.
+	 *
+	 * @return The absolute offsets at which the entries' data start
+	 */
+	long[] writePBO(Path file) throws IOException {
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		int headerSize = 21;
+		for (String current : NAMES) {
+			headerSize += current.length() + 21;
+		}
+
+		long[] starts = new long[NAMES.length];
+		long[] ends = ENDS.clone();
+		ends[0] = headerSize + 16;
+
+		for (int i = 0; i < NAMES.length; i++) {
+			starts[i] = i == 0 ? headerSize : ends[i - 1];
+
+			header.write(NAMES[i].getBytes(StandardCharsets.US_ASCII));
+			header.write(headerFields(PBOEntry.UNCOMPRESSED, ends[i] - starts[i]));
+		}
+		header.write(headerFields(0, 0));
+
+		assertEquals(headerSize, header.size());
+
+		try (RandomAccessFile out = new RandomAccessFile(file.toFile(), "rw")) {
+			out.setLength(ends[ends.length - 1]);
+			out.write(header.toByteArray());
+
+			for (int i = 0; i < NAMES.length; i++) {
+				out.seek(starts[i]);
+				out.write(marker(NAMES[i], true));
+				out.seek(ends[i] - 8);
+				out.write(marker(NAMES[i], false));
+			}
+		}
+
+		return starts;
+	}
+
+	/**
+	 * Creates the zero-terminated remainder of a header entry following its
+	 * name
+	 */
+	static byte[] headerFields(int packingMethod, long dataSize) {
+		ByteBuffer fields = ByteBuffer.allocate(21).order(ByteOrder.LITTLE_ENDIAN);
+		fields.put((byte) 0).putInt(packingMethod).putInt(0).putInt(0).putInt(0).putInt((int) dataSize);
+
+		return fields.array();
+	}
+
+	static byte[] read(ByteBuffer buffer, int index, int length) {
+		byte[] bytes = new byte[length];
+		buffer.duplicate().position(index).get(bytes);
+
+		return bytes;
+	}
+
+	static byte[] concat(byte[] first, byte[] second) {
+		ByteBuffer result = ByteBuffer.allocate(first.length + second.length);
+
+		return result.put(first).put(second).array();
+	}
+
+	@Test
+	void mappedSegmentBoundaries() throws IOException {
+		Path file = directory.resolve("large.pbo");
+		long[] starts = writePBO(file);
+
+		try (PBO pbo = new PBO(file.toFile(), true)) {
+			assertTrue(pbo.isMemoryMapped());
+			assertEquals(NAMES.length, pbo.getEntries().size());
+
+			for (int i = 0; i < NAMES.length; i++) {
+				assertEquals(starts[i], pbo.getEntry(NAMES[i]).getStartOffset());
+			}
+
+			// entries that lie inside a single segment, including one spanning the
+			// start of the next segment and one in the last (short) segment
+			for (String current : new String[] { "first.txt", "crossing.txt", "tail.txt" }) {
+				PBOEntry entry = pbo.getEntry(current);
+				ByteBuffer data = entry.getData();
+
+				assertEquals(16, data.remaining());
+				assertArrayEquals(concat(marker(current, true), marker(current, false)), read(data, 0, 16));
+
+				try (PBOInputStream in = entry.toStream()) {
+					assertArrayEquals(concat(marker(current, true), marker(current, false)), in.readAllBytes());
+				}
+			}
+
+			// a range that doesn't fit into the remainder of its segment is mapped on
+			// its own
+			ByteBuffer large = pbo.getEntry("large.bin").getData();
+			assertEquals(ENDS[2] - ENDS[1], large.capacity());
+			assertArrayEquals(marker("large.bin", true), read(large, 0, 8));
+			assertArrayEquals(marker("large.bin", false), read(large, large.capacity() - 8, 8));
+
+			// data bigger than a buffer can only be streamed
+			PBOEntry huge = pbo.getEntry("huge.bin");
+			assertThrows(IOException.class, huge::getData);
+
+			try (PBOInputStream in = huge.toStream()) {
+				assertArrayEquals(marker("huge.bin", true), in.readNBytes(8));
+				assertEquals(huge.getDataSize() - 16, in.skip(huge.getDataSize() - 16));
+				assertArrayEquals(marker("huge.bin", false), in.readAllBytes());
+			}
+		}
+	}
+
+	@Test
+	void unsignedOffsetsAboveTwoGigabytes() throws IOException {
+		Path file = directory.resolve("large.pbo");
+		long[] starts = writePBO(file);
+
+		try (PBO pbo = new PBO(file.toFile())) {
+			assertEquals(starts[0], pbo.getContentOffset());
+
+			for (int i = 0; i < NAMES.length; i++) {
+				PBOEntry entry = pbo.getEntry(NAMES[i]);
+				long end = i == 0 ? starts[0] + 16 : ENDS[i];
+
+				// the header fields of huge.bin and large.bin have the sign bit set
+				assertEquals(starts[i], entry.getStartOffset());
+				assertEquals(starts[i] - starts[0], entry.getRelativeStartOffset());
+				assertEquals(end - starts[i], entry.getDataSize());
+				assertEquals(end - starts[i], entry.getOriginalSize());
+			}
+			assertTrue(pbo.getEntry("huge.bin").getDataSize() > Integer.MAX_VALUE);
+
+			for (String current : new String[] { "crossing.txt", "tail.txt" }) {
+				try (PBOInputStream in = pbo.getEntry(current).toStream()) {
+					assertArrayEquals(concat(marker(current, true), marker(current, false)), in.readAllBytes());
+				}
+			}
+
+			// random access to the ends of data whose size and offset exceed 2GB
+			for (String current : new String[] { "huge.bin", "large.bin" }) {
+				PBOEntry entry = pbo.getEntry(current);
+
+				try (PBOEntryChannel channel = entry.toChannel()) {
+					assertEquals(entry.getDataSize(), channel.size());
+
+					ByteBuffer buffer = ByteBuffer.allocate(8);
+					channel.position(entry.getDataSize() - 8).read(buffer);
+					assertArrayEquals(marker(current, false), buffer.array());
+
+					buffer.clear();
+					channel.position(0).read(buffer);
+					assertArrayEquals(marker(current, true), buffer.array());
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package raven.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import raven.pbo.AddonScanResult;
+import raven.pbo.ModScanner;
+import raven.pbo.PBOChannelPool;
+import raven.pbo.PBOHeaderIndex;
+import raven.pbo.PBOWriter;
+
+class ModScannerTest {
+
+	@TempDir
+	Path directory;
+
+
+	static byte[] bytes(String str) {
+		return str.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Creates a mod folder containing a valid addon, an addon without config,
+	 * an addon with a broken config, a corrupt PBO and files that aren't PBOs
+	 */
+	File createMod(String name) throws IOException {
+		Path addons = Files.createDirectories(directory.resolve(name).resolve("addons"));
+
+		new PBOWriter().setPrefix("x\\valid").add("config.cpp", bytes("class CfgPatches { class Valid {}; };"))
+				.add("script.sqf", bytes("hint \"Hello\";")).write(addons.resolve("valid.pbo")).close();
+		new PBOWriter().add("script.sqf", bytes("hint \"Hello\";")).write(addons.resolve("noConfig.PBO")).close();
+		new PBOWriter().add("config.cpp", bytes("class CfgPatches {")).write(addons.resolve("brokenConfig.pbo"))
+				.close();
+
+		// a PBO whose header ends in the middle of an entry name
+		byte[] valid = Files.readAllBytes(addons.resolve("valid.pbo"));
+		Files.write(addons.resolve("corrupt.pbo"), Arrays.copyOf(valid, 20));
+
+		Files.write(addons.resolve("readme.txt"), bytes("not a PBO"));
+		Files.createDirectories(addons.resolve("directory.pbo"));
+
+		return directory.resolve(name).toFile();
+	}
+
+	static Map<String, AddonScanResult> byName(List<AddonScanResult> results) {
+		Map<String, AddonScanResult> map = new HashMap<>();
+
+		for (AddonScanResult current : results) {
+			map.put(current.getFile().getName(), current);
+		}
+
+		return map;
+	}
+
+	@Test
+	void scanReportsResultsErrorsAndPhases() throws IOException {
+		File mod = createMod("@mod");
+		File missing = directory.resolve("@missing").toFile();
+		PBOChannelPool pool = new PBOChannelPool(4);
+		ExecutorService executor = ModScanner.newForkJoinExecutor(2);
+
+		List<AddonScanResult> consumed = new ArrayList<>();
+		Thread caller = Thread.currentThread();
+
+		ModScanner.Report report;
+		try {
+			report = new ModScanner().setExecutor(executor).setChannelPool(pool).setWindow(1)
+					.scan(List.of(mod, missing), result -> {
+						assertSame(caller, Thread.currentThread());
+						consumed.add(result);
+					});
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(4, report.getResults().size());
+		assertEquals(report.getResults(), consumed);
+		assertEquals(2, report.getErrorCount());
+
+		Map<String, AddonScanResult> results = byName(report.getResults());
+
+		AddonScanResult valid = results.get("valid.pbo");
+		assertFalse(valid.hasErrors());
+		assertEquals(mod, valid.getModFolder());
+		assertEquals("x\\valid", valid.getPrefix());
+		assertEquals("config.cpp", valid.getConfigEntry().getFileName());
+		assertNotNull(valid.getConfig().getSubclass("CfgPatches", false).getSubclass("Valid", false));
+
+		AddonScanResult noConfig = results.get("noConfig.PBO");
+		assertFalse(noConfig.hasErrors());
+		assertNotNull(noConfig.getPBO());
+		assertNull(noConfig.getConfigEntry());
+		assertNull(noConfig.getConfig());
+
+		// the config is located but can't be parsed
+		AddonScanResult brokenConfig = results.get("brokenConfig.pbo");
+		assertEquals(1, brokenConfig.getErrors().size());
+		assertNotNull(brokenConfig.getConfigEntry());
+		assertNull(brokenConfig.getConfig());
+
+		// the PBO can't even be opened, so the parse phase is never entered
+		AddonScanResult corrupt = results.get("corrupt.pbo");
+		assertEquals(1, corrupt.getErrors().size());
+		assertTrue(corrupt.getErrors().get(0) instanceof IOException);
+		assertNull(corrupt.getPBO());
+		assertTrue(corrupt.getTime(ModScanner.Phase.OPEN) > 0);
+		assertEquals(0, corrupt.getTime(ModScanner.Phase.PARSE));
+
+		for (AddonScanResult current : report.getResults()) {
+			assertTrue(current.getTime(ModScanner.Phase.OPEN) > 0);
+		}
+		assertTrue(report.getTime(ModScanner.Phase.PARSE) > 0);
+		assertTrue(report.getTotalTime() >= report.getDiscoveryTime());
+
+		// every handle is released right after its addon has been scanned
+		assertEquals(0, pool.getOpenCount());
+
+		// the PBOs are reopened on demand
+		assertEquals("hint \"Hello\";", valid.getPBO().getEntry("script.sqf").toStream().readAll());
+		valid.getPBO().close();
+		assertEquals(0, pool.getOpenCount());
+	}
+
+	@Test
+	void scanWithHeaderIndexAndCompactionMatchesPlainScan() throws IOException {
+		File mod = createMod("@mod");
+		PBOChannelPool pool = new PBOChannelPool(4);
+		PBOHeaderIndex index = new PBOHeaderIndex(directory.resolve("header.idx"));
+
+		for (int i = 0; i < 2; i++) {
+			ModScanner.Report report = new ModScanner().setChannelPool(pool).setHeaderIndex(index).setCompact(true)
+					.setMemoryMapped(i == 1).scan(List.of(mod));
+
+			assertEquals(4, report.getResults().size());
+			assertEquals(2, report.getErrorCount());
+
+			AddonScanResult valid = byName(report.getResults()).get("valid.pbo");
+			assertTrue(valid.getPBO().isCompact());
+			assertEquals("x\\valid", valid.getPrefix());
+			assertNotNull(valid.getConfig());
+
+			assertEquals(0, pool.getOpenCount());
+		}
+
+		// the second scan got the headers of the valid PBOs from the index
+		assertEquals(3, index.getHits());
+	}
+}
@@ -0,0 +1,194 @@
+package raven.tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import raven.pbo.DefaultPBOCompressionPolicy;
+import raven.pbo.PBO;
+import raven.pbo.PBOBatchReader;
+import raven.pbo.PBOEntry;
+import raven.pbo.PBOWriter;
+
+class PBOBatchReaderTest {
+
+	/**
+	 * The size of each of the (uncompressed) entries 0.bin to 9.bin
+	 */
+	static final int SIZE = 100;
+
+	@TempDir
+	Path directory;
+
+
+	/**
+	 * A reader remembering the ranges it reads
+	 */
+	static class RecordingReader extends PBOBatchReader {
+
+		List<long[]> reads = new ArrayList<>();
+
+
+		@Override
+		protected ByteBuffer readRange(PBO pbo, long start, int length) throws IOException {
+			reads.add(new long[] { start, length });
+
+			return super.readRange(pbo, start, length);
+		}
+	}
+
+	static RecordingReader reader(int maxGap, int maxReadSize) {
+		RecordingReader reader = new RecordingReader();
+		reader.setMaxGap(maxGap).setMaxReadSize(maxReadSize);
+
+		return reader;
+	}
+
+	static byte[] content(int seed) {
+		byte[] content = new byte[SIZE];
+		new Random(seed).nextBytes(content);
+
+		return content;
+	}
+
+	static byte[] text() {
+		StringBuilder builder = new StringBuilder();
+
+		for (int i = 0; i < 500; i++) {
+			builder.append("class Item").append(i % 20).append(" {};\n");
+		}
+
+		return builder.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	PBO createPBO(boolean memoryMapped) throws IOException {
+		PBOWriter writer = new PBOWriter().setCompressionPolicy(new DefaultPBOCompressionPolicy());
+
+		for (int i = 0; i < 10; i++) {
+			writer.add(i + ".bin", content(i));
+		}
+		writer.add("packed.txt", text());
+
+		writer.write(directory.resolve("addon.pbo")).close();
+
+		return new PBO(directory.resolve("addon.pbo").toFile(), memoryMapped);
+	}
+
+	static List<PBOEntry> entries(PBO pbo, int... indices) {
+		List<PBOEntry> entries = new ArrayList<>();
+
+		for (int current : indices) {
+			entries.add(pbo.getEntry(current + ".bin"));
+		}
+
+		return entries;
+	}
+
+	/**
+	 * Reads the given entries in reverse order and returns the sizes of the
+	 * performed reads
+	 */
+	static List<Long> readSizes(PBO pbo, RecordingReader reader, int... indices) throws IOException {
+		List<PBOEntry> entries = entries(pbo, indices);
+		Collections.reverse(entries);
+
+		Map<PBOEntry, ByteBuffer> contents = reader.read(pbo, entries);
+
+		// the result is ordered by offset
+		assertEquals(entries(pbo, indices), new ArrayList<>(contents.keySet()));
+
+		for (int current : indices) {
+			ByteBuffer content = contents.get(pbo.getEntry(current + ".bin"));
+			byte[] bytes = new byte[content.remaining()];
+			content.get(bytes);
+
+			assertTrue(content.isReadOnly());
+			assertArrayEquals(content(current), bytes);
+		}
+
+		List<Long> sizes = new ArrayList<>();
+		for (long[] current : reader.reads) {
+			sizes.add(current[1]);
+		}
+
+		return sizes;
+	}
+
+	@Test
+	void rangesAreCoalescedUpToTheMaxGap() throws IOException {
+		for (boolean memoryMapped : new boolean[] { false, true }) {
+			try (PBO pbo = createPBO(memoryMapped)) {
+				int[] indices = { 0, 1, 3, 7, 8 };
+
+				// only adjacent entries are merged
+				assertEquals(List.of(2L * SIZE, 1L * SIZE, 2L * SIZE),
+						readSizes(pbo, reader(0, PBOBatchReader.DEFAULT_MAX_READ_SIZE), indices));
+				assertEquals(List.of(2L * SIZE, 1L * SIZE, 2L * SIZE),
+						readSizes(pbo, reader(SIZE - 1, PBOBatchReader.DEFAULT_MAX_READ_SIZE), indices));
+
+				// the gap of 2.bin is read along
+				assertEquals(List.of(4L * SIZE, 2L * SIZE),
+						readSizes(pbo, reader(SIZE, PBOBatchReader.DEFAULT_MAX_READ_SIZE), indices));
+
+				// a single read covers everything
+				RecordingReader reader = reader(3 * SIZE, PBOBatchReader.DEFAULT_MAX_READ_SIZE);
+				assertEquals(List.of(9L * SIZE), readSizes(pbo, reader, indices));
+				assertEquals(pbo.getEntry("0.bin").getStartOffset(), reader.reads.get(0)[0]);
+			}
+		}
+	}
+
+	@Test
+	void readsDoNotExceedTheMaxReadSize() throws IOException {
+		try (PBO pbo = createPBO(false)) {
+			RecordingReader reader = reader(1000, 3 * SIZE);
+			assertEquals(List.of(3L * SIZE, 2L * SIZE, 1L * SIZE), readSizes(pbo, reader, 0, 1, 2, 3, 4, 9));
+
+			// entries bigger than the limit are still read on their own
+			reader = reader(PBOBatchReader.DEFAULT_MAX_GAP, SIZE / 2);
+			assertEquals(List.of(1L * SIZE, 1L * SIZE), readSizes(pbo, reader, 5, 6));
+
+			assertThrows(IllegalArgumentException.class, () -> new PBOBatchReader().setMaxReadSize(0));
+			assertThrows(IllegalArgumentException.class, () -> new PBOBatchReader().setMaxGap(-1));
+		}
+	}
+
+	@Test
+	void compressedEntriesAreDecompressed() throws IOException {
+		try (PBO pbo = createPBO(false); PBO other = new PBO(pbo.toFile(), true)) {
+			PBOEntry packed = pbo.getEntry("packed.txt");
+			assertTrue(packed.isCompressed());
+
+			List<PBOEntry> entries = List.of(packed, pbo.getEntry("9.bin"));
+
+			ByteBuffer content = new PBOBatchReader().read(pbo, entries).get(packed);
+			assertEquals(text().length, content.remaining());
+			assertEquals(ByteBuffer.wrap(text()), content);
+
+			assertEquals(content, pbo.readBatch(entries).get(packed));
+
+			ByteBuffer raw = new PBOBatchReader().setDecompress(false).read(pbo, entries).get(packed);
+			assertEquals(packed.getData(), raw);
+
+			assertThrows(IllegalArgumentException.class,
+					() -> new PBOBatchReader().read(pbo, List.of(other.getEntry("0.bin"))));
+			// the entry terminating the header
+			PBOEntry boundary = pbo.getAllEntries().get(pbo.getAllEntries().size() - 1);
+			assertThrows(IllegalArgumentException.class, () -> new PBOBatchReader().read(pbo, List.of(boundary)));
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package raven.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import raven.pbo.PBO;
+import raven.pbo.PBOChannelPool;
+import raven.pbo.PBOInputStream;
+import raven.pbo.PBOWriter;
+
+class PBOChannelPoolTest {
+
+	@TempDir
+	Path directory;
+
+
+	Path createFile(String name) throws IOException {
+		return Files.write(directory.resolve(name), name.getBytes(StandardCharsets.US_ASCII)).toAbsolutePath();
+	}
+
+	static String read(PBOChannelPool pool, Path file) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		pool.read(file, buffer, 0);
+		buffer.flip();
+
+		return StandardCharsets.US_ASCII.decode(buffer).toString();
+	}
+
+	/**
+	 * A pool whose channel gets closed by an interrupted read of another user
+	 * right after it has been handed out for the first time
+	 */
+	static class InterruptingPool extends PBOChannelPool {
+
+		boolean interrupted;
+
+
+		InterruptingPool(int capacity) {
+			super(capacity);
+		}
+
+		@Override
+		protected Handle acquire(Path path) throws IOException {
+			Handle handle = super.acquire(path);
+
+			if (!interrupted) {
+				interrupted = true;
+
+				Thread.currentThread().interrupt();
+				try {
+					read(path, ByteBuffer.allocate(1), 0);
+				} catch (ClosedByInterruptException e) {
+					// the channel shared with the outer read is closed now
+				} finally {
+					Thread.interrupted();
+				}
+			}
+
+			return handle;
+		}
+	}
+
+	@Test
+	void leastRecentlyUsedChannelIsEvicted() throws IOException {
+		Path a = createFile("a.txt");
+		Path b = createFile("b.txt");
+		Path c = createFile("c.txt");
+		PBOChannelPool pool = new PBOChannelPool(2);
+
+		assertEquals("a.txt", read(pool, a));
+		assertEquals("b.txt", read(pool, b));
+		assertEquals("a.txt", read(pool, a));
+		assertEquals(List.of(b, a), pool.getOpenFiles());
+
+		// b is the least recently used one
+		assertEquals("c.txt", read(pool, c));
+		assertEquals(List.of(a, c), pool.getOpenFiles());
+		assertEquals(1, pool.getEvictions());
+
+		// evicted files are reopened transparently
+		assertEquals("b.txt", read(pool, b));
+		assertEquals(List.of(c, b), pool.getOpenFiles());
+
+		assertEquals(1, pool.getHits());
+		assertEquals(4, pool.getMisses());
+		assertEquals(2, pool.getEvictions());
+
+		pool.setCapacity(1);
+		assertEquals(List.of(b), pool.getOpenFiles());
+		assertEquals(3, pool.getEvictions());
+
+		pool.close(b);
+		assertEquals(0, pool.getOpenCount());
+		// closing isn't counted as an eviction
+		assertEquals(3, pool.getEvictions());
+
+		pool.resetStatistics();
+		assertEquals(0, pool.getHits() + pool.getMisses() + pool.getEvictions());
+
+		assertThrows(IllegalArgumentException.class, () -> pool.setCapacity(0));
+	}
+
+	@Test
+	void closedChannelIsReopened() throws IOException {
+		Path a = createFile("a.txt");
+		PBOChannelPool pool = new InterruptingPool(2);
+
+		// the outer read encounters a closed channel and retries with a new one
+		assertEquals("a.txt", read(pool, a));
+		assertFalse(Thread.currentThread().isInterrupted());
+
+		assertEquals(2, pool.getMisses());
+		assertEquals(1, pool.getHits());
+		assertEquals(List.of(a), pool.getOpenFiles());
+
+		assertEquals("a.txt", read(pool, a));
+		assertEquals(2, pool.getMisses());
+	}
+
+	@Test
+	void pbosReopenEvictedChannels() throws IOException {
+		PBOChannelPool pool = new PBOChannelPool(1);
+		Path[] files = new Path[3];
+
+		for (int i = 0; i < files.length; i++) {
+			files[i] = directory.resolve(i + ".pbo");
+			new PBOWriter().add("file.txt", ("content " + i).getBytes(StandardCharsets.US_ASCII))
+					.write(files[i]).close();
+		}
+
+		PBO[] pbos = new PBO[files.length];
+		try {
+			for (int i = 0; i < files.length; i++) {
+				pbos[i] = new PBO(files[i].toFile(), false, pool);
+			}
+
+			assertEquals(1, pool.getOpenCount());
+
+			for (int round = 0; round < 2; round++) {
+				for (int i = 0; i < files.length; i++) {
+					try (PBOInputStream in = pbos[i].getEntry("file.txt").toStream()) {
+						assertEquals("content " + i, in.readAll());
+					}
+					assertEquals(1, pool.getOpenCount());
+				}
+			}
+
+			assertTrue(pool.getEvictions() >= 6);
+		} finally {
+			for (PBO current : pbos) {
+				if (current != null) {
+					current.close();
+				}
+			}
+		}
+
+		assertEquals(0, pool.getOpenCount());
+	}
+}
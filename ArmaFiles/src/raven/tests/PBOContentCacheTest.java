@@ -0,0 +1,209 @@
+package raven.tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import raven.pbo.DefaultPBOCompressionPolicy;
+import raven.pbo.PBO;
+import raven.pbo.PBOContentCache;
+import raven.pbo.PBOEntry;
+import raven.pbo.PBOInputStream;
+import raven.pbo.PBOWriter;
+
+class PBOContentCacheTest {
+
+	@TempDir
+	Path directory;
+
+
+	/**
+	 * Writes a PBO containing one file per given size. The files are named
+	 * after their index and filled with it.
+	 */
+	PBO createPBO(int... sizes) throws IOException {
+		PBOWriter writer = new PBOWriter();
+
+		for (int i = 0; i < sizes.length; i++) {
+			byte[] content = new byte[sizes[i]];
+			Arrays.fill(content, (byte) i);
+
+			writer.add(i + ".bin", content);
+		}
+
+		return writer.write(directory.resolve("addon.pbo"));
+	}
+
+	static void assertContent(int index, int size, ByteBuffer content) {
+		assertEquals(size, content.remaining());
+
+		while (content.hasRemaining()) {
+			assertEquals(index, content.get());
+		}
+	}
+
+	@Test
+	void contentBiggerThanASegmentsShareIsCached() throws IOException {
+		try (PBO pbo = createPBO(40, 10, 10, 60, 65)) {
+			// 16 segments share 64 bytes, so each segment's share is 4 bytes
+			PBOContentCache cache = new PBOContentCache(64, 16);
+
+			for (int i = 0; i < 3; i++) {
+				PBOEntry entry = pbo.getEntry(i + ".bin");
+				assertContent(i, (int) entry.getDataSize(), cache.get(entry));
+				assertNotNull(cache.getIfPresent(entry));
+			}
+			assertEquals(60, cache.getWeight());
+			assertEquals(3, cache.size());
+			assertEquals(0, cache.getEvictionCount());
+
+			// adding 60 bytes evicts the content of the other segments
+			assertContent(3, 60, cache.get(pbo.getEntry("3.bin")));
+			assertNotNull(cache.getIfPresent(pbo.getEntry("3.bin")));
+			assertEquals(60, cache.getWeight());
+			assertEquals(1, cache.size());
+			assertEquals(3, cache.getEvictionCount());
+
+			// content exceeding the whole budget is never cached
+			assertContent(4, 65, cache.get(pbo.getEntry("4.bin")));
+			assertNull(cache.getIfPresent(pbo.getEntry("4.bin")));
+			assertEquals(60, cache.getWeight());
+
+			assertContent(3, 60, cache.get(pbo.getEntry("3.bin")));
+			assertEquals(1, cache.getHitCount());
+			assertEquals(5, cache.getMissCount());
+		}
+	}
+
+	@Test
+	void weightStaysWithinTheBudget() throws IOException {
+		int[] sizes = new int[32];
+		for (int i = 0; i < sizes.length; i++) {
+			sizes[i] = 1 + i % 7 * 5;
+		}
+
+		try (PBO pbo = createPBO(sizes)) {
+			PBOContentCache cache = new PBOContentCache(50, 4);
+
+			for (int pass = 0; pass < 2; pass++) {
+				for (int i = 0; i < sizes.length; i++) {
+					assertContent(i, sizes[i], cache.get(pbo.getEntry(i + ".bin")));
+
+					assertTrue(cache.getWeight() <= cache.getMaxWeight());
+					// the most recently read content is always kept
+					assertNotNull(cache.getIfPresent(pbo.getEntry(i + ".bin")));
+				}
+			}
+
+			cache.invalidate(pbo);
+			assertEquals(0, cache.getWeight());
+			assertEquals(0, cache.size());
+
+			cache.get(pbo.getEntry("6.bin"));
+			assertEquals(sizes[6], cache.getWeight());
+
+			cache.clear();
+			assertEquals(0, cache.getWeight());
+		}
+	}
+
+	@Test
+	void streamsAreServedFromTheCache() throws IOException {
+		byte[] text = new byte[5000];
+		Arrays.fill(text, (byte) 'a');
+
+		new PBOWriter().setCompressionPolicy(new DefaultPBOCompressionPolicy()).add("packed.txt", text)
+				.add("plain.bin", new byte[] { 1, 2, 3 }).write(directory.resolve("a.pbo")).close();
+
+		PBOContentCache cache = new PBOContentCache(1024 * 1024);
+
+		try (PBO first = new PBO(directory.resolve("a.pbo").toFile());
+				PBO second = new PBO(directory.resolve("a.pbo").toFile())) {
+			assertTrue(first.getEntry("packed.txt").isCompressed());
+			first.setContentCache(cache);
+			second.setContentCache(cache);
+
+			for (int i = 0; i < 2; i++) {
+				for (PBO current : new PBO[] { first, second }) {
+					try (PBOInputStream in = current.getEntry("packed.txt").toStream()) {
+						assertArrayEquals(text, in.readAllBytes());
+					}
+				}
+			}
+
+			// the content is cached decompressed and per PBO, although both PBOs
+			// have the same entries at the same offsets
+			assertEquals(2, cache.getMissCount());
+			assertEquals(2, cache.getHitCount());
+			assertEquals(2 * text.length, cache.getWeight());
+
+			second.setContentCache(null);
+			assertEquals(text.length, cache.getWeight());
+			assertNull(cache.getIfPresent(second.getEntry("packed.txt")));
+
+			try (PBOInputStream in = second.getEntry("plain.bin").toStream()) {
+				assertArrayEquals(new byte[] { 1, 2, 3 }, in.readAllBytes());
+			}
+			assertEquals(1, cache.size());
+		}
+
+		// closing a PBO removes its content
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getWeight());
+	}
+
+	@Test
+	void concurrentReadersShareTheBudget() throws Exception {
+		int[] sizes = new int[64];
+		for (int i = 0; i < sizes.length; i++) {
+			sizes[i] = 10 + i % 9 * 10;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+
+		try (PBO pbo = createPBO(sizes)) {
+			PBOContentCache cache = new PBOContentCache(1000, 4);
+			List<Future<?>> futures = new ArrayList<>();
+
+			for (int thread = 0; thread < 8; thread++) {
+				Random random = new Random(thread);
+
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < 500; i++) {
+						int index = random.nextInt(sizes.length);
+						assertContent(index, sizes[index], cache.get(pbo.getEntry(index + ".bin")));
+					}
+
+					return null;
+				}));
+			}
+
+			for (Future<?> current : futures) {
+				current.get();
+			}
+
+			assertEquals(8 * 500, cache.getHitCount() + cache.getMissCount());
+			assertTrue(cache.getHitCount() > 0);
+			assertTrue(cache.getEvictionCount() > 0);
+			assertTrue(cache.getWeight() <= cache.getMaxWeight());
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package raven.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import raven.pbo.IPBOContentCache;
+import raven.pbo.PBO;
+import raven.pbo.PBOContentCache;
+import raven.pbo.PBOContentHash;
+import raven.pbo.PBOContentIndex;
+import raven.pbo.PBOEntry;
+import raven.pbo.PBOOffHeapContentCache;
+import raven.pbo.PBOWriter;
+
+class PBOContentIndexTest {
+
+	@TempDir
+	Path directory;
+
+
+	static byte[] bytes(String str) {
+		return str.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	static String read(ByteBuffer content) {
+		byte[] bytes = new byte[content.remaining()];
+		content.get(bytes);
+
+		return new String(bytes, StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Writes a PBO containing an empty file in front of a file with the given
+	 * content. Both files start at the same offset.
+	 */
+	PBO writeWithEmptyEntry(String name, String content) throws IOException {
+		return new PBOWriter().add("a.txt", new byte[0]).add("b.txt", bytes(content))
+				.write(directory.resolve(name));
+	}
+
+	@Test
+	void duplicatesAcrossPBOsAreGrouped() throws IOException {
+		try (PBO first = new PBOWriter().add("x.txt", bytes("duplicate")).add("y.txt", bytes("unique"))
+				.write(directory.resolve("first.pbo"));
+				PBO second = new PBOWriter().add("z.txt", bytes("duplicate")).write(directory.resolve("second.pbo"))) {
+			PBOContentIndex index = new PBOContentIndex();
+			index.add(Arrays.asList(first, second));
+
+			List<List<PBOEntry>> duplicates = index.getDuplicates();
+			assertEquals(1, duplicates.size());
+			assertTrue(duplicates.get(0).contains(first.getEntry("x.txt")));
+			assertTrue(duplicates.get(0).contains(second.getEntry("z.txt")));
+			assertEquals(9, index.getRedundantBytes());
+
+			assertTrue(index.remove(second));
+			assertTrue(index.getDuplicates().isEmpty());
+		}
+	}
+
+	@Test
+	void addingAPBOAgainDoesNotDuplicateIt() throws IOException {
+		try (PBO pbo = new PBOWriter().add("x.txt", bytes("duplicate")).write(directory.resolve("addon.pbo"))) {
+			PBOContentIndex index = new PBOContentIndex();
+			index.add(pbo);
+			index.add(pbo);
+
+			assertTrue(index.getDuplicates().isEmpty());
+			assertEquals(0, index.getRedundantBytes());
+			assertEquals(1, index.getEntries(index.getKnownHash(pbo.getEntry("x.txt"))).size());
+		}
+	}
+
+	@Test
+	void emptyEntryDoesNotShareTheHashOfTheFollowingEntry() throws IOException {
+		try (PBO pbo = writeWithEmptyEntry("addon.pbo", "hello world")) {
+			PBOEntry empty = pbo.getEntry("a.txt");
+			PBOEntry content = pbo.getEntry("b.txt");
+			assertEquals(empty.getStartOffset(), content.getStartOffset());
+
+			PBOContentIndex index = new PBOContentIndex(directory.resolve("content.idx"));
+			index.add(pbo);
+
+			assertNull(index.getKnownHash(empty));
+			assertEquals(PBOContentHash.of(content), index.getKnownHash(content));
+			assertEquals(PBOContentHash.of(content), index.getHash(content));
+			assertEquals(PBOContentHash.of(empty), index.getHash(empty));
+
+			// the cached hashes survive saving and loading the index
+			index.save();
+			index = PBOContentIndex.load(directory.resolve("content.idx"));
+			index.add(pbo);
+
+			assertEquals(1, index.getHits());
+			assertEquals(PBOContentHash.of(content), index.getKnownHash(content));
+			assertEquals(PBOContentHash.of(empty), index.getHash(empty));
+		}
+	}
+
+	@Test
+	void cachesReturnTheContentOfEachEntry() throws IOException {
+		try (PBO first = writeWithEmptyEntry("first.pbo", "first pbo");
+				PBO second = writeWithEmptyEntry("second.pbo", "SECOND PBO!");
+				PBO third = new PBOWriter().add("c.txt", bytes("first pbo")).write(directory.resolve("third.pbo"))) {
+			List<PBO> pbos = Arrays.asList(first, second, third);
+
+			PBOContentIndex index = new PBOContentIndex();
+			index.add(pbos);
+
+			assertEquals(1, index.getDuplicates().size());
+			assertEquals(2, index.getDuplicates().get(0).size());
+
+			PBOOffHeapContentCache offHeap = new PBOOffHeapContentCache(1024 * 1024);
+			try {
+				for (IPBOContentCache cache : Arrays.asList(
+						new PBOContentCache(1024 * 1024).setContentIndex(index), offHeap.setContentIndex(index))) {
+					for (PBO pbo : pbos) {
+						pbo.setContentCache(cache);
+					}
+
+					// read everything twice so that the second pass is served from the cache
+					for (int i = 0; i < 2; i++) {
+						for (PBO pbo : pbos) {
+							for (PBOEntry current : pbo.getEntries()) {
+								ByteBuffer content = cache.get(current);
+								byte[] bytes = new byte[content.remaining()];
+								content.get(bytes);
+
+								assertEquals(PBOContentHash.of(current), hash(bytes));
+							}
+						}
+					}
+
+					assertEquals("first pbo", read(cache.get(first.getEntry("b.txt"))));
+					assertEquals("SECOND PBO!", read(cache.get(second.getEntry("b.txt"))));
+					assertEquals("", read(cache.get(second.getEntry("a.txt"))));
+				}
+			} finally {
+				offHeap.clear();
+			}
+
+			assertNotEquals(index.getKnownHash(first.getEntry("b.txt")), index.getKnownHash(second.getEntry("b.txt")));
+		}
+	}
+
+	@Test
+	void corruptIndexIsRebuilt() throws IOException {
+		Path location = directory.resolve("content.idx");
+
+		try (PBO pbo = new PBOWriter().add("x.txt", bytes("content")).write(directory.resolve("addon.pbo"))) {
+			PBOContentIndex index = new PBOContentIndex(location);
+			index.add(pbo);
+			index.save();
+
+			byte[] valid = Files.readAllBytes(location);
+
+			// a truncated file, one claiming a huge amount of PBOs and one with a
+			// negative amount of hashes
+			int hashCount = 12 + 2 + ByteBuffer.wrap(valid).getShort(12) + 16;
+			byte[][] corrupted = { Arrays.copyOf(valid, valid.length - 3), valid.clone(), valid.clone() };
+			ByteBuffer.wrap(corrupted[1]).putInt(8, Integer.MAX_VALUE);
+			ByteBuffer.wrap(corrupted[2]).putInt(hashCount, -1);
+
+			for (byte[] current : corrupted) {
+				Files.write(location, current);
+
+				index = PBOContentIndex.load(location);
+				assertEquals(0, index.size());
+				assertTrue(index.isModified());
+
+				index.add(pbo);
+				assertEquals(1, index.getMisses());
+				assertEquals(PBOContentHash.of(pbo.getEntry("x.txt")), index.getKnownHash(pbo.getEntry("x.txt")));
+			}
+		}
+	}
+
+	/**
+	 * Calculates the content hash of the given bytes by packing them into a PBO
+	 */
+	PBOContentHash hash(byte[] content) throws IOException {
+		try (PBO pbo = new PBOWriter().add("hashed.txt", content).write(directory.resolve("hashed.pbo"))) {
+			return PBOContentHash.of(pbo.getEntry("hashed.txt"));
+		}
+	}
+}
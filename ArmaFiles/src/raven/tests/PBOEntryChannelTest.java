@@ -0,0 +1,141 @@
+package raven.tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import raven.pbo.DefaultPBOCompressionPolicy;
+import raven.pbo.PBO;
+import raven.pbo.PBOEntryChannel;
+import raven.pbo.PBOWriter;
+
+class PBOEntryChannelTest {
+
+	@TempDir
+	Path directory;
+
+
+	/**
+	 * Creates compressible content in which every position has a distinct
+	 * neighbourhood
+	 */
+	static byte[] text(int size) {
+		StringBuilder builder = new StringBuilder();
+
+		for (int i = 0; builder.length() < size; i++) {
+			builder.append("class Item").append(i).append(" { scope = 2; };\n");
+		}
+
+		return builder.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+	}
+
+	static byte[] random(int size) {
+		byte[] content = new byte[size];
+		new Random(size).nextBytes(content);
+
+		return content;
+	}
+
+	PBO createPBO(boolean memoryMapped) throws IOException {
+		Path file = directory.resolve("addon.pbo");
+
+		new PBOWriter().setCompressionPolicy(new DefaultPBOCompressionPolicy()).add("first.bin", random(500))
+				.add("packed.txt", text(200_000)).add("plain.bin", random(50_000)).add("last.bin", random(700))
+				.write(file).close();
+
+		PBO pbo = new PBO(file.toFile(), memoryMapped);
+		assertTrue(pbo.getEntry("packed.txt").isCompressed());
+		assertFalse(pbo.getEntry("plain.bin").isCompressed());
+
+		return pbo;
+	}
+
+	/**
+	 * Reads the given amount of bytes at the given position of the channel
+	 */
+	static byte[] readAt(PBOEntryChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		channel.position(position);
+
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				break;
+			}
+		}
+
+		assertEquals(position + buffer.position(), channel.position());
+
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+
+	@Test
+	void seekingInsideEntries() throws IOException {
+		for (boolean memoryMapped : new boolean[] { false, true }) {
+			try (PBO pbo = createPBO(memoryMapped)) {
+				for (String name : new String[] { "packed.txt", "plain.bin" }) {
+					byte[] content = name.equals("packed.txt") ? text(200_000) : random(50_000);
+					Random random = new Random(42);
+
+					try (PBOEntryChannel channel = pbo.getEntry(name).toChannel()) {
+						assertEquals(content.length, channel.size());
+
+						// jump back and forth like a format reader following offsets
+						for (int i = 0; i < 100; i++) {
+							int position = random.nextInt(content.length);
+							int length = random.nextInt(2000);
+
+							assertArrayEquals(
+									Arrays.copyOfRange(content, position, Math.min(content.length, position + length)),
+									readAt(channel, position, length), name + " at " + position);
+						}
+
+						// the data of the following entry is not part of the channel
+						assertArrayEquals(Arrays.copyOfRange(content, content.length - 10, content.length),
+								readAt(channel, content.length - 10, 100));
+						assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+
+						// positions behind the end are allowed but don't provide any data
+						channel.position(content.length + 1000L);
+						assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+						assertEquals(content.length + 1000L, channel.position());
+
+						assertThrows(IllegalArgumentException.class, () -> channel.position(-1));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void channelIsReadOnlyAndCloseable() throws IOException {
+		try (PBO pbo = createPBO(false)) {
+			PBOEntryChannel channel = pbo.getEntry("last.bin").toChannel();
+
+			assertThrows(NonWritableChannelException.class, () -> channel.write(ByteBuffer.allocate(1)));
+			assertThrows(NonWritableChannelException.class, () -> channel.truncate(0));
+			assertEquals("last.bin", channel.getEntry().getFileName());
+
+			assertTrue(channel.isOpen());
+			channel.close();
+			assertFalse(channel.isOpen());
+
+			assertThrows(ClosedChannelException.class, () -> channel.read(ByteBuffer.allocate(1)));
+			assertThrows(ClosedChannelException.class, () -> channel.position(0));
+			assertThrows(ClosedChannelException.class, channel::size);
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package raven.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import raven.pbo.PBO;
+import raven.pbo.PBOEntry;
+import raven.pbo.PBOFileTree;
+import raven.pbo.PBOWriter;
+
+class PBOEntryTableTest {
+
+	static final String[] PATHS = { "config.cpp", "Data\\Script.sqf", "data\\sub\\script.sqf", "functions\\fn_a.sqf",
+			"functions\\fn_b.sqf", "README.md" };
+
+	@TempDir
+	Path directory;
+
+
+	PBO createPBO() throws IOException {
+		PBOWriter writer = new PBOWriter();
+
+		for (String current : PATHS) {
+			writer.add(current, current.getBytes(StandardCharsets.US_ASCII));
+		}
+
+		return writer.write(directory.resolve("addon.pbo"));
+	}
+
+	static String read(PBOEntry entry) throws IOException {
+		try (InputStream in = entry.toStream()) {
+			return new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+		}
+	}
+
+	@Test
+	void compactLookupsMatchTheOriginalOnes() throws IOException {
+		try (PBO original = createPBO(); PBO compacted = new PBO(directory.resolve("addon.pbo").toFile())) {
+			assertFalse(compacted.isCompact());
+			compacted.compact();
+			assertTrue(compacted.isCompact());
+
+			assertEquals(original.getEntries().size(), compacted.getEntries().size());
+			assertEquals(original.getAllEntries().size(), compacted.getAllEntries().size());
+
+			for (int i = 0; i < PATHS.length; i++) {
+				PBOEntry expected = original.getEntries().get(i);
+				PBOEntry actual = compacted.getEntries().get(i);
+
+				assertEquals(expected.getFileName(), actual.getFileName());
+				assertEquals(expected.getStartOffset(), actual.getStartOffset());
+				assertEquals(expected.getDataSize(), actual.getDataSize());
+				assertEquals(expected.getTimeStamp(), actual.getTimeStamp());
+				assertEquals(read(expected), read(actual));
+			}
+
+			for (String path : new String[] { "CONFIG.CPP", "data/script.sqf", "/data\\SUB\\script.sqf", "missing" }) {
+				PBOEntry expected = original.getEntry(path);
+				PBOEntry actual = compacted.getEntry(path);
+
+				assertEquals(expected == null ? null : expected.getFileName(),
+						actual == null ? null : actual.getFileName());
+			}
+
+			for (String name : new String[] { "SCRIPT.sqf", "fn_a.sqf", "readme.md", "sub", "missing" }) {
+				assertEquals(names(original.getFile(name)), names(compacted.getFile(name)));
+			}
+
+			assertEquals(2, compacted.getFile("script.sqf").size());
+			assertNull(compacted.getEntry("data"));
+		}
+	}
+
+	@Test
+	void compactEntriesAreEqualAcrossCalls() throws IOException {
+		try (PBO pbo = createPBO()) {
+			PBOEntry before = pbo.getEntry("config.cpp");
+
+			pbo.compact();
+
+			PBOEntry first = pbo.getEntry("config.cpp");
+			PBOEntry second = pbo.getEntry("Config.cpp");
+
+			assertNotSame(first, second);
+			assertEquals(first, second);
+			assertEquals(first.hashCode(), second.hashCode());
+			assertEquals(before, first);
+			assertEquals(pbo.getEntries().get(0), first);
+
+			Set<PBOEntry> entries = new HashSet<>(pbo.getEntries());
+			assertEquals(PATHS.length, entries.size());
+			assertTrue(entries.contains(pbo.getEntry("functions\\fn_b.sqf")));
+
+			// the same file of another PBO object is a different entry
+			try (PBO other = new PBO(directory.resolve("addon.pbo").toFile())) {
+				assertFalse(entries.contains(other.getEntry("config.cpp")));
+			}
+		}
+	}
+
+	@Test
+	void compactDropsAndRebuildsTheFileTree() throws IOException {
+		try (PBO pbo = createPBO()) {
+			PBOFileTree before = pbo.getFileTree();
+			assertEquals(List.of("functions\\fn_a.sqf", "functions\\fn_b.sqf"), names(before.walk("functions")));
+
+			pbo.compact();
+
+			PBOFileTree after = pbo.getFileTree();
+			assertNotSame(before, after);
+			assertEquals(names(before.walk("")), names(after.walk("")));
+
+			// the tree serves entries equal to the ones of the table
+			assertEquals(pbo.getEntry("data\\sub\\script.sqf"), after.getEntry("data\\sub\\script.sqf"));
+		}
+	}
+
+	static List<String> names(List<PBOEntry> entries) {
+		List<String> names = new ArrayList<>();
+
+		for (PBOEntry current : entries) {
+			names.add(current.getFileName());
+		}
+
+		return names;
+	}
+}
@@ -0,0 +1,202 @@
+package raven.tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import raven.pbo.DefaultPBOCompressionPolicy;
+import raven.pbo.PBO;
+import raven.pbo.PBOExtractor;
+import raven.pbo.PBOVerifier;
+import raven.pbo.PBOWriter;
+
+class PBOExtractorTest {
+
+	static final int TIME_STAMP = 1500000000;
+
+	@TempDir
+	Path directory;
+
+
+	static byte[] bytes(String str) {
+		return str.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	static PBOWriter add(PBOWriter writer, String path, byte[] content) {
+		return writer.add(path, TIME_STAMP, () -> new ByteArrayInputStream(content));
+	}
+
+	/**
+	 * Writes a PBO containing a compressed file, a file in a sub-directory and
+	 * a file in the root directory
+	 */
+	PBO createPBO() throws IOException {
+		byte[] compressible = new byte[4000];
+		Arrays.fill(compressible, (byte) 'z');
+
+		PBOWriter writer = new PBOWriter().setCompressionPolicy(new DefaultPBOCompressionPolicy());
+		add(writer, "config.cpp", bytes("class CfgPatches {};"));
+		add(writer, "data\\compressible.txt", compressible);
+		add(writer, "data\\sub\\script.sqf", bytes("hint \"Hello\";"));
+
+		return writer.write(directory.resolve("addon.pbo"));
+	}
+
+	@Test
+	void extractWritesAllFiles() throws IOException {
+		Path target = directory.resolve("extracted");
+
+		try (PBO pbo = createPBO()) {
+			assertTrue(pbo.getEntry("data\\compressible.txt").isCompressed());
+
+			PBOExtractor.Result result = new PBOExtractor().setPreserveTimeStamps(true).setVerify(true)
+					.extract(pbo, target);
+
+			assertEquals(3, result.getFileCount());
+			assertEquals(PBOVerifier.Status.VALID, result.getIntegrity());
+		}
+
+		assertArrayEquals(bytes("class CfgPatches {};"), Files.readAllBytes(target.resolve("config.cpp")));
+		assertArrayEquals(bytes("hint \"Hello\";"), Files.readAllBytes(target.resolve("data/sub/script.sqf")));
+
+		byte[] decompressed = Files.readAllBytes(target.resolve("data/compressible.txt"));
+		assertEquals(4000, decompressed.length);
+		for (byte current : decompressed) {
+			assertEquals('z', current);
+		}
+
+		assertEquals(TIME_STAMP, Files.getLastModifiedTime(target.resolve("config.cpp")).to(TimeUnit.SECONDS));
+	}
+
+	@Test
+	void extractRejectsPathsOutsideOfDirectory() throws IOException {
+		PBOWriter writer = add(new PBOWriter(), "..\\escaped.txt", bytes("escaped"));
+
+		try (PBO pbo = writer.write(directory.resolve("evil.pbo"))) {
+			assertThrows(IOException.class, () -> new PBOExtractor().extract(pbo, directory.resolve("extracted")));
+		}
+
+		assertFalse(Files.exists(directory.resolve("escaped.txt")));
+	}
+
+	@Test
+	void syncOnlyWritesChangedFiles() throws IOException {
+		Path target = directory.resolve("synced");
+
+		try (PBO pbo = createPBO()) {
+			PBOExtractor extractor = new PBOExtractor().setPreserveTimeStamps(true);
+			extractor.extract(pbo, target);
+
+			// a changed, a missing and two vanished files
+			Files.write(target.resolve("config.cpp"), bytes("class CfgPatches {}; // changed"));
+			Files.delete(target.resolve("data/sub/script.sqf"));
+			Files.write(target.resolve("data/sub/old.sqf"), bytes("old"));
+			Files.createDirectories(target.resolve("old/empty"));
+			Files.write(target.resolve("old/readme.txt"), bytes("old"));
+
+			PBOExtractor.Result result = extractor.setDeleteVanished(true).sync(pbo, target);
+
+			assertEquals(2, result.getFileCount());
+			assertEquals(1, result.getUnchangedCount());
+			assertEquals(2, result.getDeletedCount());
+		}
+
+		assertArrayEquals(bytes("class CfgPatches {};"), Files.readAllBytes(target.resolve("config.cpp")));
+		assertArrayEquals(bytes("hint \"Hello\";"), Files.readAllBytes(target.resolve("data/sub/script.sqf")));
+		assertFalse(Files.exists(target.resolve("data/sub/old.sqf")));
+		assertFalse(Files.exists(target.resolve("old")));
+	}
+
+	@Test
+	void syncKeepsUnrelatedFilesByDefault() throws IOException {
+		Path target = directory.resolve("synced");
+
+		try (PBO first = createPBO();
+				PBO second = add(new PBOWriter(), "other.txt", bytes("other")).write(directory.resolve("other.pbo"))) {
+			PBOExtractor extractor = new PBOExtractor();
+			extractor.sync(first, target);
+
+			PBOExtractor.Result result = extractor.sync(second, target);
+
+			assertEquals(1, result.getFileCount());
+			assertEquals(0, result.getDeletedCount());
+			assertEquals(3, extractor.sync(first, target).getUnchangedCount());
+		}
+
+		assertTrue(Files.exists(target.resolve("config.cpp")));
+		assertArrayEquals(bytes("other"), Files.readAllBytes(target.resolve("other.txt")));
+	}
+
+	@Test
+	void syncReplacesFileWhoseNameChangedCase() throws IOException {
+		Path target = directory.resolve("synced");
+
+		for (boolean deleteVanished : new boolean[] { false, true }) {
+			PBOExtractor extractor = new PBOExtractor().setDeleteVanished(deleteVanished);
+
+			try (PBO pbo = add(new PBOWriter(), "Foo.sqf", bytes("hint 1;")).write(directory.resolve("v1.pbo"))) {
+				extractor.extract(pbo, target);
+			}
+
+			try (PBO pbo = add(new PBOWriter(), "foo.sqf", bytes("hint 1;")).write(directory.resolve("v2.pbo"))) {
+				assertEquals(1, extractor.sync(pbo, target).getFileCount());
+			}
+
+			// on a case-insensitive file system both names refer to the same file
+			try (Stream<Path> files = Files.list(target)) {
+				assertTrue(files.map(Path::getFileName).map(Path::toString).anyMatch("foo.sqf"::equals));
+			}
+			assertArrayEquals(bytes("hint 1;"), Files.readAllBytes(target.resolve("foo.sqf")));
+
+			try (PBO pbo = add(new PBOWriter(), "foo.sqf", bytes("hint 1;")).write(directory.resolve("v2.pbo"))) {
+				assertEquals(1, extractor.sync(pbo, target).getUnchangedCount());
+			}
+
+			try (Stream<Path> paths = Files.walk(target)) {
+				paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	@Test
+	void syncComparesContent() throws IOException {
+		Path target = directory.resolve("synced");
+		Path config = target.resolve("config.cpp");
+
+		try (PBO pbo = createPBO()) {
+			PBOExtractor extractor = new PBOExtractor().setPreserveTimeStamps(true);
+			extractor.extract(pbo, target);
+
+			// same size and modification time, but a different content
+			FileTime lastModified = Files.getLastModifiedTime(config);
+			Files.write(config, bytes("class CfgPatches {}:"));
+			Files.setLastModifiedTime(config, lastModified);
+
+			assertEquals(3, extractor.sync(pbo, target).getUnchangedCount());
+			assertArrayEquals(bytes("class CfgPatches {}:"), Files.readAllBytes(config));
+
+			PBOExtractor.Result result = extractor.setCompareContent(true).sync(pbo, target);
+
+			assertEquals(1, result.getFileCount());
+			assertEquals(2, result.getUnchangedCount());
+		}
+
+		assertArrayEquals(bytes("class CfgPatches {};"), Files.readAllBytes(config));
+	}
+}
@@ -0,0 +1,118 @@
+package raven.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import raven.pbo.PBO;
+import raven.pbo.PBOEntry;
+import raven.pbo.PBOFileTree;
+import raven.pbo.PBOWriter;
+
+class PBOFileTreeTest {
+
+	/**
+	 * The paths of the test PBO in an order that differs from the sorted one
+	 */
+	static final String[] PATHS = { "Zeta.txt", "functions\\misc\\fn_b.sqf", "config.cpp", "Functions\\fn_A.sqf",
+			"functions\\misc\\deep\\fn_c.sqf", "functions\\readme.txt", "data\\b.paa", "Data\\A.paa", "alpha.sqf" };
+
+	@TempDir
+	Path directory;
+
+
+	PBO createPBO() throws IOException {
+		PBOWriter writer = new PBOWriter();
+
+		for (String current : PATHS) {
+			writer.add(current, current.getBytes(StandardCharsets.US_ASCII));
+		}
+
+		return writer.write(directory.resolve("addon.pbo"));
+	}
+
+	static List<String> names(List<PBOEntry> entries) {
+		List<String> names = new ArrayList<>();
+
+		for (PBOEntry current : entries) {
+			names.add(current.getFileName());
+		}
+
+		return names;
+	}
+
+	@Test
+	void resultsAreOrderedByName() throws IOException {
+		try (PBO pbo = createPBO()) {
+			PBOFileTree tree = pbo.getFileTree();
+
+			assertEquals(PATHS.length, tree.size());
+			assertEquals(List.of("alpha.sqf", "config.cpp", "Zeta.txt"), names(tree.list("")));
+			assertEquals(List.of("data", "functions"), tree.listDirectories(""));
+			assertEquals(List.of("Data\\A.paa", "data\\b.paa"), names(tree.list("DATA")));
+			assertEquals(List.of("misc"), tree.listDirectories("functions"));
+
+			assertEquals(List.of("alpha.sqf", "config.cpp", "Data\\A.paa", "data\\b.paa", "Functions\\fn_A.sqf",
+					"functions\\misc\\deep\\fn_c.sqf", "functions\\misc\\fn_b.sqf", "functions\\readme.txt",
+					"Zeta.txt"), names(tree.walk("")));
+
+			// the order doesn't change between calls
+			assertEquals(names(tree.walk("")), names(tree.walk("/")));
+		}
+	}
+
+	@Test
+	void lookupsAreCaseInsensitive() throws IOException {
+		try (PBO pbo = createPBO()) {
+			PBOFileTree tree = pbo.getFileTree();
+
+			assertEquals("Functions\\fn_A.sqf", tree.getEntry("functions/FN_a.sqf").getFileName());
+			assertNull(tree.getEntry("functions"));
+			assertTrue(tree.isDirectory("FUNCTIONS\\Misc"));
+			assertTrue(tree.isDirectory(""));
+			assertFalse(tree.isDirectory("config.cpp"));
+			assertFalse(tree.isDirectory("missing"));
+			assertTrue(tree.list("missing").isEmpty());
+		}
+	}
+
+	@Test
+	void doubleStarMatchesAnyAmountOfDirectories() throws IOException {
+		try (PBO pbo = createPBO()) {
+			PBOFileTree tree = pbo.getFileTree();
+
+			// ** matches no directory at all as well as nested ones. The files of a
+			// directory come before the ones of its sub-directories
+			assertEquals(List.of("Functions\\fn_A.sqf", "functions\\misc\\fn_b.sqf", "functions\\misc\\deep\\fn_c.sqf"),
+					names(tree.glob("functions\\**\\*.sqf")));
+			assertEquals(List.of("alpha.sqf", "Functions\\fn_A.sqf", "functions\\misc\\fn_b.sqf",
+					"functions\\misc\\deep\\fn_c.sqf"), names(tree.glob("**/*.SQF")));
+
+			// consecutive ** behave like a single one and don't produce duplicates
+			assertEquals(names(tree.glob("functions\\**\\*.sqf")), names(tree.glob("functions\\**\\**\\*.sqf")));
+
+			// ** in the middle requires the following segments to match
+			assertEquals(List.of("functions\\misc\\deep\\fn_c.sqf"), names(tree.glob("**\\deep\\*")));
+			assertEquals(List.of("functions\\misc\\fn_b.sqf", "functions\\misc\\deep\\fn_c.sqf"),
+					names(tree.glob("functions\\**\\misc\\**\\fn_?.sqf")));
+
+			// a trailing ** matches every file below the directory
+			assertEquals(names(tree.walk("data")), names(tree.glob("data\\**")));
+
+			// * and ? don't cross directories
+			assertEquals(List.of("alpha.sqf"), names(tree.glob("*.sqf")));
+			assertEquals(List.of("Data\\A.paa", "data\\b.paa"), names(tree.glob("*\\?.paa")));
+			assertTrue(tree.glob("functions\\*.paa").isEmpty());
+		}
+	}
+}
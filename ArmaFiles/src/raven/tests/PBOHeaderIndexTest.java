@@ -0,0 +1,150 @@
+package raven.tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import raven.pbo.PBO;
+import raven.pbo.PBOHeaderIndex;
+import raven.pbo.PBOInputStream;
+import raven.pbo.PBOWriter;
+
+class PBOHeaderIndexTest {
+
+	@TempDir
+	Path directory;
+
+
+	Path writePBO(String path, String content) throws IOException {
+		Path file = directory.resolve("addon.pbo");
+
+		new PBOWriter().setPrefix("addon").add(path, content.getBytes(StandardCharsets.US_ASCII)).write(file)
+				.close();
+
+		return file;
+	}
+
+	static String read(PBO pbo, String path) throws IOException {
+		try (PBOInputStream in = pbo.getEntry(path).toStream()) {
+			return new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+		}
+	}
+
+	@Test
+	void cachedHeaderIsUsed() throws IOException {
+		Path file = writePBO("a.txt", "first");
+		PBOHeaderIndex index = PBOHeaderIndex.load(directory.resolve("headers.idx"));
+
+		index.open(file.toFile()).close();
+		assertEquals(0, index.getHits());
+		assertEquals(1, index.getMisses());
+
+		PBO pbo = index.open(file.toFile());
+		assertEquals(1, index.getHits());
+		assertEquals("addon", pbo.getPrefix());
+		assertEquals("first", read(pbo, "a.txt"));
+		pbo.close();
+
+		// the header survives saving and loading the index
+		index.save();
+		index = PBOHeaderIndex.load(directory.resolve("headers.idx"));
+		assertEquals(1, index.size());
+
+		pbo = index.open(file.toFile());
+		assertEquals(1, index.getHits());
+		assertEquals(0, index.getMisses());
+		assertArrayEquals(new String[] { "prefix", "addon" }, pbo.getHeaderExtension());
+		assertEquals("first", read(pbo, "a.txt"));
+		pbo.close();
+	}
+
+	@Test
+	void changedModificationTimeInvalidatesHeader() throws IOException {
+		Path file = writePBO("a.txt", "first");
+		PBOHeaderIndex index = new PBOHeaderIndex(directory.resolve("headers.idx"));
+
+		index.open(file.toFile()).close();
+
+		// same size, but a different file
+		FileTime lastModified = Files.getLastModifiedTime(file);
+		writePBO("b.txt", "other");
+		Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified.toMillis() + 10000));
+
+		PBO pbo = index.open(file.toFile());
+		assertEquals(0, index.getHits());
+		assertEquals(2, index.getMisses());
+		assertNull(pbo.getEntry("a.txt"));
+		assertEquals("other", read(pbo, "b.txt"));
+		pbo.close();
+
+		// the re-read header replaces the outdated one
+		index.open(file.toFile()).close();
+		assertEquals(1, index.getHits());
+		assertEquals(1, index.size());
+	}
+
+	@Test
+	void changedSizeInvalidatesHeader() throws IOException {
+		Path file = writePBO("a.txt", "first");
+		PBOHeaderIndex index = new PBOHeaderIndex(directory.resolve("headers.idx"));
+
+		index.open(file.toFile()).close();
+
+		// same modification time, but a different size
+		FileTime lastModified = Files.getLastModifiedTime(file);
+		writePBO("a.txt", "a longer content");
+		Files.setLastModifiedTime(file, lastModified);
+
+		PBO pbo = index.open(file.toFile());
+		assertEquals(0, index.getHits());
+		assertEquals(2, index.getMisses());
+		assertNotNull(pbo.getEntry("a.txt"));
+		assertEquals("a longer content", read(pbo, "a.txt"));
+		pbo.close();
+	}
+
+	@Test
+	void corruptIndexIsRebuilt() throws IOException {
+		Path file = writePBO("a.txt", "first");
+		Path location = directory.resolve("headers.idx");
+
+		PBOHeaderIndex index = new PBOHeaderIndex(location);
+		index.open(file.toFile()).close();
+		index.save();
+
+		byte[] valid = Files.readAllBytes(location);
+
+		// a truncated file, one claiming a huge amount of PBOs and one with a
+		// negative length of the first header extension
+		int extensionLength = 12 + 2 + ByteBuffer.wrap(valid).getShort(12) + 24;
+		byte[][] corrupted = { Arrays.copyOf(valid, valid.length / 2), valid.clone(), valid.clone() };
+		ByteBuffer.wrap(corrupted[1]).putInt(8, Integer.MAX_VALUE);
+		ByteBuffer.wrap(corrupted[2]).putInt(extensionLength, -5);
+
+		for (byte[] current : corrupted) {
+			Files.write(location, current);
+
+			index = PBOHeaderIndex.load(location);
+			assertEquals(0, index.size());
+			assertTrue(index.isModified());
+
+			PBO pbo = index.open(file.toFile());
+			assertEquals(1, index.getMisses());
+			assertEquals("first", read(pbo, "a.txt"));
+			pbo.close();
+		}
+	}
+}
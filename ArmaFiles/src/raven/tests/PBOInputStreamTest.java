@@ -0,0 +1,210 @@
+package raven.tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import raven.pbo.DefaultPBOCompressionPolicy;
+import raven.pbo.PBO;
+import raven.pbo.PBOChannelPool;
+import raven.pbo.PBOInputStream;
+import raven.pbo.PBOWriter;
+
+class PBOInputStreamTest {
+
+	@TempDir
+	Path directory;
+
+
+	/**
+	 * Creates random (incompressible) content of the given size
+	 */
+	static byte[] random(int seed, int size) {
+		byte[] content = new byte[size];
+		new Random(seed).nextBytes(content);
+
+		return content;
+	}
+
+	/**
+	 * Creates compressible text of the given size
+	 */
+	static byte[] text(int size) {
+		StringBuilder builder = new StringBuilder();
+
+		for (int i = 0; builder.length() < size; i++) {
+			builder.append("class Item").append(i % 50).append(" { scope = 2; };\n");
+		}
+
+		return builder.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Writes a PBO containing an uncompressed and a compressed entry, each of
+	 * which is followed by another entry
+	 */
+	PBO createPBO(boolean memoryMapped) throws IOException {
+		Path file = directory.resolve("addon.pbo");
+
+		new PBOWriter().setCompressionPolicy(new DefaultPBOCompressionPolicy())
+				.add("plain.bin", random(1, 100_000)).add("after.bin", random(2, 1000))
+				.add("packed.txt", text(100_000)).add("last.bin", random(3, 1000)).write(file).close();
+
+		PBO pbo = new PBO(file.toFile(), memoryMapped);
+		assertFalse(pbo.getEntry("plain.bin").isCompressed());
+		assertTrue(pbo.getEntry("packed.txt").isCompressed());
+
+		return pbo;
+	}
+
+	@Test
+	void skipStopsAtTheEntryBoundary() throws IOException {
+		for (boolean memoryMapped : new boolean[] { false, true }) {
+			try (PBO pbo = createPBO(memoryMapped)) {
+				for (String name : new String[] { "plain.bin", "packed.txt" }) {
+					byte[] content = name.equals("plain.bin") ? random(1, 100_000) : text(100_000);
+
+					try (PBOInputStream in = pbo.getEntry(name).toStream()) {
+						assertEquals(content.length, in.getSize());
+						assertEquals(0, in.skip(0));
+						assertEquals(0, in.skip(-5));
+
+						assertEquals(70_000, in.skip(70_000));
+						assertEquals(content[70_000] & 0xFF, in.read());
+
+						// skipping past the end only skips the remaining content
+						assertEquals(content.length - 70_001 - 10, in.skip(content.length - 70_001 - 10));
+						assertArrayEquals(Arrays.copyOfRange(content, content.length - 10, content.length - 5),
+								in.readNBytes(5));
+						assertEquals(5, in.skip(1_000_000));
+						assertEquals(0, in.skip(1));
+
+						assertEquals(-1, in.read());
+						assertEquals(-1, in.read(new byte[10], 0, 10));
+						assertEquals(0, in.available());
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void availableNeverExceedsTheEntry() throws IOException {
+		for (boolean memoryMapped : new boolean[] { false, true }) {
+			try (PBO pbo = createPBO(memoryMapped)) {
+				try (PBOInputStream in = pbo.getEntry("plain.bin").toStream()) {
+					// the following entry's data is not available to this stream
+					assertEquals(100_000, in.available());
+					in.skip(99_000);
+					assertEquals(1000, in.available());
+
+					byte[] buffer = new byte[4000];
+					int count = 0;
+					for (int read; (read = in.read(buffer, count, buffer.length - count)) > 0;) {
+						count += read;
+					}
+					assertEquals(1000, count);
+					assertArrayEquals(Arrays.copyOfRange(random(1, 100_000), 99_000, 100_000),
+							Arrays.copyOf(buffer, count));
+				}
+
+				try (PBOInputStream in = pbo.getEntry("packed.txt").toStream()) {
+					in.skip(95_000);
+
+					int available = in.available();
+					assertTrue(available >= 0 && available <= 5000, "available: " + available);
+				}
+			}
+		}
+	}
+
+	@Test
+	void bulkReadsMatchTheContent() throws IOException {
+		for (boolean memoryMapped : new boolean[] { false, true }) {
+			try (PBO pbo = createPBO(memoryMapped)) {
+				try (PBOInputStream in = pbo.getEntry("packed.txt").toStream()) {
+					assertEquals(new String(text(100_000), StandardCharsets.US_ASCII),
+							in.readAll(StandardCharsets.UTF_8));
+					assertEquals(0, in.readAllBytes().length);
+				}
+
+				try (PBOInputStream in = pbo.getEntry("plain.bin").toStream()) {
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+					assertArrayEquals(Arrays.copyOf(random(1, 100_000), 3), in.readNBytes(3));
+					assertEquals(100_000 - 3, in.transferTo(out));
+					assertArrayEquals(Arrays.copyOfRange(random(1, 100_000), 3, 100_000), out.toByteArray());
+				}
+
+				try (PBOInputStream in = pbo.getEntry("last.bin").toStream()) {
+					byte[] buffer = new byte[10];
+
+					assertEquals(0, in.read(buffer, 10, 0));
+					assertThrows(IndexOutOfBoundsException.class, () -> in.read(buffer, 5, 6));
+					assertThrows(IndexOutOfBoundsException.class, () -> in.read(buffer, -1, 1));
+					assertArrayEquals(random(3, 1000), in.readAllBytes());
+				}
+			}
+		}
+	}
+
+	@Test
+	void concurrentStreamsShareOneChannel() throws Exception {
+		createPBO(false).close();
+
+		PBOChannelPool pool = new PBOChannelPool(4);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+
+		try (PBO pbo = new PBO(directory.resolve("addon.pbo").toFile(), false, pool)) {
+			pool.resetStatistics();
+
+			List<Future<byte[]>> results = new ArrayList<>();
+			for (int i = 0; i < 50; i++) {
+				String name = i % 2 == 0 ? "plain.bin" : "packed.txt";
+
+				results.add(executor.submit(() -> {
+					try (PBOInputStream in = pbo.getEntry(name).toStream()) {
+						byte[] content = new byte[(int) in.getSize()];
+
+						// small reads so that the threads interleave
+						for (int offset = 0; offset < content.length;) {
+							offset += in.read(content, offset, Math.min(997, content.length - offset));
+						}
+
+						return content;
+					}
+				}));
+			}
+
+			for (int i = 0; i < results.size(); i++) {
+				assertArrayEquals(i % 2 == 0 ? random(1, 100_000) : text(100_000), results.get(i).get());
+			}
+
+			// every read used the channel the header has been read with
+			assertEquals(0, pool.getMisses());
+			assertTrue(pool.getHits() > 50);
+			assertEquals(List.of(directory.resolve("addon.pbo").toAbsolutePath()), pool.getOpenFiles());
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(0, pool.getOpenCount());
+	}
+}
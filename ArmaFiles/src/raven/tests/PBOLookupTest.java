@@ -0,0 +1,121 @@
+package raven.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import raven.pbo.PBO;
+import raven.pbo.PBOEntry;
+import raven.pbo.PBOWriter;
+
+class PBOLookupTest {
+
+	static final String[] PATHS = { "config.cpp", "Data\\Script.sqf", "data\\sub\\script.SQF", "INIT.sqf",
+			"functions\\fn_a.sqf" };
+
+	@TempDir
+	Path directory;
+
+
+	PBO createPBO() throws IOException {
+		PBOWriter writer = new PBOWriter().setPrefix("x\\addon");
+
+		for (String current : PATHS) {
+			writer.add(current, current.getBytes(StandardCharsets.US_ASCII));
+		}
+
+		return writer.write(directory.resolve("addon.pbo"));
+	}
+
+	static List<String> names(List<PBOEntry> entries) {
+		List<String> names = new ArrayList<>();
+
+		for (PBOEntry current : entries) {
+			names.add(current.getFileName());
+		}
+
+		return names;
+	}
+
+	@Test
+	void pathLookupIsCaseFolded() throws IOException {
+		try (PBO pbo = createPBO()) {
+			for (String current : PATHS) {
+				assertEquals(current, pbo.getEntry(current).getFileName());
+				assertEquals(current, pbo.getEntry(current.toUpperCase(Locale.ROOT)).getFileName());
+				assertEquals(current, pbo.getEntry(current.toLowerCase(Locale.ROOT).replace('\\', '/')).getFileName());
+			}
+
+			// a leading separator refers to the PBO's root
+			assertEquals("config.cpp", pbo.getEntry("\\CONFIG.cpp").getFileName());
+			assertEquals("Data\\Script.sqf", pbo.getEntry("/data/script.sqf").getFileName());
+
+			assertNull(pbo.getEntry("script.sqf"));
+			assertNull(pbo.getEntry("data"));
+			assertNull(pbo.getEntry("x\\addon\\config.cpp"));
+			assertNull(pbo.getEntry(""));
+		}
+	}
+
+	@Test
+	void caseFoldingDoesNotDependOnTheLocale() throws IOException {
+		Locale locale = Locale.getDefault();
+
+		try (PBO pbo = createPBO()) {
+			// the Turkish upper case I doesn't fold to the ASCII i
+			Locale.setDefault(Locale.forLanguageTag("tr-TR"));
+
+			assertEquals("INIT.sqf", pbo.getEntry("init.sqf").getFileName());
+			assertEquals("INIT.sqf", pbo.getEntry("INIT.SQF").getFileName());
+			assertEquals("config.cpp", pbo.getEntry("CONFIG.CPP").getFileName());
+		} finally {
+			Locale.setDefault(locale);
+		}
+	}
+
+	@Test
+	void fileNameLookupSpansAllDirectories() throws IOException {
+		try (PBO pbo = createPBO()) {
+			assertEquals(List.of("Data\\Script.sqf", "data\\sub\\script.SQF"), names(pbo.getFile("script.sqf")));
+			assertEquals(names(pbo.getFile("script.sqf")), names(pbo.getFile("SCRIPT.sqf")));
+			assertEquals(List.of("functions\\fn_a.sqf"), names(pbo.getFile("FN_A.sqf")));
+
+			assertTrue(pbo.getFile("missing.sqf").isEmpty());
+			// only file names are indexed, not paths
+			assertTrue(pbo.getFile("functions\\fn_a.sqf").isEmpty());
+
+			// the entries are the same objects the path lookup returns
+			assertSame(pbo.getEntry("data\\sub\\script.sqf"), pbo.getFile("script.sqf").get(1));
+
+			List<PBOEntry> files = pbo.getFile("config.cpp");
+			assertThrows(UnsupportedOperationException.class, () -> files.clear());
+		}
+	}
+
+	@Test
+	void entriesAreAnUnmodifiableView() throws IOException {
+		try (PBO pbo = createPBO()) {
+			List<PBOEntry> entries = pbo.getEntries();
+
+			assertEquals(List.of(PATHS), names(entries));
+			// the same view is returned on every call instead of a copy
+			assertSame(entries, pbo.getEntries());
+			assertThrows(UnsupportedOperationException.class, () -> entries.remove(0));
+
+			// the product entry and the terminating boundary entry are excluded
+			assertEquals(PATHS.length + 2, pbo.getAllEntries().size());
+		}
+	}
+}
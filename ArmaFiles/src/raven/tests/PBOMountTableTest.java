@@ -0,0 +1,172 @@
+package raven.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import raven.pbo.PBO;
+import raven.pbo.PBOEntry;
+import raven.pbo.PBOInputStream;
+import raven.pbo.PBOMountTable;
+import raven.pbo.PBOMountTable.OverlayPolicy;
+import raven.pbo.PBOWriter;
+
+class PBOMountTableTest {
+
+	@TempDir
+	Path directory;
+
+	List<PBO> pbos = new ArrayList<>();
+
+
+	/**
+	 * Creates a PBO with the given prefix whose files contain the PBO's name
+	 */
+	PBO createPBO(String name, String prefix, String... paths) throws IOException {
+		PBOWriter writer = new PBOWriter();
+		if (prefix != null) {
+			writer.setPrefix(prefix);
+		}
+
+		for (String current : paths) {
+			writer.add(current, name.getBytes(StandardCharsets.US_ASCII));
+		}
+
+		PBO pbo = writer.write(directory.resolve(name + ".pbo"));
+		pbos.add(pbo);
+
+		return pbo;
+	}
+
+	@AfterEach
+	void close() throws IOException {
+		for (PBO current : pbos) {
+			current.close();
+		}
+	}
+
+	static String read(PBOEntry entry) throws IOException {
+		try (PBOInputStream in = entry.toStream()) {
+			return in.readAll();
+		}
+	}
+
+	@Test
+	void higherPriorityShadowsLowerOnes() throws IOException {
+		PBO patch = createPBO("patch", "x\\mod\\addons\\main", "config.cpp", "fn_new.sqf");
+		PBO base = createPBO("base", "x\\mod\\addons\\main", "config.cpp", "data\\icon.paa");
+		PBO other = createPBO("other", "x\\other", "config.cpp");
+
+		PBOMountTable table = new PBOMountTable();
+		// the order of mounting doesn't matter for different priorities
+		table.mount(patch, 1);
+		table.mount(base, 0);
+		table.mount(other);
+
+		assertEquals("patch", read(table.resolve("\\x\\mod\\addons\\main\\config.cpp")));
+		assertEquals("patch", read(table.resolve("X/Mod/Addons/Main/CONFIG.cpp")));
+		assertEquals("base", read(table.resolve("x\\mod\\addons\\main\\data\\icon.paa")));
+		assertEquals("other", read(table.resolve("x\\other\\config.cpp")));
+
+		List<PBOEntry> all = table.resolveAll("x\\mod\\addons\\main\\config.cpp");
+		assertEquals(2, all.size());
+		assertSame(patch, all.get(0).getPBO());
+		assertSame(base, all.get(1).getPBO());
+
+		assertNull(table.resolve("x\\mod\\addons\\main\\missing.sqf"));
+		assertNull(table.resolve("config.cpp"));
+		assertTrue(table.resolveAll("config.cpp").isEmpty());
+		// directories are not provided by any PBO
+		assertFalse(table.exists("x\\mod\\addons\\main"));
+		assertTrue(table.exists("x\\mod\\addons\\main\\fn_new.sqf"));
+
+		assertEquals(4, table.size());
+		assertEquals(List.of(patch, base, other), table.getMountedPBOs());
+	}
+
+	@Test
+	void extremePrioritiesAreOrdered() throws IOException {
+		PBO low = createPBO("low", "x\\mod", "config.cpp");
+		PBO high = createPBO("high", "x\\mod", "config.cpp");
+
+		PBOMountTable table = new PBOMountTable();
+		table.mount(high, Integer.MAX_VALUE);
+		table.mount(low, Integer.MIN_VALUE);
+
+		assertEquals("high", read(table.resolve("x\\mod\\config.cpp")));
+	}
+
+	@Test
+	void overlayPolicyDecidesBetweenEqualPriorities() throws IOException {
+		PBO first = createPBO("first", "x\\mod", "config.cpp");
+		PBO second = createPBO("second", "x\\mod", "config.cpp");
+
+		PBOMountTable table = new PBOMountTable(OverlayPolicy.FIRST_MOUNTED);
+		table.mount(first);
+		table.mount(second);
+
+		assertEquals("first", read(table.resolve("x\\mod\\config.cpp")));
+
+		// the policy applies to PBOs that have been mounted already
+		table.setOverlayPolicy(OverlayPolicy.LAST_MOUNTED);
+		assertEquals("second", read(table.resolve("x\\mod\\config.cpp")));
+		assertSame(first, table.resolveAll("x\\mod\\config.cpp").get(1).getPBO());
+
+		assertEquals(OverlayPolicy.LAST_MOUNTED, new PBOMountTable().getOverlayPolicy());
+		assertThrows(IllegalArgumentException.class, () -> table.setOverlayPolicy(null));
+	}
+
+	@Test
+	void unmountingRevealsShadowedEntries() throws IOException {
+		PBO patch = createPBO("patch", "x\\mod", "config.cpp", "fn_new.sqf");
+		PBO base = createPBO("base", "x\\mod", "config.cpp");
+
+		PBOMountTable table = new PBOMountTable();
+		table.mount(base);
+		table.mount(patch, 5);
+		assertThrows(IllegalArgumentException.class, () -> table.mount(patch, 0));
+
+		assertTrue(table.unmount(patch));
+		assertFalse(table.unmount(patch));
+
+		assertEquals("base", read(table.resolve("x\\mod\\config.cpp")));
+		assertFalse(table.exists("x\\mod\\fn_new.sqf"));
+		assertEquals(1, table.size());
+		assertEquals(List.of(base), table.getMountedPBOs());
+
+		// a PBO can be mounted again after it has been unmounted
+		table.mount(patch, -1);
+		assertEquals("base", read(table.resolve("x\\mod\\config.cpp")));
+		assertEquals("patch", read(table.resolve("x\\mod\\fn_new.sqf")));
+	}
+
+	@Test
+	void mountPoints() throws IOException {
+		PBO prefixed = createPBO("prefixed", "x\\mod", "config.cpp");
+		PBO unprefixed = createPBO("my_addon", null, "config.cpp");
+
+		assertEquals("x\\mod", PBOMountTable.getDefaultMountPoint(prefixed));
+		assertEquals("my_addon", PBOMountTable.getDefaultMountPoint(unprefixed));
+
+		PBOMountTable table = new PBOMountTable();
+		table.mount(prefixed, "/Custom/Location", 0);
+		table.mount(unprefixed);
+
+		assertEquals("prefixed", read(table.resolve("custom\\location\\config.cpp")));
+		assertNull(table.resolve("x\\mod\\config.cpp"));
+		assertEquals("my_addon", read(table.resolve("my_addon\\config.cpp")));
+	}
+}
@@ -0,0 +1,206 @@
+package raven.tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import raven.pbo.DefaultPBOCompressionPolicy;
+import raven.pbo.PBO;
+import raven.pbo.PBOEntry;
+import raven.pbo.PBOInputStream;
+import raven.pbo.PBOOffHeapContentCache;
+import raven.pbo.PBOWriter;
+
+class PBOOffHeapContentCacheTest {
+
+	@TempDir
+	Path directory;
+
+
+	/**
+	 * Creates random (incompressible) content of the given size
+	 */
+	static byte[] content(int seed, int size) {
+		byte[] content = new byte[size];
+		new Random(seed).nextBytes(content);
+
+		return content;
+	}
+
+	static byte[] read(ByteBuffer content) {
+		byte[] bytes = new byte[content.remaining()];
+		content.get(bytes);
+
+		return bytes;
+	}
+
+	@Test
+	void contentIsReadIntoTheSlabs() throws IOException {
+		byte[] compressible = new byte[4000];
+		Arrays.fill(compressible, (byte) 'z');
+
+		PBOWriter writer = new PBOWriter().setCompressionPolicy(new DefaultPBOCompressionPolicy());
+		writer.add("compressible.txt", compressible);
+		writer.add("a.bin", content(1, 3000));
+		writer.add("b.bin", content(2, 100));
+
+		try (PBO pbo = writer.write(directory.resolve("addon.pbo"))) {
+			assertTrue(pbo.getEntry("compressible.txt").isCompressed());
+			assertFalse(pbo.getEntry("a.bin").isCompressed());
+
+			for (Path spillDirectory : new Path[] { null, directory }) {
+				PBOOffHeapContentCache cache = new PBOOffHeapContentCache(64 * 1024, 8192, spillDirectory);
+
+				for (int i = 0; i < 2; i++) {
+					ByteBuffer content = cache.get(pbo.getEntry("compressible.txt"));
+					assertTrue(content.isDirect());
+					assertTrue(content.isReadOnly());
+					assertArrayEquals(compressible, read(content));
+
+					assertArrayEquals(content(1, 3000), read(cache.get(pbo.getEntry("a.bin"))));
+					assertArrayEquals(content(2, 100), read(cache.get(pbo.getEntry("b.bin"))));
+				}
+
+				assertEquals(3, cache.size());
+				assertEquals(3, cache.getHitCount());
+				assertEquals(3, cache.getMissCount());
+				assertEquals(8192, cache.getAllocatedSize());
+
+				cache.clear();
+			}
+		}
+	}
+
+	@Test
+	void referencedEvictedSlabsAreBounded() throws IOException {
+		PBOWriter writer = new PBOWriter();
+		for (int i = 0; i < 6; i++) {
+			writer.add(i + ".bin", content(i, 16));
+		}
+		writer.add("big.bin", content(6, 17));
+
+		try (PBO pbo = writer.write(directory.resolve("addon.pbo"))) {
+			// two slabs that each hold a single entry
+			PBOOffHeapContentCache cache = new PBOOffHeapContentCache(32, 16, null);
+			List<ByteBuffer> views = new ArrayList<>();
+
+			for (int i = 0; i < 4; i++) {
+				ByteBuffer view = cache.get(pbo.getEntry(i + ".bin"));
+				assertTrue(view.isDirect());
+
+				views.add(view);
+			}
+
+			// the views keep the two evicted slabs alive
+			assertEquals(2, cache.size());
+			assertEquals(32, cache.getAllocatedSize());
+			assertEquals(32, cache.getRetiredSize());
+			assertEquals(2, cache.getEvictionCount());
+
+			// no further slab may be created as long as the evicted ones are referenced
+			for (int i = 4; i < 6; i++) {
+				ByteBuffer view = cache.get(pbo.getEntry(i + ".bin"));
+				assertFalse(view.isDirect());
+
+				views.add(view);
+			}
+			assertEquals(2, cache.size());
+			assertEquals(32, cache.getAllocatedSize());
+
+			// content bigger than a slab is never cached
+			ByteBuffer big = cache.get(pbo.getEntry("big.bin"));
+			assertFalse(big.isDirect());
+			assertArrayEquals(content(6, 17), read(big));
+
+			// views on evicted content stay valid
+			for (int i = 0; i < views.size(); i++) {
+				assertArrayEquals(content(i, 16), read(views.get(i)));
+			}
+
+			for (int i = 0; i < 6; i++) {
+				PBOEntry entry = pbo.getEntry(i + ".bin");
+				assertArrayEquals(content(i, 16), read(cache.get(entry)));
+			}
+		}
+	}
+
+	@Test
+	void referencedContentSurvivesTheEvictionOfItsSlab() throws IOException {
+		PBOWriter writer = new PBOWriter();
+		for (int i = 0; i < 5; i++) {
+			writer.add(i + ".bin", content(i, 16));
+		}
+
+		try (PBO pbo = writer.write(directory.resolve("addon.pbo"))) {
+			// two slabs that hold two entries each
+			PBOOffHeapContentCache cache = new PBOOffHeapContentCache(64, 32, null);
+
+			for (int i : new int[] { 0, 1, 0, 2, 3 }) {
+				assertArrayEquals(content(i, 16), read(cache.get(pbo.getEntry(i + ".bin"))));
+			}
+			assertEquals(1, cache.getHitCount());
+			assertEquals(4, cache.size());
+
+			// the oldest slab is evicted, but 0.bin has been requested since it has
+			// been stored and is moved into the new slab
+			assertArrayEquals(content(4, 16), read(cache.get(pbo.getEntry("4.bin"))));
+			assertEquals(1, cache.getEvictionCount());
+			assertEquals(4, cache.size());
+			assertEquals(64, cache.getAllocatedSize());
+
+			assertArrayEquals(content(0, 16), read(cache.get(pbo.getEntry("0.bin"))));
+			assertEquals(2, cache.getHitCount());
+
+			// 1.bin has been evicted and evicts 2.bin and 3.bin when it is read again
+			assertArrayEquals(content(1, 16), read(cache.get(pbo.getEntry("1.bin"))));
+			assertEquals(2, cache.getHitCount());
+			assertEquals(6, cache.getMissCount());
+			assertEquals(3, cache.getEvictionCount());
+			assertEquals(3, cache.size());
+		}
+	}
+
+	@Test
+	void streamsAreServedFromTheCache() throws IOException {
+		byte[] compressible = new byte[4000];
+		Arrays.fill(compressible, (byte) 'z');
+
+		PBOWriter writer = new PBOWriter().setCompressionPolicy(new DefaultPBOCompressionPolicy());
+		writer.add("compressible.txt", compressible);
+		writer.add("a.bin", content(1, 3000));
+
+		PBOOffHeapContentCache cache = new PBOOffHeapContentCache(64 * 1024, 8192, directory);
+
+		try (PBO pbo = writer.write(directory.resolve("addon.pbo"))) {
+			pbo.setContentCache(cache);
+
+			for (int i = 0; i < 2; i++) {
+				try (PBOInputStream in = pbo.getEntry("compressible.txt").toStream()) {
+					assertEquals(compressible.length, in.getSize());
+					assertArrayEquals(compressible, in.readAllBytes());
+				}
+				try (PBOInputStream in = pbo.getEntry("a.bin").toStream()) {
+					assertArrayEquals(content(1, 3000), in.readAllBytes());
+				}
+			}
+
+			assertEquals(2, cache.getHitCount());
+			assertEquals(2, cache.size());
+		}
+
+		// closing a PBO removes its content
+		assertEquals(0, cache.size());
+	}
+}
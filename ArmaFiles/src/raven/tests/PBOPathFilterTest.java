@@ -0,0 +1,106 @@
+package raven.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import raven.pbo.PBO;
+import raven.pbo.PBOHeaderIndex;
+import raven.pbo.PBOPathFilter;
+import raven.pbo.PBOWriter;
+
+class PBOPathFilterTest {
+
+	@TempDir
+	Path directory;
+
+
+	static List<String> paths(String prefix, int count) {
+		List<String> paths = new ArrayList<>();
+
+		for (int i = 0; i < count; i++) {
+			paths.add(prefix + "\\dir" + (i % 17) + "\\file" + i + ".sqf");
+		}
+
+		return paths;
+	}
+
+	@Test
+	void containedPathsAreAlwaysFound() {
+		List<String> paths = paths("functions", 1000);
+		PBOPathFilter filter = new PBOPathFilter(paths);
+
+		for (String current : paths) {
+			assertTrue(filter.mightContain(current));
+			assertTrue(filter.mightContain(current.toUpperCase().replace('\\', '/')));
+			assertTrue(filter.mightContain("x\\addon", "X/Addon/" + current));
+		}
+
+		assertFalse(filter.mightContain("x\\addon", "x\\other\\" + paths.get(0)));
+		assertFalse(filter.mightContain("x\\addon", "x\\addon"));
+	}
+
+	@Test
+	void falsePositiveRateMatchesTheConfiguration() {
+		PBOPathFilter filter = new PBOPathFilter(paths("functions", 1000));
+
+		int falsePositives = 0;
+		for (String current : paths("missing", 10000)) {
+			if (filter.mightContain(current)) {
+				falsePositives++;
+			}
+		}
+
+		// about 1% with 10 bits and 7 probes per path
+		assertTrue(falsePositives < 300, "Too many false positives: " + falsePositives);
+		assertEquals(8 * ((1000 * PBOPathFilter.BITS_PER_PATH + 63) / 64), filter.getMemoryUsage());
+	}
+
+	@Test
+	void emptyFilterContainsNothing() {
+		PBOPathFilter filter = new PBOPathFilter(new ArrayList<>());
+
+		assertEquals(8, filter.getMemoryUsage());
+		assertFalse(filter.mightContain("config.cpp"));
+	}
+
+	@Test
+	void filterBiggerThanItsPBOIsRejected() throws IOException {
+		Path file = directory.resolve("addon.pbo");
+		new PBOWriter().setPrefix("x\\addon")
+				.add("config.cpp", "class CfgPatches {};".getBytes(StandardCharsets.US_ASCII)).write(file).close();
+
+		Path location = directory.resolve("headers.idx");
+		PBOHeaderIndex index = new PBOHeaderIndex(location);
+		index.open(file.toFile()).close();
+		index.save();
+
+		assertEquals(List.of(file.toFile().getAbsoluteFile()), index.findCandidates("x\\addon\\config.cpp"));
+		assertTrue(index.findCandidates("x\\addon\\missing.sqf").isEmpty());
+
+		// the filter of a single file consists of one long and ends the index file
+		byte[] corrupted = Files.readAllBytes(location);
+		ByteBuffer.wrap(corrupted).putInt(corrupted.length - 8 - 4, Integer.MAX_VALUE);
+		Files.write(location, corrupted);
+
+		index = PBOHeaderIndex.load(location);
+		assertEquals(0, index.size());
+		assertTrue(index.isModified());
+
+		try (PBO pbo = index.open(file.toFile())) {
+			assertEquals(1, index.getMisses());
+			assertEquals(List.of(file.toFile().getAbsoluteFile()), index.findCandidates("x\\addon\\config.cpp"));
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package raven.tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import raven.pbo.DefaultPBOCompressionPolicy;
+import raven.pbo.PBO;
+import raven.pbo.PBOEntryChannel;
+import raven.pbo.PBOInputStream;
+import raven.pbo.PBOVerifier;
+import raven.pbo.PBOWriter;
+
+/**
+ * Tests PBOs that are read out of memory or out of arbitrary channels instead
+ * of a file
+ */
+class PBOSourceTest {
+
+	@TempDir
+	Path directory;
+
+
+	/**
+	 * A read-only channel over a byte array that (unlike a FileChannel) doesn't
+	 * support positional reads
+	 */
+	static class ByteArrayChannel implements SeekableByteChannel {
+
+		final byte[] content;
+		long position;
+		boolean open = true;
+
+
+		ByteArrayChannel(byte[] content) {
+			this.content = content;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			if (!open) {
+				throw new ClosedChannelException();
+			}
+			if (position >= content.length) {
+				return -1;
+			}
+
+			int length = (int) Math.min(dst.remaining(), content.length - position);
+			dst.put(content, (int) position, length);
+			position += length;
+
+			return length;
+		}
+
+		@Override
+		public int write(ByteBuffer src) {
+			throw new NonWritableChannelException();
+		}
+
+		@Override
+		public long position() {
+			return position;
+		}
+
+		@Override
+		public SeekableByteChannel position(long newPosition) {
+			position = newPosition;
+
+			return this;
+		}
+
+		@Override
+		public long size() {
+			return content.length;
+		}
+
+		@Override
+		public SeekableByteChannel truncate(long size) {
+			throw new NonWritableChannelException();
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public void close() {
+			open = false;
+		}
+	}
+
+	static byte[] text(int size) {
+		StringBuilder builder = new StringBuilder();
+
+		for (int i = 0; builder.length() < size; i++) {
+			builder.append("class Item").append(i).append(" { scope = 2; };\n");
+		}
+
+		return builder.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Writes a PBO with a plain and a compressed entry and returns the file's
+	 * content
+	 */
+	byte[] createPBO() throws IOException {
+		Path file = directory.resolve("addon.pbo");
+
+		new PBOWriter().setPrefix("x\\addon").setCompressionPolicy(new DefaultPBOCompressionPolicy())
+				.add("config.cpp", "class CfgPatches {};".getBytes(StandardCharsets.US_ASCII))
+				.add("data\\items.hpp", text(50_000)).write(file).close();
+
+		return Files.readAllBytes(file);
+	}
+
+	static void assertContent(PBO pbo) throws IOException {
+		assertEquals("x\\addon", pbo.getPrefix());
+		assertEquals(2, pbo.getEntries().size());
+		assertNull(pbo.getLocation());
+		assertNull(pbo.toFile());
+		assertTrue(pbo.getEntry("DATA/items.hpp").isCompressed());
+
+		try (PBOInputStream in = pbo.getEntry("config.cpp").toStream()) {
+			assertEquals("class CfgPatches {};", in.readAll());
+		}
+		try (PBOInputStream in = pbo.getEntry("data\\items.hpp").toStream()) {
+			assertArrayEquals(text(50_000), in.readAllBytes());
+		}
+		try (PBOEntryChannel channel = pbo.getEntry("data\\items.hpp").toChannel()) {
+			ByteBuffer buffer = ByteBuffer.allocate(100);
+			channel.position(40_000).read(buffer);
+
+			assertArrayEquals(Arrays.copyOfRange(text(50_000), 40_000, 40_100), buffer.array());
+		}
+
+		assertEquals(PBOVerifier.Status.VALID, pbo.verify());
+	}
+
+	@Test
+	void inMemoryPBO() throws IOException {
+		byte[] content = createPBO();
+
+		try (PBO pbo = new PBO(content)) {
+			assertTrue(pbo.isMemoryMapped());
+			assertEquals("<in-memory PBO>", pbo.toString());
+			assertContent(pbo);
+
+			// entries are slices of the given content
+			ByteBuffer data = pbo.getEntry("config.cpp").getData();
+			assertTrue(data.isReadOnly());
+			assertEquals("class CfgPatches {};", StandardCharsets.US_ASCII.decode(data).toString());
+		}
+
+		// only the range between the buffer's position and limit makes up the PBO
+		ByteBuffer buffer = ByteBuffer.allocate(content.length + 200);
+		buffer.position(100);
+		buffer.put(content);
+		buffer.position(100).limit(100 + content.length);
+
+		try (PBO pbo = new PBO(buffer)) {
+			assertContent(pbo);
+		}
+
+		try (PBO pbo = new PBO(ByteBuffer.allocateDirect(content.length).put(content).flip())) {
+			assertContent(pbo);
+		}
+	}
+
+	@Test
+	void channelBackedPBO() throws IOException {
+		byte[] content = createPBO();
+
+		ByteArrayChannel channel = new ByteArrayChannel(content);
+		try (PBO pbo = new PBO(channel)) {
+			assertFalse(pbo.isMemoryMapped());
+			assertEquals("<channel-backed PBO>", pbo.toString());
+			assertContent(pbo);
+		}
+		// the channel belongs to the PBO
+		assertFalse(channel.isOpen());
+
+		try (PBO pbo = new PBO(Files.newByteChannel(directory.resolve("addon.pbo"), StandardOpenOption.READ))) {
+			assertContent(pbo);
+		}
+	}
+
+	@Test
+	void truncatedInMemoryPBO() throws IOException {
+		byte[] content = createPBO();
+
+		// the header is complete but the data of the last entry is missing
+		try (PBO pbo = new PBO(Arrays.copyOf(content, content.length - 21 - 1000))) {
+			try (PBOInputStream in = pbo.getEntry("config.cpp").toStream()) {
+				assertEquals("class CfgPatches {};", in.readAll());
+			}
+			assertThrows(EOFException.class, () -> pbo.getEntry("data\\items.hpp").getData());
+		}
+
+		// the header itself is cut off
+		assertThrows(EOFException.class, () -> new PBO(Arrays.copyOf(content, 30)));
+
+		assertThrows(IllegalArgumentException.class, () -> new PBO((ByteBuffer) null));
+		assertThrows(IllegalArgumentException.class, () -> new PBO((SeekableByteChannel) null));
+	}
+}
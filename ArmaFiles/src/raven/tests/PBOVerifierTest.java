@@ -0,0 +1,84 @@
+package raven.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import raven.pbo.PBO;
+import raven.pbo.PBOVerifier;
+import raven.pbo.PBOVerifier.Status;
+import raven.pbo.PBOWriter;
+
+class PBOVerifierTest {
+
+	@TempDir
+	Path directory;
+
+
+	Path writePBO() throws IOException {
+		Path file = directory.resolve("addon.pbo");
+
+		new PBOWriter().setPrefix("addon").add("a.txt", "first file".getBytes(StandardCharsets.US_ASCII))
+				.add("b.txt", "second file".getBytes(StandardCharsets.US_ASCII)).write(file).close();
+
+		return file;
+	}
+
+	static Status verifyPBO(Path file, boolean memoryMapped) throws IOException {
+		try (PBO pbo = new PBO(file.toFile(), memoryMapped)) {
+			Status status = PBOVerifier.verify(pbo);
+			assertEquals(status, pbo.getIntegrity());
+
+			return status;
+		}
+	}
+
+	@Test
+	void validPBO() throws IOException {
+		Path file = writePBO();
+
+		assertEquals(Status.VALID, PBOVerifier.verify(file));
+		assertEquals(Status.VALID, verifyPBO(file, false));
+		assertEquals(Status.VALID, verifyPBO(file, true));
+	}
+
+	@Test
+	void flippedByte() throws IOException {
+		Path file = writePBO();
+		byte[] content = Files.readAllBytes(file);
+		// the last byte of b.txt's data (in front of the zero byte and the checksum)
+		content[content.length - 22] ^= 1;
+		Files.write(file, content);
+
+		assertEquals(Status.INVALID, PBOVerifier.verify(file));
+		assertEquals(Status.INVALID, verifyPBO(file, false));
+		assertEquals(Status.INVALID, verifyPBO(file, true));
+	}
+
+	@Test
+	void flippedChecksumByte() throws IOException {
+		Path file = writePBO();
+		byte[] content = Files.readAllBytes(file);
+		content[content.length - 1] ^= 1;
+		Files.write(file, content);
+
+		assertEquals(Status.INVALID, PBOVerifier.verify(file));
+		assertEquals(Status.INVALID, verifyPBO(file, false));
+	}
+
+	@Test
+	void missingChecksum() throws IOException {
+		Path file = writePBO();
+		byte[] content = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(content, content.length - 21));
+
+		assertEquals(Status.MISSING, verifyPBO(file, false));
+	}
+}
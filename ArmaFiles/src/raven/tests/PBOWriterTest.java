@@ -0,0 +1,240 @@
+package raven.tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import raven.pbo.DefaultPBOCompressionPolicy;
+import raven.pbo.LZSSCompressor;
+import raven.pbo.PBO;
+import raven.pbo.PBOEntry;
+import raven.pbo.PBOInputStream;
+import raven.pbo.PBOVerifier;
+import raven.pbo.PBOWriter;
+
+class PBOWriterTest {
+
+	@TempDir
+	Path directory;
+
+
+	/**
+	 * Builds a PBO containing everything a repack has to keep: a product entry
+	 * and a terminating entry with non-zero fields, a header extension ending
+	 * with a key without a value, reserved fields, a Latin-1 name, a compressed
+	 * file and paths occurring multiple times
+	 */
+	static byte[] createRepackFixture() throws IOException, NoSuchAlgorithmException {
+		byte[] config = "class CfgPatches {};".getBytes(StandardCharsets.US_ASCII);
+		byte[] text = new byte[2000];
+		for (int i = 0; i < text.length; i++) {
+			text[i] = (byte) ('a' + i % 7);
+		}
+		byte[] compressed = new LZSSCompressor().compress(text);
+		byte[] duplicate = "duplicate".getBytes(StandardCharsets.US_ASCII);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		writeEntry(out, "", PBOEntry.PRODUCT_ENTRY, 0, 7, 1234, 0);
+		for (String current : new String[] { "prefix", "x\\y", "version", "1", "dangling" }) {
+			writeString(out, current);
+		}
+		writeString(out, "");
+
+		writeEntry(out, "config.cpp", PBOEntry.UNCOMPRESSED, 0, 3, 100, config.length);
+		writeEntry(out, "data\\caf\u00e9.txt", PBOEntry.COMPRESSED, text.length, 0, 200, compressed.length);
+		writeEntry(out, "Config.CPP", PBOEntry.UNCOMPRESSED, 0, 0, 300, duplicate.length);
+		writeEntry(out, "config.cpp", PBOEntry.UNCOMPRESSED, 0, 9, 400, duplicate.length);
+		writeEntry(out, "", 0, 0, 5, 99, 0);
+
+		out.write(config);
+		out.write(compressed);
+		out.write(duplicate);
+		out.write(duplicate);
+
+		byte[] checksum = MessageDigest.getInstance("SHA-1").digest(out.toByteArray());
+		out.write(0);
+		out.write(checksum);
+
+		return out.toByteArray();
+	}
+
+	static void writeEntry(ByteArrayOutputStream out, String name, int packingMethod, int originalSize,
+			int reserved, int timeStamp, int dataSize) throws IOException {
+		writeString(out, name);
+
+		ByteBuffer fields = ByteBuffer.allocate(20).order(ByteOrder.LITTLE_ENDIAN);
+		fields.putInt(packingMethod).putInt(originalSize).putInt(reserved).putInt(timeStamp).putInt(dataSize);
+		out.write(fields.array());
+	}
+
+	static void writeString(ByteArrayOutputStream out, String str) throws IOException {
+		out.write(str.getBytes(StandardCharsets.ISO_8859_1));
+		out.write(0);
+	}
+
+	static void assertContent(byte[] expected, PBOEntry entry) throws IOException {
+		assertEquals(expected.length, entry.getOriginalSize());
+
+		try (PBOInputStream in = entry.toStream()) {
+			assertArrayEquals(expected, in.readAllBytes());
+		}
+	}
+
+	@Test
+	void writtenFilesCanBeReadBack() throws Exception {
+		byte[] small = "Hello PBO".getBytes(StandardCharsets.US_ASCII);
+		byte[] large = new byte[300 * 1024];
+		new Random(1).nextBytes(large);
+		byte[] text = new byte[10000];
+		Arrays.fill(text, (byte) 'x');
+
+		Path largeFile = Files.write(directory.resolve("large.bin"), large);
+		Path target = directory.resolve("written.pbo");
+
+		PBO pbo = new PBOWriter().setPrefix("my\\addon").add("small.txt", small).add("/data/large.bin", largeFile)
+				.add("data\\text.txt", 12345, () -> new ByteArrayInputStream(text))
+				.setCompressionPolicy(new DefaultPBOCompressionPolicy()).write(target);
+
+		List<PBOEntry> entries = pbo.getEntries();
+		assertEquals(3, entries.size());
+		assertEquals("small.txt", entries.get(0).getFileName());
+		assertEquals("data\\large.bin", entries.get(1).getFileName());
+		assertEquals("data\\text.txt", entries.get(2).getFileName());
+		assertEquals("my\\addon", pbo.getPrefix());
+
+		pbo.close();
+
+		// read the written file from scratch
+		pbo = new PBO(target.toFile());
+
+		assertContent(small, pbo.getEntry("small.txt"));
+		assertContent(large, pbo.getEntry("data\\large.bin"));
+		assertContent(text, pbo.getEntry("data\\text.txt"));
+
+		// small and incompressible files are stored as they are
+		assertFalse(pbo.getEntry("small.txt").isCompressed());
+		assertFalse(pbo.getEntry("data\\large.bin").isCompressed());
+		assertTrue(pbo.getEntry("data\\text.txt").isCompressed());
+		assertEquals(12345, pbo.getEntry("data\\text.txt").getTimeStamp());
+
+		pbo.close();
+	}
+
+	@Test
+	void rejectsDuplicatePaths() {
+		PBOWriter writer = new PBOWriter().add("dir\\file.txt", new byte[0]);
+
+		assertThrows(IllegalArgumentException.class, () -> writer.add("DIR/File.txt", new byte[0]));
+	}
+
+	@Test
+	void repackWithoutChangesIsByteIdentical() throws Exception {
+		byte[] original = createRepackFixture();
+		Path source = Files.write(directory.resolve("source.pbo"), original);
+		Path target = directory.resolve("target.pbo");
+
+		PBO pbo = new PBO(source.toFile());
+		PBO repacked = PBOWriter.from(pbo).write(target);
+
+		assertArrayEquals(original, Files.readAllBytes(target));
+		assertEquals("data\\caf\u00e9.txt", repacked.getEntries().get(1).getFileName());
+
+		pbo.close();
+		repacked.close();
+	}
+
+	@Test
+	void repackRemovesAllDuplicates() throws Exception {
+		Path source = Files.write(directory.resolve("source.pbo"), createRepackFixture());
+		Path target = directory.resolve("target.pbo");
+
+		PBO pbo = new PBO(source.toFile());
+		PBOWriter writer = PBOWriter.from(pbo);
+
+		assertEquals(4, writer.size());
+		writer.remove("CONFIG.cpp");
+		assertEquals(1, writer.size());
+
+		PBO repacked = writer.setPrefix("z").write(target);
+
+		assertNull(repacked.getEntry("config.cpp"));
+		assertEquals("z", repacked.getPrefix());
+		assertArrayEquals(new String[] { "prefix", "z", "version", "1", "dangling" }, repacked.getHeaderExtension());
+
+		pbo.close();
+		repacked.close();
+	}
+
+	@Test
+	void failedWriteKeepsExistingPBO() throws Exception {
+		Path target = directory.resolve("existing.pbo");
+		new PBOWriter().add("a.txt", "old".getBytes(StandardCharsets.US_ASCII)).write(target).close();
+		byte[] existing = Files.readAllBytes(target);
+
+		PBOWriter writer = new PBOWriter().add("a.txt", "new".getBytes(StandardCharsets.US_ASCII)).add("b.txt", 0,
+				() -> {
+					throw new IOException("Unreadable source");
+				});
+
+		assertThrows(IOException.class, () -> writer.write(target));
+
+		assertArrayEquals(existing, Files.readAllBytes(target));
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals(1, files.count());
+		}
+	}
+
+	@Test
+	void incrementalRepackHasValidChecksum() throws Exception {
+		Path source = Files.write(directory.resolve("source.pbo"), createRepackFixture());
+		Path target = directory.resolve("target.pbo");
+
+		byte[] large = new byte[300 * 1024];
+		new Random(2).nextBytes(large);
+		byte[] text = new byte[5000];
+		Arrays.fill(text, (byte) 't');
+
+		Path largeFile = Files.write(directory.resolve("large.bin"), large);
+		Path textFile = Files.write(directory.resolve("text.txt"), text);
+
+		try (PBO pbo = new PBO(source.toFile())) {
+			// copied, predicted, compressed and streamed items mixed
+			PBOWriter writer = PBOWriter.from(pbo).setCompressionPolicy(new DefaultPBOCompressionPolicy())
+					.setStagingWindow(1).put("data\\caf\u00e9.txt", textFile).add("large.bin", largeFile)
+					.add("small.txt", "small".getBytes(StandardCharsets.US_ASCII));
+
+			try (PBO repacked = writer.write(target)) {
+				assertEquals(PBOVerifier.Status.VALID, PBOVerifier.verify(repacked));
+
+				assertContent(text, repacked.getEntry("data\\caf\u00e9.txt"));
+				assertTrue(repacked.getEntry("data\\caf\u00e9.txt").isCompressed());
+				assertContent(large, repacked.getEntry("large.bin"));
+				assertContent("small".getBytes(StandardCharsets.US_ASCII), repacked.getEntry("small.txt"));
+				assertContent("class CfgPatches {};".getBytes(StandardCharsets.US_ASCII),
+						repacked.getFile("config.cpp").get(0));
+			}
+		}
+	}
+}
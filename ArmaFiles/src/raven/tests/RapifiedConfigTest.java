@@ -0,0 +1,81 @@
+package raven.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import raven.config.ConfigClass;
+import raven.config.ConfigClassEntry;
+import raven.config.RapificationException;
+import raven.misc.ByteReader;
+
+class RapifiedConfigTest {
+
+	/**
+	 * Creates a rapified config consisting of the rapification header followed
+	 * by the given body
+	 */
+	static ByteReader rapified(byte... body) {
+		ByteBuffer buffer = ByteBuffer.allocate(16 + body.length).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(ConfigClass.RAP_IDENTIFIER).putInt(0).putInt(8).putInt(0).put(body);
+
+		return new ByteReader(new ByteArrayInputStream(buffer.array()));
+	}
+
+	static byte[] concat(Object... parts) {
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+
+		for (Object current : parts) {
+			if (current instanceof String) {
+				buffer.put(((String) current).getBytes(StandardCharsets.ISO_8859_1));
+			} else {
+				buffer.put(((Number) current).byteValue());
+			}
+		}
+
+		byte[] bytes = new byte[buffer.position()];
+		buffer.flip().get(bytes);
+
+		return bytes;
+	}
+
+	@Test
+	void parsesTheParentClass() throws IOException, RapificationException {
+		ConfigClass config = ConfigClass.fromRapifiedFile(rapified(concat("Parent", 0, 0)));
+
+		assertEquals("Parent", config.getParentClass());
+		assertEquals(0, config.getEntryCount());
+	}
+
+	@Test
+	void truncatedStringsFailInsteadOfReadingForever() {
+		// a parent class name and the name of a deleted class without their zero-byte
+		byte[][] truncated = { concat("Parent"), concat(0, 1, ConfigClassEntry.DELETE, "Deleted") };
+
+		for (byte[] current : truncated) {
+			// reading past the end used to append -1 to the String until the memory ran out
+			assertTimeoutPreemptively(Duration.ofSeconds(10),
+					() -> assertThrows(EOFException.class, () -> ConfigClass.fromRapifiedFile(rapified(current))));
+		}
+	}
+
+	@Test
+	void readStringStopsAtTheZeroByte() throws IOException {
+		ByteReader reader = new ByteReader(new ByteArrayInputStream(concat("caf\u00e9", 0, "", 0, "rest")));
+
+		assertEquals("caf\u00e9", reader.readString());
+		assertEquals("", reader.readString());
+		assertEquals(6, reader.getPosition());
+		assertThrows(EOFException.class, reader::readString);
+	}
+}